@@ -42,8 +42,9 @@ public class RepCheck {
       SAN san = null;
       FEN fen =  null;
       String fenStr = null;
-      Map<String,Move[]> hash = null;
-      boolean found = false;
+      long key = 0L;
+      int found = 0;
+      boolean atStart = false;
 
       //check the command line args
       if (args.length != 1) {
@@ -52,7 +53,6 @@ public class RepCheck {
       }
 
       try {
-         hash = new HashMap<>();
 	 fen = new FEN();
          //establish the reader object
          reader = new PGNReader(new FileReader(new File(args[0])));
@@ -63,31 +63,34 @@ public class RepCheck {
 	 history = game.getHistory();
 	 board = (ChessBoard) game.getBoard();
 
-         while (!found && history.hasNext()) {
+	 //the board counts repetitions as the moves are played
+         while (!board.isThreefoldRepetition() && history.hasNext())
 	    history.next();
+
+	 if (board.isThreefoldRepetition()) {
+	    //walk back to find the other two times the position occurred
+	    tmp = new Move[3];
+	    key = board.getZobristKey();
 	    fenStr = fen.boardToString(board);
 	    fenStr = fenStr.substring(0, fenStr.indexOf(' '));
-	    if (!hash.containsKey(fenStr)) {
-	       tmp = new Move[3];
-	       tmp[0] = history.getCurrentMove();
-	       hash.put(fenStr, tmp);
-	    }
-	    else {
-	       tmp = hash.get(fenStr);
-	       if (tmp[1] == null) {
-	          tmp[1] = history.getCurrentMove();
-	       }
-	       else {
-	          tmp[2] = history.getCurrentMove();
-		  found = true;
+	    do {
+	       if (board.getZobristKey() == key) {
+	          //the initial position has no move that led to it
+	          if (history.getCurrentMove() == null)
+		     atStart = true;
+		  else
+		     tmp[2 - found] = history.getCurrentMove();
+		  found++;
 	       }
-	    }
-	 }
+	    } while (found < 3 && history.prev() != null);
 
-	 if (found) {
 	    san = new SAN();
 	    System.out.print("3xRepeat: ");
+	    if (atStart)
+	       System.out.print("start ");
 	    for (int i=0; i< tmp.length; i++) {
+	       if (tmp[i] == null)
+	          continue;
 	       history.goTo(tmp[i]);
 	       System.out.print(board.getCurrentMoveNumber() + ".");
 	       if (((ChessMove) tmp[i]).isBlackMove())
@@ -137,6 +137,18 @@ public class History {
    }
 
    //Add/Del///////////////////////////////////////////////////////////////
+   /* clear *****************************************************************/
+   /** empties the history so it can be used for another game.  The moves
+    *  are dropped without being undone on the board, so the board must be
+    *  set up again afterwards (as ChessGame.reset() does).  The initial
+    *  move number goes back to 1.
+    */
+   public void clear () {
+      head = new ContinuationArrayList(null);
+      currMove = null;
+      currMoveNumber = initialMoveNumber = 1;
+   }
+
    /* add()******************************************************************/
    /** adds a move to the game history, adding a continuation onto wherever
     *  the current move pointer is.  If the parameter asMainLine is true
@@ -130,44 +130,20 @@ public class Bishop extends ChessPiece {
    
    /* adjustPinsLegalDests **********************************************/
    public void adjustPinsLegalDests (ChessPiece king, List<ChessPiece> enemyTeam) {
-      Square[] line = getLineOfSight(king, false);
-      ChessPiece pin = null, tmp;
-      boolean done = false;
+      int from, to;
+      ChessPiece pin;
 
       if (captured) return;
 
-      if (line != null) {
-         if (board.staleLegalDests)
-	    board.genLegalDests();
+      from = orig.getBitIndex();
+      to   = king.orig.getBitIndex();
 
-	 //remember to ignore [0] since it is this piece's square
-         for (int i=1; i < line.length && !done; i++) {
-
-            tmp = line[i].getOccupant();
-
-	    if (tmp != null) {
-
-	       //two pieces blocking the attack is not a pin
-	       if (pin != null)  {
-	          pin = null;
-		  done = true;
-	       } 
-
-	       //friend in the way
-	       else if (tmp.isBlack == this.isBlack())
-		  done = true;
-
-	       //found a possible pin
-	       else
-	          pin = tmp;
-	    }
-	 }
-
-	 if (pin != null) {
-	    //need to AND moves with line
-	    List<Square> maintainPins = Arrays.asList(line); //includes this square
-	    pin.setPinned(this, maintainPins);
-	 }
+      if (Bitboard.isDiagonal(from, to) && (pin = findPin(king)) != null) {
+         //okay we have a pin
+	 //legal moves for the pinned piece are those which maintian the pin
+	 List<Square> maintainPins = 
+	    Arrays.asList(getLineOfSight(king, false)); //includes this square
+	 pin.setPinned(this, maintainPins);
       }
    }
 
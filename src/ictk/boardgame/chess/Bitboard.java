@@ -0,0 +1,255 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess;
+
+/* Bitboard ***************************************************************/
+/** Tables and helpers for the 64 bit occupancy masks that ChessBoard
+ *  keeps along side its matrix of Squares.  Bit 0 is a1, bit 7 is h1
+ *  and bit 63 is h8, so the index of a square is 
+ *  <code>(rank-1)*8 + (file-1)</code>.
+ *  <br>
+ *  Sliding attacks are found with the classical ray method: the nearest
+ *  blocker on each ray is located with a bit scan and every square
+ *  behind it is masked off.
+ */
+public final class Bitboard {
+      /** all the squares of the a-file */
+   public static final long FILE_A = 0x0101010101010101L,
+      /** all the squares of the h-file */
+                            FILE_H = FILE_A << 7,
+      /** all the squares of the first rank */
+                            RANK_1 = 0xFFL,
+      /** all the squares of the eighth rank */
+                            RANK_8 = RANK_1 << 56;
+
+      /** ray directions: N, NE, E, SE, S, SW, W, NW */
+   protected static final int NORTH = 0, NORTHEAST = 1, EAST = 2, 
+                              SOUTHEAST = 3, SOUTH = 4, SOUTHWEST = 5,
+			      WEST = 6, NORTHWEST = 7;
+
+   private static final int[] DIR_FILE = { 0, 1, 1, 1, 0,-1,-1,-1 },
+                              DIR_RANK = { 1, 1, 0,-1,-1,-1, 0, 1 };
+
+      /** squares reached from a square in each direction on an empty board */
+   private static final long[][] RAYS = new long[8][64];
+      /** attack tables for the leaping pieces */
+   private static final long[]   KNIGHT = new long[64],
+                                 KING   = new long[64];
+      /** pawn capture squares [0] for White and [1] for Black */
+   private static final long[][] PAWN   = new long[2][64];
+      /** squares strictly between two aligned squares */
+   private static final long[][] BETWEEN = new long[64][64],
+      /** the full line through two aligned squares */
+                                 LINE    = new long[64][64];
+
+   static {
+      int[][] knight = {{1,2},{2,1},{2,-1},{1,-2},
+                        {-1,-2},{-2,-1},{-2,1},{-1,2}};
+
+      for (int sq=0; sq < 64; sq++) {
+         int f = sq & 7, r = sq >>> 3;
+
+         for (int d=0; d < 8; d++) {
+	    for (int tf = f + DIR_FILE[d], tr = r + DIR_RANK[d];
+	         tf >= 0 && tf < 8 && tr >= 0 && tr < 8;
+		 tf += DIR_FILE[d], tr += DIR_RANK[d])
+	       RAYS[d][sq] |= 1L << (tr * 8 + tf);
+
+            KING[sq] |= step(f + DIR_FILE[d], r + DIR_RANK[d]);
+	    KNIGHT[sq] |= step(f + knight[d][0], r + knight[d][1]);
+	 }
+
+	 PAWN[0][sq] = step(f - 1, r + 1) | step(f + 1, r + 1);
+	 PAWN[1][sq] = step(f - 1, r - 1) | step(f + 1, r - 1);
+      }
+
+      for (int a=0; a < 64; a++) 
+         for (int d=0; d < 8; d++) {
+	    long ray = RAYS[d][a];
+	    int back = (d + 4) & 7;
+
+	    for (long b = ray; b != 0; b &= b - 1) {
+	       int sq = Long.numberOfTrailingZeros(b);
+	       BETWEEN[a][sq] = ray & RAYS[back][sq];
+	       LINE[a][sq] = ray | RAYS[back][a] | (1L << a);
+	    }
+	 }
+   }
+
+   private Bitboard () {}
+
+   /* step *****************************************************************/
+   /** the mask for 0-based file/rank coordinates or 0 if off the board */
+   private static long step (int f, int r) {
+      return (f >= 0 && f < 8 && r >= 0 && r < 8) ? 1L << (r * 8 + f) : 0L;
+   }
+
+   //coordinates/////////////////////////////////////////////////////////////
+
+   /* toIndex **************************************************************/
+   /** converts board coordinates to a square index.
+    * @param file 1-8
+    * @param rank 1-8
+    */
+   public static int toIndex (int file, int rank) {
+      return ((rank - 1) << 3) + file - 1;
+   }
+
+   /* getFile **************************************************************/
+   /** the file (1-8) of a square index */
+   public static int getFile (int index) {
+      return (index & 7) + 1;
+   }
+
+   /* getRank **************************************************************/
+   /** the rank (1-8) of a square index */
+   public static int getRank (int index) {
+      return (index >>> 3) + 1;
+   }
+
+   /* bit ******************************************************************/
+   /** the mask with only this square index set */
+   public static long bit (int index) {
+      return 1L << index;
+   }
+
+   /* first ****************************************************************/
+   /** the lowest square index set in the mask (64 if the mask is empty) */
+   public static int first (long mask) {
+      return Long.numberOfTrailingZeros(mask);
+   }
+
+   /* count ****************************************************************/
+   /** the number of squares set in the mask */
+   public static int count (long mask) {
+      return Long.bitCount(mask);
+   }
+
+   //attacks/////////////////////////////////////////////////////////////////
+
+   /* knightAttacks ********************************************************/
+   public static long knightAttacks (int index) {
+      return KNIGHT[index];
+   }
+
+   /* kingAttacks **********************************************************/
+   public static long kingAttacks (int index) {
+      return KING[index];
+   }
+
+   /* pawnAttacks **********************************************************/
+   /** the two (or one) capture squares of a pawn standing on the index */
+   public static long pawnAttacks (int index, boolean isBlack) {
+      return PAWN[isBlack ? 1 : 0][index];
+   }
+
+   /* rookAttacks **********************************************************/
+   /** squares a rook attacks given the occupancy of the board.  The
+    *  blocking pieces themselves are included. 
+    */
+   public static long rookAttacks (int index, long occupied) {
+      return ray(NORTH, index, occupied) | ray(EAST, index, occupied)
+           | ray(SOUTH, index, occupied) | ray(WEST, index, occupied);
+   }
+
+   /* bishopAttacks ********************************************************/
+   /** squares a bishop attacks given the occupancy of the board.  The
+    *  blocking pieces themselves are included. 
+    */
+   public static long bishopAttacks (int index, long occupied) {
+      return ray(NORTHEAST, index, occupied) | ray(SOUTHEAST, index, occupied)
+           | ray(SOUTHWEST, index, occupied) | ray(NORTHWEST, index, occupied);
+   }
+
+   /* queenAttacks *********************************************************/
+   public static long queenAttacks (int index, long occupied) {
+      return rookAttacks(index, occupied) | bishopAttacks(index, occupied);
+   }
+
+   /* ray ******************************************************************/
+   /** the ray in one direction cut off after the first blocker.
+    *  N, NE, E and NW run toward higher indices, the others toward lower.
+    */
+   protected static long ray (int dir, int index, long occupied) {
+      long attacks = RAYS[dir][index],
+           blockers = attacks & occupied;
+
+         if (blockers != 0) {
+	    int b = (dir <= EAST || dir == NORTHWEST)
+	          ? Long.numberOfTrailingZeros(blockers)
+		  : 63 - Long.numberOfLeadingZeros(blockers);
+	    attacks ^= RAYS[dir][b];
+	 }
+      return attacks;
+   }
+
+   //geometry////////////////////////////////////////////////////////////////
+
+   /* between **************************************************************/
+   /** squares strictly between two squares on the same rank, file or
+    *  diagonal.  0 if the squares are not aligned.
+    */
+   public static long between (int a, int b) {
+      return BETWEEN[a][b];
+   }
+
+   /* line *****************************************************************/
+   /** the whole rank, file or diagonal running through both squares.
+    *  0 if the squares are not aligned.
+    */
+   public static long line (int a, int b) {
+      return LINE[a][b];
+   }
+
+   /* isOrthogonal *********************************************************/
+   /** are the two (different) squares on the same rank or file */
+   public static boolean isOrthogonal (int a, int b) {
+      return a != b && ((a & 7) == (b & 7) || (a >>> 3) == (b >>> 3));
+   }
+
+   /* isDiagonal ***********************************************************/
+   /** are the two (different) squares on the same diagonal */
+   public static boolean isDiagonal (int a, int b) {
+      return a != b 
+          && Math.abs((a & 7) - (b & 7)) == Math.abs((a >>> 3) - (b >>> 3));
+   }
+
+   //Display/////////////////////////////////////////////////////////////////
+
+   /* toString *************************************************************/
+   /** an 8x8 diagram of the mask with the eighth rank on top. Used for 
+    *  diagnostics.
+    */
+   public static String toString (long mask) {
+      StringBuffer sb = new StringBuffer(72);
+
+         for (int r=7; r >= 0; r--) {
+	    for (int f=0; f < 8; f++)
+	       sb.append(((mask >>> (r * 8 + f)) & 1L) != 0 ? '1' : '.');
+	    sb.append('\n');
+	 }
+      return sb.toString();
+   }
+}
@@ -29,6 +29,7 @@ import ictk.boardgame.*;
 import ictk.boardgame.chess.io.SAN;
 import ictk.boardgame.chess.io.FEN;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.LinkedList;
@@ -65,10 +66,11 @@ public class ChessBoard implements Board {
    public static final byte MAX_FILE = 8;
       /** the max number of ranks on a traditional chess board*/
    public static final byte MAX_RANK = 8;
+      /** room enough for the legal moves of any chess position (218)
+       *  in the buffers passed to getLegalMoves(int[]) */
+   public static final int MAX_LEGAL_MOVES = 256;
       /** only really used to help display debugging output */
    protected static final SAN san = new SAN();
-      /** only used for hashCode */
-   protected static final FEN fen = new FEN();
 
       /** objects listening for updates to the board */
    protected BoardListener[] listeners;
@@ -106,6 +108,57 @@ public class ChessBoard implements Board {
          should be set stale everytime an verified move is done*/
    protected boolean staleLegalDests = true;
 
+      /** occupancy masks for each type of piece of both colors, indexed
+       *  by the piece INDEX (King.INDEX ... Pawn.INDEX).
+       *  These mirror the squares[][] matrix at all times.
+       *  @see Bitboard
+       */
+   protected long[]  pieceBits = new long[6];
+      /** occupancy mask of all the White pieces on the board */
+   protected long    whiteBits,
+      /** occupancy mask of all the Black pieces on the board */
+                     blackBits;
+
+      /** Zobrist key of the position, kept up to date by ChessMove
+       *  @see Zobrist */
+   protected long    zobristKey;
+      /** set when the board is set up by hand and zobristKey has to be
+       *  calculated from scratch */
+   protected boolean staleZobristKey = true;
+      /** the Zobrist keys of the positions since the board was set up,
+       *  the current one last.  ChessMove pushes and pops these. */
+   protected long[]  positionKeys = new long[64];
+      /** how many of positionKeys are in use */
+   protected int     positionKeyCount;
+
+      /** scratch buffer for getLegalMoves(short[]) */
+   protected int[]   packedMoves;
+
+      /** when set executing a move no longer generates the legal
+       *  destinations of every piece.  They are made when asked for.
+       *  @see #setLazyLegalDests(boolean) */
+   protected boolean lazyLegalDests;
+      /** when set unverified moves are played without checking them and
+       *  are left unverified.
+       *  @see #setTrustedMoves(boolean) */
+   protected boolean trustedMoves;
+      /** the legal moves of the side to move in lazy mode.  Two 
+       *  positions are kept since verifying a move looks at the 
+       *  position after it and then the one before it again. */
+   protected int[][] lazyMoves = new int[2][];
+      /** how many of lazyMoves are in use (-1 if none yet) */
+   protected int[]   lazyMoveCount = {-1, -1};
+      /** the Zobrist keys of the positions lazyMoves were made for */
+   protected long[]  lazyMovesKey = new long[2];
+      /** which of lazyMoves was used last */
+   protected int     lazySlot;
+
+      /** pieces taken off the board by recycle(), used again by the
+       *  add methods */
+   protected ChessPiece[] spares = new ChessPiece[32];
+      /** how many of spares are in use */
+   protected int     spareCount;
+
    /** calls ChessBoard(true)
     */
    public ChessBoard () {
@@ -272,7 +325,7 @@ public class ChessBoard implements Board {
 	 if (movingKing.isInCheck()) {
 	    if (lastMove != null)
 	       lastMove.setCheck(true);
-	    threats = getThreats(movingKing);
+	    threats = getPieces(getCheckers());
 
 	    if (Log.debug) {
 	       Log.debug(DEBUG, "THREATS TO MOVING KING! (" 
@@ -329,6 +382,118 @@ public class ChessBoard implements Board {
 
    }
 
+   /* genCheckStatus ****************************************************/
+   /** sets the check, double check, checkmate and stalemate flags of 
+    *  the move just played without generating the legal destinations of
+    *  every piece.  Check comes from the attacks on the King's square.
+    *  Mate and stalemate need only know whether any legal move is left,
+    *  which is answered from the packed move generator.  The moves it
+    *  finds are kept for isLegalDest() in the same position.
+    *  <br>
+    *  This is what executing a move does instead of genLegalDests() in
+    *  lazy mode.
+    */
+   protected void genCheckStatus (ChessMove move) {
+      long checkers = getCheckers();
+
+         if (checkers != 0L) {
+	    move.setCheck(true);
+	    if (Bitboard.count(checkers) > 1)
+	       move.setDoubleCheck(true);
+	 }
+
+	 if (genLazyMoves() == 0)
+	    if (checkers != 0L)
+	       move.setCheckmate(true);
+	    else
+	       move.setStalemate(true);
+   }
+
+   /* genLazyMoves ******************************************************/
+   /** fills lazyMoves[lazySlot] with the legal moves of the side to move
+    *  unless they are already there for this position.
+    *  @return the number of legal moves
+    */
+   protected int genLazyMoves () {
+      long key = getZobristKey();
+
+         for (int i=0; i < lazyMoves.length; i++)
+	    if (lazyMoveCount[i] >= 0 && lazyMovesKey[i] == key) {
+	       lazySlot = i;
+	       return lazyMoveCount[i];
+	    }
+
+	 //replace the one not used last
+	 lazySlot = 1 - lazySlot;
+         if (lazyMoves[lazySlot] == null)
+	    lazyMoves[lazySlot] = new int[MAX_LEGAL_MOVES];
+	 lazyMoveCount[lazySlot] = genPackedMoves(lazyMoves[lazySlot]);
+	 lazyMovesKey[lazySlot] = key;
+
+      return lazyMoveCount[lazySlot];
+   }
+
+   /* isLazyLegalDest ***************************************************/
+   /** is the destination legal for a piece of the side to move?  This is
+    *  how ChessPiece.isLegalDest() answers in lazy mode without
+    *  generating the legal destinations of every piece.
+    */
+   protected boolean isLazyLegalDest (ChessPiece p, Square dest) {
+      int   count = genLazyMoves(),
+            move  = ChessMove.pack(p.orig.getBitIndex(), 
+	                           dest.getBitIndex(), 0);
+      int[] moves = lazyMoves[lazySlot];
+
+         for (int i=0; i < count; i++)
+	    if ((moves[i] & 0xFFF) == move)
+	       return true;
+
+      return false;
+   }
+
+   /* setLazyLegalDests *************************************************/
+   /** in lazy mode executing a move does not generate the legal
+    *  destinations of every piece on the board.  Check, checkmate and
+    *  stalemate are found with a targeted attack test, and 
+    *  isLegalDest() (and so getOrigin() and SAN) is answered for the
+    *  side to move from the packed move generator.  Anything that wants
+    *  whole lists of destinations, such as getLegalMoves() or 
+    *  getThreats(), still has them generated on demand.
+    *  <br>
+    *  This makes replaying games, as PGNReader does, much cheaper.  The
+    *  default is off.
+    */
+   public void setLazyLegalDests (boolean t) {
+      lazyLegalDests = t;
+   }
+
+   /* isLazyLegalDests **************************************************/
+   /** @see #setLazyLegalDests(boolean) */
+   public boolean isLazyLegalDests () {
+      return lazyLegalDests;
+   }
+
+   /* setTrustedMoves ***************************************************/
+   /** in trusted mode a move that has not been verified is played without
+    *  asking if it is legal, and without working out check, checkmate,
+    *  stalemate or how unique it is.  The move stays unverified, so its
+    *  accessors that need those answers throw UnverifiedMoveException
+    *  until it has been verified (see ChessGame.verify()).
+    *  <br>
+    *  This is meant for reading databases of games that are known to be
+    *  good.  A move that is really illegal will leave the board in a 
+    *  state that can't be trusted.  The default is off.
+    */
+   public void setTrustedMoves (boolean t) {
+      trustedMoves = t;
+   }
+
+   /* isTrustedMoves ****************************************************/
+   /** @see #setTrustedMoves(boolean) */
+   public boolean isTrustedMoves () {
+      return trustedMoves;
+   }
+
    /* verifyIsLegalMove ***********************************************************/
    /** Checks to see if the move is legal on the current board.  This will not
     *  affect the History of this game in any way.
@@ -337,14 +502,16 @@ public class ChessBoard implements Board {
    public void verifyIsLegalMove(Move m) throws OutOfTurnException, IllegalMoveException {
       if (m == null)
          throw new IllegalArgumentException("Passing null move.");
-      String before = m.getBoard().toString();
+      ChessBoard board = (ChessBoard) m.getBoard();
+      long before = board.getZobristKey();
       ((ChessMove) m).execute();
-      String afterExecute = m.getBoard().toString();
       ((ChessMove) m).unexecute();
-      String afterUnexecute = m.getBoard().toString();
-      if (!before.equals(afterUnexecute)) {
-         throw new RuntimeException("Unexecute didn't work as expected.\nMove: " + m + "\nBefore:\n" + before
-               + "\nAfter execute:\n" + afterExecute + "\nAfter un-execute:\n" + afterUnexecute);
+      // unexecute() hands back the old key, so work it out from the
+      // pieces to see that they really went back (much cheaper than
+      // comparing the boards as strings)
+      if (Zobrist.getKey(board) != before) {
+         throw new RuntimeException("Unexecute didn't work as expected.\nMove: " + m
+               + "\nAfter un-execute:\n" + board);
       }
    }
 
@@ -524,6 +691,219 @@ public class ChessBoard implements Board {
    }
 
 
+   //Bitboards//////////////////////////////////////////////////////////////
+
+   /* toggleBits ***********************************************************/
+   /** flips the bit of the square in the masks for the piece's type and
+    *  color, and the piece's number in the Zobrist key.  A move calls 
+    *  this once as a piece leaves a square and once as it arrives, so 
+    *  undoing the move is the very same set of toggles.
+    */
+   void toggleBits (ChessPiece p, Square sq) {
+      int  i = sq.getBitIndex();
+      long b = 1L << i;
+
+         zobristKey ^= Zobrist.piece(p.index, p.isBlack, i);
+         pieceBits[p.index] ^= b;
+         if (p.isBlack) blackBits ^= b;
+         else           whiteBits ^= b;
+   }
+
+   /* updateBits ***********************************************************/
+   /** recalculates the masks for a single square from its current
+    *  occupant.  This is used while setting up a position.
+    */
+   protected void updateBits (Square sq) {
+      long clear = ~(1L << sq.getBitIndex());
+
+         for (int i=0; i < pieceBits.length; i++)
+            pieceBits[i] &= clear;
+         whiteBits &= clear;
+         blackBits &= clear;
+
+         if (sq.piece != null)
+            toggleBits(sq.piece, sq);
+         staleZobristKey = true;
+   }
+
+   /* getPieceBits *********************************************************/
+   /** returns the occupancy mask of one type of piece.
+    *
+    * @param index   the type of piece without the BLACK_OFFSET, 
+    *                e.g. Knight.INDEX
+    * @param isBlack the color of the pieces
+    */
+   public long getPieceBits (int index, boolean isBlack) {
+      return pieceBits[index] & ((isBlack) ? blackBits : whiteBits);
+   }
+
+   /* getTeamBits **********************************************************/
+   /** returns the occupancy mask of all the pieces of one color.
+    */
+   public long getTeamBits (boolean isBlack) {
+      return (isBlack) ? blackBits : whiteBits;
+   }
+
+   /* getOccupiedBits ******************************************************/
+   /** returns the occupancy mask of all the pieces on the board.
+    */
+   public long getOccupiedBits () {
+      return whiteBits | blackBits;
+   }
+
+   /* getAttackers *********************************************************/
+   /** returns the mask of the pieces of one color that attack a square.
+    *  This is pure geometry: pins are not considered, and pawns attack
+    *  the squares diagonally in front of them whether they are occupied 
+    *  or not.
+    *
+    * @param index    the square being attacked (see Square.getBitIndex())
+    * @param isBlack  the color of the attackers
+    * @param occupied the squares that block sliding pieces.  Normally this
+    *                 is getOccupiedBits(), but a piece may be taken out
+    *                 to look through it.
+    */
+   public long getAttackers (int index, boolean isBlack, long occupied) {
+      long queens = pieceBits[Queen.INDEX];
+
+      return ((isBlack) ? blackBits : whiteBits) 
+         & ((Bitboard.pawnAttacks(index, !isBlack) & pieceBits[Pawn.INDEX])
+	  | (Bitboard.knightAttacks(index) & pieceBits[Knight.INDEX])
+	  | (Bitboard.kingAttacks(index) & pieceBits[King.INDEX])
+	  | (Bitboard.rookAttacks(index, occupied) 
+	     & (pieceBits[Rook.INDEX] | queens))
+	  | (Bitboard.bishopAttacks(index, occupied) 
+	     & (pieceBits[Bishop.INDEX] | queens)));
+   }
+
+   /* isAttacked ***********************************************************/
+   /** is the square attacked by any piece of this color.
+    *  @see #getAttackers(int, boolean, long)
+    */
+   public boolean isAttacked (int index, boolean isBlack) {
+      return getAttackers(index, isBlack, whiteBits | blackBits) != 0L;
+   }
+
+   /* getCheckers **********************************************************/
+   /** returns the mask of the pieces giving check to the King of the
+    *  side to move.  This does not require the legal moves to be 
+    *  generated.
+    */
+   public long getCheckers () {
+      King king = (isBlackMove) ? blackKing : whiteKing;
+
+      return getAttackers(king.orig.getBitIndex(), !isBlackMove, 
+                          whiteBits | blackBits);
+   }
+
+   /* getPinnedBits ********************************************************/
+   /** returns the mask of the pieces of this color that are pinned to
+    *  their own King by an enemy Rook, Bishop or Queen.
+    */
+   public long getPinnedBits (boolean isBlack) {
+      King king = (isBlack) ? blackKing : whiteKing;
+      int  k = king.orig.getBitIndex();
+      long occupied = whiteBits | blackBits,
+           queens   = pieceBits[Queen.INDEX],
+	   pinned   = 0L,
+	   snipers, blockers;
+
+         snipers = ((isBlack) ? whiteBits : blackBits)
+	    & ((Bitboard.rookAttacks(k, 0L) 
+	        & (pieceBits[Rook.INDEX] | queens))
+	     | (Bitboard.bishopAttacks(k, 0L) 
+	        & (pieceBits[Bishop.INDEX] | queens)));
+
+         for (; snipers != 0L; snipers &= snipers - 1) {
+	    blockers = Bitboard.between(k, Bitboard.first(snipers)) & occupied;
+	    if (blockers != 0L && (blockers & (blockers - 1)) == 0L)
+	       pinned |= blockers;
+	 }
+
+      return pinned & ((isBlack) ? blackBits : whiteBits);
+   }
+
+   /* getPieces ************************************************************/
+   /** returns the pieces standing on the squares of the mask in order of
+    *  their square index.
+    */
+   public ChessPiece[] getPieces (long mask) {
+      ChessPiece[] pieces = new ChessPiece[Bitboard.count(mask)];
+
+         for (int i=0; mask != 0L; mask &= mask - 1)
+	    pieces[i++] = getSquareByIndex(Bitboard.first(mask)).piece;
+
+      return pieces;
+   }
+
+   /* getZobristKey ********************************************************/
+   /** returns the 64 bit Zobrist key of the position: the pieces, the side
+    *  to move, the castling rights and a usable en passant file.  Equal
+    *  positions have equal keys, and ChessMove updates the key as moves 
+    *  are executed and unexecuted, so this is cheap.
+    *  @see Zobrist
+    */
+   public long getZobristKey () {
+      if (staleZobristKey) {
+         zobristKey = Zobrist.getKey(this);
+	 staleZobristKey = false;
+	 //the board was set up by hand so the earlier positions are gone
+	 positionKeyCount = 0;
+      }
+      return zobristKey;
+   }
+
+   /* pushPositionKey ******************************************************/
+   /** records the key of a position reached on the board.
+    */
+   void pushPositionKey (long key) {
+      if (positionKeyCount == positionKeys.length) {
+         long[] tmp = new long[positionKeys.length * 2];
+	 System.arraycopy(positionKeys, 0, tmp, 0, positionKeyCount);
+	 positionKeys = tmp;
+      }
+      positionKeys[positionKeyCount++] = key;
+   }
+
+   /* popPositionKey *******************************************************/
+   /** forgets the key of the last position reached on the board.
+    */
+   void popPositionKey () {
+      if (positionKeyCount > 0)
+         positionKeyCount--;
+   }
+
+   /* countRepetitions *****************************************************/
+   /** counts how many times the last recorded position has occurred,
+    *  itself included.  Only positions with the same side to move and 
+    *  since the last capture or pawn move can be the same, so at most
+    *  50 keys are looked at.
+    */
+   protected int countRepetitions () {
+      int  count = 1,
+           last = positionKeyCount - 1,
+	   stop;
+      long key;
+
+         if (last < 4)
+	    return count;
+
+         key = positionKeys[last];
+	 stop = last - Math.min(plyCount50, last);
+	 for (int i = last - 4; i >= stop; i -= 2)
+	    if (positionKeys[i] == key)
+	       count++;
+
+      return count;
+   }
+
+   /* getSquareByIndex *****************************************************/
+   /** returns the Square for a bitboard index (a1=0, h8=63).
+    */
+   public Square getSquareByIndex (int index) {
+      return squares[index & 7][index >>> 3];
+   }
+
    //Legal Move Utilities///////////////////////////////////////////////////
 
    /* getLegalMoveCount *****************************************************/
@@ -552,6 +932,7 @@ public class ChessBoard implements Board {
       ChessPiece piece = null;
       Square orig = null;
       Square dest = null;
+      ChessMove move = null;
 
 	 if (staleLegalDests)
 	    genLegalDests();
@@ -562,11 +943,29 @@ public class ChessBoard implements Board {
 	    orig = piece.orig;
 	    for (int j=0; j < dests.size(); j++) {
 	       dest = dests.get(j);
-	       //dest.piece set for promotion when it is really
-	       //ane expected casualty.  but this allows for the
-	       //communication of a possible caputure. (a hack)
-	       //FIXME: check to see if the above really works as intended
-	       list.add(new ChessMove(orig, dest, dest.piece, this));  
+	       //one move for each piece a pawn can promote to
+	       if (piece.isPawn() 
+	           && Pawn.isPromotionSquare(dest, piece.isBlack)) {
+	          list.add(new ChessMove(orig, dest, new Queen(), this));
+	          list.add(new ChessMove(orig, dest, new Rook(), this));
+	          list.add(new ChessMove(orig, dest, new Bishop(), this));
+	          list.add(new ChessMove(orig, dest, new Knight(), this));
+	       }
+	       else {
+	          move = new ChessMove(orig, dest, null, this);
+		  //castles end on the castle squares, which in Chess960 may
+		  //be one file away from the King or where it stands
+		  if (piece.isKing() && isCastle((King) piece, dest, true))
+		     move.castleQueenside = true;
+		  else if (piece.isKing() && isCastle((King) piece, dest, false))
+		     move.castleKingside = true;
+	          list.add(move);
+		  //the dest is listed once, but a step there is another move
+		  if ((move.castleKingside || move.castleQueenside)
+		      && Math.abs(dest.file - orig.file) == 1
+		      && !dest.isOccupied())
+		     list.add(new ChessMove(orig, dest, null, this));
+	       }
 	    }
 	 }
       
@@ -574,6 +973,320 @@ public class ChessBoard implements Board {
       
    }
 
+   /* isCastle **************************************************************/
+   /** is the King's move to dest a castle to that side.
+    */
+   private boolean isCastle (King king, Square dest, boolean queenside) {
+      return dest.equals((queenside) ? king.getQueensideCastleSquare()
+                                     : king.getKingsideCastleSquare())
+             && king.isCastlingAllowed(queenside);
+   }
+
+   /* getLegalMoves *********************************************************/
+   /** fills the buffer with the legal moves on the current board packed
+    *  as described in ChessMove.pack().  No objects are created and the
+    *  legalDests of the pieces are neither used nor updated.
+    *
+    * @param moves buffer with room for the moves; MAX_LEGAL_MOVES is
+    *              always enough.
+    * @return the number of moves written to the buffer
+    */
+   public int getLegalMoves (int[] moves) {
+      return genPackedMoves(moves);
+   }
+
+   /* getLegalMoves *********************************************************/
+   /** same as getLegalMoves(int[]) but for a buffer of shorts.  Read the
+    *  moves back with <code>moves[i] &amp; 0xFFFF</code>.
+    */
+   public int getLegalMoves (short[] moves) {
+      int count;
+
+         if (packedMoves == null)
+	    packedMoves = new int[MAX_LEGAL_MOVES];
+	 count = genPackedMoves(packedMoves);
+
+	 for (int i=0; i < count; i++)
+	    moves[i] = (short) packedMoves[i];
+
+      return count;
+   }
+
+   /* genPackedMoves ********************************************************/
+   /** generates the legal moves for the side to move straight from the
+    *  bitboards.
+    *  Steps:<br>
+    *     King moves to squares not attacked with the King taken off
+    *        the board<br>
+    *     if double check we are done<br>
+    *     if check the other pieces may only capture the checker or
+    *        block the line of the check<br>
+    *     pinned pieces may only move along the line to their King<br>
+    *     en passant is tried on the board after the capture since it
+    *        removes two pieces from the same rank<br>
+    *     castling if not in check<br>
+    */
+   protected int genPackedMoves (int[] moves) {
+      boolean us = isBlackMove;
+      King    king = (us) ? blackKing : whiteKing;
+      int     k = king.orig.getBitIndex(),
+              count = 0,
+	      forward = (us) ? -8 : 8,
+	      from, to;
+      long    own   = (us) ? blackBits : whiteBits,
+              enemy = (us) ? whiteBits : blackBits,
+	      occupied = own | enemy,
+	      pawns  = pieceBits[Pawn.INDEX],
+	      queens = pieceBits[Queen.INDEX],
+	      lastRank  = (us) ? Bitboard.RANK_1 : Bitboard.RANK_8,
+	      startRank = (us) ? Bitboard.RANK_8 >>> 8 : Bitboard.RANK_1 << 8,
+	      checkers, pinned, targets, dests, b, bit;
+
+         //King
+	 checkers = getAttackers(k, !us, occupied);
+	 for (dests = Bitboard.kingAttacks(k) & ~own; 
+	      dests != 0L; dests &= dests - 1) {
+	    to = Bitboard.first(dests);
+	    if (getAttackers(to, !us, occupied ^ Bitboard.bit(k)) == 0L)
+	       moves[count++] = ChessMove.pack(k, to, 0);
+	 }
+
+	 //double check: only the King can move
+	 if (Bitboard.count(checkers) > 1)
+	    return count;
+
+	 targets = ~own;
+	 if (checkers != 0L)
+	    targets &= checkers | Bitboard.between(k, Bitboard.first(checkers));
+	 pinned = getPinnedBits(us);
+
+	 //Knights, Bishops, Rooks and Queens
+	 for (b = own & ~pieceBits[King.INDEX] & ~pawns; b != 0L; b &= b - 1) {
+	    from = Bitboard.first(b);
+	    bit  = Bitboard.bit(from);
+
+	    if ((pieceBits[Knight.INDEX] & bit) != 0L) 
+	       dests = Bitboard.knightAttacks(from);
+	    else {
+	       dests = 0L;
+	       if (((pieceBits[Bishop.INDEX] | queens) & bit) != 0L)
+	          dests |= Bitboard.bishopAttacks(from, occupied);
+	       if (((pieceBits[Rook.INDEX] | queens) & bit) != 0L)
+	          dests |= Bitboard.rookAttacks(from, occupied);
+	    }
+
+	    dests &= targets;
+	    if ((pinned & bit) != 0L)
+	       dests &= Bitboard.line(k, from);
+
+	    for (; dests != 0L; dests &= dests - 1)
+	       moves[count++] = ChessMove.pack(from, Bitboard.first(dests), 0);
+	 }
+
+	 //Pawns
+	 for (b = own & pawns; b != 0L; b &= b - 1) {
+	    from = Bitboard.first(b);
+	    bit  = Bitboard.bit(from);
+	    to   = from + forward;
+	    dests = Bitboard.pawnAttacks(from, us) & enemy;
+
+	    if ((occupied & Bitboard.bit(to)) == 0L) {
+	       dests |= Bitboard.bit(to);
+	       if ((startRank & bit) != 0L 
+	           && (occupied & Bitboard.bit(to + forward)) == 0L)
+	          dests |= Bitboard.bit(to + forward);
+	    }
+
+	    dests &= targets;
+	    if ((pinned & bit) != 0L)
+	       dests &= Bitboard.line(k, from);
+
+	    for (; dests != 0L; dests &= dests - 1) {
+	       to = Bitboard.first(dests);
+	       if ((lastRank & Bitboard.bit(to)) != 0L) {
+	          moves[count++] = ChessMove.pack(from, to, Queen.INDEX);
+	          moves[count++] = ChessMove.pack(from, to, Rook.INDEX);
+	          moves[count++] = ChessMove.pack(from, to, Bishop.INDEX);
+	          moves[count++] = ChessMove.pack(from, to, Knight.INDEX);
+	       }
+	       else
+	          moves[count++] = ChessMove.pack(from, to, 0);
+	    }
+	 }
+
+	 //en passant
+	 if (enpassantFile != NO_ENPASSANT) {
+	    int  victim;
+	    long after;
+
+	    to     = Bitboard.toIndex(enpassantFile, (us) ? 3 : 6);
+	    victim = to - forward;
+
+	    if ((enemy & pawns & Bitboard.bit(victim)) != 0L
+	        && (occupied & Bitboard.bit(to)) == 0L) {
+	       for (b = Bitboard.pawnAttacks(to, !us) & own & pawns;
+	            b != 0L; b &= b - 1) {
+	          from  = Bitboard.first(b);
+		  after = occupied ^ Bitboard.bit(from) ^ Bitboard.bit(victim)
+		        ^ Bitboard.bit(to);
+		  if ((getAttackers(k, !us, after) & ~Bitboard.bit(victim)) 
+		      == 0L)
+		     moves[count++] = ChessMove.pack(from, to, 0);
+	       }
+	    }
+	 }
+
+	 //castling
+	 if (checkers == 0L) {
+	    if (king.isCastlingAllowed(true))
+	       moves[count++] = ChessMove.pack(k, 
+	          king.getQueensideCastleSquare().getBitIndex(), 0)
+		  | ChessMove.PACKED_CASTLE;
+	    if (king.isCastlingAllowed(false))
+	       moves[count++] = ChessMove.pack(k, 
+	          king.getKingsideCastleSquare().getBitIndex(), 0)
+		  | ChessMove.PACKED_CASTLE;
+	 }
+
+      return count;
+   }
+
+   /* getOrigins ************************************************************/
+   /** returns the mask of the squares from which a piece of the side to 
+    *  move of the given type can legally move to dest.  This works 
+    *  backward from the destination: the candidates are the pieces the
+    *  destination attacks as if it held a piece of that type (or the 
+    *  squares behind it for pawn pushes), which are then checked for
+    *  pins, check and en passant exposing the King.  Castling is not 
+    *  included.
+    *
+    * @param index Pawn.INDEX, Knight.INDEX etc.
+    * @param dest  the square index (see Square.getBitIndex())
+    */
+   public long getOrigins (int index, int dest) {
+      boolean us = isBlackMove,
+              enpassant = false;
+      King    king = (us) ? blackKing : whiteKing;
+      int     k = king.orig.getBitIndex(),
+              forward = (us) ? -8 : 8,
+	      behind;
+      long    own   = (us) ? blackBits : whiteBits,
+              enemy = (us) ? whiteBits : blackBits,
+	      occupied = own | enemy,
+	      bit = Bitboard.bit(dest),
+	      candidates, checkers, pinned, b;
+
+         if ((own & bit) != 0L)
+	    return 0L;
+
+         switch (index) {
+	    case Knight.INDEX:
+	       candidates = Bitboard.knightAttacks(dest);
+	       break;
+	    case Bishop.INDEX:
+	       candidates = Bitboard.bishopAttacks(dest, occupied);
+	       break;
+	    case Rook.INDEX:
+	       candidates = Bitboard.rookAttacks(dest, occupied);
+	       break;
+	    case Queen.INDEX:
+	       candidates = Bitboard.queenAttacks(dest, occupied);
+	       break;
+	    case King.INDEX:
+	       candidates = Bitboard.kingAttacks(dest);
+	       break;
+	    case Pawn.INDEX:
+	       if ((enemy & bit) != 0L)
+	          candidates = Bitboard.pawnAttacks(dest, !us);
+	       else if (enpassantFile != NO_ENPASSANT 
+	                && dest == Bitboard.toIndex(enpassantFile, 
+			                            (us) ? 3 : 6)) {
+	          candidates = Bitboard.pawnAttacks(dest, !us);
+		  enpassant = true;
+	       }
+	       else {
+	          behind = dest - forward;
+		  if (behind < 0 || behind > 63)
+		     return 0L;
+		  candidates = Bitboard.bit(behind);
+		  //double step from the second rank
+		  if ((occupied & candidates) == 0L
+		      && Bitboard.getRank(dest) == ((us) ? 5 : 4))
+		     candidates = Bitboard.bit(behind - forward);
+	       }
+	       break;
+	    default:
+	       return 0L;
+	 }
+
+	 candidates &= own & pieceBits[index];
+	 if (candidates == 0L)
+	    return 0L;
+
+	 //the King may not walk into an attack
+	 if (index == King.INDEX)
+	    return (getAttackers(dest, !us, occupied ^ Bitboard.bit(k)) == 0L)
+	       ? candidates : 0L;
+
+	 //en passant takes two pieces off one rank, so try it on the board
+	 if (enpassant) {
+	    int  victim = dest - forward;
+	    long after;
+
+	    for (b = candidates; b != 0L; b &= b - 1) {
+	       after = occupied ^ (b & -b) ^ Bitboard.bit(victim) ^ bit;
+	       if ((getAttackers(k, !us, after) & ~Bitboard.bit(victim)) 
+	           != 0L)
+	          candidates &= ~(b & -b);
+	    }
+	    return candidates;
+	 }
+
+	 //in check the move must take the checker or block the line
+	 checkers = getAttackers(k, !us, occupied);
+	 if (checkers != 0L) {
+	    if ((checkers & (checkers - 1)) != 0L)
+	       return 0L;
+	    if (((checkers | Bitboard.between(k, Bitboard.first(checkers)))
+	         & bit) == 0L)
+	       return 0L;
+	 }
+
+	 //pinned pieces stay on the line to their King
+	 for (pinned = getPinnedBits(us) & candidates; 
+	      pinned != 0L; pinned &= pinned - 1)
+	    if ((Bitboard.line(k, Bitboard.first(pinned)) & bit) == 0L)
+	       candidates &= ~(pinned & -pinned);
+
+      return candidates;
+   }
+
+   /* toChessMove ***********************************************************/
+   /** creates a ChessMove for a packed move on this board.  The move is
+    *  not verified until it is executed.
+    *
+    * @param packed a move from getLegalMoves(int[]) or ChessMove.pack()
+    */
+   public ChessMove toChessMove (int packed) {
+      ChessMove move;
+      int promo = ChessMove.getPackedPromotion(packed);
+      Square dest = getSquareByIndex(ChessMove.getPackedDestination(packed));
+
+         move = new ChessMove(getSquareByIndex(ChessMove.getPackedOrigin(packed)),
+	                      dest,
+			      (promo > 0) ? ChessPiece.toChessPiece(promo) : null,
+			      this);
+
+	 if (ChessMove.isPackedCastle(packed)) {
+	    if (dest.file < 5) 
+	       move.castleQueenside = true;
+	    else
+	       move.castleKingside = true;
+	 }
+
+      return move;
+   }
+
    /* isDestUniqueForClass ************************************************/
    /** determines how unique this move is for the Type of piece it is.
     *  this is used for Algebraic notation short-form.  If there is only
@@ -584,7 +1297,6 @@ public class ChessBoard implements Board {
    protected boolean[] isDestUniqueForClass (Square dest, ChessPiece p) {
       boolean[] unique = {true, true}; //file, rank
       List<ChessPiece> movingTeam = (isBlackMove) ? blackTeam : whiteTeam;
-      List<Square> dests = null;
       ChessPiece   piece = null;
 
       if (p.isKing()) return unique;
@@ -595,9 +1307,7 @@ public class ChessBoard implements Board {
 	 if (piece != p 
 	     && !piece.isCaptured() 
 	     && piece.getIndex() == p.getIndex()) {
-	    dests = piece.getLegalDests();
-
-	    if (dests.contains(dest)) {
+	    if (piece.isLegalDest(dest)) {
 	       if (p.orig.file == piece.orig.file)
 	          unique[0] = false;  //file is not unique
 	       if (p.orig.rank == piece.orig.rank) 
@@ -710,6 +1420,8 @@ public class ChessBoard implements Board {
       promo.orig.piece = promo;
       promo.board = this;
       promo.isBlack = pawn.isBlack;
+      toggleBits(pawn, promo.orig);
+      toggleBits(promo, promo.orig);
 
       if (pawn.isBlack) {
 	 blackTeam.set(blackTeam.indexOf(pawn), promo);
@@ -911,6 +1623,7 @@ public class ChessBoard implements Board {
          throw new IllegalStateException(
 	    "can't set the move color for a game in progress.");
       isBlackMove = t;
+      staleZobristKey = true;
    }
 
    /* isBlackMove ***********************************************************/
@@ -1013,6 +1726,10 @@ public class ChessBoard implements Board {
       for (byte r=0; r < MAX_RANK; r++)
          for (byte f=0; f < MAX_FILE; f++)
 	    squares[f][r].piece = null;
+      for (int i=0; i < pieceBits.length; i++)
+         pieceBits[i] = 0L;
+      whiteBits = blackBits = 0L;
+      staleZobristKey = true;
       blackTeam.clear();
       whiteTeam.clear();
       blackKing = null;
@@ -1041,8 +1758,6 @@ public class ChessBoard implements Board {
          throw new IllegalStateException(
 	    "can't set the board position for a game in progress.");
 
-      boolean wking = false, bking = false;
-
       if (matrix.length != MAX_RANK || matrix[0].length != MAX_FILE)
          throw new IllegalArgumentException (
 	    "setPosition() takes a matrix the same dimensions as the board."
@@ -1067,35 +1782,33 @@ public class ChessBoard implements Board {
 	       case 'R': addRook(file+1, rank+1, false); break;
 	       case 'q': addQueen(file+1, rank+1, true); break;
 	       case 'Q': addQueen(file+1, rank+1, false); break;
-	       case 'k': addKing(file+1, rank+1, true); 
-	          bking = true;
-	          break;
-	       case 'K': addKing(file+1, rank+1, false); 
-	          wking = true;
-	          break;
+	       case 'k': addKing(file+1, rank+1, true); break;
+	       case 'K': addKing(file+1, rank+1, false); break;
 	       default:
 	    }
 	 }
       }
 
-      //try to figure out castling rules for default positions
-      /*
-      if (Log.debug(DEBUG)) {
-         Log.debug(DEBUG, "setting this position");
-	 for (byte file=0; file < matrix.length; file++) 
-	    for (byte rank=0; rank < matrix[file].length; rank++) 
-	       Log.debug2(DEBUG, "[" + file + "][" + rank + "] = '"
-	         + matrix[file][rank] + "'");
-      }
-      */
-      if (wking)
-	 if (matrix[4][0] == 'K') {
-	    if (matrix[0][0] != 'R') {
+      guessCastling();
+      staleZobristKey = true;
+   }
+
+   /* guessCastling ********************************************************/
+   /** works out the castling rights from where the kings and rooks stand:
+    *  a king off its home square can't castle, nor can it castle to the
+    *  side of a missing rook.
+    */
+   protected void guessCastling () {
+      ChessPiece p = null;
+
+      if (whiteKing != null)
+	 if (squares[4][0].piece == whiteKing) {
+	    if (!((p = squares[0][0].piece) instanceof Rook && !p.isBlack)) {
 	       if (Log.debug)
 	          Log.debug(DEBUG, "setting white q-side castle: false");
 	       setWhiteCastleableQueenside(false);
 	    }
-	    if (matrix[7][0] != 'R') {
+	    if (!((p = squares[7][0].piece) instanceof Rook && !p.isBlack)) {
 	       if (Log.debug)
 	          Log.debug(DEBUG, "setting white k-side castle: false");
 	       setWhiteCastleableKingside(false);
@@ -1107,14 +1820,14 @@ public class ChessBoard implements Board {
 	    whiteKing.moveCount = 1;
 	 }
 
-      if (bking)
-	 if (matrix[4][7] == 'k') {
-	    if (matrix[0][7] != 'r') {
+      if (blackKing != null)
+	 if (squares[4][7].piece == blackKing) {
+	    if (!((p = squares[0][7].piece) instanceof Rook && p.isBlack)) {
 	       if (Log.debug)
 	          Log.debug(DEBUG, "setting black q-side castle: false");
 	       setBlackCastleableQueenside(false);
 	    }
-	    if (matrix[7][7] != 'r') {
+	    if (!((p = squares[7][7].piece) instanceof Rook && p.isBlack)) {
 	       if (Log.debug)
 	          Log.debug(DEBUG, "setting black k-side castle: false");
 	       setBlackCastleableKingside(false);
@@ -1127,6 +1840,87 @@ public class ChessBoard implements Board {
 	 }
    }
 
+   /* setCastleable ********************************************************/
+   /** sets the castling rights of a position set up with the add methods,
+    *  as they are given in FEN.  Where the kings and rooks stand is
+    *  taken into account first, as setPosition() does.
+    */
+   public void setCastleable (boolean wk, boolean wq, boolean bk, boolean bq) {
+      guessCastling();
+      if (whiteKing != null) {
+         setWhiteCastleableKingside(wk);
+         setWhiteCastleableQueenside(wq);
+      }
+      if (blackKing != null) {
+         setBlackCastleableKingside(bk);
+         setBlackCastleableQueenside(bq);
+      }
+      staleZobristKey = true;
+   }
+
+   /* recycle **************************************************************/
+   /** clears the board for a new position, keeping its pieces so that the
+    *  add methods can use them again instead of making new ones.  This
+    *  lets one board be set up over and over (as FEN.parse() does) 
+    *  without creating garbage.
+    *  <br>
+    *  Unlike setPositionClear() this may be used on a board with moves
+    *  played on it.  Those moves, and any History made with the board,
+    *  can't be used afterwards since their pieces are reused.
+    */
+   public void recycle () {
+      List<ChessPiece> team = null;
+
+         for (int t=0; t < 2; t++) {
+	    team = (t == 0) ? whiteTeam : blackTeam;
+	    if (spareCount + team.size() > spares.length)
+	       spares = Arrays.copyOf(spares, 
+	                   Math.max(spares.length * 2, spareCount + team.size()));
+	    for (int i=0; i < team.size(); i++)
+	       spares[spareCount++] = team.get(i);
+	 }
+
+	 lastMove         = null;
+	 staleLegalDests  = true;
+	 lazyMoveCount[0] = lazyMoveCount[1] = -1;
+	 setPositionClear();
+   }
+
+   /* reset ****************************************************************/
+   /** sets the board back to the default chess position, reusing its
+    *  pieces, so that one board can be used for game after game.  
+    *  The board keeps its settings (such as trusted moves).
+    *  <br>
+    *  As with recycle(), moves played on the board before can't be used
+    *  afterwards.
+    *  @see #recycle()
+    */
+   public void reset () {
+      recycle();
+      isBlackMove = false;
+      setPosition(DEFAULT_POSITION);
+      isInitialPositionDefault = true;
+   }
+
+   /* reuse ****************************************************************/
+   /** takes a spare piece of the kind asked for, if there is one.
+    *  @see #recycle()
+    */
+   protected ChessPiece reuse (byte index, boolean isBlack, Square sq) {
+      ChessPiece p = null;
+
+         for (int i=spareCount - 1; i >= 0; i--)
+	    if (spares[i].index == index) {
+	       p = spares[i];
+	       spares[i] = spares[--spareCount];
+	       spares[spareCount] = null;
+	       p.reset(isBlack, sq);
+	       return p;
+	    }
+
+      return null;
+   }
+
    /* addPawn **************************************************************/
    /** adds a Pawn to a Square on the board and to the team of pieces
     *  of the correct color.
@@ -1140,7 +1934,10 @@ public class ChessBoard implements Board {
    public void addPawn (int file, int rank, boolean isBlack) {
       ChessPiece p;
       Square orig = getSquare(file, rank);
-         orig.setOccupant(p = new Pawn (isBlack, orig, this)); 
+         if ((p = reuse(Pawn.INDEX, isBlack, orig)) == null)
+            p = new Pawn (isBlack, orig, this);
+         orig.setOccupant(p);
+         updateBits(orig);
          if (isBlack) blackTeam.add(p);
          else         whiteTeam.add(p);
    }
@@ -1158,7 +1955,10 @@ public class ChessBoard implements Board {
    public void addKnight (int file, int rank, boolean isBlack) {
       ChessPiece p;
       Square orig = getSquare(file, rank);
-         orig.setOccupant(p = new Knight (isBlack, orig, this)); 
+         if ((p = reuse(Knight.INDEX, isBlack, orig)) == null)
+            p = new Knight (isBlack, orig, this);
+         orig.setOccupant(p);
+         updateBits(orig);
          if (isBlack) blackTeam.add(p);
          else         whiteTeam.add(p);
    }
@@ -1176,7 +1976,10 @@ public class ChessBoard implements Board {
    public void addBishop (int file, int rank, boolean isBlack) {
       ChessPiece p;
       Square orig = getSquare(file, rank);
-         orig.setOccupant(p = new Bishop (isBlack, orig, this)); 
+         if ((p = reuse(Bishop.INDEX, isBlack, orig)) == null)
+            p = new Bishop (isBlack, orig, this);
+         orig.setOccupant(p);
+         updateBits(orig);
          if (isBlack) blackTeam.add(p);
          else         whiteTeam.add(p);
    }
@@ -1194,7 +1997,10 @@ public class ChessBoard implements Board {
    public void addRook (int file, int rank, boolean isBlack) {
       ChessPiece p;
       Square orig = getSquare(file, rank);
-         orig.setOccupant(p = new Rook (isBlack, orig, this)); 
+         if ((p = reuse(Rook.INDEX, isBlack, orig)) == null)
+            p = new Rook (isBlack, orig, this);
+         orig.setOccupant(p);
+         updateBits(orig);
          if (isBlack) blackTeam.add(p);
          else         whiteTeam.add(p);
    }
@@ -1212,7 +2018,10 @@ public class ChessBoard implements Board {
    public void addQueen (int file, int rank, boolean isBlack) {
       ChessPiece p;
       Square orig = getSquare(file, rank);
-         orig.setOccupant(p = new Queen (isBlack, orig, this)); 
+         if ((p = reuse(Queen.INDEX, isBlack, orig)) == null)
+            p = new Queen (isBlack, orig, this);
+         orig.setOccupant(p);
+         updateBits(orig);
          if (isBlack) blackTeam.add(p);
          else         whiteTeam.add(p);
    }
@@ -1231,7 +2040,10 @@ public class ChessBoard implements Board {
    public void addKing (int file, int rank, boolean isBlack) {
       ChessPiece p;
       Square orig = getSquare(file, rank);
-         orig.setOccupant(p = new King (isBlack, orig, this)); 
+         if ((p = reuse(King.INDEX, isBlack, orig)) == null)
+            p = new King (isBlack, orig, this);
+         orig.setOccupant(p);
+         updateBits(orig);
          if (isBlack) {
 	    if (blackKing != null)
 	       blackTeam.remove(blackKing);
@@ -1295,6 +2107,7 @@ public class ChessBoard implements Board {
          throw new IllegalArgumentException(
 	    "EnPassant file cannot be larget than MAX_FILE");
       enpassantFile = (byte) f;
+      staleZobristKey = true;
    }
 
    /* setEnPassantFile *****************************************************/
@@ -1303,6 +2116,7 @@ public class ChessBoard implements Board {
     */
    public void setEnPassantFile (char f) {
       enpassantFile = san.fileToNum(f);
+      staleZobristKey = true;
    }
 
    /* isEnPassantFile ******************************************************/
@@ -1343,6 +2157,31 @@ public class ChessBoard implements Board {
       return (plyCount50 > 99);
    }
 
+   /* getRepetitionCount ***************************************************/
+   /** returns how many times the current position has occurred on the 
+    *  board since it was set up, counting the current occurrence.  
+    *  Positions are the same when the same pieces stand on the same 
+    *  squares with the same side to move, castling rights and 
+    *  possibility of capturing en passant.  The count is kept by each
+    *  move as it is executed, so this is cheap to call after every
+    *  History.next().
+    *
+    *  @return 1 if the position has not occurred before
+    */
+   public int getRepetitionCount () {
+      if (lastMove == null)
+         return 1;
+      return lastMove.repetitionCount;
+   }
+
+   /* isThreefoldRepetition ************************************************/
+   /** tests to see if the current position has occurred three times,
+    *  thus indicating a legal Draw may be called.
+    */
+   public boolean isThreefoldRepetition () {
+      return getRepetitionCount() >= 3;
+   }
+
    /* getCurrentMoveNumber ************************************************/
    /** get move number for the last move executed
     */
@@ -1350,6 +2189,13 @@ public class ChessBoard implements Board {
       return moveNumber;
    }
 
+   /* setCurrentMoveNumber ************************************************/
+   /** sets the move number, as when setting up a position.
+    */
+   public void setCurrentMoveNumber (int i) {
+      moveNumber = i;
+   }
+
    /* isInitialPositionDefault *********************************************/
    /** was the initial position of the board (before any move) the default
     *  position of traditional chess?
@@ -1449,7 +2295,6 @@ public class ChessBoard implements Board {
       if (o == this) return true;
       if ((o == null) || (o.getClass() != this.getClass()))
          return false;
-      //FIXME: this could use FEN to do the comparison but wouldn't get the Log
       
       boolean equal = true;
       ChessBoard b = (ChessBoard) o;
@@ -1458,81 +2303,40 @@ public class ChessBoard implements Board {
 	    Log.debug(DEBUG, "comparing boards");
 	 }
 
-         equal = this.isBlackMove == b.isBlackMove;
-	 if (Log.debug && !equal)
-	    Log.debug2(DEBUG, "move parity failed");
-	    
-	 if (equal) 
-	    equal = this.squares.length == b.squares.length;
+	 //different keys are always different positions
+	 equal = this.getZobristKey() == b.getZobristKey();
 
 	 if (Log.debug && !equal)
-	    Log.debug2(DEBUG, "board dimension(f) failed");
-	    
-	 if (equal) 
-	    equal = this.squares[0].length == b.squares[0].length;
+	    Log.debug2(DEBUG, "zobrist key failed");
 
-	 if (Log.debug && !equal)
-	    Log.debug2(DEBUG, "board dimension(r) failed");
-	    
+	 //same key is almost surely the same position, but make sure
 	 if (equal)
-	    equal = this.isWhiteCastleableQueenside()
-	            == b.isWhiteCastleableQueenside();
+            equal = this.isBlackMove == b.isBlackMove;
 
 	 if (Log.debug && !equal)
-	    Log.debug2(DEBUG, "castling QW failed");
-	    
-	 if (equal)
-	    equal = this.isBlackCastleableQueenside()
-	            == b.isBlackCastleableQueenside();
+	    Log.debug2(DEBUG, "move parity failed");
 
-	 if (Log.debug && !equal)
-	    Log.debug2(DEBUG, "castling QB failed");
-	    
 	 if (equal)
-	    equal = this.isWhiteCastleableKingside()
-	            == b.isWhiteCastleableKingside();
+	    equal = this.whiteBits == b.whiteBits
+	         && this.blackBits == b.blackBits;
+	 for (int i=0; i < pieceBits.length && equal; i++)
+	    equal = this.pieceBits[i] == b.pieceBits[i];
 
 	 if (Log.debug && !equal)
-	    Log.debug2(DEBUG, "castling KW failed");
-	    
+	    Log.debug2(DEBUG, "piece placement failed");
+
 	 if (equal)
-	    equal = this.isBlackCastleableKingside()
-	            == b.isBlackCastleableKingside();
+	    equal = Zobrist.getCastlingRights(this) 
+	            == Zobrist.getCastlingRights(b);
 
 	 if (Log.debug && !equal)
-	    Log.debug2(DEBUG, "castling KB failed");
+	    Log.debug2(DEBUG, "castling failed");
 	    
 	 if (equal)
 	    equal = this.enpassantFile == b.enpassantFile;
 
 	 if (Log.debug && !equal) 
 	    Log.debug2(DEBUG, "enpassant failed");
-	    
-	 if (equal) {
-	    for (byte i=0; i< this.squares.length && equal; i++) {
-	       for (byte j=0; j < this.squares[i].length && equal; j++) {
-	          if (this.squares[i][j].getOccupant() == null)
-		     equal = b.squares[i][j].getOccupant() == null;
-		  else {
-		     equal = b.squares[i][j].getOccupant() != null;
-
-		     if (Log.debug && !equal)
-			Log.debug2(DEBUG, "squares[" + i + "]["
-					 + j + "] nulls failed");
-
-                     if (equal) {
-			equal = this.squares[i][j].getOccupant().getIndex()
-				== b.squares[i][j].getOccupant().getIndex();
-
-			if (Log.debug && !equal)
-			   Log.debug2(DEBUG, "squares[" + i + "]["
-					    + j + "].Occupant failed");
-		     }
-
-		  }
-	       }
-	    }
-	 }
 
 	 if (Log.debug && equal)
 	    Log.debug2(DEBUG, "boards are the same");
@@ -1541,12 +2345,12 @@ public class ChessBoard implements Board {
    }
 
    /* hashCode ***********************************************************/
+   /** based on the Zobrist key of the position.
+    */
    public int hashCode () {
+      long key = getZobristKey();
 
-      int hash = 7;
-      hash = 31 * hash + fen.boardToString(this).hashCode();
-
-      return hash;
+      return (int) (key ^ (key >>> 32));
    }
 
    //Diagnostics//////////////////////////////////////////////////////////
@@ -120,6 +120,20 @@ public class ChessGame implements SingleBoardGame {
       history = _hist; 
    }
 
+   /* reset ******************************************************************/
+   /** clears the game so the same ChessGame, ChessBoard and History can be
+    *  used for another game instead of making new ones: the history is 
+    *  emptied, the board set to the default position and the game info
+    *  dropped.  Moves from the previous game can't be used afterwards.
+    *
+    *  @see ictk.boardgame.chess.io.PGNReader#readGame(ChessGame)
+    */
+   public void reset () {
+      history.clear();
+      board.reset();
+      gameInfo = null;
+   }
+
    /* getCurrentResult ******************************************************/
    public Result getCurrentResult () {
       Result r = null;
@@ -149,6 +163,56 @@ public class ChessGame implements SingleBoardGame {
       return r;
    }
 
+   //Verification///////////////////////////////////////////////////////////
+   /* verify ****************************************************************/
+   /** verifies every move in the history, variations included, that was
+    *  played on a board in trusted mode (see ChessBoard.setTrustedMoves()).
+    *  Once all the moves are known to be legal the board is taken out of
+    *  trusted mode.  The board is left on the same move it was on before.
+    *
+    *  @throws IllegalMoveException if a move turns out to be illegal.  The
+    *          board is left in the mode it was in.
+    */
+   public void verify () 
+          throws IllegalMoveException,
+	         OutOfTurnException {
+      Move    current = history.getCurrentMove();
+      boolean trusted = board.isTrustedMoves();
+
+         history.rewind();
+	 board.setTrustedMoves(false);
+	 try {
+	    verify(history.getFirstAll());
+	    trusted = false;
+	 }
+	 finally {
+	    board.setTrustedMoves(trusted);
+	    history.goTo(current);
+	 }
+   }
+
+   /* verify ****************************************************************/
+   /** plays, and so verifies, each move in the list and everything that
+    *  follows it.
+    */
+   protected void verify (ContinuationList cont) 
+          throws IllegalMoveException,
+	         OutOfTurnException {
+      ChessMove m = null;
+
+         for (int i=0; i < cont.size(); i++) {
+	    if ((m = (ChessMove) cont.get(i)) == null)
+	       continue;
+	    m.execute();
+	    try {
+	       verify(m.getContinuationList());
+	    }
+	    finally {
+	       m.unexecute();
+	    }
+	 }
+   }
+
    //Display/////////////////////////////////////////////////////////////////
    /* toString **************************************************************/
    /** this is purely for diagnostic purposes.
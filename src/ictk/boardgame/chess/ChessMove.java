@@ -91,6 +91,12 @@ public class ChessMove extends Move {
        ** the setup of the board (as in Fischer Random) */
    public static final int CASTLE_KINGSIDE =  1;
 
+      /** flag set on packed moves that are castles.  The origin of a
+       ** packed castle is the King's square and the destination is the
+       ** square the King lands on.
+       ** @see #pack(int, int, int) */
+   public static final int PACKED_CASTLE = 1 << 15;
+
    //Instance//////////////////////////////////////////////////////////////////
       /** the board this move is indented to be played on */
    protected ChessBoard board;
@@ -118,6 +124,12 @@ public class ChessMove extends Move {
       /** for 50 move rule */
    protected int prevPlyCount50;
 
+      /** the board's Zobrist key before this move was executed */
+   protected long prevZobristKey;
+
+      /** how many times the position after this move has occurred */
+   protected int repetitionCount = 1;
+
       /** does the move place the king in check */
    protected boolean check, 
       /** does the move place the king in double check */
@@ -126,6 +138,10 @@ public class ChessMove extends Move {
            checkmate,
       /** does the move result in stalemate */
 	   stalemate,
+      /** does the move repeat a position for the third time */
+	   drawByRepetition,
+      /** does the move complete 50 moves without a capture or pawn move*/
+	   drawBy50MoveRule,
       /** is the move a castle on the queen's side */
 	   castleQueenside,
       /** is the move a castle on the king's side */
@@ -264,6 +280,64 @@ public class ChessMove extends Move {
    }
 
 
+   //Packed Moves///////////////////////////////////////////////////////
+
+   /* pack *************************************************************/
+   /** encodes a move in 16 bits: the origin square index in bits 0-5,
+    *  the destination in bits 6-11, the promotion piece INDEX (0 if 
+    *  none) in bits 12-14 and PACKED_CASTLE in bit 15.  Square indices
+    *  are those of Square.getBitIndex().  The value fits in a
+    *  <code>short</code>; when reading it back from one mask it with
+    *  <code>0xFFFF</code>.
+    *
+    * @param promo Queen.INDEX, Rook.INDEX, Bishop.INDEX, Knight.INDEX
+    *              or 0 for no promotion.
+    */
+   public static int pack (int orig, int dest, int promo) {
+      return orig | (dest << 6) | (promo << 12);
+   }
+
+   /* getPacked ********************************************************/
+   /** this move packed as by pack(), with PACKED_CASTLE set for castles.
+    *  The move need not be verified, but must have been executed or made
+    *  from squares.  A pawn that was left to promote to a Queen by 
+    *  default and has not been played has 0 for the promotion.
+    */
+   public int getPacked () {
+      int promo = (promotion == null) ? 0 
+                  : promotion.getIndex() % ChessPiece.BLACK_OFFSET;
+
+         if (castleQueenside || castleKingside)
+	    return pack(orig.getBitIndex(), dest.getBitIndex(), 0) 
+	           | PACKED_CASTLE;
+
+      return pack(orig.getBitIndex(), dest.getBitIndex(), promo);
+   }
+
+   /* getPackedOrigin **************************************************/
+   /** the origin square index of a packed move */
+   public static int getPackedOrigin (int packed) {
+      return packed & 0x3F;
+   }
+
+   /* getPackedDestination *********************************************/
+   /** the destination square index of a packed move */
+   public static int getPackedDestination (int packed) {
+      return (packed >>> 6) & 0x3F;
+   }
+
+   /* getPackedPromotion ***********************************************/
+   /** the promotion piece INDEX of a packed move, or 0 if none */
+   public static int getPackedPromotion (int packed) {
+      return (packed >>> 12) & 0x7;
+   }
+
+   /* isPackedCastle ***************************************************/
+   /** is the packed move a castle */
+   public static boolean isPackedCastle (int packed) {
+      return (packed & PACKED_CASTLE) != 0;
+   }
+
    //Accessors///////////////////////////////////////////////////////////
 
    //Mutators////////////////////////////////////////////////////////////
@@ -324,7 +398,7 @@ public class ChessMove extends Move {
       if (piece == null)
          throw new IllegalMoveException("No piece to move.", this);
 
-      if (Log.debug) {
+      if (Log.debug && Log.isDebug(DEBUG)) {
          Log.debug(DEBUG, "executing move: " + this);
          Log.debug2(DEBUG, piece.dump());
          Log.debug2(DEBUG, board);
@@ -333,7 +407,10 @@ public class ChessMove extends Move {
       if (piece.isBlack() != board.isBlackMove)
          throw new OutOfTurnException("It is " + ((board.isBlackMove) ? "Black" : "White") + "'s move");
 
-      if (!verified && !piece.isLegalDest(dest)) {
+      // trusted moves are played as they are and stay unverified
+      boolean trusted = !verified && board.trustedMoves;
+
+      if (!verified && !trusted && !piece.isLegalDest(dest)) {
          if (Log.debug) {
             Log.debug(DEBUG, "tried to execute move with illegal destination");
             Log.debug2(DEBUG, "piece is: " + piece.dump());
@@ -348,6 +425,17 @@ public class ChessMove extends Move {
          casualty = dest.piece;
       }
 
+      // only kings and rooks moving or rooks being taken touch castling
+      boolean touchesCastling = piece.isKing() || piece.isRook()
+                                || (casualty != null && casualty.isRook());
+
+	 //Zobrist key: take out what this move is about to change;
+	 //the pieces are toggled in and out as they move
+	 prevZobristKey = board.getZobristKey();
+	 board.zobristKey ^= Zobrist.enPassant(board);
+	 if (touchesCastling)
+	    board.zobristKey ^= Zobrist.castling(board);
+
 	 //special enpassant rules
 	 if (piece.isPawn()
 	     && casualty == null
@@ -359,9 +447,9 @@ public class ChessMove extends Move {
 	           + " dest:" + dest + " casualty: " + casualty);
 	    }
 	 }
-	 else {
-	    board.enpassantFile = ChessBoard.NO_ENPASSANT;
-	 }
+
+	 //the right to capture enpassant lasts only one move
+	 board.enpassantFile = ChessBoard.NO_ENPASSANT;
 
          //50MoveRule
 	 if (piece.isPawn()
@@ -378,15 +466,17 @@ public class ChessMove extends Move {
          if (casualty != null) { 
 	    casualty.setCaptured(true); 
 	    casualty.orig.piece = null; //take piece off board
+	    board.toggleBits(casualty, casualty.orig);
 	    //casualty.orig = null;  //don't do or hard to undo enpassant
 	 }
 
       // mark enpassant on board
       if (piece.isPawn() && (orig.rank - dest.rank == 2 || orig.rank - dest.rank == -2))
-         board.setEnPassantFile(orig.file);
+         board.enpassantFile = orig.file;
 
       // check how unique this move is (for short form Algebraic)
-      unique = board.isDestUniqueForClass(dest, piece);
+      if (!trusted)
+         unique = board.isDestUniqueForClass(dest, piece);
 
          //actually move piece
       dest.piece = piece;
@@ -394,6 +484,8 @@ public class ChessMove extends Move {
       if (!orig.equals(dest)) // Can happen in chess960 castling.
          orig.piece = null;
       piece.moveCount++;
+      board.toggleBits(piece, orig);
+      board.toggleBits(piece, dest);
 
       // Move the rook if we're castling.
       if (castling) {
@@ -408,6 +500,8 @@ public class ChessMove extends Move {
          }
          rookForCastling.orig = rookDest;
          rookForCastling.moveCount++;
+         board.toggleBits(rookForCastling, rookCastleOrig);
+         board.toggleBits(rookForCastling, rookDest);
       }
 
 	 //pawn promotion
@@ -422,6 +516,20 @@ public class ChessMove extends Move {
          //set board to alternate who moves flag
 	 board.isBlackMove =  !piece.isBlack;
 	 prev = board.lastMove;
+
+	 //Zobrist key: put back the side to move, en passant and castling
+	 board.zobristKey ^= Zobrist.BLACK_MOVE ^ Zobrist.enPassant(board);
+	 if (touchesCastling)
+	    board.zobristKey ^= Zobrist.castling(board);
+
+	 //repetition and 50 move rule
+	 if (board.positionKeyCount == 0)
+	    board.pushPositionKey(prevZobristKey);
+	 board.pushPositionKey(board.zobristKey);
+	 repetitionCount = board.countRepetitions();
+	 setDrawByRepetition(repetitionCount >= 3);
+	 setDrawBy50MoveRule(board.is50MoveRuleApplicible());
+
 	 board.lastMove = this;
          //incr move counter
 	 if (!piece.isBlack)
@@ -434,15 +542,20 @@ public class ChessMove extends Move {
 	 board.staleLegalDests = true;
 
          //gen legal moves only if we don't know the next move
-         if (!verified || continuation.isTerminal() && !isEndOfGame())
-	    board.genLegalDests();
-
-	 verified = true;
+         if (!trusted) {
+            if (!verified || continuation.isTerminal() && !isEndOfGame())
+	       if (board.lazyLegalDests)
+	          board.genCheckStatus(this);
+	       else
+	          board.genLegalDests();
+
+	    verified = true;
+	 }
 
          //broadcast changes in the model
          board.fireBoardEvent(BoardEvent.MOVE);
 
-	 if (Log.debug) {
+	 if (Log.debug && Log.isDebug(DEBUG)) {
 	    Log.debug(DEBUG, "execute successful");
 	    Log.debug2(DEBUG, board);
 	 }
@@ -457,12 +570,12 @@ public class ChessMove extends Move {
    /** undo the this move
     */
    protected void unexecute () {
-         if (Log.debug) {
+         if (Log.debug && Log.isDebug(DEBUG)) {
 	    Log.debug(DEBUG, "unexecuting move: " + this);
 	    Log.debug2(DEBUG, board);
 	 }
 
-         board.setEnPassantFile(prevEnPassantFile);
+         board.enpassantFile = (byte) prevEnPassantFile;
 
 	 //pawn promotion (use same function to reverse the promotion)
 	 if (piece.isPawn() && Pawn.isPromotionSquare(dest, piece.isBlack)) {
@@ -475,6 +588,8 @@ public class ChessMove extends Move {
          orig.piece = dest.piece;
          piece.orig = orig;
          dest.piece = null;
+         board.toggleBits(piece, dest);
+         board.toggleBits(piece, orig);
       } else 
       {
          King kingPiece = (King) dest.piece;
@@ -492,6 +607,10 @@ public class ChessMove extends Move {
          }
 
          rookPiece.moveCount--;
+         board.toggleBits(kingPiece, dest);
+         board.toggleBits(kingPiece, orig);
+         board.toggleBits(rookPiece, rook_dest);
+         board.toggleBits(rookPiece, rookCastleOrig);
 
          boolean rookMoved = !rookCastleOrig.equals(rook_dest);
          if (rookMoved && !rook_dest.equals(orig)) {
@@ -502,6 +621,7 @@ public class ChessMove extends Move {
          if (casualty != null) {
             casualty.setCaptured(false);
 	    casualty.orig.piece = casualty;  //put piece on board
+	    board.toggleBits(casualty, casualty.orig);
          }
 
          //50MoveRule
@@ -518,6 +638,11 @@ public class ChessMove extends Move {
 	 if (!piece.isBlack)
 	    board.moveNumber--;
 
+	 //the toggles above put the pieces back; this restores the rest
+	 board.zobristKey = prevZobristKey;
+	 board.staleZobristKey = false;
+	 board.popPositionKey();
+
          executed = false;
 
          board.staleLegalDests = true;
@@ -525,7 +650,7 @@ public class ChessMove extends Move {
          //broadcast changes in the model
          board.fireBoardEvent(BoardEvent.UNMOVE);
 
-	 if (Log.debug) {
+	 if (Log.debug && Log.isDebug(DEBUG)) {
 	    Log.debug(DEBUG, "unexecute successful");
 	    Log.debug2(DEBUG, board);
 	 }
@@ -606,6 +731,39 @@ public class ChessMove extends Move {
       return stalemate;
    }
 
+   /* isDrawByRepetition ************************************************/
+   /** does this move reach the same position for the third time, so
+    *  that either player may claim a draw?  The game is not over unless
+    *  the draw is claimed, so this does not affect isEndOfGame().
+    */
+   public boolean isDrawByRepetition () {
+      if (!verified) throw new UnverifiedMoveException(
+         "Cannot determine if an unverified move is a Draw by Repetition.");
+      return drawByRepetition;
+   }
+
+   /* isDrawBy50MoveRule ************************************************/
+   /** does this move complete 50 moves by each side without a capture
+    *  or pawn move, so that either player may claim a draw?  Like
+    *  isDrawByRepetition() this does not affect isEndOfGame().
+    */
+   public boolean isDrawBy50MoveRule () {
+      if (!verified) throw new UnverifiedMoveException(
+         "Cannot determine if an unverified move is a Draw by the "
+	 + "50 Move Rule.");
+      return drawBy50MoveRule;
+   }
+
+   /* getRepetitionCount ************************************************/
+   /** how many times the position after this move has occurred in the
+    *  game, counting this time.
+    */
+   public int getRepetitionCount () {
+      if (!verified) throw new UnverifiedMoveException(
+         "Cannot count repetitions for an unverified move.");
+      return repetitionCount;
+   }
+
    /* isEndOfGame ******************************************************/
    /** does this move terminate the game, either by checkmate, 
     *  stalemate, or an ChessResult has been set for the move.  
@@ -665,6 +823,22 @@ public class ChessMove extends Move {
          result = new ChessResult(ChessResult.DRAW);
    }
 
+   /* setDrawByRepetition **********************************************/
+   /** sets the draw by repetition flag.  Unlike setStalemate() the result
+    *  is left alone since the draw has to be claimed.
+    */
+   protected void setDrawByRepetition (boolean t) {
+      drawByRepetition = t;
+   }
+
+   /* setDrawBy50MoveRule **********************************************/
+   /** sets the draw by the 50 move rule flag.  Unlike setStalemate() 
+    *  the result is left alone since the draw has to be claimed.
+    */
+   protected void setDrawBy50MoveRule (boolean t) {
+      drawBy50MoveRule = t;
+   }
+
    /* setResult **********************************************************/
    public void setResult (Result res) {
       result = res;
@@ -945,6 +1119,8 @@ public class ChessMove extends Move {
 	   .append("   isDoubleCheck: " + doublecheck + "\n")
 	   .append("   isCheckmate: " + checkmate + "\n")
 	   .append("   isStalemate: " + stalemate + "\n")
+	   .append("   isDrawByRepetition: " + drawByRepetition + "\n")
+	   .append("   isDrawBy50MoveRule: " + drawBy50MoveRule + "\n")
 	   .append("   result: " + result + "\n")
 	   .append("   isEndOfGame: " + isEndOfGame() + "\n")
 	   .append("   prenotation: ").append(getPrenotation())
@@ -140,6 +140,21 @@ public abstract class ChessPiece extends Piece {
       board = b;
    }
 
+   /* reset **************************************************************/
+   /** makes this piece as good as new so the board can use it again for
+    *  a new position.
+    *  @see ChessBoard#recycle()
+    */
+   protected void reset (boolean _isBlack, Square _orig) {
+      isBlack   = _isBlack;
+      orig      = _orig;
+      captured  = false;
+      moveCount = 0;
+      pinnedBy  = null;
+      legalDests.clear();
+      guardSquares.clear();
+   }
+
    //Legal Moves///////////////////////////////////////////////////////////
 
    /* genLegalDests ******************************************************/
@@ -238,8 +253,14 @@ public abstract class ChessPiece extends Piece {
     */
    public boolean isLegalDest (Square dest) {
       if (!captured) {
-         if (board.staleLegalDests)
+         if (board.staleLegalDests) {
+	    //lazy mode knows the moves of the side to move without
+	    //generating every piece's destinations
+	    if (board.lazyLegalDests && isBlack == board.isBlackMove
+	        && orig != null)
+	       return board.isLazyLegalDest(this, dest);
 	    board.genLegalDests();
+	 }
 	 return legalDests.contains(dest);
       }
       else
@@ -445,6 +466,25 @@ public abstract class ChessPiece extends Piece {
    protected void adjustPinsLegalDests (ChessPiece king, List<ChessPiece> enemyTeam) {
    }
 
+   /* findPin ************************************************************/
+   /** returns the enemy piece standing alone between this piece and the
+    *  enemy King, or null if the line is open or blocked by more than one
+    *  piece or by a friend.  The caller has to make sure this piece
+    *  attacks along the line to the King.
+    */
+   protected ChessPiece findPin (ChessPiece king) {
+      long blockers = Bitboard.between(orig.getBitIndex(), 
+                                       king.orig.getBitIndex())
+                    & board.getOccupiedBits();
+
+         if (blockers == 0L
+	     || (blockers & (blockers - 1)) != 0L
+	     || (blockers & board.getTeamBits(isBlack)) != 0L)
+	    return null;
+
+      return board.getSquareByIndex(Bitboard.first(blockers)).piece;
+   }
+
 
    //Utils////////////////////////////////////////////////////////////////
 
@@ -81,17 +81,22 @@ public class King extends ChessPiece {
       Square dest;
       Iterator<Square> perlimMoves;
       List<Square> tmpLegalDests;
+      long occupied;
 
       tmpLegalDests = legalDests;
       perlimMoves = tmpLegalDests.iterator();
 
       legalDests = new ArrayList<>(8);
 
+      // the King is taken off the board so a sliding piece checking
+      // him also attacks the squares behind him.
+      occupied = board.getOccupiedBits() & ~Bitboard.bit(orig.getBitIndex());
+
       // make sure the King doesn't move into a kill
       while (perlimMoves.hasNext()) {
          dest = perlimMoves.next();
 
-         if (!board.isThreatened(dest, !isBlack) && !board.isGuarded(dest, !isBlack))
+         if (board.getAttackers(dest.getBitIndex(), !isBlack, occupied) == 0L)
             addLegalDest(dest);
       }
 
@@ -112,13 +117,19 @@ public class King extends ChessPiece {
     * Make sure they haven't moved yet.
     * Needs to check if anyone is blocking the castle
     * by checking if squares are occupied between the two pieces.
-    * Make sure no one is threatening the king or a sq he walks through.
+    * Make sure no one is threatening the king, the square he stands on
+    * or a sq he walks through.
     * @param castleQueenside true if this is queen-side castling, false otherwise.
     */
-   private boolean isCastlingAllowed(boolean castleQueenside) {
+   boolean isCastlingAllowed(boolean castleQueenside) {
       if (moveCount != 0) {
          return false;
       }
+
+      // can't castle out of check
+      if (board.isAttacked(orig.getBitIndex(), !isBlack)) {
+         return false;
+      }
       
       
       Rook rook = findMyRook(castleQueenside);
@@ -157,7 +168,7 @@ public class King extends ChessPiece {
 
             // is king walking in an assassin's sights
             if (!castlingNotAllowed)
-               castlingNotAllowed = board.isThreatened(board.getSquare(f, orig.rank), !isBlack);
+               castlingNotAllowed = board.isAttacked(Bitboard.toIndex(f, orig.rank), !isBlack);
          }
          // Verify that the king destination is also empty and non-threatened.
          if (!castlingNotAllowed) {
@@ -165,7 +176,7 @@ public class King extends ChessPiece {
 
             // is king walking in an assassin's sights
             if (!castlingNotAllowed)
-               castlingNotAllowed = board.isThreatened(board.getSquare(kingDest.file, orig.rank), !isBlack);
+               castlingNotAllowed = board.isAttacked(kingDest.getBitIndex(), !isBlack);
          }
       }
       return !castlingNotAllowed;
@@ -215,7 +226,7 @@ public class King extends ChessPiece {
     *  if the King is also in checkmate.
     */
    public boolean isInCheck () {
-      return board.isThreatened(this);
+      return board.isAttacked(orig.getBitIndex(), !isBlack);
    }
 
    /* isCastleableQueenside ***************************************************/
@@ -253,6 +264,7 @@ public class King extends ChessPiece {
       }
       else if (rook != null && rook.moveCount == 0) 
          rook.moveCount = 1;
+      board.staleZobristKey = true;
    }
 
    /* setCastlableKingside ****************************************************/
@@ -272,6 +284,7 @@ public class King extends ChessPiece {
       }
       else if (rook != null && rook.moveCount == 0) 
          rook.moveCount = 1;
+      board.staleZobristKey = true;
    }
 
    /* findMyRook *************************************************************/
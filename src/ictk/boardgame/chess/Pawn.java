@@ -126,11 +126,13 @@ public class Pawn extends ChessPiece {
             file = orig.file; 
 
 	    if (board.isFileValid((byte) (file +1)) 
-	        && board.isEnPassantFile((byte) (file+1)))
+	        && board.isEnPassantFile((byte) (file+1))
+		&& isEnPassantSafe(board.getSquare((byte)(file + 1), rank)))
                addLegalDest(board.getSquare((byte)(file + 1), rank));
 
 	    if (board.isFileValid((byte) (file -1))
-	         && board.isEnPassantFile((byte) (file-1)))
+	         && board.isEnPassantFile((byte) (file-1))
+		 && isEnPassantSafe(board.getSquare((byte)(file - 1), rank)))
                addLegalDest(board.getSquare((byte) (file - 1), rank));
 	 }
 
@@ -175,6 +177,25 @@ public class Pawn extends ChessPiece {
          }
    }
 
+   /* isEnPassantSafe ***************************************************/
+   /** en passant takes two pawns off the same rank at once, which the
+    *  normal pin detection on the capturing pawn alone does not catch
+    *  (e.g. King and Rook on the fifth rank with both pawns between them).
+    *  This checks that the King is not attacked on the board as it would
+    *  be after the capture.
+    */
+   protected boolean isEnPassantSafe (Square dest) {
+      King king = (isBlack) ? board.blackKing : board.whiteKing;
+      long victim = Bitboard.bit(Bitboard.toIndex(dest.file, orig.rank)),
+           after  = board.getOccupiedBits() 
+	            ^ Bitboard.bit(orig.getBitIndex()) 
+	            ^ Bitboard.bit(dest.getBitIndex()) 
+		    ^ victim;
+
+      return (board.getAttackers(king.orig.getBitIndex(), !isBlack, after)
+              & ~victim) == 0L;
+   }
+
    /* onEnPassantRank ***************************************************/
    /** is this pawn on the a possible enpassant rank (not the file).
     */
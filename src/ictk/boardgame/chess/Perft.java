@@ -0,0 +1,242 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess;
+
+import ictk.util.Log;
+import ictk.boardgame.Move;
+import ictk.boardgame.IllegalMoveException;
+import ictk.boardgame.chess.io.FEN;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Map;
+import java.util.LinkedHashMap;
+import java.util.Iterator;
+
+/* Perft ********************************************************************/
+/** Perft (performance test) walks the tree of legal moves from a position
+ *  to a fixed depth and counts the leaf nodes.  The counts for many 
+ *  positions are well known, so this is both a correctness test for the
+ *  legal move generation (genLegalDests(), pins and check evasion) and
+ *  for ChessMove.execute()/unexecute(), and a benchmark for them.
+ *  <br>
+ *  "Divide" lists each move of the root position with the number of
+ *  leaf nodes below it, which is handy to find where two move generators
+ *  disagree.
+ *  <br>
+ *  From the command line:
+ *  <pre>
+ *  java ictk.boardgame.chess.Perft [-divide] &lt;depth&gt; [FEN]
+ *  </pre>
+ *  The default position is used if no FEN is given.
+ */
+public class Perft {
+      /** used as a mask for Log.debug() */
+   public final static long DEBUG = Log.Board;
+
+      /** the board the moves are played on */
+   protected ChessBoard board;
+      /** leaf nodes counted on the last run */
+   protected long nodes;
+      /** nano seconds used by the last run */
+   protected long elapsed;
+
+   /** 
+    * @param board the position to count from.  The board is returned to
+    *              this position when a count is done.
+    */
+   public Perft (ChessBoard board) {
+      if (board == null)
+         throw new IllegalArgumentException("Perft needs a board");
+      this.board = board;
+   }
+
+   /* perft ****************************************************************/
+   /** counts the leaf nodes of the move tree to the depth given.
+    *
+    * @throws IllegalMoveException if a generated move can not be executed,
+    *                              which means the move generation is broken
+    */
+   public long perft (int depth) throws IllegalMoveException {
+      long start = System.nanoTime();
+
+         nodes = count(depth);
+	 elapsed = System.nanoTime() - start;
+
+      return nodes;
+   }
+
+   /* divide ***************************************************************/
+   /** counts the leaf nodes below each move of the current position.
+    *
+    * @return move (in coordinate notation, e.g. "e7e8q") to node count, in
+    *         the order the moves were generated.
+    */
+   public Map<String,Long> divide (int depth) throws IllegalMoveException {
+      Map<String,Long> counts = new LinkedHashMap<>();
+      Iterator<Move> moves = null;
+      ChessMove move = null;
+      long start = System.nanoTime(),
+           n = 0;
+
+         nodes = 0;
+	 if (depth < 1) 
+	    depth = 1;
+
+	 moves = board.getLegalMoves().iterator();
+	 while (moves.hasNext()) {
+	    move = (ChessMove) moves.next();
+	    move.execute();
+	    n = count(depth - 1);
+	    move.unexecute();
+
+	    counts.put(toCoordinates(move), Long.valueOf(n));
+	    nodes += n;
+	 }
+	 elapsed = System.nanoTime() - start;
+
+      return counts;
+   }
+
+   /* count ****************************************************************/
+   /** the recursive walk.  The moves of the last ply are counted and
+    *  not played ("bulk counting").
+    */
+   protected long count (int depth) throws IllegalMoveException {
+      List<Move> moves = null;
+      ChessMove move = null;
+      long n = 0;
+
+         if (depth < 1)
+	    return 1;
+
+         moves = board.getLegalMoves();
+	 if (depth == 1)
+	    return moves.size();
+
+	 for (int i=0; i < moves.size(); i++) {
+	    move = (ChessMove) moves.get(i);
+	    move.execute();
+	    n += count(depth - 1);
+	    move.unexecute();
+	 }
+
+      return n;
+   }
+
+   //Info///////////////////////////////////////////////////////////////////
+
+   /* getNodes *************************************************************/
+   /** leaf nodes counted on the last run */
+   public long getNodes () {
+      return nodes;
+   }
+
+   /* getElapsedMillis *****************************************************/
+   /** how long the last run took */
+   public long getElapsedMillis () {
+      return elapsed / 1000000L;
+   }
+
+   /* getNodesPerSecond ****************************************************/
+   /** speed of the last run */
+   public long getNodesPerSecond () {
+      return (elapsed > 0) ? (long) (nodes * 1e9 / elapsed) : 0;
+   }
+
+   /* toCoordinates ********************************************************/
+   /** long algebraic coordinates of a move as used by most perft tools,
+    *  e.g. "e2e4", "e1g1" (castling) and "e7e8q".
+    */
+   public static String toCoordinates (ChessMove move) {
+      StringBuffer sb = new StringBuffer(5);
+      ChessPiece promo = move.promotion;
+
+         sb.append(move.orig).append(move.dest);
+	 if (promo != null)
+	    sb.append(Character.toLowerCase(
+	       ChessBoard.san.pieceToChar(promo)));
+
+      return sb.toString();
+   }
+
+   //Command Line/////////////////////////////////////////////////////////////
+
+   /* main *****************************************************************/
+   public static void main (String[] args) {
+      ChessBoard board = null;
+      Perft perft = null;
+      PrintStream out = System.out;
+      boolean divide = false;
+      int depth = 0,
+          i = 0;
+
+         if (args.length > 0 && args[0].equals("-divide")) {
+	    divide = true;
+	    i++;
+	 }
+
+	 if (args.length <= i) {
+	    System.err.println(
+	       "usage: java ictk.boardgame.chess.Perft [-divide] <depth> [FEN]");
+	    System.exit(1);
+	 }
+
+         try {
+	    depth = Integer.parseInt(args[i++]);
+
+	    if (args.length > i) {
+	       StringBuffer fen = new StringBuffer();
+	       for (; i < args.length; i++)
+	          fen.append(args[i]).append(' ');
+	       board = (ChessBoard) new FEN().stringToBoard(
+	          fen.toString().trim());
+	    }
+	    else
+	       board = new ChessBoard();
+
+	    perft = new Perft(board);
+
+	    if (divide) {
+	       Map<String,Long> counts = perft.divide(depth);
+	       for (Map.Entry<String,Long> e : counts.entrySet())
+	          out.println(e.getKey() + ": " + e.getValue());
+	       out.println();
+	       out.println("Moves: " + counts.size());
+	    }
+	    else
+	       perft.perft(depth);
+
+	    out.println("Nodes: " + perft.getNodes());
+	    out.println("Time:  " + perft.getElapsedMillis() + " ms");
+	    out.println("NPS:   " + perft.getNodesPerSecond());
+	 }
+	 catch (Exception e) {
+	    System.err.println(e);
+	    e.printStackTrace();
+	    System.exit(1);
+	 }
+   }
+}
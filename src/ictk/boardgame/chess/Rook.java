@@ -111,47 +111,20 @@ public class Rook extends ChessPiece {
 
    /* adjustPinsLegalDests **********************************************/
    public void adjustPinsLegalDests (ChessPiece king, List<ChessPiece> enemyTeam) {
-      Square[] line = getLineOfSight(king, false);
-      ChessPiece pin = null, tmp;
-      boolean done = false;
+      int from, to;
+      ChessPiece pin;
 
       if (captured) return;
 
-      if (line != null) {
-         if (board.staleLegalDests)
-	    board.genLegalDests();
-
-	 //remember to ignore [0] since it is this piece's square
-         for (int i=1; i < line.length && !done; i++) {
-
-            tmp = line[i].getOccupant();
-
-	    if (tmp != null) {
-
-	       //two pieces blocking the attack is not a pin
-	       if (pin != null)  {
-	          pin = null;
-		  done = true;
-	       } 
-
-	       //friend in the way
-	       else if (tmp.isBlack == this.isBlack())
-		  done = true;
-
-	       //found a possible pin
-	       else
-	          pin = tmp;
-	    }
-	 }
+      from = orig.getBitIndex();
+      to   = king.orig.getBitIndex();
 
+      if (Bitboard.isOrthogonal(from, to) && (pin = findPin(king)) != null) {
          //okay we have a pin
 	 //legal moves for the pinned piece are those which maintian the pin
-	 if (pin != null) {
-	    //need to AND moves with line
-	    List<Square> maintainPins = Arrays.asList(line); //includes this square
-	    pin.setPinned(this, maintainPins);
-	    //pin.legalDests.retainAll(maintainPins);
-	 }
+	 List<Square> maintainPins = 
+	    Arrays.asList(getLineOfSight(king, false)); //includes this square
+	 pin.setPinned(this, maintainPins);
       }
    }
 
@@ -92,6 +92,12 @@ public class Square implements Location, Cloneable {
    /**@return 1-8 */
    public byte getRank () { return rank;}
 
+   /* getBitIndex ***********************************************************/
+   /** the index of this square in the bitboards (a1=0, h1=7, h8=63)
+    * @see Bitboard
+    */
+   public int getBitIndex () { return ((rank - 1) << 3) + file - 1; }
+
    /* getFileAsChar *********************************************************/
    /** translates the file into its traditional english letter value
     *  ('a'-'h')
@@ -0,0 +1,173 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess;
+
+/* Zobrist ******************************************************************/
+/** The random numbers used for the Zobrist key of a ChessBoard.  The key
+ *  is the XOR of one number for each piece on its square, one for Black
+ *  to move, one for each castling right held and one for the en passant
+ *  file.  Since XOR is its own inverse a move updates the key by XORing
+ *  in only what it changed.
+ *  <br>
+ *  The en passant file only counts when a pawn of the side to move
+ *  stands ready to make the capture, so positions that differ only in
+ *  an unusable en passant right share a key (as the repetition rules
+ *  require).
+ *  <br>
+ *  The numbers come from a fixed seed and never change, so keys may be
+ *  stored and compared across runs.
+ *
+ *  @see ChessBoard#getZobristKey()
+ */
+public final class Zobrist {
+      /** castling right bits as used by castling() */
+   public static final int WHITE_KINGSIDE  = 1,
+                           WHITE_QUEENSIDE = 2,
+			   BLACK_KINGSIDE  = 4,
+			   BLACK_QUEENSIDE = 8;
+
+      /** [piece INDEX][0 White, 1 Black][square index] */
+   private static final long[][][] PIECES = new long[6][2][64];
+      /** one for each combination of castling rights */
+   private static final long[]     CASTLING = new long[16];
+      /** indexed by file (1-8); [0] is for no file and is 0 */
+   private static final long[]     EN_PASSANT = new long[9];
+      /** XORed in when it is Black's move */
+   public static final long        BLACK_MOVE;
+
+   static {
+      long seed = 0x1C7C0FFEE1997L;
+      long[] rights = new long[4];
+
+         for (int p=0; p < 6; p++)
+	    for (int c=0; c < 2; c++)
+	       for (int sq=0; sq < 64; sq++)
+	          PIECES[p][c][sq] = seed = next(seed);
+
+         for (int i=0; i < rights.length; i++)
+	    rights[i] = seed = next(seed);
+	 for (int i=0; i < CASTLING.length; i++) 
+	    for (int r=0; r < rights.length; r++)
+	       if ((i & (1 << r)) != 0)
+	          CASTLING[i] ^= rights[r];
+
+	 for (int f=1; f < EN_PASSANT.length; f++)
+	    EN_PASSANT[f] = seed = next(seed);
+
+	 BLACK_MOVE = next(seed);
+   }
+
+   private Zobrist () {}
+
+   /* next *****************************************************************/
+   /** one step of a SplitMix64 generator */
+   private static long next (long x) {
+      long z = x + 0x9E3779B97F4A7C15L;
+         z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+         z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+      return z ^ (z >>> 31);
+   }
+
+   /* piece ****************************************************************/
+   /** the number for a piece on a square.
+    * @param index   the piece type without BLACK_OFFSET, e.g. Rook.INDEX
+    * @param isBlack the color of the piece
+    * @param square  the square index (see Square.getBitIndex())
+    */
+   public static long piece (int index, boolean isBlack, int square) {
+      return PIECES[index][(isBlack) ? 1 : 0][square];
+   }
+
+   /* getCastlingRights ****************************************************/
+   /** the castling rights still held on the board as a combination of
+    *  WHITE_KINGSIDE, WHITE_QUEENSIDE, BLACK_KINGSIDE and BLACK_QUEENSIDE.
+    */
+   public static int getCastlingRights (ChessBoard board) {
+      int rights = 0;
+
+         if (board.whiteKing != null) {
+	    if (board.whiteKing.isCastleableKingside())
+	       rights |= WHITE_KINGSIDE;
+	    if (board.whiteKing.isCastleableQueenside())
+	       rights |= WHITE_QUEENSIDE;
+	 }
+         if (board.blackKing != null) {
+	    if (board.blackKing.isCastleableKingside())
+	       rights |= BLACK_KINGSIDE;
+	    if (board.blackKing.isCastleableQueenside())
+	       rights |= BLACK_QUEENSIDE;
+	 }
+
+      return rights;
+   }
+
+   /* castling *************************************************************/
+   /** the part of the key for the castling rights on the board */
+   public static long castling (ChessBoard board) {
+      return CASTLING[getCastlingRights(board)];
+   }
+
+   /* enPassant ************************************************************/
+   /** the part of the key for the en passant file on the board.  This is
+    *  0 unless a pawn of the side to move can capture en passant.
+    */
+   public static long enPassant (ChessBoard board) {
+      boolean us = board.isBlackMove;
+      int     file = board.enpassantFile,
+              to;
+
+         if (file == ChessBoard.NO_ENPASSANT)
+	    return 0L;
+
+         to = Bitboard.toIndex(file, (us) ? 3 : 6);
+	 if ((Bitboard.pawnAttacks(to, !us) 
+	      & board.getPieceBits(Pawn.INDEX, us)) == 0L)
+	    return 0L;
+
+      return EN_PASSANT[file];
+   }
+
+   /* getKey ***************************************************************/
+   /** calculates the key of the board from scratch.  ChessBoard keeps its
+    *  own key up to date, so this is only needed after the board is set
+    *  up.
+    */
+   public static long getKey (ChessBoard board) {
+      long key = 0L,
+           b;
+
+         for (int p=0; p < 6; p++) {
+	    for (b = board.getPieceBits(p, false); b != 0L; b &= b - 1)
+	       key ^= PIECES[p][0][Bitboard.first(b)];
+	    for (b = board.getPieceBits(p, true); b != 0L; b &= b - 1)
+	       key ^= PIECES[p][1][Bitboard.first(b)];
+	 }
+
+	 if (board.isBlackMove)
+	    key ^= BLACK_MOVE;
+
+      return key ^ castling(board) ^ enPassant(board);
+   }
+}
@@ -0,0 +1,266 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess.db;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import ictk.util.Log;
+import ictk.boardgame.IllegalMoveException;
+import ictk.boardgame.AmbiguousMoveException;
+import ictk.boardgame.io.InvalidGameFormatException;
+import ictk.boardgame.chess.ChessGame;
+import ictk.boardgame.chess.ChessGameInfo;
+import ictk.boardgame.chess.io.PGNFile;
+import ictk.boardgame.chess.io.PGNReader;
+
+/* GameDatabase **************************************************************/
+/** GameDatabase is a PGN file together with a GameIndex of the game 
+ *  information of its games, which is kept beside it (game.pgn has
+ *  game.pgn.idx).  The index is made the first time the file is opened,
+ *  and again whenever the file has changed since.
+ *  <p>
+ *  Games are found with a GameQuery and read from the PGN file by their
+ *  number:
+ *  <pre>
+ *  GameDatabase db = new GameDatabase(new File("games.pgn"));
+ *  GameQuery q = db.newQuery();
+ *  q.setPlayer("Tal, Mihail");
+ *  for (int n : q.find())
+ *     System.out.println(db.getGameInfo(n));
+ *  </pre>
+ *  The PGN stays the store of the games, so it can still be read and
+ *  changed by other programs.
+ *  <p>
+ *  The games a position was reached in are found with the PositionIndex,
+ *  which is kept beside the game index (game.pgn.pos) and is made only
+ *  when it is first asked for, as every game has to be replayed.  So is
+ *  the MaterialIndex (game.pgn.mat) searched by a MaterialSearch.
+ */
+public class GameDatabase implements Closeable {
+      /** mask for Log.debug() */
+   public static final long DEBUG = GameIndex.DEBUG;
+
+   protected File          pgnFile,
+                           positionFile,
+			   materialFile;
+   protected PGNFile       pgn;
+   protected GameIndex     index;
+   protected PositionIndex positions;
+   protected MaterialIndex materials;
+
+   //constructors//////////////////////////////////////////////////////////////
+   public GameDatabase (File pgnFile) 
+          throws IOException {
+      this(pgnFile, new File(pgnFile.getPath() + ".idx"), 
+           StandardCharsets.ISO_8859_1);
+   }
+
+   /** @param indexFile where the index is kept.
+    */
+   public GameDatabase (File _pgnFile, File indexFile, Charset charset) 
+          throws IOException {
+      pgnFile      = _pgnFile;
+      positionFile = new File(indexFile.getAbsoluteFile().getParentFile(),
+                              pgnFile.getName() + ".pos");
+      materialFile = new File(positionFile.getParentFile(),
+                              pgnFile.getName() + ".mat");
+
+      if (indexFile.exists() 
+          && indexFile.lastModified() >= pgnFile.lastModified()) {
+	 index = new GameIndex(indexFile);
+	 if (index.getSourceLength() != pgnFile.length()) {
+	    index.close();
+	    index = null;
+	 }
+      }
+
+      if (index == null) {
+	 if (Log.debug)
+	    Log.debug(DEBUG, "indexing " + pgnFile);
+
+         pgn = new PGNFile(pgnFile, charset);
+	 GameIndex.build(pgn, indexFile, pgnFile.length());
+	 index = new GameIndex(indexFile);
+      }
+      else
+         pgn = new PGNFile(pgnFile, charset, index.getOffsets());
+   }
+
+   //Access////////////////////////////////////////////////////////////////////
+   /* size *******************************************************************/
+   /** the number of games in the database.
+    */
+   public int size () {
+      return index.size();
+   }
+
+   public GameIndex getIndex () { return index; }
+
+   public PGNFile getPGNFile () { return pgn; }
+
+   /* newQuery ***************************************************************/
+   /** a query for the games of this database.
+    */
+   public GameQuery newQuery () {
+      return new GameQuery(index);
+   }
+
+   /* getOffset **************************************************************/
+   /** where game n begins in the PGN file.
+    */
+   public long getOffset (int n) {
+      return index.getOffset(n);
+   }
+
+   /* getGameInfo ************************************************************/
+   /** reads the game information of game n; only its tag pairs are read.
+    */
+   public ChessGameInfo getGameInfo (int n) 
+          throws IOException {
+      PGNReader reader = new PGNReader(new StringReader(pgn.getHeader(n)));
+
+      return (ChessGameInfo) reader.readGameInfo();
+   }
+
+   /* getPositionIndex *******************************************************/
+   /** the index of the positions of the games.  The first time it's asked
+    *  for, and whenever the PGN file has changed since, it is made by 
+    *  replaying all the games (see PositionIndexWriter), which for a large
+    *  file takes a while.
+    */
+   public synchronized PositionIndex getPositionIndex () 
+          throws IOException {
+      if (positions != null)
+         return positions;
+
+      if (positionFile.exists()
+          && positionFile.lastModified() >= pgnFile.lastModified()) {
+	 positions = new PositionIndex(positionFile);
+	 if (positions.getSourceLength() != pgnFile.length()
+	     || positions.getGameCount() != pgn.size()) {
+	    positions.close();
+	    positions = null;
+	 }
+      }
+
+      if (positions == null) {
+	 if (Log.debug)
+	    Log.debug(DEBUG, "indexing the positions of " + pgnFile);
+
+	 try {
+	    PositionIndex.build(pgn, positionFile, pgnFile.length());
+	 }
+	 catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new InterruptedIOException(
+	       "indexing the positions was interrupted");
+	 }
+	 positions = new PositionIndex(positionFile);
+      }
+
+      return positions;
+   }
+
+   /* getMaterialIndex *******************************************************/
+   /** the index of the material of the games.  Like the position index it
+    *  is made, by replaying all the games, the first time it's asked for 
+    *  and whenever the PGN file has changed since.
+    */
+   public synchronized MaterialIndex getMaterialIndex () 
+          throws IOException {
+      if (materials != null)
+         return materials;
+
+      if (materialFile.exists()
+          && materialFile.lastModified() >= pgnFile.lastModified()) {
+	 materials = new MaterialIndex(materialFile);
+	 if (materials.getSourceLength() != pgnFile.length()
+	     || materials.getGameCount() != pgn.size()) {
+	    materials.close();
+	    materials = null;
+	 }
+      }
+
+      if (materials == null) {
+	 if (Log.debug)
+	    Log.debug(DEBUG, "indexing the material of " + pgnFile);
+
+	 try {
+	    MaterialIndex.build(pgn, materialFile, pgnFile.length());
+	 }
+	 catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new InterruptedIOException(
+	       "indexing the material was interrupted");
+	 }
+	 materials = new MaterialIndex(materialFile);
+      }
+
+      return materials;
+   }
+
+   /* newMaterialSearch ******************************************************/
+   /** a search of the material and pieces of the positions of this 
+    *  database.
+    */
+   public MaterialSearch newMaterialSearch () 
+          throws IOException {
+      return new MaterialSearch(getMaterialIndex(), pgn);
+   }
+
+   /* getGame ****************************************************************/
+   /** reads game n.
+    */
+   public ChessGame getGame (int n) 
+          throws InvalidGameFormatException,
+	         IllegalMoveException,
+		 AmbiguousMoveException,
+		 IOException {
+      return pgn.getGame(n);
+   }
+
+   /* close ******************************************************************/
+   public void close () 
+          throws IOException {
+      try {
+         if (pgn != null)
+	    pgn.close();
+      }
+      finally {
+         if (index != null)
+	    index.close();
+	 if (positions != null)
+	    positions.close();
+	 if (materials != null)
+	    materials.close();
+      }
+   }
+}
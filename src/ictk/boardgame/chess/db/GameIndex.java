@@ -0,0 +1,336 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess.db;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import ictk.util.Log;
+import ictk.boardgame.chess.ChessGameInfo;
+import ictk.boardgame.chess.io.PGNFile;
+import ictk.boardgame.chess.io.PGNReader;
+
+/* GameIndex *****************************************************************/
+/** GameIndex is an index of the game information of a file of games, kept
+ *  in a file of its own.  Each field is stored as a column, an array with
+ *  one value for each game, so that looking through millions of games for
+ *  one field reads only that field:
+ *  <ul>
+ *  <li>where the game begins in its file
+ *  <li>White, Black and Event, as numbers of strings
+ *  <li>the date, as yyyymmdd with 0 for unknown parts
+ *  <li>the ratings of White and Black (0 if unknown)
+ *  <li>the ECO code, as 0 (A00) to 499 (E99) or NO_ECO.  Sub-codes
+ *      (B22p) are dropped.
+ *  <li>the result, as ChessResult.UNDECIDED, WHITE_WIN ...
+ *  </ul>
+ *  The strings are sorted, so a string's number is found with a binary 
+ *  search.  For each string there is also the list of games it is in,
+ *  which lets the games of one player be found without looking at any
+ *  others.
+ *  <p>
+ *  The columns are memory mapped when the index is opened, so only the
+ *  strings are read up front.  The index is never changed once written
+ *  and may be used by many threads at once.
+ *
+ *  @see GameIndexWriter
+ *  @see GameQuery
+ */
+public class GameIndex implements Closeable {
+      /** mask for Log.debug() */
+   public static final long DEBUG = Log.Database;
+
+   public static final int MAGIC   = 0x49435449,  //ICTI
+                           VERSION = 1;
+
+      /** the number of a string that isn't there */
+   public static final int   NONE   = 0;
+      /** the game had no ECO code */
+   public static final short NO_ECO = -1;
+
+      /** the size of the header of the file */
+   protected static final int HEADER_SIZE = 32;
+
+   protected File             file;
+   protected RandomAccessFile raf;
+   protected FileChannel      channel;
+      /** where the next column begins while mapping */
+   private   long             position;
+
+   protected int         count;
+   protected long        sourceLength;
+      /** the strings by number; strings[NONE] is null */
+   protected String[]    strings;
+
+   protected LongBuffer  offsets;
+   protected IntBuffer   white, 
+                         black, 
+                         event, 
+                         date,
+      /** postings[postStart[s]] to postings[postStart[s + 1]] are the 
+       *  games string s is in */
+                         postStart,
+                         postings;
+   protected ShortBuffer whiteElo,
+                         blackElo,
+                         eco;
+   protected ByteBuffer  result;
+
+   //constructors//////////////////////////////////////////////////////////////
+   public GameIndex (File _file) 
+          throws IOException {
+      DataInputStream in = null;
+      int     stringCount  = 0,
+              postingCount = 0,
+	      stringBytes  = 0;
+      byte[]  header = new byte[HEADER_SIZE],
+              strs   = null;
+
+      file    = _file;
+      raf     = new RandomAccessFile(file, "r");
+      channel = raf.getChannel();
+
+      try {
+	 raf.readFully(header);
+	 in = new DataInputStream(new ByteArrayInputStream(header));
+
+	 if (in.readInt() != MAGIC)
+	    throw new IOException(file + " is not a game index");
+	 if (in.readInt() != VERSION)
+	    throw new IOException(file + " is an unsupported index version");
+
+	 count        = in.readInt();
+	 stringCount  = in.readInt();
+	 postingCount = in.readInt();
+	 stringBytes  = in.readInt();
+	 sourceLength = in.readLong();
+
+	 strs = new byte[stringBytes];
+	 raf.readFully(strs);
+	 in = new DataInputStream(new ByteArrayInputStream(strs));
+	 strings = new String[stringCount + 1];
+	 for (int i=1; i <= stringCount; i++)
+	    strings[i] = in.readUTF();
+
+	 position  = pad(HEADER_SIZE + stringBytes);
+	 offsets   = map(count * 8L).asLongBuffer();
+	 white     = map(count * 4L).asIntBuffer();
+	 black     = map(count * 4L).asIntBuffer();
+	 event     = map(count * 4L).asIntBuffer();
+	 date      = map(count * 4L).asIntBuffer();
+	 postStart = map((stringCount + 2) * 4L).asIntBuffer();
+	 postings  = map(postingCount * 4L).asIntBuffer();
+	 whiteElo  = map(count * 2L).asShortBuffer();
+	 blackElo  = map(count * 2L).asShortBuffer();
+	 eco       = map(count * 2L).asShortBuffer();
+	 result    = map(count);
+      }
+      catch (IOException e) {
+         close();
+	 throw e;
+      }
+
+      if (Log.debug)
+         Log.debug(DEBUG, "opened index of " + count + " games: " + file);
+   }
+
+   /* map ********************************************************************/
+   /** maps the next column of the file.
+    */
+   private MappedByteBuffer map (long size) 
+          throws IOException {
+      MappedByteBuffer buf = null;
+
+         if (position + size > channel.size())
+	    throw new IOException(file + " is truncated");
+
+	 buf = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+	 position = pad(position + size);
+
+      return buf;
+   }
+
+   private static long pad (long pos) {
+      return (pos + 7) & ~7L;
+   }
+
+   //Building//////////////////////////////////////////////////////////////////
+   /* build ******************************************************************/
+   /** indexes the games of a PGN file.  Only the tag pairs of each game
+    *  are read.
+    */
+   public static void build (PGNFile pgn, File file, long sourceLength) 
+          throws IOException {
+      GameIndexWriter writer = new GameIndexWriter();
+
+         for (int i=0; i < pgn.size(); i++) {
+	    PGNReader reader = new PGNReader(new StringReader(pgn.getHeader(i)));
+	    writer.add(pgn.getOffset(i), (ChessGameInfo) reader.readGameInfo());
+	 }
+	 writer.write(file, sourceLength);
+   }
+
+   //Access////////////////////////////////////////////////////////////////////
+   /* size *******************************************************************/
+   /** the number of games in the index.
+    */
+   public int size () {
+      return count;
+   }
+
+   /* getSourceLength ********************************************************/
+   /** the length of the file of games when it was indexed.
+    */
+   public long getSourceLength () {
+      return sourceLength;
+   }
+
+   /* getOffset **************************************************************/
+   /** where game n begins in the file of games.
+    */
+   public long getOffset (int n) {
+      return offsets.get(n);
+   }
+
+   /* getOffsets *************************************************************/
+   /** where each game begins in the file of games.
+    */
+   public long[] getOffsets () {
+      long[] offs = new long[count];
+
+         offsets.duplicate().get(offs);
+
+      return offs;
+   }
+
+   public String getWhite (int n)     { return strings[white.get(n)]; }
+   public String getBlack (int n)     { return strings[black.get(n)]; }
+   public String getEvent (int n)     { return strings[event.get(n)]; }
+   /** @return yyyymmdd, with 0 for the parts that aren't known */
+   public int    getDate (int n)      { return date.get(n); }
+   public int    getWhiteRating (int n) { return whiteElo.get(n); }
+   public int    getBlackRating (int n) { return blackElo.get(n); }
+   /** @return ChessResult.UNDECIDED, DRAW, WHITE_WIN or BLACK_WIN */
+   public int    getResult (int n)    { return result.get(n); }
+   /** @return null if the game has no ECO code */
+   public String getECO (int n)       { return shortToEco(eco.get(n)); }
+
+   //Strings///////////////////////////////////////////////////////////////////
+   /* getStringCount *********************************************************/
+   /** the number of different strings (players and events) in the index.
+    */
+   public int getStringCount () {
+      return strings.length - 1;
+   }
+
+   /* getString **************************************************************/
+   /** @return null for NONE */
+   public String getString (int id) {
+      return strings[id];
+   }
+
+   /* getStringId ************************************************************/
+   /** the number of a string, which are numbered in sorted order from 1.
+    *  @return NONE if the string isn't in the index.
+    */
+   public int getStringId (String s) {
+      int i = 0;
+
+         if (s == null)
+	    return NONE;
+	 i = Arrays.binarySearch(strings, 1, strings.length, s);
+
+      return (i < 0) ? NONE : i;
+   }
+
+   /* getGameCount ***********************************************************/
+   /** the number of games a string (as White, Black or the Event) is in.
+    */
+   public int getGameCount (int id) {
+      return postStart.get(id + 1) - postStart.get(id);
+   }
+
+   /* getGames ***************************************************************/
+   /** the games a string (as White, Black or the Event) is in, in order.
+    */
+   public int[] getGames (int id) {
+      int[] games = new int[getGameCount(id)];
+
+         for (int i=0, p=postStart.get(id); i < games.length; i++, p++)
+	    games[i] = postings.get(p);
+
+      return games;
+   }
+
+   //ECO///////////////////////////////////////////////////////////////////////
+   /* ecoToShort *************************************************************/
+   /** "A00" to 0 ... "E99" to 499.
+    *  @return NO_ECO if the code isn't one.
+    */
+   public static short ecoToShort (String code) {
+      char c = 0;
+
+         if (code == null || code.length() < 3)
+	    return NO_ECO;
+	 c = Character.toUpperCase(code.charAt(0));
+	 if (c < 'A' || c > 'E' 
+	     || !Character.isDigit(code.charAt(1))
+	     || !Character.isDigit(code.charAt(2)))
+	    return NO_ECO;
+
+      return (short) ((c - 'A') * 100 
+                      + (code.charAt(1) - '0') * 10 + code.charAt(2) - '0');
+   }
+
+   /* shortToEco *************************************************************/
+   public static String shortToEco (int i) {
+      if (i < 0)
+         return null;
+      return "" + (char) ('A' + i / 100) + (char) ('0' + i / 10 % 10)
+         + (char) ('0' + i % 10);
+   }
+
+   /* close ******************************************************************/
+   /** closes the file.  The mappings are released when they are garbage
+    *  collected.
+    */
+   public void close () 
+          throws IOException {
+      if (raf != null)
+         raf.close();
+   }
+}
@@ -0,0 +1,282 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess.db;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ictk.util.Log;
+import ictk.boardgame.Player;
+import ictk.boardgame.Result;
+import ictk.boardgame.chess.ChessGameInfo;
+import ictk.boardgame.chess.ChessResult;
+
+/* GameIndexWriter ***********************************************************/
+/** GameIndexWriter collects the game information of a file of games, one
+ *  game at a time, and writes it out as a GameIndex.  The columns are kept
+ *  in memory until write() is called; about 40 bytes a game.
+ *
+ *  @see GameIndex
+ */
+public class GameIndexWriter {
+      /** mask for Log.debug() */
+   public static final long DEBUG = GameIndex.DEBUG;
+
+   protected int     count;
+   protected long[]  offsets  = new long[1024];
+   protected int[]   white    = new int[1024],
+                     black    = new int[1024],
+                     event    = new int[1024],
+                     date     = new int[1024];
+   protected short[] whiteElo = new short[1024],
+                     blackElo = new short[1024],
+                     eco      = new short[1024];
+   protected byte[]  result   = new byte[1024];
+
+      /** the strings in the order they were first seen; the number of 
+       *  a string until write() sorts them is its place here plus one */
+   protected List<String>         strings  = new ArrayList<>();
+   protected Map<String,Integer>  stringIds = new HashMap<>();
+
+   //constructors//////////////////////////////////////////////////////////////
+   public GameIndexWriter () {
+   }
+
+   //Adding////////////////////////////////////////////////////////////////////
+   /* add ********************************************************************/
+   /** adds the next game.
+    *  @param offset where the game begins in its file.
+    *  @param gi the game information, or null if it had none.
+    */
+   public void add (long offset, ChessGameInfo gi) {
+      Result res = null;
+
+         if (count == offsets.length)
+	    grow();
+
+	 offsets[count] = offset;
+	 eco[count]     = GameIndex.NO_ECO;
+
+	 if (gi != null) {
+	    white[count]    = stringId(name(gi.getWhite()));
+	    black[count]    = stringId(name(gi.getBlack()));
+	    event[count]    = stringId(gi.getEvent());
+	    date[count]     = gi.getYear() * 10000 + gi.getMonth() * 100 
+	                    + gi.getDay();
+	    whiteElo[count] = toShort(gi.getWhiteRating());
+	    blackElo[count] = toShort(gi.getBlackRating());
+	    eco[count]      = GameIndex.ecoToShort(gi.getECO());
+	    if ((res = gi.getResult()) != null)
+	       result[count] = (byte) ((ChessResult) res).getIndex();
+	 }
+
+	 count++;
+   }
+
+   /* size *******************************************************************/
+   /** the number of games added so far.
+    */
+   public int size () {
+      return count;
+   }
+
+   //Writing///////////////////////////////////////////////////////////////////
+   /* write ******************************************************************/
+   /** writes the index.
+    *  @param sourceLength the length of the file the games are in, which 
+    *                      is kept to tell if the index is out of date.
+    */
+   public void write (File file, long sourceLength) 
+          throws IOException {
+      String[] sorted = strings.toArray(new String[strings.size()]);
+      int[]    rank   = new int[sorted.length + 1],
+               postStart = null,
+	       postings  = null;
+      ByteArrayOutputStream stringBytes = new ByteArrayOutputStream();
+      DataOutputStream out = null;
+
+         //number the strings in sorted order so they can be searched
+	 Arrays.sort(sorted);
+	 for (int i=0; i < sorted.length; i++)
+	    rank[stringIds.get(sorted[i])] = i + 1;
+	 renumber(white, rank);
+	 renumber(black, rank);
+	 renumber(event, rank);
+
+	 //the games each string is in, in order of the games
+	 postStart = new int[sorted.length + 2];
+	 for (int i=0; i < count; i++)
+	    forEachString(i, postStart, null);
+	 for (int i=1; i < postStart.length; i++)
+	    postStart[i] += postStart[i - 1];
+	 postings = new int[postStart[postStart.length - 1]];
+	 for (int i=count - 1; i >= 0; i--)
+	    forEachString(i, postStart, postings);
+	 //filling moved each start down one place: shift it back, the last
+	 //being the end of the list of the last string
+	 System.arraycopy(postStart, 1, postStart, 0, postStart.length - 1);
+	 postStart[postStart.length - 1] = postings.length;
+
+	 try (DataOutputStream strs = new DataOutputStream(stringBytes)) {
+	    for (int i=0; i < sorted.length; i++)
+	       strs.writeUTF(sorted[i]);
+	 }
+
+	 out = new DataOutputStream(new BufferedOutputStream(
+	          new FileOutputStream(file), 1 << 16));
+	 try {
+	    out.writeInt(GameIndex.MAGIC);
+	    out.writeInt(GameIndex.VERSION);
+	    out.writeInt(count);
+	    out.writeInt(sorted.length);
+	    out.writeInt(postings.length);
+	    out.writeInt(stringBytes.size());
+	    out.writeLong(sourceLength);
+	    stringBytes.writeTo(out);
+	    pad(out, stringBytes.size());
+
+	    for (int i=0; i < count; i++)
+	       out.writeLong(offsets[i]);
+	    writeInts(out, white, count);
+	    writeInts(out, black, count);
+	    writeInts(out, event, count);
+	    writeInts(out, date, count);
+	    writeInts(out, postStart, postStart.length);
+	    writeInts(out, postings, postings.length);
+	    writeShorts(out, whiteElo, count);
+	    writeShorts(out, blackElo, count);
+	    writeShorts(out, eco, count);
+	    out.write(result, 0, count);
+	    pad(out, count);
+	 }
+	 finally {
+	    out.close();
+	 }
+
+	 if (Log.debug)
+	    Log.debug(DEBUG, "wrote index of " + count + " games with " 
+	       + sorted.length + " strings to " + file);
+   }
+
+   //Helpers///////////////////////////////////////////////////////////////////
+   /* forEachString **********************************************************/
+   /** counts game i once for each different string it has, or, if postings
+    *  is given, places it in the postings of those strings.  Filling is
+    *  done from the last game back so each list ends up in order.
+    */
+   private void forEachString (int i, int[] postStart, int[] postings) {
+      int w = white[i], 
+          b = black[i],
+	  e = event[i];
+
+         post(w, i, postStart, postings);
+	 if (b != w)
+	    post(b, i, postStart, postings);
+	 if (e != w && e != b)
+	    post(e, i, postStart, postings);
+   }
+
+   private void post (int id, int game, int[] postStart, int[] postings) {
+      if (id == GameIndex.NONE)
+         return;
+      if (postings == null)
+         postStart[id + 1]++;
+      else
+         postings[--postStart[id + 1]] = game;
+   }
+
+   /* stringId ***************************************************************/
+   protected int stringId (String s) {
+      Integer id = null;
+
+         if (s == null || s.length() == 0)
+	    return GameIndex.NONE;
+
+	 if ((id = stringIds.get(s)) == null) {
+	    strings.add(s);
+	    id = strings.size();
+	    stringIds.put(s, id);
+	 }
+
+      return id;
+   }
+
+   protected static String name (Player p) {
+      return (p == null) ? null : p.getName();
+   }
+
+   protected static short toShort (int i) {
+      return (short) Math.max(0, Math.min(Short.MAX_VALUE, i));
+   }
+
+   private static void renumber (int[] ids, int[] rank) {
+      for (int i=0; i < ids.length; i++)
+         ids[i] = rank[ids[i]];
+   }
+
+   private void grow () {
+      int len = offsets.length * 2;
+
+         offsets  = Arrays.copyOf(offsets, len);
+	 white    = Arrays.copyOf(white, len);
+	 black    = Arrays.copyOf(black, len);
+	 event    = Arrays.copyOf(event, len);
+	 date     = Arrays.copyOf(date, len);
+	 whiteElo = Arrays.copyOf(whiteElo, len);
+	 blackElo = Arrays.copyOf(blackElo, len);
+	 eco      = Arrays.copyOf(eco, len);
+	 result   = Arrays.copyOf(result, len);
+   }
+
+   private static void writeInts (DataOutputStream out, int[] a, int len) 
+          throws IOException {
+      for (int i=0; i < len; i++)
+         out.writeInt(a[i]);
+      pad(out, len * 4L);
+   }
+
+   private static void writeShorts (DataOutputStream out, short[] a, int len) 
+          throws IOException {
+      for (int i=0; i < len; i++)
+         out.writeShort(a[i]);
+      pad(out, len * 2L);
+   }
+
+   /** each part of the file starts on an 8 byte boundary */
+   private static void pad (DataOutputStream out, long len) 
+          throws IOException {
+      for (long i=len; (i & 7) != 0; i++)
+         out.write(0);
+   }
+}
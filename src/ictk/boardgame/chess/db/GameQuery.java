@@ -0,0 +1,420 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess.db;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/* GameQuery *****************************************************************/
+/** GameQuery finds the games of a GameIndex that match the criteria set on
+ *  it.  Criteria not set match every game.  For example, the games
+ *  Carlsen lost with Black from 2020 to 2024:
+ *  <pre>
+ *  GameQuery q = new GameQuery(index);
+ *  q.setBlack("Carlsen, Magnus");
+ *  q.setYears(2020, 2024);
+ *  q.setResult(ChessResult.WHITE_WIN);
+ *  int[] games = q.find();
+ *  </pre>
+ *  When a player or event is given only the games of that string are 
+ *  looked at (the shortest such list if there are several).  Otherwise
+ *  the column of the first criterion is scanned from start to end into a
+ *  bit set of the games, and the other criteria look only at the games 
+ *  still set.
+ *  <br>
+ *  A query may be changed and run again.  It is not safe to use one query
+ *  from several threads, but any number of queries may share an index.
+ */
+public class GameQuery {
+      /** for the criteria that aren't set */
+   public static final int ANY = -1;
+
+   protected GameIndex index;
+
+   protected String white,
+                    black,
+		    player,
+		    event;
+   protected int    dateFrom,
+                    dateTo,
+		    result,
+		    ecoFrom,
+		    ecoTo,
+		    whiteMin,
+		    whiteMax,
+		    blackMin,
+		    blackMax,
+		    limit;
+
+      /** the columns filter() can look at */
+   private static final int WHITE = 0, BLACK = 1, EVENT = 2, DATE = 3,
+                            RESULT = 4, ECO = 5, WHITE_ELO = 6, BLACK_ELO = 7;
+
+      /** the games matching so far and how many; see search() */
+   private int[]    games;
+   private int      n;
+   private long[]   bits;
+
+   //constructors//////////////////////////////////////////////////////////////
+   public GameQuery (GameIndex _index) {
+      index = _index;
+      clear();
+   }
+
+   //Criteria//////////////////////////////////////////////////////////////////
+   /* clear ******************************************************************/
+   /** removes all the criteria, so every game matches.
+    */
+   public void clear () {
+      white = black = player = event = null;
+      dateFrom = 0;
+      dateTo   = Integer.MAX_VALUE;
+      result   = ANY;
+      ecoFrom  = ecoTo = ANY;
+      whiteMin = blackMin = 0;
+      whiteMax = blackMax = Integer.MAX_VALUE;
+      limit    = Integer.MAX_VALUE;
+   }
+
+   /** the name as it is in the White tag, or null for any */
+   public void setWhite (String name)  { white = name; }
+   /** the name as it is in the Black tag, or null for any */
+   public void setBlack (String name)  { black = name; }
+   /** a player of either color, or null for any */
+   public void setPlayer (String name) { player = name; }
+   /** the event as it is in the Event tag, or null for any */
+   public void setEvent (String name)  { event = name; }
+
+   /* setDateRange ***********************************************************/
+   /** the dates, as yyyymmdd, the games must be played between (inclusive).
+    *  Unknown parts of a date are 0, so a game known only to be from 2020
+    *  is 20200000.
+    */
+   public void setDateRange (int from, int to) {
+      dateFrom = from;
+      dateTo   = to;
+   }
+
+   /* setYears ***************************************************************/
+   /** the years the games must be played in (inclusive).
+    */
+   public void setYears (int from, int to) {
+      setDateRange(from * 10000, to * 10000 + 1231);
+   }
+
+   /* setResult **************************************************************/
+   /** @param res ChessResult.WHITE_WIN, BLACK_WIN, DRAW, UNDECIDED or ANY
+    */
+   public void setResult (int res) {
+      result = res;
+   }
+
+   /* setECORange ************************************************************/
+   /** the ECO codes of the games, such as "B20" to "B99" (inclusive), or 
+    *  null for any.
+    */
+   public void setECORange (String from, String to) {
+      if (from == null) {
+         ecoFrom = ecoTo = ANY;
+	 return;
+      }
+      ecoFrom = GameIndex.ecoToShort(from);
+      ecoTo   = GameIndex.ecoToShort((to == null) ? from : to);
+      if (ecoFrom == GameIndex.NO_ECO || ecoTo == GameIndex.NO_ECO)
+         throw new IllegalArgumentException(
+	    "not an ECO code: " + from + " / " + to);
+   }
+
+   /** White's rating must be from min to max (inclusive) */
+   public void setWhiteRating (int min, int max) {
+      whiteMin = min;
+      whiteMax = max;
+   }
+
+   /** Black's rating must be from min to max (inclusive) */
+   public void setBlackRating (int min, int max) {
+      blackMin = min;
+      blackMax = max;
+   }
+
+   /** find() returns no more than this many games (the first ones) */
+   public void setLimit (int max) {
+      limit = max;
+   }
+
+   //Searching/////////////////////////////////////////////////////////////////
+   /* find *******************************************************************/
+   /** the numbers of the games that match, in order.
+    */
+   public int[] find () {
+      int[] found = null;
+      int   m     = 0;
+      long  word  = 0;
+
+	 if (!search())
+	    return new int[0];
+
+	 if (games != null)
+	    return Arrays.copyOf(games, Math.min(n, limit));
+
+	 found = new int[Math.min(limit, matches())];
+	 if (bits == null)
+	    for (; m < found.length; m++)
+	       found[m] = m;
+	 else
+	    for (int k=0; m < found.length; k++)
+	       for (word = bits[k]; word != 0 && m < found.length; 
+	            word &= word - 1)
+		  found[m++] = (k << 6) + Long.numberOfTrailingZeros(word);
+
+      return found;
+   }
+
+   /* findOffsets ************************************************************/
+   /** where the games that match begin in the file of games, in order.
+    */
+   public long[] findOffsets () {
+      int[]  found = find();
+      long[] offs  = new long[found.length];
+
+         for (int i=0; i < found.length; i++)
+	    offs[i] = index.getOffset(found[i]);
+
+      return offs;
+   }
+
+   /* count ******************************************************************/
+   /** the number of games that match (no more than the limit).
+    */
+   public int count () {
+      return (search()) ? Math.min(matches(), limit) : 0;
+   }
+
+   /* matches ****************************************************************/
+   /** the number of games search() left.
+    */
+   private int matches () {
+      int c = 0;
+
+	 if (games != null)
+	    c = n;
+	 else if (bits == null)
+	    c = index.size();
+	 else
+	    for (int k=0; k < bits.length; k++)
+	       c += Long.bitCount(bits[k]);
+
+      return c;
+   }
+
+   /* search *****************************************************************/
+   /** narrows the games down to those that match.  They are then either 
+    *  in games, or, after a scan of all the games, the bits set in bits,
+    *  or, if there are no criteria, all the games.
+    *
+    *  @return false if no game can match.
+    */
+   protected boolean search () {
+      int   w      = stringId(white),
+            b      = stringId(black),
+	    p      = stringId(player),
+	    e      = stringId(event),
+	    source = GameIndex.NONE,
+	    from   = 0;
+
+	 games = null;
+	 bits  = null;
+	 n     = 0;
+
+	 //a string that isn't there is in no games
+	 if (w < 0 || b < 0 || p < 0 || e < 0)
+	    return false;
+
+	 //start from the games of the least used string asked for, or else
+	 //from all the games.  Each criterion then narrows the games down 
+	 //one column at a time, which keeps the loops over the columns tight
+	 source = fewest(fewest(w, b), fewest(p, e));
+	 if (source != GameIndex.NONE) {
+	    from  = index.postStart.get(source);
+	    n     = index.postStart.get(source + 1) - from;
+	    games = new int[n];
+	    for (int i=0; i < n; i++)
+	       games[i] = index.postings.get(from + i);
+	 }
+
+	 if (w != GameIndex.NONE)
+	    filter(WHITE, w, w);
+	 if (b != GameIndex.NONE)
+	    filter(BLACK, b, b);
+	 if (p != GameIndex.NONE)
+	    filterPlayer(p);
+	 if (e != GameIndex.NONE)
+	    filter(EVENT, e, e);
+	 if (result != ANY)
+	    filter(RESULT, result, result);
+	 if (dateFrom > 0 || dateTo < Integer.MAX_VALUE)
+	    filter(DATE, dateFrom, dateTo);
+	 if (ecoFrom != ANY)
+	    filter(ECO, ecoFrom, ecoTo);
+	 if (whiteMin > 0 || whiteMax < Integer.MAX_VALUE)
+	    filter(WHITE_ELO, whiteMin, whiteMax);
+	 if (blackMin > 0 || blackMax < Integer.MAX_VALUE)
+	    filter(BLACK_ELO, blackMin, blackMax);
+
+      return true;
+   }
+
+   //Filters//////////////////////////////////////////////////////////////////
+   /* filter *****************************************************************/
+   /** keeps the games whose value in a column is from min to max.  With no
+    *  list of games to start from, the first filter scans the whole column
+    *  into a bit set; the rest only look at the games still set.
+    */
+   private void filter (int col, int min, int max) {
+      int  size = index.size(),
+           m    = 0,
+	   j    = 0,
+	   g    = 0;
+      long word = 0,
+           rest = 0;
+
+	 if (games != null) {
+	    for (int i=0; i < n; i++)
+	       if (match(get(col, g = games[i]), min, max) != 0)
+		  games[m++] = g;
+	    n = m;
+	 }
+	 else if (bits == null) {
+	    bits = new long[(size + 63) >>> 6];
+	    //without branches, as a quarter or a half of the games may match,
+	    //and a loop for each kind of column
+	    switch (col) {
+	       case RESULT: 
+	          scan(index.result, min, max); 
+		  break;
+	       case ECO: 
+	          scan(index.eco, min, max); 
+		  break;
+	       case WHITE_ELO: 
+	          scan(index.whiteElo, min, max); 
+		  break;
+	       case BLACK_ELO: 
+	          scan(index.blackElo, min, max); 
+		  break;
+	       default: 
+	          scan(column(col), min, max); 
+	    }
+	 }
+	 else
+	    for (int k=0; k < bits.length; k++) {
+	       for (word = rest = bits[k]; rest != 0; rest &= rest - 1) {
+		  j = Long.numberOfTrailingZeros(rest);
+		  word &= ~((match(get(col, (k << 6) + j), min, max) ^ 1) << j);
+	       }
+	       bits[k] = word;
+	    }
+   }
+
+   /* scan *******************************************************************/
+   private void scan (IntBuffer col, int min, int max) {
+      for (int i=0, size=col.limit(); i < size; i++)
+         bits[i >>> 6] |= match(col.get(i), min, max) << i;
+   }
+
+   private void scan (ShortBuffer col, int min, int max) {
+      for (int i=0, size=col.limit(); i < size; i++)
+         bits[i >>> 6] |= match(col.get(i), min, max) << i;
+   }
+
+   private void scan (ByteBuffer col, int min, int max) {
+      for (int i=0, size=col.limit(); i < size; i++)
+         bits[i >>> 6] |= match(col.get(i), min, max) << i;
+   }
+
+   /* column *****************************************************************/
+   private IntBuffer column (int col) {
+      switch (col) {
+         case WHITE: return index.white;
+         case BLACK: return index.black;
+         case EVENT: return index.event;
+         default:    return index.date;
+      }
+   }
+
+   /* filterPlayer ***********************************************************/
+   /** keeps the games player p has either color in.  There is always a 
+    *  list of games (those of a string) when this is called.
+    */
+   private void filterPlayer (int p) {
+      int m = 0;
+
+	 for (int i=0, g=0; i < n; i++)
+	    if (index.white.get(g = games[i]) == p 
+	        || index.black.get(g) == p)
+	       games[m++] = g;
+	 n = m;
+   }
+
+   /* get ********************************************************************/
+   private int get (int col, int game) {
+      switch (col) {
+         case WHITE:     return index.white.get(game);
+         case BLACK:     return index.black.get(game);
+         case EVENT:     return index.event.get(game);
+         case DATE:      return index.date.get(game);
+         case RESULT:    return index.result.get(game);
+         case ECO:       return index.eco.get(game);
+         case WHITE_ELO: return index.whiteElo.get(game);
+         default:        return index.blackElo.get(game);
+      }
+   }
+
+   /* match ******************************************************************/
+   /** @return 1 if v is from min to max, otherwise 0 */
+   private static long match (int v, int min, int max) {
+      return (((v - (long) min) | ((long) max - v)) >>> 63) ^ 1;
+   }
+
+   //Helpers///////////////////////////////////////////////////////////////////
+   /** @return NONE for null, -1 if the string isn't in the index */
+   private int stringId (String s) {
+      int id = 0;
+
+         if (s == null)
+	    return GameIndex.NONE;
+	 id = index.getStringId(s);
+
+      return (id == GameIndex.NONE) ? -1 : id;
+   }
+
+   /** of two strings, the one in fewer games */
+   private int fewest (int a, int b) {
+      if (a == GameIndex.NONE) return b;
+      if (b == GameIndex.NONE) return a;
+      return (index.getGameCount(a) <= index.getGameCount(b)) ? a : b;
+   }
+}
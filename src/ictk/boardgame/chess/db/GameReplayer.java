@@ -0,0 +1,224 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess.db;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ictk.util.Log;
+import ictk.boardgame.History;
+import ictk.boardgame.MoveException;
+import ictk.boardgame.chess.ChessBoard;
+import ictk.boardgame.chess.ChessGame;
+import ictk.boardgame.chess.io.PGNFile;
+import ictk.boardgame.chess.io.PGNReader;
+
+/* GameReplayer **************************************************************/
+/** GameReplayer is the base of what replays the games of a PGN file, such
+ *  as the index writers.  The games are replayed on several threads, each
+ *  handed a chunk of games at a time and reusing one game and board.  A
+ *  subclass says which games are read and what is done with each in a 
+ *  Replay of its own, one for each thread.
+ *  <p>
+ *  A game that can't be read is skipped and counted (see 
+ *  getFailedCount()); any other failure stops all the threads and is 
+ *  thrown by replayGames().
+ */
+public abstract class GameReplayer {
+      /** mask for Log.debug() */
+   public static final long DEBUG = Log.Database;
+
+   protected PGNFile pgn;
+   protected int     threads = Runtime.getRuntime().availableProcessors(),
+                     chunkSize;
+
+   protected AtomicInteger nextChunk;
+   protected int           failedCount;
+   protected volatile Throwable failure;
+
+   //constructors//////////////////////////////////////////////////////////////
+   /** @param _chunkSize the number of games handed to a thread at a time
+    */
+   protected GameReplayer (PGNFile _pgn, int _chunkSize) {
+      pgn       = _pgn;
+      chunkSize = _chunkSize;
+   }
+
+   /* setThreads *************************************************************/
+   /** the number of threads replaying games.  The default is the number
+    *  of processors.
+    */
+   public void setThreads (int n) {
+      if (n < 1)
+         throw new IllegalArgumentException("need at least one thread");
+      threads = n;
+   }
+
+   public int getThreads () {
+      return threads;
+   }
+
+   /* getFailedCount *********************************************************/
+   /** the number of games that couldn't be read the last time the games
+    *  were replayed.
+    */
+   public int getFailedCount () {
+      return failedCount;
+   }
+
+   //Replaying/////////////////////////////////////////////////////////////////
+   /* replayGames ************************************************************/
+   /** replays all the games on the threads, each with a newReplay(), and 
+    *  waits for them to finish.  The first failure of any of them is 
+    *  thrown here.
+    */
+   protected void replayGames () 
+          throws IOException,
+	         InterruptedException {
+      ExecutorService pool = Executors.newFixedThreadPool(threads);
+
+         nextChunk   = new AtomicInteger();
+	 failedCount = 0;
+	 failure     = null;
+
+	 try {
+	    for (int i=0; i < threads; i++)
+	       pool.execute(newReplay());
+	 }
+	 finally {
+	    pool.shutdown();
+	    if (!pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS))
+	       pool.shutdownNow();
+	 }
+
+	 if (failure instanceof IOException)
+	    throw (IOException) failure;
+	 if (failure instanceof RuntimeException)
+	    throw (RuntimeException) failure;
+	 if (failure instanceof Error)
+	    throw (Error) failure;
+   }
+
+   /* newReplay **************************************************************/
+   /** the work of one thread.
+    */
+   protected abstract Replay newReplay ();
+
+   /* fail *******************************************************************/
+   /** stops the replaying after the first failure.
+    */
+   protected synchronized void fail (Throwable t) {
+      if (failure == null)
+         failure = t;
+   }
+
+   //Replay////////////////////////////////////////////////////////////////////
+   /** replays chunks of games on a pool thread until there are none left.
+    *  Each game read is handed to replayed() at its start.
+    */
+   protected abstract class Replay implements Runnable {
+      protected ChessGame  game    = new ChessGame();
+      protected ChessBoard board   = (ChessBoard) game.getBoard();
+      protected History    history = game.getHistory();
+
+      public void run () {
+         PGNReader reader = null;
+	 int size = pgn.size(),
+	     number = 0,
+	     first = 0,
+	     last = 0,
+	     failed = 0;
+
+         try {
+	    while (failure == null 
+	           && (first = (number = nextChunk.getAndIncrement()) 
+		               * chunkSize) < size) {
+	       last = Math.min(size, first + chunkSize);
+	       startChunk(number, first, last);
+	       for (int g=first; g < last; g++) {
+	          startGame(g);
+		  if (!accept(g))
+		     continue;
+	          try {
+		     reader = new PGNReader(new StringReader(pgn.getPGN(g)));
+		     reader.setTrusted(pgn.isTrusted());
+		     if (reader.readGame(game) == null)
+		        continue;
+		  }
+		  catch (IOException | MoveException | RuntimeException e) {
+		     if (Log.debug)
+		        Log.debug(DEBUG, "can't read game " + g + ": " + e);
+		     failed++;
+		     continue;
+		  }
+		  replayed(g);
+	       }
+	       endChunk(number);
+	    }
+	    finish();
+	 }
+	 catch (IOException | RuntimeException | Error e) {
+	    fail(e);
+	 }
+	 finally {
+	    synchronized (GameReplayer.this) {
+	       failedCount += failed;
+	    }
+	 }
+      }
+
+      /** a chunk of games, from first up to last, is about to be replayed */
+      protected void startChunk (int number, int first, int last) 
+                throws IOException {
+      }
+
+      /** game g is about to be read, whether it can be or not */
+      protected void startGame (int g) {
+      }
+
+      /** is game g to be read.  By default every game is. */
+      protected boolean accept (int g) {
+         return true;
+      }
+
+      /** game g has been read into game, and is at its start */
+      protected abstract void replayed (int g) 
+                throws IOException;
+
+      /** the games of the chunk are done */
+      protected void endChunk (int number) 
+                throws IOException {
+      }
+
+      /** there are no more chunks */
+      protected void finish () 
+                throws IOException {
+      }
+   }
+}
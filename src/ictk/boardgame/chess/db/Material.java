@@ -0,0 +1,170 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess.db;
+
+import ictk.boardgame.chess.Bitboard;
+import ictk.boardgame.chess.ChessBoard;
+import ictk.boardgame.chess.King;
+import ictk.boardgame.chess.Pawn;
+import ictk.boardgame.chess.Queen;
+
+/* Material ******************************************************************/
+/** Material signatures: the number of each type of piece each side has, 
+ *  packed into the low 40 bits of a long.  Four bits are kept for each of
+ *  the Queens, Rooks, Bishops, Knights and Pawns of White, then the same
+ *  for Black; the Kings aren't counted.  The field of a piece is
+ *  <code>((isBlack ? 5 : 0) + INDEX - 1) * 4</code>, INDEX being 
+ *  Queen.INDEX through Pawn.INDEX.
+ *  <br>
+ *  Signatures are written the usual way, White's pieces first: 
+ *  "KRB vs KR" or "KRBKR".
+ */
+public final class Material {
+      /** the bits of a signature */
+   public static final long MASK = (1L << 40) - 1;
+
+   protected static final String PIECES = "KQRBNP";
+
+   private Material () {}
+
+   /* signature **************************************************************/
+   /** the material on the board.  It's counted from the board's occupancy
+    *  masks, so nothing is created.
+    */
+   public static long signature (ChessBoard board) {
+      long sig = 0;
+
+         for (int i=Queen.INDEX; i <= Pawn.INDEX; i++) {
+	    sig |= (long) Bitboard.count(board.getPieceBits(i, false)) 
+	           << shift(i, false);
+	    sig |= (long) Bitboard.count(board.getPieceBits(i, true)) 
+	           << shift(i, true);
+	 }
+
+      return sig;
+   }
+
+   /* count ******************************************************************/
+   /** the number of one type of piece in a signature.
+    *  @param index Queen.INDEX through Pawn.INDEX
+    */
+   public static int count (long sig, int index, boolean isBlack) {
+      return (int) (sig >>> shift(index, isBlack)) & 0xF;
+   }
+
+   /* add ********************************************************************/
+   /** the signature with one more of a type of piece.  Kings are left 
+    *  out, as they aren't counted.
+    */
+   public static long add (long sig, int index, boolean isBlack) {
+      if (index == King.INDEX)
+         return sig;
+      return sig + (1L << shift(index, isBlack));
+   }
+
+   /* covers *****************************************************************/
+   /** does a signature have at least as many of each type of piece as
+    *  another.
+    */
+   public static boolean covers (long sig, long least) {
+      for (int shift=0; shift < 40; shift += 4)
+         if (((sig >>> shift) & 0xF) < ((least >>> shift) & 0xF))
+	    return false;
+      return true;
+   }
+
+   /* parse ******************************************************************/
+   /** reads a signature like "KRB vs KR", "KRB v KR" or "KRBKR".  In the
+    *  last form the second K begins Black's pieces.  Piece letters may be
+    *  either case.
+    *
+    *  @throws IllegalArgumentException if it isn't a signature.
+    */
+   public static long parse (String str) {
+      long sig = 0;
+      boolean isBlack = false;
+      int kings = 0,
+          index = 0;
+      char c;
+
+         for (int i=0; i < str.length(); i++) {
+	    c = Character.toUpperCase(str.charAt(i));
+	    if (Character.isWhitespace(c))
+	       continue;
+	    if (c == 'V') {
+	       if (isBlack)
+	          throw new IllegalArgumentException(
+		     "more than two sides in signature: " + str);
+	       isBlack = true;
+	       if (i + 1 < str.length() 
+	           && Character.toUpperCase(str.charAt(i + 1)) == 'S')
+	          i++;
+	       continue;
+	    }
+	    if ((index = PIECES.indexOf(c)) < 0)
+	       throw new IllegalArgumentException(
+	          "'" + str.charAt(i) + "' isn't a piece in signature: " + str);
+	    if (index == King.INDEX) {
+	       if (++kings == 2)
+	          isBlack = true;
+	       continue;
+	    }
+	    sig = add(sig, index, isBlack);
+	    if (count(sig, index, isBlack) == 0)
+	       throw new IllegalArgumentException(
+	          "too many pieces in signature: " + str);
+	 }
+
+	 if (!isBlack)
+	    throw new IllegalArgumentException(
+	       "no pieces for Black in signature: " + str);
+
+      return sig;
+   }
+
+   /* toString ***************************************************************/
+   /** the signature as "KRB vs KR".
+    */
+   public static String toString (long sig) {
+      StringBuilder sb = new StringBuilder(24);
+
+         append(sig, false, sb);
+	 sb.append(" vs ");
+	 append(sig, true, sb);
+
+      return sb.toString();
+   }
+
+   private static void append (long sig, boolean isBlack, StringBuilder sb) {
+      sb.append('K');
+      for (int i=Queen.INDEX; i <= Pawn.INDEX; i++)
+         for (int n=count(sig, i, isBlack); n > 0; n--)
+	    sb.append(PIECES.charAt(i));
+   }
+
+   private static int shift (int index, boolean isBlack) {
+      return (((isBlack) ? 5 : 0) + index - 1) << 2;
+   }
+}
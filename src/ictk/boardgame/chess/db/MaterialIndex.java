@@ -0,0 +1,221 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess.db;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+import ictk.util.Log;
+import ictk.boardgame.chess.io.PGNFile;
+
+/* MaterialIndex *************************************************************/
+/** MaterialIndex has, for each game, the material signatures (see 
+ *  Material) its main line went through and the ply each was first
+ *  reached at.  Material only changes on a capture or a promotion, so a
+ *  game has only a few, and each covers an unbroken run of plies: from
+ *  its ply to the ply of the next.  A MaterialSearch can so tell from the
+ *  index alone whether, and where, a game had some material, and which
+ *  games can't possibly match a pattern of pieces.
+ *  <p>
+ *  Each entry is a long: the signature in bits 0-39 and the ply in bits
+ *  40-62.  The last entry of a game has the signature END and one more
+ *  than the last ply of the game; its bit 63 is set if Black moved first.
+ *  A game that couldn't be read has no entries.  After a 32 byte header 
+ *  come the number of the first entry of each game (and the number of 
+ *  entries), then the entries.  The file is memory mapped and never 
+ *  changed, so it may be read by many threads at once.
+ *
+ *  @see MaterialIndexWriter
+ *  @see MaterialSearch
+ */
+public class MaterialIndex implements Closeable {
+      /** mask for Log.debug() */
+   public static final long DEBUG = Log.Database;
+
+   public static final int MAGIC   = 0x4943544D,  //ICTM
+                           VERSION = 1;
+
+   public static final int HEADER_SIZE = 32;
+
+      /** the signature of the last entry of a game */
+   public static final long END = Material.MASK;
+      /** set in the last entry of a game that Black began */
+   public static final long BLACK_FIRST = Long.MIN_VALUE;
+
+      /** entries are mapped in parts of this many (1GB) */
+   protected static final int SEGMENT_BITS = 27;
+   protected static final int SEGMENT_MASK = (1 << SEGMENT_BITS) - 1;
+
+   protected File         file;
+   protected RandomAccessFile raf;
+   protected int          gameCount;
+   protected long         size;
+   protected long         sourceLength;
+   protected LongBuffer   offsets;
+   protected LongBuffer[] segments;
+
+   //constructors//////////////////////////////////////////////////////////////
+   public MaterialIndex (File _file) 
+          throws IOException {
+      FileChannel channel = null;
+      long start = 0;
+
+      file    = _file;
+      raf     = new RandomAccessFile(file, "r");
+      channel = raf.getChannel();
+
+      try {
+         if (raf.readInt() != MAGIC)
+	    throw new IOException(file + " is not a material index");
+	 if (raf.readInt() != VERSION)
+	    throw new IOException(file + " is an unsupported index version");
+	 gameCount    = raf.readInt();
+	 raf.readInt();
+	 size         = raf.readLong();
+	 sourceLength = raf.readLong();
+
+	 start = HEADER_SIZE + (gameCount + 1) * 8L;
+	 if (start + size * 8 > channel.size())
+	    throw new IOException(file + " is truncated");
+
+	 offsets = channel.map(FileChannel.MapMode.READ_ONLY, 
+	                       HEADER_SIZE, (gameCount + 1) * 8L)
+		   .asLongBuffer();
+	 segments = new LongBuffer[
+	    (int) ((size + SEGMENT_MASK) >>> SEGMENT_BITS)];
+	 for (int i=0; i < segments.length; i++) {
+	    long first = (long) i << SEGMENT_BITS;
+	    segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+	                     start + first * 8,
+	                     Math.min(SEGMENT_MASK + 1L, size - first) * 8)
+			  .asLongBuffer();
+	 }
+      }
+      catch (IOException e) {
+         close();
+	 throw e;
+      }
+
+      if (Log.debug)
+         Log.debug(DEBUG, "opened material index of " + gameCount 
+	    + " games: " + file);
+   }
+
+   //Building//////////////////////////////////////////////////////////////////
+   /* build ******************************************************************/
+   /** indexes the material of the games of a PGN file, with as many 
+    *  threads as there are processors.
+    *
+    *  @return the number of games that couldn't be read, and so weren't
+    *          indexed.
+    */
+   public static int build (PGNFile pgn, File file, long sourceLength) 
+          throws IOException,
+	         InterruptedException {
+      MaterialIndexWriter writer = new MaterialIndexWriter(pgn);
+
+         writer.write(file, sourceLength);
+
+      return writer.getFailedCount();
+   }
+
+   //Access////////////////////////////////////////////////////////////////////
+   /* getGameCount ***********************************************************/
+   /** the number of games in the file that was indexed.
+    */
+   public int getGameCount () {
+      return gameCount;
+   }
+
+   /* size *******************************************************************/
+   /** the number of entries, for all the games.
+    */
+   public long size () {
+      return size;
+   }
+
+   /* getSourceLength ********************************************************/
+   /** the length of the file of games when it was indexed.
+    */
+   public long getSourceLength () {
+      return sourceLength;
+   }
+
+   /* getFirstEntry **********************************************************/
+   /** the number of the first entry of game n.  The entries of the game
+    *  go up to the first entry of game n + 1.
+    */
+   public long getFirstEntry (int n) {
+      return offsets.get(n);
+   }
+
+   public long getEntry (long i) {
+      return segments[(int) (i >>> SEGMENT_BITS)].get((int) i & SEGMENT_MASK);
+   }
+
+   /* getSignature ***********************************************************/
+   /** the material signature of an entry, or END.
+    */
+   public static long getSignature (long entry) {
+      return entry & Material.MASK;
+   }
+
+   /* getPly *****************************************************************/
+   /** the ply an entry's material was first reached at.
+    */
+   public static int getPly (long entry) {
+      return (int) ((entry & ~BLACK_FIRST) >>> 40);
+   }
+
+   /* getSignatures **********************************************************/
+   /** the material signatures of game n, in the order they were reached.
+    */
+   public long[] getSignatures (int n) {
+      long first = getFirstEntry(n);
+      int  count = (int) (getFirstEntry(n + 1) - first);
+      long[] sigs = new long[Math.max(0, count - 1)];
+
+         for (int i=0; i < sigs.length; i++)
+	    sigs[i] = getSignature(getEntry(first + i));
+
+      return sigs;
+   }
+
+   /* close ******************************************************************/
+   /** closes the file.  The mappings are released when they are garbage
+    *  collected.
+    */
+   public void close () 
+          throws IOException {
+      offsets  = null;
+      segments = null;
+      if (raf != null)
+         raf.close();
+   }
+}
@@ -0,0 +1,222 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess.db;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import ictk.util.Log;
+import ictk.boardgame.chess.ChessMove;
+import ictk.boardgame.chess.io.PGNFile;
+
+/* MaterialIndexWriter *******************************************************/
+/** MaterialIndexWriter replays the games of a PGN file and writes the 
+ *  MaterialIndex of them.  The games are replayed on several threads (see
+ *  GameReplayer), each handed a chunk of games at a time; the entries of 
+ *  the chunks are written out in the order of the games as the chunks are
+ *  done.  The material is only counted again after a capture or a 
+ *  promotion.
+ *
+ *  @see MaterialIndex
+ */
+public class MaterialIndexWriter extends GameReplayer {
+      /** mask for Log.debug() */
+   public static final long DEBUG = MaterialIndex.DEBUG;
+
+      /** games handed to a thread at a time */
+   protected static final int CHUNK_SIZE = 256;
+
+   protected Map<Integer,Chunk> waiting;
+   protected int                delivered;
+   protected long[]             offsets;
+   protected long               total;
+   protected DataOutputStream   out;
+
+   //constructors//////////////////////////////////////////////////////////////
+   public MaterialIndexWriter (PGNFile _pgn) {
+      super(_pgn, CHUNK_SIZE);
+   }
+
+   //Writing///////////////////////////////////////////////////////////////////
+   /* write ******************************************************************/
+   /** replays the games and writes the index.
+    *
+    *  @param sourceLength the length of the PGN file, kept in the index
+    *         so it can be told to be out of date.
+    */
+   public void write (File file, long sourceLength) 
+          throws IOException,
+	         InterruptedException {
+      int size = pgn.size();
+
+	 waiting     = new HashMap<>();
+	 delivered   = 0;
+	 offsets     = new long[size + 1];
+	 total       = 0;
+
+	 //the entries go after the header and the offsets
+	 out = new DataOutputStream(new BufferedOutputStream(
+	          new FileOutputStream(file), 1 << 16));
+	 try {
+	    out.write(new byte[MaterialIndex.HEADER_SIZE]);
+	    for (int i=0; i <= size; i++)
+	       out.writeLong(0);
+
+	    replayGames();
+	 }
+	 finally {
+	    out.close();
+	 }
+
+	 offsets[size] = total;
+	 writeHeader(file, sourceLength);
+
+	 if (Log.debug)
+	    Log.debug(DEBUG, "indexed the material of " + size + " games, " 
+	       + total + " entries, " + failedCount + " failed");
+   }
+
+   /* writeHeader ************************************************************/
+   /** fills in the header and offsets once the entries are written.
+    */
+   protected void writeHeader (File file, long sourceLength) 
+          throws IOException {
+      ByteBuffer buf = ByteBuffer.allocate(
+                          MaterialIndex.HEADER_SIZE + offsets.length * 8);
+
+         buf.putInt(MaterialIndex.MAGIC)
+	    .putInt(MaterialIndex.VERSION)
+	    .putInt(offsets.length - 1)
+	    .putInt(0)
+	    .putLong(total)
+	    .putLong(sourceLength);
+	 buf.position(MaterialIndex.HEADER_SIZE);
+	 buf.asLongBuffer().put(offsets);
+	 buf.rewind();
+
+	 try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+	    FileChannel channel = raf.getChannel();
+
+	    while (buf.hasRemaining())
+	       channel.write(buf, buf.position());
+	 }
+   }
+
+   protected Replay newReplay () {
+      return new MaterialReplay();
+   }
+
+   /* deliver ****************************************************************/
+   /** writes out the chunks in the order of their games.
+    */
+   protected synchronized void deliver (int number, Chunk chunk) 
+          throws IOException {
+      int first = 0;
+
+         waiting.put(number, chunk);
+	 while ((chunk = waiting.remove(delivered)) != null) {
+	    first = delivered * CHUNK_SIZE;
+	    for (int i=0; i < chunk.counts.length; i++)
+	       offsets[first + i] = total + chunk.counts[i];
+	    for (int i=0; i < chunk.size; i++)
+	       out.writeLong(chunk.entries[i]);
+	    total += chunk.size;
+	    delivered++;
+	 }
+   }
+
+   //MaterialReplay//////////////////////////////////////////////////////////
+   /** gathers the entries of a chunk of games, then delivers them.  The
+    *  material is counted again only after a capture or a promotion.
+    */
+   protected class MaterialReplay extends Replay {
+      protected Chunk chunk;
+      protected int   first;
+
+      protected void startChunk (int number, int _first, int last) {
+         first = _first;
+	 chunk = new Chunk(last - first);
+      }
+
+      protected void startGame (int g) {
+         //a game that can't be read has no entries
+	 chunk.counts[g - first] = chunk.size;
+      }
+
+      protected void replayed (int g) {
+         ChessMove move = null;
+	 long sig = Material.signature(board);
+	 int  ply = 0;
+
+	 chunk.add(sig);
+	 while (history.hasNext()) {
+	    move = (ChessMove) history.next();
+	    ply++;
+	    if (move.getCasualty() != null || move.getPromotion() != null) {
+	       long s = Material.signature(board);
+	       if (s != sig)
+		  chunk.add(((long) ply << 40) | (sig = s));
+	    }
+	 }
+	 chunk.add(((long) (ply + 1) << 40) | MaterialIndex.END 
+		   | ((board.isBlackMove() == ((ply & 1) == 0))
+		      ? MaterialIndex.BLACK_FIRST : 0));
+      }
+
+      protected void endChunk (int number) 
+                throws IOException {
+         deliver(number, chunk);
+      }
+   }
+
+   //Chunk/////////////////////////////////////////////////////////////////////
+   /** the entries of a chunk of games, waiting to be written.
+    */
+   protected static class Chunk {
+         /** where the entries of each game begin in entries */
+      protected int[]  counts;
+      protected long[] entries = new long[1024];
+      protected int    size;
+
+      protected Chunk (int games) {
+         counts = new int[games];
+      }
+
+      protected void add (long entry) {
+         if (size == entries.length)
+	    entries = Arrays.copyOf(entries, size * 2);
+	 entries[size++] = entry;
+      }
+   }
+}
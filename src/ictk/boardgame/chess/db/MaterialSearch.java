@@ -0,0 +1,326 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess.db;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ictk.util.Log;
+import ictk.boardgame.History;
+import ictk.boardgame.chess.Bitboard;
+import ictk.boardgame.chess.ChessBoard;
+import ictk.boardgame.chess.io.PGNFile;
+
+/* MaterialSearch ************************************************************/
+/** MaterialSearch finds the positions of a collection of games that have
+ *  some material, a pattern of pieces on squares, and a side to move.  
+ *  Criteria not set match every position.  For example, White to move 
+ *  with a Rook and Bishop against a Rook, the White King on g1:
+ *  <pre>
+ *  MaterialSearch s = new MaterialSearch(materialIndex, pgnFile);
+ *  s.setMaterial("KRB vs KR");
+ *  s.addPiece('K', "g1");
+ *  s.setSideToMove(MaterialSearch.WHITE);
+ *  List&lt;PositionHit&gt; hits = s.find();
+ *  </pre>
+ *  The MaterialIndex is looked at first: a game is only replayed if some
+ *  run of its plies has the material asked for and at least the pieces of
+ *  the pattern, and then only those plies are looked at.  Searches of 
+ *  material alone never replay a game.  The games are searched on the
+ *  threads of a GameReplayer.
+ *  <br>
+ *  A search may be changed and run again.  It is not safe to use one 
+ *  search from several threads, but any number may share an index.
+ */
+public class MaterialSearch extends GameReplayer {
+      /** mask for Log.debug() */
+   public static final long DEBUG = MaterialIndex.DEBUG;
+
+      /** for the criteria that aren't set */
+   public static final int ANY   = -1,
+      /** sides to move */
+                           WHITE = 0,
+                           BLACK = 1;
+      /** search() can't tell without the game being read */
+   protected static final int REPLAY = -2;
+
+      /** games handed to a thread at a time */
+   protected static final int CHUNK_SIZE = 1024;
+
+   protected MaterialIndex index;
+
+   protected long   material,
+      /** the least material the pattern needs */
+                    least;
+   protected int    sideToMove;
+      /** the pattern: the type (plus 8 for Black) and square index of 
+       *  each piece */
+   protected int[]  pieces  = new int[0],
+                    squares = new int[0];
+
+   private List<List<PositionHit>> found;
+   private AtomicInteger replayed;
+
+   //constructors//////////////////////////////////////////////////////////////
+   /** @param _pgn the games that were indexed.
+    */
+   public MaterialSearch (MaterialIndex _index, PGNFile _pgn) {
+      super(_pgn, CHUNK_SIZE);
+      index = _index;
+      clear();
+   }
+
+   //Criteria//////////////////////////////////////////////////////////////////
+   /* clear ******************************************************************/
+   /** removes all the criteria, so every position matches.
+    */
+   public void clear () {
+      material   = ANY;
+      least      = 0;
+      sideToMove = ANY;
+      pieces     = new int[0];
+      squares    = new int[0];
+   }
+
+   /* setMaterial ************************************************************/
+   /** the material, exactly, as a signature like "KRB vs KR".
+    *  @see Material#parse(String)
+    */
+   public void setMaterial (String sig) {
+      material = Material.parse(sig);
+   }
+
+   /** the material, exactly, as a signature, or ANY */
+   public void setMaterial (long sig) {
+      material = sig;
+   }
+
+   /* setSideToMove **********************************************************/
+   /** @param side WHITE, BLACK or ANY
+    */
+   public void setSideToMove (int side) {
+      sideToMove = side;
+   }
+
+   /* addPiece ***************************************************************/
+   /** adds a piece to the pattern: a piece that must stand on a square.
+    *
+    *  @param piece the letter of the piece, upper case for White and lower
+    *         case for Black, as in FEN.
+    *  @param square like "e4".
+    *  @throws IllegalArgumentException if either isn't one.
+    */
+   public void addPiece (char piece, String square) {
+      int index = "KQRBNP".indexOf(Character.toUpperCase(piece));
+
+         if (index < 0)
+	    throw new IllegalArgumentException("not a piece: " + piece);
+	 if (square.length() != 2 
+	     || square.charAt(0) < 'a' || square.charAt(0) > 'h'
+	     || square.charAt(1) < '1' || square.charAt(1) > '8')
+	    throw new IllegalArgumentException("not a square: " + square);
+
+	 addPiece(index, Character.isLowerCase(piece),
+	    Bitboard.toIndex(square.charAt(0) - 'a' + 1, 
+	                     square.charAt(1) - '0'));
+   }
+
+   /* addPiece ***************************************************************/
+   /** @param index the type of piece, e.g. Rook.INDEX
+    *  @param square the index of the square (see Square.getBitIndex())
+    */
+   public void addPiece (int index, boolean isBlack, int square) {
+      int n = pieces.length;
+
+         pieces  = Arrays.copyOf(pieces, n + 1);
+	 squares = Arrays.copyOf(squares, n + 1);
+	 pieces[n]  = index | ((isBlack) ? 8 : 0);
+	 squares[n] = square;
+	 least = Material.add(least, index, isBlack);
+   }
+
+   //Searching/////////////////////////////////////////////////////////////////
+   /* find *******************************************************************/
+   /** the first position of each game that matches, in the order of the
+    *  games.  Games that can't be read are skipped (see getFailedCount());
+    *  anything else a search thread throws is thrown here.
+    */
+   public List<PositionHit> find () 
+          throws IOException,
+	         InterruptedException {
+      List<PositionHit> hits = new ArrayList<>();
+      int chunks = (pgn.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+
+         replayed = new AtomicInteger();
+	 found    = new ArrayList<>(chunks);
+	 for (int i=0; i < chunks; i++)
+	    found.add(null);
+
+	 replayGames();
+
+	 for (List<PositionHit> list : found)
+	    hits.addAll(list);
+
+	 if (Log.debug)
+	    Log.debug(DEBUG, "found " + hits.size() + " games, replayed " 
+	       + replayed + " of " + pgn.size());
+
+      return hits;
+   }
+
+   /* findGames **************************************************************/
+   /** the games with a position that matches, in order.
+    */
+   public int[] findGames () 
+          throws IOException,
+	         InterruptedException {
+      List<PositionHit> hits = find();
+      int[] games = new int[hits.size()];
+
+         for (int i=0; i < games.length; i++)
+	    games[i] = hits.get(i).getGame();
+
+      return games;
+   }
+
+   /* getReplayedCount *******************************************************/
+   /** the number of games the last find() had to replay.
+    */
+   public int getReplayedCount () {
+      return (replayed == null) ? 0 : replayed.get();
+   }
+
+   /* newReplay **************************************************************/
+   protected Replay newReplay () {
+      return new SearchReplay();
+   }
+
+   /* search *****************************************************************/
+   /** the first ply of game n that matches.
+    *  @param history of the game read, at its start, or null if it hasn't
+    *         been read.
+    *  @return -1 if none does, or REPLAY if the game has to be read to 
+    *         tell.
+    */
+   protected int search (int n, ChessBoard board, History history) {
+      long first = index.getFirstEntry(n),
+           end   = index.getFirstEntry(n + 1) - 1,
+	   entry = 0,
+	   sig   = 0;
+      boolean blackFirst = false;
+      int from = 0,
+          to   = 0,
+	  ply  = 0,
+	  at   = 0;
+
+         if (end <= first)
+	    return -1;
+	 blackFirst = (index.getEntry(end) & MaterialIndex.BLACK_FIRST) != 0;
+
+	 for (long i=first; i < end; i++) {
+	    entry = index.getEntry(i);
+	    sig   = MaterialIndex.getSignature(entry);
+	    if ((material != ANY && sig != material)
+	        || !Material.covers(sig, least))
+	       continue;
+
+	    from = MaterialIndex.getPly(entry);
+	    to   = MaterialIndex.getPly(index.getEntry(i + 1));
+
+	    //material alone is known from the index
+	    if (pieces.length == 0) {
+	       if (sideToMove != ANY && !isSideToMove(from, blackFirst))
+	          from++;
+	       if (from < to)
+	          return from;
+	       continue;
+	    }
+
+	    if (history == null)
+	       return REPLAY;
+	    //the board is at ply 'at'
+	    for (ply=from; ply < to; ply++) {
+	       for (; at < ply; at++)
+	          history.next();
+	       if ((sideToMove == ANY || isSideToMove(ply, blackFirst))
+	           && matches(board))
+		  return ply;
+	    }
+	 }
+
+      return -1;
+   }
+
+   /* isSideToMove ***********************************************************/
+   private boolean isSideToMove (int ply, boolean blackFirst) {
+      return (((ply & 1) == 1) != blackFirst) == (sideToMove == BLACK);
+   }
+
+   /* matches ****************************************************************/
+   /** is every piece of the pattern on its square.
+    */
+   protected boolean matches (ChessBoard board) {
+      for (int i=0; i < pieces.length; i++)
+         if ((board.getPieceBits(pieces[i] & 7, pieces[i] >= 8)
+	      & Bitboard.bit(squares[i])) == 0)
+	    return false;
+      return true;
+   }
+
+   //SearchReplay/////////////////////////////////////////////////////////////
+   /** searches a chunk of games, reading only those the index can't rule
+    *  in or out, and keeps the hits of the chunk for find().
+    */
+   protected class SearchReplay extends Replay {
+      protected List<PositionHit> hits;
+
+      protected void startChunk (int number, int first, int last) {
+         hits = new ArrayList<>();
+      }
+
+      protected boolean accept (int g) {
+         int ply = (g < index.getGameCount()) ? search(g, null, null) : -1;
+
+	 if (ply >= 0)
+	    hits.add(new PositionHit(g, ply));
+	 return ply == REPLAY;
+      }
+
+      protected void replayed (int g) {
+         int ply = 0;
+
+	 replayed.incrementAndGet();
+	 if ((ply = search(g, board, history)) >= 0)
+	    hits.add(new PositionHit(g, ply));
+      }
+
+      protected void endChunk (int number) {
+         found.set(number, hits);
+      }
+   }
+}
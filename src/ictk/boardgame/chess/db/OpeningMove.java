@@ -0,0 +1,101 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess.db;
+
+import ictk.boardgame.chess.ChessMove;
+
+/* OpeningMove ***************************************************************/
+/** a move played from a position of an OpeningTree, with how often it was
+ *  played, how those games ended, and the average ratings of the players.
+ *
+ *  @see OpeningTree
+ */
+public class OpeningMove {
+   protected ChessMove move;
+   protected int       games,
+                       whiteWins,
+                       draws,
+		       blackWins,
+		       whiteRating,
+		       blackRating;
+
+   public OpeningMove (ChessMove move, int games, 
+                       int whiteWins, int draws, int blackWins,
+		       int whiteRating, int blackRating) {
+      this.move        = move;
+      this.games       = games;
+      this.whiteWins   = whiteWins;
+      this.draws       = draws;
+      this.blackWins   = blackWins;
+      this.whiteRating = whiteRating;
+      this.blackRating = blackRating;
+   }
+
+   /* getMove ****************************************************************/
+   /** the move, made on the board the tree was looked up with.  It has not
+    *  been verified.
+    */
+   public ChessMove getMove () { return move; }
+
+   /* getGames ***************************************************************/
+   /** the number of games the move was played in, including those without
+    *  a result.
+    */
+   public int getGames () { return games; }
+
+   public int getWhiteWins () { return whiteWins; }
+
+   public int getDraws () { return draws; }
+
+   public int getBlackWins () { return blackWins; }
+
+   /* getWhiteScore **********************************************************/
+   /** the share of the points White scored in the games with a result,
+    *  from 0 to 1.
+    *  @return 0 if no game had a result
+    */
+   public double getWhiteScore () {
+      int decided = whiteWins + draws + blackWins;
+
+      return (decided == 0) ? 0 : (whiteWins + draws / 2.0) / decided;
+   }
+
+   /* getWhiteRating *********************************************************/
+   /** the average rating of White in the games White had one.
+    *  @return 0 if none did
+    */
+   public int getWhiteRating () { return whiteRating; }
+
+   /* getBlackRating *********************************************************/
+   /** the average rating of Black in the games Black had one.
+    *  @return 0 if none did
+    */
+   public int getBlackRating () { return blackRating; }
+
+   public String toString () {
+      return move + " " + games + " (+" + whiteWins + " =" + draws 
+         + " -" + blackWins + ")";
+   }
+}
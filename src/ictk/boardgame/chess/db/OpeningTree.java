@@ -0,0 +1,175 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import ictk.util.Log;
+import ictk.boardgame.chess.ChessBoard;
+import ictk.boardgame.chess.io.PGNFile;
+
+/* OpeningTree ***************************************************************/
+/** OpeningTree is an opening explorer: for each position reached in the
+ *  first moves of a collection of games it has the moves played from it,
+ *  how often, how those games ended and how strong the players were.
+ *  <pre>
+ *  OpeningTree tree = new OpeningTree(new File("games.tree"));
+ *  for (OpeningMove m : tree.getMoves(board))
+ *     System.out.println(m);
+ *  </pre>
+ *  The tree is kept as one entry for each position and move, sorted by the
+ *  position's Zobrist key (ChessBoard.getZobristKey()) and then the move,
+ *  so the moves of a position are found with a binary search.  The 
+ *  children of a move are found by making it and looking up the new
+ *  position, so transpositions come together.
+ *  <p>
+ *  The entries are 32 bytes each: the key (long), the move as 
+ *  ChessMove.pack() (short), the average ratings of White and Black 
+ *  (shorts, 0 for none), two unused bytes, then the number of games, 
+ *  White wins, draws and Black wins (ints).  The depth is kept in the 
+ *  last int of the header (see SortedEntryFile for the rest of the file).
+ *  The tree may be read by many threads at once.
+ *
+ *  @see OpeningTreeWriter
+ */
+public class OpeningTree extends SortedEntryFile {
+      /** mask for Log.debug() */
+   public static final long DEBUG = Log.Database;
+
+   public static final int MAGIC   = 0x4943544F,  //ICTO
+                           VERSION = 1;
+
+   public static final int ENTRY_SIZE = 32;
+
+   protected static final int ENTRY_BITS = 5;
+
+   protected int depth;
+
+   //constructors//////////////////////////////////////////////////////////////
+   public OpeningTree (File _file) 
+          throws IOException {
+      super(_file, MAGIC, VERSION, ENTRY_BITS, "an opening tree");
+      depth = extra;
+
+      if (Log.debug)
+         Log.debug(DEBUG, "opened opening tree of " + size 
+	    + " moves: " + file);
+   }
+
+   //Building//////////////////////////////////////////////////////////////////
+   /* build ******************************************************************/
+   /** makes the tree of the games of a PGN file to a depth of so many
+    *  plies, with as many threads as there are processors.
+    *
+    *  @return the number of games that couldn't be read, and so aren't in
+    *          the tree.
+    */
+   public static int build (PGNFile pgn, File file, long sourceLength, 
+                            int depth) 
+          throws IOException,
+	         InterruptedException {
+      OpeningTreeWriter writer = new OpeningTreeWriter(pgn);
+
+         writer.setDepth(depth);
+         writer.write(file, sourceLength);
+
+      return writer.getFailedCount();
+   }
+
+   //Access////////////////////////////////////////////////////////////////////
+   /* getDepth ***************************************************************/
+   /** the number of plies of each game that are in the tree.
+    */
+   public int getDepth () {
+      return depth;
+   }
+
+   public int getEntryMove (long i) { 
+      return segment(i).getShort(position(i) + 8) & 0xFFFF; 
+   }
+
+   public int getEntryWhiteRating (long i) { 
+      return segment(i).getShort(position(i) + 10); 
+   }
+
+   public int getEntryBlackRating (long i) { 
+      return segment(i).getShort(position(i) + 12); 
+   }
+
+   public int getEntryGames (long i) { 
+      return segment(i).getInt(position(i) + 16); 
+   }
+
+   public int getEntryWhiteWins (long i) { 
+      return segment(i).getInt(position(i) + 20); 
+   }
+
+   public int getEntryDraws (long i) { 
+      return segment(i).getInt(position(i) + 24); 
+   }
+
+   public int getEntryBlackWins (long i) { 
+      return segment(i).getInt(position(i) + 28); 
+   }
+
+   //Lookup////////////////////////////////////////////////////////////////////
+   /* getMoves ***************************************************************/
+   /** the moves played from the position on the board, the most played
+    *  first.
+    *  @return an empty list if the position isn't in the tree
+    */
+   public List<OpeningMove> getMoves (ChessBoard board) {
+      List<OpeningMove> moves = new ArrayList<>(4);
+      long key = board.getZobristKey();
+
+         for (long i=find(key); i < size && getEntryKey(i) == key; i++)
+	    moves.add(new OpeningMove(
+	       board.toChessMove(getEntryMove(i)), getEntryGames(i),
+	       getEntryWhiteWins(i), getEntryDraws(i), getEntryBlackWins(i),
+	       getEntryWhiteRating(i), getEntryBlackRating(i)));
+
+	 moves.sort((a, b) -> b.getGames() - a.getGames());
+
+      return moves;
+   }
+
+   /* getGames ***************************************************************/
+   /** the number of games a move was played from the position on the board
+    *  in; games that ended there, or went past the depth of the tree, 
+    *  aren't counted.
+    */
+   public long getGames (ChessBoard board) {
+      long key = board.getZobristKey(),
+           games = 0;
+
+         for (long i=find(key); i < size && getEntryKey(i) == key; i++)
+	    games += getEntryGames(i);
+
+      return games;
+   }
+}
@@ -0,0 +1,423 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess.db;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import ictk.util.Log;
+import ictk.boardgame.chess.ChessGameInfo;
+import ictk.boardgame.chess.ChessMove;
+import ictk.boardgame.chess.ChessResult;
+import ictk.boardgame.chess.io.PGNFile;
+
+/* OpeningTreeWriter *********************************************************/
+/** OpeningTreeWriter replays the first moves of the games of a PGN file 
+ *  and writes the OpeningTree of them.
+ *  <p>
+ *  The games are replayed on several threads (see GameReplayer).  Each 
+ *  thread adds up the moves it sees in a partial tree of its own, a hash
+ *  table of (position, move) (see setTableSize()).  When the table fills
+ *  up it is sorted and written out as a run, and the thread starts a new
+ *  one.  Once all the games are done the runs are merged (see 
+ *  SortedRunWriter), the counts of the same move from the same position
+ *  added together, into the tree.  Memory use doesn't grow with the 
+ *  number of games, so collections with hundreds of millions of positions
+ *  can be explored.
+ *
+ *  @see OpeningTree
+ */
+public class OpeningTreeWriter extends SortedRunWriter {
+      /** mask for Log.debug() */
+   public static final long DEBUG = OpeningTree.DEBUG;
+
+      /** games handed to a thread at a time */
+   protected static final int CHUNK_SIZE = 64;
+
+   protected int depth     = 40,
+                 tableSize = 1 << 20;
+
+      /** the sum of the entries being merged for one move */
+   protected MoveRun sum;
+
+   //constructors//////////////////////////////////////////////////////////////
+   public OpeningTreeWriter (PGNFile _pgn) {
+      super(_pgn, CHUNK_SIZE);
+   }
+
+   /* setDepth ***************************************************************/
+   /** the number of plies (half moves) of each game put in the tree.  The
+    *  default is 40, the first 20 moves.
+    */
+   public void setDepth (int plies) {
+      if (plies < 1)
+         throw new IllegalArgumentException("depth must be positive");
+      depth = plies;
+   }
+
+   public int getDepth () {
+      return depth;
+   }
+
+   /* setTableSize ***********************************************************/
+   /** the number of different moves each thread adds up in memory before 
+    *  writing them out as a run.  It's rounded up to a power of two and 
+    *  each takes about 70 bytes.  The default is 2^20.
+    */
+   public void setTableSize (int n) {
+      if (n < 1)
+         throw new IllegalArgumentException("table size must be positive");
+      tableSize = n;
+   }
+
+   public int getTableSize () {
+      return tableSize;
+   }
+
+   //Writing///////////////////////////////////////////////////////////////////
+   /* write ******************************************************************/
+   /** replays the games and writes the tree.
+    *
+    *  @param sourceLength the length of the PGN file, kept in the tree
+    *         so it can be told to be out of date.
+    */
+   public void write (File file, long sourceLength) 
+          throws IOException,
+	         InterruptedException {
+         super.write(file, sourceLength);
+
+	 if (Log.debug)
+	    Log.debug(DEBUG, "made the opening tree of " + pgn.size() 
+	       + " games from " + runs.size() + " runs, " 
+	       + failedCount + " failed");
+   }
+
+   protected Replay newReplay () {
+      return new TreeReplay();
+   }
+
+   /* spill ******************************************************************/
+   /** sorts a thread's table by key and move, writes it out as a run and 
+    *  empties it.
+    */
+   protected void spill (Table table) 
+          throws IOException {
+      DataOutputStream out = null;
+      int n = table.count,
+          s = 0;
+      long[] order = new long[n],
+             sortKeys = new long[n];
+
+         //the slots in use, first by move, then (stable) by key
+         for (int i=0, j=0; i < table.keys.length; i++)
+	    if (table.games[i] != 0) {
+	       sortKeys[j] = table.moves[i] & 0xFFFF;
+	       order[j++]  = i;
+	    }
+	 RadixSort.sort(sortKeys, order, n);
+	 for (int j=0; j < n; j++)
+	    sortKeys[j] = table.keys[(int) order[j]];
+	 RadixSort.sort(sortKeys, order, n);
+
+	 out = newRun();
+	 try {
+	    for (int j=0; j < n; j++) {
+	       s = (int) order[j];
+	       out.writeLong(table.keys[s]);
+	       out.writeShort(table.moves[s]);
+	       out.writeInt(table.games[s]);
+	       out.writeInt(table.whiteWins[s]);
+	       out.writeInt(table.draws[s]);
+	       out.writeInt(table.blackWins[s]);
+	       out.writeInt(table.whiteRated[s]);
+	       out.writeInt(table.blackRated[s]);
+	       out.writeLong(table.whiteEloSum[s]);
+	       out.writeLong(table.blackEloSum[s]);
+	    }
+	 }
+	 finally {
+	    out.close();
+	 }
+
+	 table.clear();
+   }
+
+   //Merging///////////////////////////////////////////////////////////////////
+   protected Run openRun (File file) 
+             throws IOException {
+      return new MoveRun(file);
+   }
+
+   protected void writeHeader (DataOutputStream out, long sourceLength) 
+             throws IOException {
+      SortedEntryFile.writeHeader(out, OpeningTree.MAGIC, 
+         OpeningTree.VERSION, 0, sourceLength, pgn.size(), depth);
+      sum = new MoveRun();
+   }
+
+   /* mergeEntry *************************************************************/
+   /** adds up the entries of the same move from the same position, and 
+    *  writes the sum when the next move comes.
+    */
+   protected int mergeEntry (Run run, DataOutputStream out) 
+             throws IOException {
+      int written = 0;
+
+         if (sum.games > 0 && sum.compareTo(run) != 0) {
+	    sum.writeEntry(out);
+	    sum.games = 0;
+	    written = 1;
+	 }
+	 sum.add((MoveRun) run);
+
+      return written;
+   }
+
+   protected int endMerge (DataOutputStream out) 
+             throws IOException {
+      if (sum.games == 0)
+         return 0;
+      sum.writeEntry(out);
+      return 1;
+   }
+
+   //TreeReplay////////////////////////////////////////////////////////////////
+   /** adds the first moves of a thread's games to its table, and spills it
+    *  when it is full.
+    */
+   protected class TreeReplay extends Replay {
+      protected Table table = new Table(tableSize);
+
+      protected void replayed (int g) 
+                throws IOException {
+         ChessGameInfo gi = (ChessGameInfo) game.getGameInfo();
+	 int result   = ChessResult.UNDECIDED,
+	     whiteElo = 0,
+	     blackElo = 0;
+	 long key = 0;
+
+	 if (gi != null) {
+	    if (gi.getResult() != null)
+	       result = ((ChessResult) gi.getResult()).getIndex();
+	    whiteElo = gi.getWhiteRating();
+	    blackElo = gi.getBlackRating();
+	 }
+
+	 for (int ply=0; ply < depth && history.hasNext(); ply++) {
+	    key = board.getZobristKey();
+	    table.add(key, ((ChessMove) history.next()).getPacked(),
+		      result, whiteElo, blackElo);
+	    if (table.isFull())
+	       spill(table);
+	 }
+      }
+
+      protected void finish () 
+                throws IOException {
+         if (table.count > 0)
+	    spill(table);
+      }
+   }
+
+   //Table/////////////////////////////////////////////////////////////////////
+   /** the partial tree of one thread: the counts of each (position, move)
+    *  seen since its last run, in an open addressing hash table.  A slot
+    *  with no games is free.
+    */
+   protected static class Table {
+      protected long[]  keys,
+                        whiteEloSum,
+			blackEloSum;
+      protected short[] moves;
+      protected int[]   games,
+                        whiteWins,
+			draws,
+			blackWins,
+			whiteRated,
+			blackRated;
+      protected int     mask,
+                        limit,
+                        count;
+
+      protected Table (int size) {
+         //kept at most three quarters full so probes stay short
+         int capacity = Integer.highestOneBit(
+	                   Math.max(2, size + size / 3) - 1) << 1;
+
+	 mask        = capacity - 1;
+	 limit       = size;
+	 keys        = new long[capacity];
+	 whiteEloSum = new long[capacity];
+	 blackEloSum = new long[capacity];
+	 moves       = new short[capacity];
+	 games       = new int[capacity];
+	 whiteWins   = new int[capacity];
+	 draws       = new int[capacity];
+	 blackWins   = new int[capacity];
+	 whiteRated  = new int[capacity];
+	 blackRated  = new int[capacity];
+      }
+
+      /* add *****************************************************************/
+      /** counts a move from a position in one more game.
+       */
+      protected void add (long key, int move, int result, 
+                          int whiteElo, int blackElo) {
+         long h = key ^ (move * 0x9E3779B97F4A7C15L);
+	 int  i = (int) (h ^ (h >>> 32)) & mask;
+
+	    while (games[i] != 0 
+	           && (keys[i] != key || moves[i] != (short) move))
+	       i = (i + 1) & mask;
+
+	    if (games[i] == 0) {
+	       keys[i]  = key;
+	       moves[i] = (short) move;
+	       count++;
+	    }
+	    games[i]++;
+	    switch (result) {
+	       case ChessResult.WHITE_WIN: whiteWins[i]++; break;
+	       case ChessResult.DRAW:      draws[i]++;     break;
+	       case ChessResult.BLACK_WIN: blackWins[i]++; break;
+	    }
+	    if (whiteElo > 0) {
+	       whiteRated[i]++;
+	       whiteEloSum[i] += whiteElo;
+	    }
+	    if (blackElo > 0) {
+	       blackRated[i]++;
+	       blackEloSum[i] += blackElo;
+	    }
+      }
+
+      protected boolean isFull () {
+         return count >= limit;
+      }
+
+      /* clear ***************************************************************/
+      /** frees all the slots; the rest is set again as a slot is taken.
+       */
+      protected void clear () {
+         Arrays.fill(games, 0);
+	 Arrays.fill(whiteWins, 0);
+	 Arrays.fill(draws, 0);
+	 Arrays.fill(blackWins, 0);
+	 Arrays.fill(whiteRated, 0);
+	 Arrays.fill(blackRated, 0);
+	 Arrays.fill(whiteEloSum, 0);
+	 Arrays.fill(blackEloSum, 0);
+	 count = 0;
+      }
+   }
+
+   //MoveRun///////////////////////////////////////////////////////////////////
+   /** the next entry of a sorted run being merged, or the sum of the
+    *  entries for one move being merged.
+    */
+   protected static class MoveRun extends Run {
+      protected long key,
+                     whiteEloSum,
+		     blackEloSum;
+      protected int  move,
+                     games,
+                     whiteWins,
+		     draws,
+		     blackWins,
+		     whiteRated,
+		     blackRated;
+
+      protected MoveRun () {
+      }
+
+      protected MoveRun (File file) 
+                throws IOException {
+         super(file);
+      }
+
+      protected void read () 
+                throws IOException {
+	 key         = in.readLong();
+	 move        = in.readShort() & 0xFFFF;
+	 games       = in.readInt();
+	 whiteWins   = in.readInt();
+	 draws       = in.readInt();
+	 blackWins   = in.readInt();
+	 whiteRated  = in.readInt();
+	 blackRated  = in.readInt();
+	 whiteEloSum = in.readLong();
+	 blackEloSum = in.readLong();
+      }
+
+      /* add *****************************************************************/
+      /** adds the counts of another entry to these, which are cleared 
+       *  first if there are no games.
+       */
+      protected void add (MoveRun run) {
+         if (games == 0) {
+	    key  = run.key;
+	    move = run.move;
+	    whiteWins = draws = blackWins = whiteRated = blackRated = 0;
+	    whiteEloSum = blackEloSum = 0;
+	 }
+	 games       += run.games;
+	 whiteWins   += run.whiteWins;
+	 draws       += run.draws;
+	 blackWins   += run.blackWins;
+	 whiteRated  += run.whiteRated;
+	 blackRated  += run.blackRated;
+	 whiteEloSum += run.whiteEloSum;
+	 blackEloSum += run.blackEloSum;
+      }
+
+      /* writeEntry **********************************************************/
+      /** writes the entry as it is kept in the tree.
+       */
+      protected void writeEntry (DataOutputStream out) 
+                throws IOException {
+         out.writeLong(key);
+	 out.writeShort(move);
+	 out.writeShort(average(whiteEloSum, whiteRated));
+	 out.writeShort(average(blackEloSum, blackRated));
+	 out.writeShort(0);
+	 out.writeInt(games);
+	 out.writeInt(whiteWins);
+	 out.writeInt(draws);
+	 out.writeInt(blackWins);
+      }
+
+      private static int average (long sum, int n) {
+         return (n == 0) ? 0 : (int) ((sum + n / 2) / n);
+      }
+
+      public int compareTo (Run o) {
+         MoveRun run = (MoveRun) o;
+         int c = Long.compareUnsigned(key, run.key);
+	 return (c != 0) ? c : move - run.move;
+      }
+   }
+}
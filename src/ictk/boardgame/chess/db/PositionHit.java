@@ -0,0 +1,64 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess.db;
+
+/* PositionHit ***************************************************************/
+/** a place where a position was reached: a game and the ply (half move) of
+ *  its main line, 0 being the position before the first move.
+ *
+ *  @see PositionIndex
+ */
+public class PositionHit {
+   protected int game,
+                 ply;
+
+   public PositionHit (int game, int ply) {
+      this.game = game;
+      this.ply  = ply;
+   }
+
+   /** the number of the game in its database */
+   public int getGame () { return game; }
+
+   /** the number of moves played, by either side, to reach the position */
+   public int getPly () { return ply; }
+
+   public boolean equals (Object obj) {
+      if (this == obj) return true;
+      if ((obj == null) || (obj.getClass() != this.getClass()))
+         return false;
+
+      PositionHit hit = (PositionHit) obj;
+      return game == hit.game && ply == hit.ply;
+   }
+
+   public int hashCode () {
+      return 31 * game + ply;
+   }
+
+   public String toString () {
+      return "game " + game + " ply " + ply;
+   }
+}
@@ -0,0 +1,173 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import ictk.util.Log;
+import ictk.boardgame.chess.ChessBoard;
+import ictk.boardgame.chess.io.FEN;
+import ictk.boardgame.chess.io.PGNFile;
+
+/* PositionIndex *************************************************************/
+/** PositionIndex finds the games a position was reached in.  For every
+ *  position of the main line of every game it has an entry of the 
+ *  position's Zobrist key (ChessBoard.getZobristKey()), the game and the
+ *  ply, sorted by key.  Finding a position is a binary search of the 
+ *  entries; no game is read.
+ *  <p>
+ *  The entries are 16 bytes each: the key, then the game and the ply as
+ *  ints (see SortedEntryFile for the rest of the file).  The index may be
+ *  searched by many threads at once.
+ *  <p>
+ *  Since the position is known only by its key, two positions might in
+ *  theory share one.  With 64 bit keys this is unlikely enough that the 
+ *  hits are not checked against the games.
+ *
+ *  @see PositionIndexWriter
+ */
+public class PositionIndex extends SortedEntryFile {
+      /** mask for Log.debug() */
+   public static final long DEBUG = Log.Database;
+
+   public static final int MAGIC   = 0x49435450,  //ICTP
+                           VERSION = 1;
+
+   public static final int ENTRY_SIZE = 16;
+
+   protected static final int ENTRY_BITS = 4;
+
+   protected static FEN fen = new FEN();
+
+   //constructors//////////////////////////////////////////////////////////////
+   public PositionIndex (File _file) 
+          throws IOException {
+      super(_file, MAGIC, VERSION, ENTRY_BITS, "a position index");
+
+      if (Log.debug)
+         Log.debug(DEBUG, "opened position index of " + size 
+	    + " positions: " + file);
+   }
+
+   //Building//////////////////////////////////////////////////////////////////
+   /* build ******************************************************************/
+   /** indexes the positions of the games of a PGN file, with as many
+    *  threads as there are processors.
+    *
+    *  @return the number of games that couldn't be read, and so weren't
+    *          indexed.
+    */
+   public static int build (PGNFile pgn, File file, long sourceLength) 
+          throws IOException,
+	         InterruptedException {
+      PositionIndexWriter writer = new PositionIndexWriter(pgn);
+
+         writer.write(file, sourceLength);
+
+      return writer.getFailedCount();
+   }
+
+   //Access////////////////////////////////////////////////////////////////////
+   public int getEntryGame (long i) { 
+      return segment(i).getInt(position(i) + 8); 
+   }
+
+   public int getEntryPly (long i) { 
+      return segment(i).getInt(position(i) + 12); 
+   }
+
+   //Searching/////////////////////////////////////////////////////////////////
+   /* count ******************************************************************/
+   /** the number of times the position with this key was reached.
+    */
+   public long count (long key) {
+      long first = find(key),
+           i     = first;
+
+         while (i < size && getEntryKey(i) == key)
+	    i++;
+
+      return i - first;
+   }
+
+   public long count (ChessBoard board) {
+      return count(board.getZobristKey());
+   }
+
+   /* getHits ****************************************************************/
+   /** where the position with this key was reached, in order of game and
+    *  ply.
+    */
+   public List<PositionHit> getHits (long key) {
+      List<PositionHit> hits = new ArrayList<>();
+
+         for (long i=find(key); i < size && getEntryKey(i) == key; i++)
+	    hits.add(new PositionHit(getEntryGame(i), getEntryPly(i)));
+
+      return hits;
+   }
+
+   public List<PositionHit> getHits (ChessBoard board) {
+      return getHits(board.getZobristKey());
+   }
+
+   /* getHits ****************************************************************/
+   /** where the position of the FEN was reached.  The move counters of 
+    *  the FEN don't matter.
+    */
+   public List<PositionHit> getHits (String position) 
+          throws IOException {
+      return getHits(fen.parse(position, 0, position.length(), null));
+   }
+
+   /* getGames ***************************************************************/
+   /** the games the position with this key was reached in, in order, each
+    *  once.
+    */
+   public int[] getGames (long key) {
+      int[] games = new int[16];
+      int   n     = 0,
+            game  = 0;
+
+         for (long i=find(key); i < size && getEntryKey(i) == key; i++) {
+	    game = getEntryGame(i);
+	    if (n > 0 && games[n - 1] == game)
+	       continue;
+	    if (n == games.length)
+	       games = Arrays.copyOf(games, n * 2);
+	    games[n++] = game;
+	 }
+
+      return Arrays.copyOf(games, n);
+   }
+
+   public int[] getGames (ChessBoard board) {
+      return getGames(board.getZobristKey());
+   }
+}
@@ -0,0 +1,194 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess.db;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import ictk.util.Log;
+import ictk.boardgame.chess.io.PGNFile;
+
+/* PositionIndexWriter *******************************************************/
+/** PositionIndexWriter replays the games of a PGN file and writes a 
+ *  PositionIndex of the positions of their main lines.  
+ *  <p>
+ *  The games are replayed on several threads (see GameReplayer).  Each
+ *  thread gathers its positions in a buffer (see setRunSize()), and when
+ *  it is full sorts it and writes it out as a run.  Once all the games are
+ *  done the runs are merged into the index (see SortedRunWriter), so 
+ *  files with more positions than fit in memory can be indexed.
+ *
+ *  @see PositionIndex
+ */
+public class PositionIndexWriter extends SortedRunWriter {
+      /** mask for Log.debug() */
+   public static final long DEBUG = PositionIndex.DEBUG;
+
+      /** games handed to a thread at a time */
+   protected static final int CHUNK_SIZE = 64;
+
+   protected int runSize = 1 << 20;
+
+   //constructors//////////////////////////////////////////////////////////////
+   public PositionIndexWriter (PGNFile _pgn) {
+      super(_pgn, CHUNK_SIZE);
+   }
+
+   /* setRunSize *************************************************************/
+   /** the number of positions each thread keeps in memory before writing
+    *  them out as a run.  Each takes 32 bytes while being sorted.  The 
+    *  default is 2^20.
+    */
+   public void setRunSize (int n) {
+      if (n < 1)
+         throw new IllegalArgumentException("run size must be positive");
+      runSize = n;
+   }
+
+   public int getRunSize () {
+      return runSize;
+   }
+
+   //Writing///////////////////////////////////////////////////////////////////
+   /* write ******************************************************************/
+   /** replays the games and writes the index.
+    *
+    *  @param sourceLength the length of the PGN file, kept in the index
+    *         so it can be told to be out of date.
+    */
+   public void write (File file, long sourceLength) 
+          throws IOException,
+	         InterruptedException {
+         super.write(file, sourceLength);
+
+	 if (Log.debug)
+	    Log.debug(DEBUG, "indexed the positions of " + pgn.size() 
+	       + " games in " + runs.size() + " runs, " 
+	       + failedCount + " failed");
+   }
+
+   protected Replay newReplay () {
+      return new PositionReplay();
+   }
+
+   /* spill ******************************************************************/
+   /** sorts a buffer of positions and writes it out as a run.
+    */
+   protected void spill (long[] keys, long[] values, int n) 
+          throws IOException {
+      DataOutputStream out = null;
+
+         RadixSort.sort(keys, values, n);
+
+	 out = newRun();
+	 try {
+	    for (int i=0; i < n; i++) {
+	       out.writeLong(keys[i]);
+	       out.writeLong(values[i]);
+	    }
+	 }
+	 finally {
+	    out.close();
+	 }
+   }
+
+   //Merging///////////////////////////////////////////////////////////////////
+   protected Run openRun (File file) 
+             throws IOException {
+      return new PositionRun(file);
+   }
+
+   protected void writeHeader (DataOutputStream out, long sourceLength) 
+             throws IOException {
+      SortedEntryFile.writeHeader(out, PositionIndex.MAGIC, 
+         PositionIndex.VERSION, 0, sourceLength, pgn.size(), 0);
+   }
+
+   protected int mergeEntry (Run run, DataOutputStream out) 
+             throws IOException {
+      out.writeLong(((PositionRun) run).key);
+      out.writeLong(((PositionRun) run).value);
+      return 1;
+   }
+
+   //PositionReplay////////////////////////////////////////////////////////////
+   /** gathers the positions of a thread's games, the key and then the game
+    *  and ply, and spills them when the buffer is full.
+    */
+   protected class PositionReplay extends Replay {
+      protected long[] keys   = new long[runSize],
+                       values = new long[runSize];
+      protected int    n;
+
+      protected void replayed (int g) 
+                throws IOException {
+         int ply = 0;
+
+	 while (true) {
+	    if (n == runSize) {
+	       spill(keys, values, n);
+	       n = 0;
+	    }
+	    keys[n]     = board.getZobristKey();
+	    values[n++] = ((long) g << 32) | ply++;
+	    if (!history.hasNext())
+	       break;
+	    history.next();
+	 }
+      }
+
+      protected void finish () 
+                throws IOException {
+         if (n > 0)
+	    spill(keys, values, n);
+      }
+   }
+
+   //PositionRun///////////////////////////////////////////////////////////////
+   /** the next position of a sorted run being merged.
+    */
+   protected static class PositionRun extends Run {
+      protected long key,
+                     value;
+
+      protected PositionRun (File file) 
+                throws IOException {
+         super(file);
+      }
+
+      protected void read () 
+                throws IOException {
+	 key   = in.readLong();
+	 value = in.readLong();
+      }
+
+      public int compareTo (Run o) {
+         PositionRun run = (PositionRun) o;
+         int c = Long.compareUnsigned(key, run.key);
+	 return (c != 0) ? c : Long.compare(value, run.value);
+      }
+   }
+}
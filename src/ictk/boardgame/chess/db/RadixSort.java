@@ -0,0 +1,87 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess.db;
+
+import java.util.Arrays;
+
+/* RadixSort *****************************************************************/
+/** sorts pairs of longs by the first, as the database writers need to 
+ *  sort entries before writing them out.
+ */
+public final class RadixSort {
+
+   private RadixSort () {
+   }
+
+   /* sort *******************************************************************/
+   /** sorts the first n keys, unsigned, and the values with them, a byte 
+    *  at a time from the lowest (an LSD radix sort).  It's stable, so 
+    *  values of the same key stay in the order they were given, and keys
+    *  sorted by something else first stay sorted by it within a key.  
+    *  Bytes all the keys share are skipped.
+    */
+   public static void sort (long[] keys, long[] values, int n) {
+      long[] k   = keys,
+             v   = values,
+             tk  = new long[n],
+	     tv  = new long[n],
+	     swap = null;
+      int[] count = new int[256];
+      int b = 0,
+          sum = 0,
+	  c = 0;
+
+         if (n == 0)
+	    return;
+
+         for (int shift=0; shift < 64; shift += 8) {
+	    Arrays.fill(count, 0);
+	    for (int i=0; i < n; i++)
+	       count[(int) (k[i] >>> shift) & 0xFF]++;
+	    if (count[(int) (k[0] >>> shift) & 0xFF] == n)
+	       continue;
+
+	    sum = 0;
+	    for (b=0; b < 256; b++) {
+	       c = count[b];
+	       count[b] = sum;
+	       sum += c;
+	    }
+	    for (int i=0; i < n; i++) {
+	       b = (int) (k[i] >>> shift) & 0xFF;
+	       c = count[b]++;
+	       tk[c] = k[i];
+	       tv[c] = v[i];
+	    }
+	    swap = k; k = tk; tk = swap;
+	    swap = v; v = tv; tv = swap;
+	 }
+
+	 if (k != keys) {
+	    System.arraycopy(k, 0, keys, 0, n);
+	    System.arraycopy(v, 0, values, 0, n);
+	 }
+   }
+}
@@ -0,0 +1,199 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess.db;
+
+import java.io.Closeable;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/* SortedEntryFile ***********************************************************/
+/** SortedEntryFile is the base of the database files that are a table of
+ *  fixed size entries sorted by a Zobrist key, such as the PositionIndex.
+ *  The entries with a key are found with a binary search.
+ *  <p>
+ *  The file has a 32 byte header: a magic number and version (ints), the
+ *  number of entries (long), the length of the file of games it was made
+ *  from (long), the number of games (int) and an int the subclass may 
+ *  use.  The entries follow, big-endian, each beginning with its key 
+ *  (long).  The file is memory mapped and never changed, so it may be
+ *  read by many threads at once.
+ */
+public abstract class SortedEntryFile implements Closeable {
+   public static final int HEADER_SIZE = 32;
+
+      /** where the number of entries is in the header */
+   protected static final int  SIZE_OFFSET  = 8;
+      /** files are mapped in parts of this size (1GB), which holds a whole
+       *  number of entries */
+   protected static final int  SEGMENT_BITS = 30;
+   protected static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+
+   protected File               file;
+   protected RandomAccessFile   raf;
+   protected MappedByteBuffer[] segments;
+      /** log2 of the size of an entry */
+   protected int                entryBits;
+   protected long               size;
+   protected long               sourceLength;
+   protected int                gameCount;
+      /** the last int of the header, for the subclass */
+   protected int                extra;
+
+   //constructors//////////////////////////////////////////////////////////////
+   /** opens and maps the file.
+    *
+    *  @param what what the file is, for the error messages: "a position
+    *         index", say.
+    *  @throws IOException if the file isn't of the magic number and 
+    *          version, or is truncated.
+    */
+   protected SortedEntryFile (File _file, int magic, int version, 
+                              int _entryBits, String what) 
+          throws IOException {
+      FileChannel channel = null;
+      long length = 0;
+
+      file      = _file;
+      entryBits = _entryBits;
+      raf       = new RandomAccessFile(file, "r");
+      channel   = raf.getChannel();
+
+      try {
+         if (raf.readInt() != magic)
+	    throw new IOException(file + " is not " + what);
+	 if (raf.readInt() != version)
+	    throw new IOException(file + " is an unsupported version");
+	 size         = raf.readLong();
+	 sourceLength = raf.readLong();
+	 gameCount    = raf.readInt();
+	 extra        = raf.readInt();
+
+	 length = size << entryBits;
+	 if (HEADER_SIZE + length > channel.size())
+	    throw new IOException(file + " is truncated");
+
+	 segments = new MappedByteBuffer[
+	    (int) ((length + SEGMENT_MASK) >>> SEGMENT_BITS)];
+	 for (int i=0; i < segments.length; i++) {
+	    long start = (long) i << SEGMENT_BITS;
+	    segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, 
+	                     HEADER_SIZE + start,
+	                     Math.min(SEGMENT_MASK + 1, length - start));
+	 }
+      }
+      catch (IOException e) {
+         close();
+	 throw e;
+      }
+   }
+
+   /* writeHeader ************************************************************/
+   /** writes the header of a file.  Until all the entries are written 
+    *  the size may be left 0, and filled in at SIZE_OFFSET afterwards.
+    */
+   public static void writeHeader (DataOutput out, int magic, int version,
+                                   long size, long sourceLength, 
+				   int gameCount, int extra) 
+          throws IOException {
+      out.writeInt(magic);
+      out.writeInt(version);
+      out.writeLong(size);
+      out.writeLong(sourceLength);
+      out.writeInt(gameCount);
+      out.writeInt(extra);
+   }
+
+   //Access////////////////////////////////////////////////////////////////////
+   /* size *******************************************************************/
+   /** the number of entries.
+    */
+   public long size () {
+      return size;
+   }
+
+   /* getGameCount ***********************************************************/
+   /** the number of games in the file this was made from.
+    */
+   public int getGameCount () {
+      return gameCount;
+   }
+
+   /* getSourceLength ********************************************************/
+   /** the length of the file of games when this was made.
+    */
+   public long getSourceLength () {
+      return sourceLength;
+   }
+
+   public long getEntryKey (long i) { 
+      return segment(i).getLong(position(i)); 
+   }
+
+   /* find *******************************************************************/
+   /** the first entry with the key, or if there is none, where it would
+    *  be.  Keys are compared unsigned.
+    */
+   public long find (long key) {
+      long lo = 0,
+           hi = size,
+	   mid = 0;
+
+         while (lo < hi) {
+	    mid = (lo + hi) >>> 1;
+	    if (Long.compareUnsigned(getEntryKey(mid), key) < 0)
+	       lo = mid + 1;
+	    else
+	       hi = mid;
+	 }
+
+      return lo;
+   }
+
+   //Helpers///////////////////////////////////////////////////////////////////
+   /** the mapped part entry i is in */
+   protected MappedByteBuffer segment (long i) {
+      return segments[(int) ((i << entryBits) >>> SEGMENT_BITS)];
+   }
+
+   /** where entry i begins in its segment */
+   protected int position (long i) {
+      return (int) ((i << entryBits) & SEGMENT_MASK);
+   }
+
+   /* close ******************************************************************/
+   /** closes the file.  The mappings are released when they are garbage
+    *  collected.
+    */
+   public void close () 
+          throws IOException {
+      segments = null;
+      if (raf != null)
+         raf.close();
+   }
+}
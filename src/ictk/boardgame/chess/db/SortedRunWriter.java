@@ -0,0 +1,213 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess.db;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import ictk.boardgame.chess.io.PGNFile;
+
+/* SortedRunWriter ***********************************************************/
+/** SortedRunWriter is the base of the writers of a SortedEntryFile too 
+ *  large to sort in memory.  Each thread replaying games gathers its 
+ *  entries in memory, and when it has too many sorts them and writes them
+ *  out as a run to a temporary file next to the one being written (see 
+ *  newRun()).  Once all the games are done the runs are merged, in order,
+ *  into the file, and deleted.
+ */
+public abstract class SortedRunWriter extends GameReplayer {
+   protected List<File> runs;
+   protected File       dir;
+   protected String     prefix;
+
+   //constructors//////////////////////////////////////////////////////////////
+   protected SortedRunWriter (PGNFile _pgn, int _chunkSize) {
+      super(_pgn, _chunkSize);
+   }
+
+   //Writing///////////////////////////////////////////////////////////////////
+   /* write ******************************************************************/
+   /** replays the games and writes the file.
+    *
+    *  @param sourceLength the length of the PGN file, kept in the file
+    *         so it can be told to be out of date.
+    */
+   public void write (File file, long sourceLength) 
+          throws IOException,
+	         InterruptedException {
+         runs   = new ArrayList<>();
+	 dir    = file.getAbsoluteFile().getParentFile();
+	 prefix = file.getName() + ".";
+
+	 try {
+	    replayGames();
+	    merge(file, sourceLength);
+	 }
+	 finally {
+	    for (File run : runs)
+	       run.delete();
+	 }
+   }
+
+   /* newRun *****************************************************************/
+   /** a new temporary file for a run, to be deleted once the runs are 
+    *  merged.  The caller closes the stream.
+    */
+   protected DataOutputStream newRun () 
+          throws IOException {
+      File run = null;
+
+         synchronized (this) {
+	    run = File.createTempFile(prefix, ".run", dir);
+	    runs.add(run);
+	 }
+
+      return new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(run), 1 << 16));
+   }
+
+   /* merge ******************************************************************/
+   /** merges the runs into the file: the header, then the entries of all
+    *  the runs in order, each handed to mergeEntry().  The number of 
+    *  entries is filled in the header last.
+    */
+   protected void merge (File file, long sourceLength) 
+          throws IOException {
+      PriorityQueue<Run> queue = new PriorityQueue<>(Math.max(1, runs.size()));
+      DataOutputStream out = null;
+      long total = 0;
+      Run run = null;
+
+         try {
+	    for (File f : runs) {
+	       run = openRun(f);
+	       if (run.next())
+	          queue.add(run);
+	       else
+	          run.close();
+	    }
+
+	    out = new DataOutputStream(new BufferedOutputStream(
+	             new FileOutputStream(file), 1 << 16));
+	    writeHeader(out, sourceLength);
+
+	    while ((run = queue.poll()) != null) {
+	       total += mergeEntry(run, out);
+	       if (run.next())
+	          queue.add(run);
+	       else
+	          run.close();
+	    }
+	    total += endMerge(out);
+	    out.close();
+	    out = null;
+
+	    //now the number of entries is known
+	    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+	       raf.seek(SortedEntryFile.SIZE_OFFSET);
+	       raf.writeLong(total);
+	    }
+	 }
+	 finally {
+	    if (out != null)
+	       out.close();
+	    while ((run = queue.poll()) != null)
+	       run.close();
+	 }
+   }
+
+   /** opens a run for reading */
+   protected abstract Run openRun (File file) 
+             throws IOException;
+
+   /** writes the header, with a size of 0 (see SortedEntryFile) */
+   protected abstract void writeHeader (DataOutputStream out, 
+                                        long sourceLength) 
+             throws IOException;
+
+   /** writes, or keeps, the current entry of the run, the next in order.
+    *  @return the number of entries written
+    */
+   protected abstract int mergeEntry (Run run, DataOutputStream out) 
+             throws IOException;
+
+   /** the runs are all merged.
+    *  @return the number of entries written
+    */
+   protected int endMerge (DataOutputStream out) 
+             throws IOException {
+      return 0;
+   }
+
+   //Run///////////////////////////////////////////////////////////////////////
+   /** the next entry of a sorted run being merged.  Runs are compared by
+    *  their current entries.
+    */
+   protected abstract static class Run implements Comparable<Run> {
+      protected DataInputStream in;
+
+      protected Run () {
+      }
+
+      protected Run (File file) 
+                throws IOException {
+	 in = new DataInputStream(new BufferedInputStream(
+	         new FileInputStream(file), 1 << 16));
+      }
+
+      /** reads the next entry.
+       *  @return false at the end of the run */
+      protected boolean next () 
+                throws IOException {
+         try {
+	    read();
+	    return true;
+	 }
+	 catch (EOFException e) {
+	    return false;
+	 }
+      }
+
+      /** reads the fields of the next entry */
+      protected abstract void read () 
+                throws IOException;
+
+      protected void close () 
+                throws IOException {
+         in.close();
+      }
+   }
+}
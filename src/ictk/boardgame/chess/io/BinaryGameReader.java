@@ -0,0 +1,365 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess.io;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+
+import ictk.util.Log;
+import ictk.boardgame.Game;
+import ictk.boardgame.History;
+import ictk.boardgame.IllegalMoveException;
+import ictk.boardgame.AmbiguousMoveException;
+import ictk.boardgame.chess.*;
+
+import static ictk.boardgame.chess.io.BinaryGameWriter.*;
+
+/* BinaryGameReader **********************************************************/
+/** BinaryGameReader reads games written by BinaryGameWriter.  The moves
+ *  are stored packed, so there is no notation to parse and nothing to
+ *  search for; each move is made straight from its squares.
+ *  <p>
+ *  As with PGNReader the moves can be trusted (setTrusted()) when the file
+ *  is known to hold only legal games, and the game is left at its first
+ *  move.
+ */
+public class BinaryGameReader implements Closeable {
+      /** mask for Log.debug() */
+   public static final long DEBUG = Log.GameReader;
+
+   protected DataInputStream in;
+   protected List<String> strings = new ArrayList<>();
+   protected FEN fen = new FEN();
+   protected boolean trusted;
+   protected byte[] bytes = new byte[256];
+
+      /** the last game read */
+   protected ChessGame game;
+   protected ChessBoard board;
+   protected History history;
+
+   //constructor///////////////////////////////////////////////////////////////
+   public BinaryGameReader (InputStream _in) 
+          throws IOException {
+      in = new DataInputStream(new BufferedInputStream(_in, 1 << 16));
+
+      if (in.readInt() != MAGIC)
+         throw new IOException("not a binary game file");
+      if (in.readByte() != VERSION)
+         throw new IOException("unknown binary game file version");
+   }
+
+   //accessors/////////////////////////////////////////////////////////////////
+   /* setTrusted *************************************************************/
+   /** skips checking the legality of the moves as they are read.
+    *  @see ChessBoard#setTrustedMoves(boolean)
+    */
+   public void setTrusted (boolean t) {
+      trusted = t;
+   }
+
+   /* isTrusted **************************************************************/
+   /** @see #setTrusted(boolean) */
+   public boolean isTrusted () {
+      return trusted;
+   }
+
+   /* getGame ****************************************************************/
+   /** gets the last game read.  This can be used if an exception was
+    *  thrown during the reading, and you still want the game.
+    */
+   public Game getGame () {
+      return game;
+   }
+
+   //reading///////////////////////////////////////////////////////////////////
+   /* readGame ***************************************************************/
+   /** @return null at the end of the file
+    */
+   public Game readGame () 
+          throws IllegalMoveException,
+	         AmbiguousMoveException,
+		 IOException {
+      return readGame(null);
+   }
+
+   /* readGame ***************************************************************/
+   /** reads the next game into an existing game, reusing its board and
+    *  history.
+    *  @param reuse the game to read into, or null for a new game.
+    *  @return null at the end of the file
+    *  @see PGNReader#readGame(ChessGame)
+    */
+   public Game readGame (ChessGame reuse) 
+          throws IllegalMoveException,
+	         AmbiguousMoveException,
+		 IOException {
+      ChessGameInfo gameInfo = null;
+      String start = null;
+      int hasInfo = in.read();
+
+         if (hasInfo == -1)
+	    return null;
+
+	 gameInfo = (hasInfo == 0) ? null : readGameInfo();
+
+	 start = readString();
+	 if (reuse == null) {
+	    board = (start == null) 
+		  ? new ChessBoard() 
+		  : (ChessBoard) fen.stringToBoard(start);
+	    game  = new ChessGame(gameInfo, board);
+	 }
+	 else {
+	    reuse.reset();
+	    reuse.setGameInfo(gameInfo);
+	    game  = reuse;
+	    board = (ChessBoard) reuse.getBoard();
+	    if (start != null)
+	       fen.parse(start, 0, start.length(), board);
+	 }
+	 board.setLazyLegalDests(true);
+	 board.setTrustedMoves(trusted);
+
+	 history = game.getHistory();
+	 history.setInitialMoveNumber(readVarInt());
+
+	 if (Log.debug)
+	    Log.debug(DEBUG, "reading History");
+
+	 readMoves();
+	 history.rewind();
+
+      return game;
+   }
+
+   /* readGameInfo ***********************************************************/
+   protected ChessGameInfo readGameInfo () 
+          throws IOException {
+      ChessGameInfo gi = new ChessGameInfo();
+      Calendar date = null;
+      int flags = 0,
+          count = 0;
+
+         gi.setEvent(readString());
+         gi.setSite(readString());
+         gi.setRound(readString());
+         gi.setSubRound(readString());
+	 gi.setWhite(readPlayer());
+	 gi.setBlack(readPlayer());
+	 gi.setECO(readString());
+
+	 flags = in.readUnsignedByte();
+	 gi.setResult((flags & INFO_RESULT) == 0 
+	    ? null 
+	    : new ChessResult(readVarInt()));
+
+	 gi.setWhiteRating(readSignedVarInt());
+	 gi.setBlackRating(readSignedVarInt());
+	 gi.setTimeControlInitial(readSignedVarInt());
+	 gi.setTimeControlIncrement(readSignedVarInt());
+	 gi.setYear(readSignedVarInt());
+	 gi.setMonth(readSignedVarInt());
+	 gi.setDay(readSignedVarInt());
+
+	 if ((flags & INFO_DATE) != 0) {
+	    date = new GregorianCalendar();
+	    date.set(Calendar.YEAR, readSignedVarInt());
+	    date.set(Calendar.MONTH, readSignedVarInt());
+	    date.set(Calendar.DAY_OF_MONTH, readSignedVarInt());
+	    gi.setDate(date);
+	 }
+
+	 count = readVarInt();
+	 for (int i=0; i < count; i++)
+	    gi.add(readString(), readString());
+
+	 if (Log.debug && Log.isDebug(DEBUG))
+	    Log.debug(DEBUG, "GameInfo header: " + gi);
+
+      return gi;
+   }
+
+   /* readPlayer *************************************************************/
+   protected ChessPlayer readPlayer () 
+          throws IOException {
+      String last  = readString(),
+             first = readString();
+      ChessPlayer p = null;
+
+         if (last == null && first == null)
+	    return null;
+
+	 p = new ChessPlayer();
+	 p.setLastName(last);
+	 p.setFirstName(first);
+      return p;
+   }
+
+   /* readMoves **************************************************************/
+   /** reads a list of continuations and all that follows, leaving the 
+    *  history at the end of its main line.  Each variation is read by
+    *  recursion and then backed out of.
+    */
+   protected void readMoves () 
+          throws IllegalMoveException,
+	         AmbiguousMoveException,
+		 IOException {
+      ChessMove parent = null,
+                m      = null;
+      int n = 0,
+          packed = 0;
+
+         while ((n = readVarInt()) > 0) {
+	    parent = (ChessMove) history.getCurrentMove();
+
+	    for (int i=1; i < n; i++) {
+	       if ((packed = in.readUnsignedShort()) == NULL_MOVE)
+	          continue;
+
+	       m = board.toChessMove(packed);
+	       history.add(m, false);
+	       readMoveData(m);
+	       readMoves();
+
+	       while (history.getCurrentMove() != parent)
+	          history.prev();
+	    }
+
+	    if ((packed = in.readUnsignedShort()) == NULL_MOVE)
+	       return;
+
+	    m = board.toChessMove(packed);
+	    history.add(m, true);
+	    readMoveData(m);
+	 }
+   }
+
+   /* readMoveData ***********************************************************/
+   protected void readMoveData (ChessMove m) 
+          throws IOException {
+      int flags = in.readUnsignedByte();
+
+         if ((flags & MOVE_ANNOTATION) != 0)
+	    m.setAnnotation(readAnnotation());
+         if ((flags & MOVE_PRENOTATION) != 0)
+	    m.setPrenotation(readAnnotation());
+         if ((flags & MOVE_RESULT) != 0)
+	    m.setResult(new ChessResult(readVarInt()));
+   }
+
+   /* readAnnotation *********************************************************/
+   protected ChessAnnotation readAnnotation () 
+          throws IOException {
+      ChessAnnotation anno = new ChessAnnotation();
+      int flags = in.readUnsignedByte(),
+          count = 0;
+
+         if ((flags & ANNO_COMMENT) != 0)
+	    anno.setComment(readText());
+
+	 if ((flags & ANNO_NAGS) != 0) {
+	    count = readVarInt();
+	    for (int i=0; i < count; i++)
+	       anno.addNAG(readVarInt());
+	 }
+      return anno;
+   }
+
+   //primitives////////////////////////////////////////////////////////////////
+   /* readString *************************************************************/
+   protected String readString () 
+          throws IOException {
+      int code = readVarInt();
+      String s = null;
+
+         switch (code) {
+	    case NULL_STRING:
+	       return null;
+
+	    case NEW_STRING:
+	       s = readText();
+	       if (strings.size() < MAX_STRINGS)
+	          strings.add(s);
+	       return s;
+
+	    default:
+	       if (code - TABLE_BASE >= strings.size())
+	          throw new IOException("bad string reference: " + code);
+	       return strings.get(code - TABLE_BASE);
+	 }
+   }
+
+   /* readText ***************************************************************/
+   protected String readText () 
+          throws IOException {
+      int len = readVarInt();
+
+         if (len > bytes.length)
+	    bytes = new byte[Math.max(len, bytes.length * 2)];
+	 in.readFully(bytes, 0, len);
+
+      return new String(bytes, 0, len, StandardCharsets.UTF_8);
+   }
+
+   /* readVarInt *************************************************************/
+   protected int readVarInt () 
+          throws IOException {
+      int b = 0,
+          i = 0,
+	  shift = 0;
+
+         do {
+	    if ((b = in.read()) == -1)
+	       throw new EOFException();
+	    i |= (b & 0x7F) << shift;
+	    shift += 7;
+	 } while ((b & 0x80) != 0);
+
+      return i;
+   }
+
+   /* readSignedVarInt *******************************************************/
+   protected int readSignedVarInt () 
+          throws IOException {
+      int i = readVarInt();
+      return (i >>> 1) ^ -(i & 1);
+   }
+
+   /* close ******************************************************************/
+   public void close () 
+          throws IOException {
+      in.close();
+   }
+}
@@ -0,0 +1,353 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess.io;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Calendar;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+
+import ictk.util.Log;
+import ictk.boardgame.Game;
+import ictk.boardgame.History;
+import ictk.boardgame.Move;
+import ictk.boardgame.ContinuationList;
+import ictk.boardgame.chess.*;
+
+/* BinaryGameWriter **********************************************************/
+/** BinaryGameWriter writes games in the compact binary format read by 
+ *  BinaryGameReader.  It keeps everything PGNWriter writes, so a game read
+ *  back is written out to PGN just the same, but is several times smaller
+ *  than PGN and much faster to read.
+ *  <p>
+ *  The format is a 5 byte header ("ICTK" and a version number) and then
+ *  the games one after another:
+ *  <ul>
+ *  <li>the game information: its strings, and each player's last and
+ *      first names, are written through a string table that the reader
+ *      rebuilds as it goes, so a name or event that has been seen before
+ *      costs a byte or two.  The numbers are variable length.
+ *  <li>the FEN of the starting position if it isn't the usual one.
+ *  <li>the move tree.  Each move is a short packed as by 
+ *      ChessMove.pack(), followed by a byte saying if it has an
+ *      annotation, prenotation or result.  Each list of continuations is
+ *      its size followed by the variations, each with its own tree, and
+ *      then the main line.
+ *  </ul>
+ *  Since the string table runs through the whole file the games must be
+ *  read in order.
+ */
+public class BinaryGameWriter implements Closeable, Flushable {
+      /** mask for Log.debug() */
+   public static final long DEBUG = Log.GameWriter;
+
+      /** "ICTK" */
+   public static final int  MAGIC   = 0x4943544B;
+   public static final byte VERSION = 1;
+
+      /** the string table stops growing at this size */
+   static final int MAX_STRINGS = 1 << 18;
+
+      /** string codes: 0 is null, 1 a new string that follows, and 
+       *  anything higher is an entry in the table */
+   static final int NULL_STRING = 0,
+                    NEW_STRING  = 1,
+		    TABLE_BASE  = 2;
+
+      /** marks a null main line in a list of continuations */
+   static final int NULL_MOVE = 0xFFFF;
+
+      /** game information flags */
+   static final int INFO_RESULT = 1,
+                    INFO_DATE   = 2;
+
+      /** flags of the byte after each move */
+   static final int MOVE_ANNOTATION  = 1,
+                    MOVE_PRENOTATION = 2,
+		    MOVE_RESULT      = 4;
+
+      /** flags of an annotation */
+   static final int ANNO_COMMENT = 1,
+                    ANNO_NAGS    = 2;
+
+   protected DataOutputStream out;
+   protected Map<String,Integer> strings = new HashMap<>();
+   protected FEN fen = new FEN();
+
+   //constructor///////////////////////////////////////////////////////////////
+   public BinaryGameWriter (OutputStream _out) 
+          throws IOException {
+      out = new DataOutputStream(new BufferedOutputStream(_out, 1 << 16));
+      out.writeInt(MAGIC);
+      out.writeByte(VERSION);
+   }
+
+   //writing///////////////////////////////////////////////////////////////////
+   /* writeGame **************************************************************/
+   public void writeGame (Game game) 
+          throws IOException {
+      ChessGame g = (ChessGame) game;
+      History history = null;
+      ChessBoard board = null;
+      Move current = null;
+      String start = null;
+
+         if (g == null)
+            throw new NullPointerException ("can't write null game");
+
+         history = g.getHistory();
+	 board   = (ChessBoard) g.getBoard();
+
+	 //need the starting position for the FEN
+	 if (!board.isInitialPositionDefault()) {
+	    current = history.getCurrentMove();
+	    history.rewind();
+	    start = fen.boardToString(board);
+	    history.goTo(current);
+	 }
+
+         writeGameInfo((ChessGameInfo) g.getGameInfo());
+	 writeString(start);
+	 writeVarInt(history.getInitialMoveNumber());
+	 writeMoves(history.getFirstAll());
+   }
+
+   /* writeGameInfo **********************************************************/
+   protected void writeGameInfo (ChessGameInfo gi) 
+          throws IOException {
+      int flags = 0;
+      Calendar date = null;
+      Enumeration<?> keys = null;
+      String key = null;
+
+         if (gi == null) {
+	    out.writeByte(0);
+	    return;
+	 }
+	 out.writeByte(1);
+
+         writeString(gi.getEvent());
+         writeString(gi.getSite());
+         writeString(gi.getRound());
+         writeString(gi.getSubRound());
+	 writePlayer(gi.getWhite());
+	 writePlayer(gi.getBlack());
+	 writeString(gi.getECO());
+
+	 date = gi.getDate();
+	 if (gi.getResult() != null) flags |= INFO_RESULT;
+	 if (date != null)           flags |= INFO_DATE;
+	 out.writeByte(flags);
+
+	 if (gi.getResult() != null)
+	    writeVarInt(((ChessResult) gi.getResult()).getIndex());
+
+	 writeSignedVarInt(gi.getWhiteRating());
+	 writeSignedVarInt(gi.getBlackRating());
+	 writeSignedVarInt(gi.getTimeControlInitial());
+	 writeSignedVarInt(gi.getTimeControlIncrement());
+	 writeSignedVarInt(gi.getYear());
+	 writeSignedVarInt(gi.getMonth());
+	 writeSignedVarInt(gi.getDay());
+
+	 if (date != null) {
+	    writeSignedVarInt(date.get(Calendar.YEAR));
+	    writeSignedVarInt(date.get(Calendar.MONTH));
+	    writeSignedVarInt(date.get(Calendar.DAY_OF_MONTH));
+	 }
+
+	 //the tags we don't know, in the order they are kept
+	 writeVarInt(gi.props.size());
+	 keys = gi.props.propertyNames();
+	 while (keys.hasMoreElements()) {
+	    key = (String) keys.nextElement();
+	    writeString(key);
+	    writeString(gi.props.getProperty(key));
+	 }
+   }
+
+   /* writePlayer ************************************************************/
+   protected void writePlayer (ChessPlayer p) 
+          throws IOException {
+      if (p == null) {
+         writeString(null);
+	 writeString(null);
+      }
+      else {
+         writeString(p.getLastName());
+         writeString(p.getFirstName());
+      }
+   }
+
+   /* writeMoves *************************************************************/
+   /** writes a list of continuations and all that follows.  The main line
+    *  is followed in a loop and not by recursion, so only variations add to
+    *  the depth of the stack.
+    */
+   protected void writeMoves (ContinuationList cont) 
+          throws IOException {
+      ChessMove m = null;
+      int n = 0;
+
+         while (true) {
+	    n = cont.size();
+	    writeVarInt(n);
+	    if (n == 0)
+	       return;
+
+	    for (int i=1; i < n; i++) {
+	       m = (ChessMove) cont.get(i);
+	       writeMove(m);
+	       if (m != null)
+	          writeMoves(m.getContinuationList());
+	    }
+
+	    m = (ChessMove) cont.get(0);
+	    writeMove(m);
+	    if (m == null)
+	       return;
+	    cont = m.getContinuationList();
+	 }
+   }
+
+   /* writeMove **************************************************************/
+   protected void writeMove (ChessMove m) 
+          throws IOException {
+      int flags = 0;
+
+         if (m == null) {
+	    out.writeShort(NULL_MOVE);
+	    return;
+	 }
+
+	 out.writeShort(m.getPacked());
+
+	 if (m.getAnnotation() != null)  flags |= MOVE_ANNOTATION;
+	 if (m.getPrenotation() != null) flags |= MOVE_PRENOTATION;
+	 if (m.getResult() != null)      flags |= MOVE_RESULT;
+	 out.writeByte(flags);
+
+	 if (m.getAnnotation() != null)
+	    writeAnnotation((ChessAnnotation) m.getAnnotation());
+	 if (m.getPrenotation() != null)
+	    writeAnnotation((ChessAnnotation) m.getPrenotation());
+	 if (m.getResult() != null)
+	    writeVarInt(((ChessResult) m.getResult()).getIndex());
+   }
+
+   /* writeAnnotation ********************************************************/
+   protected void writeAnnotation (ChessAnnotation anno) 
+          throws IOException {
+      short[] nags = anno.getNAGs();
+      int flags = 0;
+
+         if (anno.getComment() != null) flags |= ANNO_COMMENT;
+         if (nags != null)              flags |= ANNO_NAGS;
+	 out.writeByte(flags);
+
+	 if (anno.getComment() != null)
+	    writeText(anno.getComment());
+
+	 if (nags != null) {
+	    writeVarInt(nags.length);
+	    for (int i=0; i < nags.length; i++)
+	       writeVarInt(nags[i]);
+	 }
+   }
+
+   //primitives////////////////////////////////////////////////////////////////
+   /* writeString ************************************************************/
+   /** writes a string through the string table.
+    */
+   protected void writeString (String s) 
+          throws IOException {
+      Integer i = null;
+
+         if (s == null) {
+	    writeVarInt(NULL_STRING);
+	    return;
+	 }
+
+	 if ((i = strings.get(s)) != null) {
+	    writeVarInt(TABLE_BASE + i);
+	    return;
+	 }
+
+	 writeVarInt(NEW_STRING);
+	 writeText(s);
+	 if (strings.size() < MAX_STRINGS)
+	    strings.put(s, strings.size());
+   }
+
+   /* writeText **************************************************************/
+   /** writes a string as its length and UTF-8 bytes.
+    */
+   protected void writeText (String s) 
+          throws IOException {
+      byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+
+         writeVarInt(bytes.length);
+	 out.write(bytes);
+   }
+
+   /* writeVarInt ************************************************************/
+   /** writes a non-negative int 7 bits at a time, low bits first.
+    */
+   protected void writeVarInt (int i) 
+          throws IOException {
+      while ((i & ~0x7F) != 0) {
+         out.writeByte((i & 0x7F) | 0x80);
+	 i >>>= 7;
+      }
+      out.writeByte(i);
+   }
+
+   /* writeSignedVarInt ******************************************************/
+   /** zig-zag encodes i so small negative numbers are short too.
+    */
+   protected void writeSignedVarInt (int i) 
+          throws IOException {
+      writeVarInt((i << 1) ^ (i >> 31));
+   }
+
+   /* flush ******************************************************************/
+   public void flush () 
+          throws IOException {
+      out.flush();
+   }
+
+   /* close ******************************************************************/
+   public void close () 
+          throws IOException {
+      out.close();
+   }
+}
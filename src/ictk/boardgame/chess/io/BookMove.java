@@ -0,0 +1,66 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess.io;
+
+import ictk.boardgame.chess.ChessMove;
+
+/* BookMove ******************************************************************/
+/** a move found in an opening book, with the weight the book gives it.
+ *  The chance of picking a move is its weight over the total weight of
+ *  all the moves for the position.
+ *
+ *  @see PolyglotBook
+ */
+public class BookMove {
+   protected ChessMove move;
+   protected int       weight,
+                       learn;
+
+   public BookMove (ChessMove move, int weight, int learn) {
+      this.move   = move;
+      this.weight = weight;
+      this.learn  = learn;
+   }
+
+   /* getMove ****************************************************************/
+   /** the move, made on the board the book was probed with.  It has not
+    *  been verified.
+    */
+   public ChessMove getMove () { return move; }
+
+   /* getWeight **************************************************************/
+   /** how often the move should be played relative to the other moves
+    *  for the position.
+    */
+   public int getWeight () { return weight; }
+
+   /* getLearn ***************************************************************/
+   /** the learning data stored with the move, if the book has any */
+   public int getLearn () { return learn; }
+
+   public String toString () {
+      return move + " (" + weight + ")";
+   }
+}
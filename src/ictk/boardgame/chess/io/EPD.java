@@ -0,0 +1,247 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess.io;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import ictk.util.Log;
+import ictk.boardgame.Board;
+import ictk.boardgame.chess.*;
+
+/* EPD ***********************************************************************/
+/** EPD (Extended Position Description) is the position part of FEN (the
+ *  first four fields) followed by any number of operations, each an 
+ *  opcode, its operands and a semicolon:
+ *  <pre>
+ *  r1bqkb1r/pppp1ppp/2n2n2/4p2Q/2B1P3/8/PPPP1PPP/RNB1K1NR w KQkq - bm Qxf7#; id "mate in one";
+ *  </pre>
+ *  Operands with spaces or semicolons in them are quoted.  The "hmvc"
+ *  and "fmvn" operations, if there, set the half move clock and move
+ *  number of the board.
+ *  <br>
+ *  stringToBoard() and boardToString() deal with the position alone;
+ *  stringToPosition() and positionToString() with the operations as well.
+ *
+ *  @see EPDReader
+ *  @see EPDWriter
+ */
+public class EPD implements ChessBoardNotation {
+     /* for debugging */
+   public static long DEBUG = Log.BoardNotation;
+
+   protected FEN fen = new FEN();
+
+   public EPD () {
+   }
+
+   //ChessBoardNotation////////////////////////////////////////////////////////
+   /* stringToBoard **********************************************************/
+   public Board stringToBoard (String str) 
+          throws IOException {
+      return stringToPosition(str).getBoard();
+   }
+
+   /* boardToString **********************************************************/
+   /** the four position fields of the board, without operations.
+    */
+   public String boardToString (Board b) {
+      StringBuilder sb = new StringBuilder(80);
+
+         try {
+            fen.appendPosition((ChessBoard) b, sb);
+         }
+         catch (IOException e) {
+            //a StringBuilder doesn't throw
+            throw new IllegalStateException(e);
+         }
+
+      return sb.toString();
+   }
+
+   //Positions/////////////////////////////////////////////////////////////////
+   /* stringToPosition *******************************************************/
+   /** parses a line of EPD.
+    *  @throws IOException if the line is not EPD
+    */
+   public EPDPosition stringToPosition (String str) 
+          throws IOException {
+      EPDPosition pos = null;
+      StringBuilder sb = new StringBuilder(str.length());
+      int i = 0,
+          fields = 0,
+	  len = str.length();
+      String hmvc = null,
+             fmvn = null;
+
+         //the four position fields
+	 while (fields < 4) {
+	    while (i < len && Character.isWhitespace(str.charAt(i)))
+	       i++;
+	    if (i == len)
+	       throw new IOException("EPD needs four position fields: " + str);
+	    if (fields++ > 0)
+	       sb.append(' ');
+	    while (i < len && !Character.isWhitespace(str.charAt(i)))
+	       sb.append(str.charAt(i++));
+	 }
+
+	 pos = new EPDPosition(null);
+	 readOperations(str, i, pos);
+
+	 hmvc = pos.getOperand(EPDPosition.HALF_MOVES);
+	 fmvn = pos.getOperand(EPDPosition.FULL_MOVES);
+	 sb.append(' ').append((hmvc == null) ? "0" : hmvc)
+	   .append(' ').append((fmvn == null) ? "1" : fmvn);
+
+	 pos.setBoard((ChessBoard) fen.stringToBoard(sb.toString()));
+
+	 if (Log.debug)
+	    Log.debug(DEBUG, "EPD: " + pos.getOpcodes());
+
+      return pos;
+   }
+
+   /* readOperations *********************************************************/
+   /** reads the operations from i to the end of the string.  The last
+    *  operation may leave off its semicolon.
+    */
+   protected void readOperations (String str, int i, EPDPosition pos) 
+          throws IOException {
+      List<String> operands = null;
+      String opcode = null;
+      int len = str.length(),
+          start = 0;
+      char c;
+
+         while (true) {
+	    while (i < len && Character.isWhitespace(str.charAt(i)))
+	       i++;
+	    if (i == len)
+	       return;
+
+	    //opcode
+	    start = i;
+	    while (i < len && !Character.isWhitespace(c = str.charAt(i)) 
+	           && c != ';')
+	       i++;
+	    opcode = str.substring(start, i);
+	    operands = new ArrayList<>(2);
+
+	    //operands
+	    while (true) {
+	       while (i < len && Character.isWhitespace(str.charAt(i)))
+	          i++;
+	       if (i == len)
+		  break;
+
+	       c = str.charAt(i);
+	       if (c == ';') {
+	          i++;
+		  break;
+	       }
+	       else if (c == '"') {
+	          start = ++i;
+		  if ((i = str.indexOf('"', i)) < 0)
+		     throw new IOException("unterminated string in EPD: " 
+		                           + str);
+		  operands.add(str.substring(start, i++));
+	       }
+	       else {
+	          start = i;
+		  while (i < len && !Character.isWhitespace(c = str.charAt(i))
+		         && c != ';')
+		     i++;
+		  operands.add(str.substring(start, i));
+	       }
+	    }
+
+	    if (opcode.length() > 0)
+	       pos.set(opcode, operands);
+	 }
+   }
+
+   /* positionToString *******************************************************/
+   /** the board and its operations as a line of EPD.
+    */
+   public String positionToString (EPDPosition pos) {
+      StringBuilder sb = new StringBuilder(128);
+
+         appendPosition(pos, sb);
+
+      return sb.toString();
+   }
+
+   /* appendPosition *********************************************************/
+   protected void appendPosition (EPDPosition pos, StringBuilder sb) {
+      boolean quote = false;
+
+         sb.append(boardToString(pos.getBoard()));
+
+	 for (Map.Entry<String,List<String>> op : pos.operations.entrySet()) {
+	    sb.append(' ').append(op.getKey());
+	    quote = isStringOpcode(op.getKey());
+	    for (String s : op.getValue()) {
+	       sb.append(' ');
+	       if (quote || needsQuotes(s))
+	          sb.append('"').append(s).append('"');
+	       else
+	          sb.append(s);
+	    }
+	    sb.append(';');
+	 }
+   }
+
+   /* isStringOpcode *********************************************************/
+   /** is the operand of the opcode always written as a quoted string:
+    *  id, eco, nic, c0 - c9 and v0 - v9.
+    */
+   protected static boolean isStringOpcode (String opcode) {
+      char c;
+
+         if (opcode.length() == 2) {
+	    c = opcode.charAt(0);
+	    return ((c == 'c' || c == 'v') && Character.isDigit(opcode.charAt(1)))
+	           || opcode.equals(EPDPosition.ID);
+	 }
+
+      return opcode.equals("eco") || opcode.equals("nic");
+   }
+
+   /* needsQuotes ************************************************************/
+   protected static boolean needsQuotes (String s) {
+      char c;
+
+         if (s.isEmpty())
+	    return true;
+	 for (int i=0; i < s.length(); i++)
+	    if (Character.isWhitespace(c = s.charAt(i)) || c == ';')
+	       return true;
+
+      return false;
+   }
+}
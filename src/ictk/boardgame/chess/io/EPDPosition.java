@@ -0,0 +1,266 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess.io;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ictk.boardgame.IllegalMoveException;
+import ictk.boardgame.AmbiguousMoveException;
+import ictk.boardgame.chess.*;
+
+/* EPDPosition ***************************************************************/
+/** a position read from or written to EPD: the board and the operations
+ *  (opcodes and their operands) that go with it.  The operations are kept
+ *  in the order they were read or set.  The operands are kept as text,
+ *  and the common opcodes have accessors that convert them.
+ *
+ *  @see EPD
+ */
+public class EPDPosition {
+      /** best move(s) */
+   public static final String BEST_MOVE      = "bm",
+      /** move(s) to avoid */
+                              AVOID_MOVE     = "am",
+      /** position identifier */
+                              ID             = "id",
+      /** analysis count: depth searched */
+                              ANALYSIS_DEPTH = "acd",
+      /** centipawn evaluation */
+                              CENTIPAWNS     = "ce",
+      /** half move clock */
+                              HALF_MOVES     = "hmvc",
+      /** full move number */
+                              FULL_MOVES     = "fmvn";
+
+   protected ChessBoard board;
+   protected Map<String,List<String>> operations = new LinkedHashMap<>();
+
+   //constructors//////////////////////////////////////////////////////////////
+   public EPDPosition (ChessBoard _board) {
+      board = _board;
+   }
+
+   //accessors/////////////////////////////////////////////////////////////////
+   public ChessBoard getBoard () { return board; }
+
+   public void setBoard (ChessBoard b) { board = b; }
+
+   /* getOpcodes *************************************************************/
+   /** the opcodes of the operations in order. */
+   public Set<String> getOpcodes () {
+      return Collections.unmodifiableSet(operations.keySet());
+   }
+
+   /* hasOpcode **************************************************************/
+   public boolean hasOpcode (String opcode) {
+      return operations.containsKey(opcode);
+   }
+
+   /* getOperands ************************************************************/
+   /** @return null if there is no such operation
+    */
+   public List<String> getOperands (String opcode) {
+      return operations.get(opcode);
+   }
+
+   /* getOperand *************************************************************/
+   /** the first operand of the operation.
+    *  @return null if there is no such operation or it has no operands
+    */
+   public String getOperand (String opcode) {
+      List<String> operands = operations.get(opcode);
+      return (operands == null || operands.isEmpty()) ? null : operands.get(0);
+   }
+
+   /* set ********************************************************************/
+   /** sets an operation, replacing any with the same opcode.  An operation
+    *  may have no operands (as "noop").
+    */
+   public void set (String opcode, String... operands) {
+      set(opcode, new ArrayList<>(Arrays.asList(operands)));
+   }
+
+   public void set (String opcode, List<String> operands) {
+      operations.put(opcode, operands);
+   }
+
+   /* remove *****************************************************************/
+   public List<String> remove (String opcode) {
+      return operations.remove(opcode);
+   }
+
+   //common opcodes////////////////////////////////////////////////////////////
+   /* getId ******************************************************************/
+   public String getId () { return getOperand(ID); }
+
+   public void setId (String id) { set(ID, id); }
+
+   /* getBestMoves ***********************************************************/
+   /** the "bm" moves on the board.
+    *  @return an empty list if there are none
+    *  @throws IllegalMoveException if a move is not legal on the board
+    *  @throws AmbiguousMoveException if a move could be more than one
+    */
+   public List<ChessMove> getBestMoves () 
+          throws IllegalMoveException,
+	         AmbiguousMoveException {
+      return toMoves(getOperands(BEST_MOVE));
+   }
+
+   public void setBestMoves (ChessMove... moves) {
+      set(BEST_MOVE, toOperands(moves));
+   }
+
+   /* getAvoidMoves **********************************************************/
+   /** the "am" moves on the board.
+    *  @return an empty list if there are none
+    *  @throws IllegalMoveException if a move is not legal on the board
+    *  @throws AmbiguousMoveException if a move could be more than one
+    */
+   public List<ChessMove> getAvoidMoves () 
+          throws IllegalMoveException,
+	         AmbiguousMoveException {
+      return toMoves(getOperands(AVOID_MOVE));
+   }
+
+   public void setAvoidMoves (ChessMove... moves) {
+      set(AVOID_MOVE, toOperands(moves));
+   }
+
+   /* getAnalysisDepth *******************************************************/
+   /** the "acd" operand.
+    *  @return -1 if there is none
+    *  @throws NumberFormatException if the operand isn't a number
+    */
+   public int getAnalysisDepth () {
+      String s = getOperand(ANALYSIS_DEPTH);
+      return (s == null) ? -1 : Integer.parseInt(s);
+   }
+
+   public void setAnalysisDepth (int depth) {
+      set(ANALYSIS_DEPTH, Integer.toString(depth));
+   }
+
+   /* getCentipawns **********************************************************/
+   /** the "ce" operand: the evaluation in hundredths of a pawn for the side
+    *  to move.
+    *  @return null if there is none
+    *  @throws NumberFormatException if the operand isn't a number
+    */
+   public Integer getCentipawns () {
+      String s = getOperand(CENTIPAWNS);
+      return (s == null) ? null : Integer.valueOf(s);
+   }
+
+   public void setCentipawns (int ce) {
+      set(CENTIPAWNS, Integer.toString(ce));
+   }
+
+   /* getComment *************************************************************/
+   /** one of the comment operations "c0" - "c9".
+    *  @return null if there is none
+    */
+   public String getComment (int i) {
+      return getOperand(comment(i));
+   }
+
+   public void setComment (int i, String comment) {
+      set(comment(i), comment);
+   }
+
+   //helpers///////////////////////////////////////////////////////////////////
+   /* comment ****************************************************************/
+   protected static String comment (int i) {
+      if (i < 0 || i > 9)
+         throw new IllegalArgumentException("comments are c0 - c9: " + i);
+      return "c" + i;
+   }
+
+   /* toMoves ****************************************************************/
+   protected List<ChessMove> toMoves (List<String> operands) 
+          throws IllegalMoveException,
+	         AmbiguousMoveException {
+      List<ChessMove> moves = new ArrayList<>(
+                                 (operands == null) ? 0 : operands.size());
+      SAN san = null;
+      ChessMove m = null;
+
+         if (operands == null)
+	    return moves;
+
+	 san = new SAN();
+	 for (String s : operands) {
+	    if ((m = (ChessMove) san.stringToMove(board, s)) == null)
+	       throw new IllegalMoveException("not a move: " + s);
+	    moves.add(m);
+	 }
+
+      return moves;
+   }
+
+   /* toOperands *************************************************************/
+   protected static List<String> toOperands (ChessMove[] moves) {
+      List<String> operands = new ArrayList<>(moves.length);
+      SAN san = new SAN();
+
+         for (ChessMove m : moves)
+	    operands.add(san.moveToString(m));
+
+      return operands;
+   }
+
+   /* equals *****************************************************************/
+   /** positions are equal if their boards and operations are.
+    */
+   public boolean equals (Object obj) {
+      if (this == obj) return true;
+      if ((obj == null) || (obj.getClass() != this.getClass()))
+         return false;
+
+      EPDPosition p = (EPDPosition) obj;
+      return ((board == null) ? p.board == null : board.equals(p.board))
+             && operations.equals(p.operations);
+   }
+
+   /* hashCode ***************************************************************/
+   public int hashCode () {
+      int hash = 7;
+
+      hash = 31 * hash + ((board == null) ? 0 : board.hashCode());
+      hash = 31 * hash + operations.hashCode();
+
+      return hash;
+   }
+
+   public String toString () {
+      return new EPD().positionToString(this);
+   }
+}
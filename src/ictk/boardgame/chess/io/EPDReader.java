@@ -0,0 +1,336 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess.io;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import ictk.util.Log;
+
+/* EPDReader *****************************************************************/
+/** EPDReader reads positions from EPD, one per line, skipping blank 
+ *  lines.  Positions are read one at a time with readPosition() or
+ *  stream(), or all at once on several threads with evaluate().
+ */
+public class EPDReader implements Closeable {
+      /** mask for Log.debug() */
+   public static final long DEBUG = Log.GameReader;
+
+      /** lines handed to a thread at a time by evaluate() */
+   protected static final int BATCH_SIZE = 256;
+
+   protected BufferedReader in;
+   protected EPD epd = new EPD();
+   protected int lineNumber;
+
+   protected int threads = Runtime.getRuntime().availableProcessors();
+
+   //state of the evaluation in progress
+   protected EPDEvaluator evaluator;
+   protected EPDWriter out;
+   protected Semaphore pending;
+   protected Map<Integer,Batch> waiting;
+   protected int nextBatch;
+   protected int failedCount;
+   protected Throwable failure;
+   protected volatile boolean cancelled;
+
+   //constructors//////////////////////////////////////////////////////////////
+   public EPDReader (Reader _in) {
+      if (_in instanceof BufferedReader)
+         in = (BufferedReader) _in;
+      else
+         in = new BufferedReader(_in, 1 << 16);
+   }
+
+   //Settings//////////////////////////////////////////////////////////////////
+   /* setThreads *************************************************************/
+   /** the number of threads used by evaluate().  The default is the number
+    *  of processors.
+    */
+   public void setThreads (int n) {
+      if (n < 1)
+         throw new IllegalArgumentException("need at least one thread");
+      threads = n;
+   }
+
+   public int getThreads () {
+      return threads;
+   }
+
+   /* getLineNumber **********************************************************/
+   /** the number of lines read so far.
+    */
+   public int getLineNumber () {
+      return lineNumber;
+   }
+
+   /* getFailedCount *********************************************************/
+   /** the number of lines of the last evaluate() that could not be read.
+    */
+   public int getFailedCount () {
+      return failedCount;
+   }
+
+   //Reading///////////////////////////////////////////////////////////////////
+   /* readPosition ***********************************************************/
+   /** @return null at the end of the input
+    *  @throws IOException if the line is not EPD
+    */
+   public EPDPosition readPosition () 
+          throws IOException {
+      String line = nextLine();
+
+         if (line == null)
+	    return null;
+
+	 try {
+	    return epd.stringToPosition(line);
+	 }
+	 catch (IOException | RuntimeException e) {
+	    throw new IOException("line " + lineNumber + ": " + e.getMessage(),
+	                          e);
+	 }
+   }
+
+   /* nextLine ***************************************************************/
+   /** @return the next line that isn't blank, or null at the end */
+   protected String nextLine () 
+          throws IOException {
+      String line = null;
+
+         while ((line = in.readLine()) != null) {
+	    lineNumber++;
+	    if (!line.trim().isEmpty())
+	       return line;
+	 }
+
+      return null;
+   }
+
+   /* stream *****************************************************************/
+   /** the positions as a Stream read as it is consumed.  An IOException is
+    *  thrown as an UncheckedIOException.
+    */
+   public Stream<EPDPosition> stream () {
+      Iterator<EPDPosition> it = new Iterator<EPDPosition>() {
+         EPDPosition next;
+
+	 public boolean hasNext () {
+	    if (next == null)
+	       try {
+		  next = readPosition();
+	       }
+	       catch (IOException e) {
+		  throw new UncheckedIOException(e);
+	       }
+	    return next != null;
+	 }
+
+	 public EPDPosition next () {
+	    if (!hasNext())
+	       throw new NoSuchElementException();
+	    EPDPosition pos = next;
+	    next = null;
+	    return pos;
+	 }
+      };
+
+      return StreamSupport.stream(Spliterators.spliteratorUnknownSize(it,
+                Spliterator.NONNULL | Spliterator.ORDERED), false);
+   }
+
+   //Evaluation////////////////////////////////////////////////////////////////
+   /* evaluate ***************************************************************/
+   /** reads the rest of the input, parsing and evaluating the positions on
+    *  several threads.  Lines are handed to the threads in batches.  If 
+    *  out isn't null the positions are written to it after evaluation, in
+    *  the order of the input; lines that can't be read are left out (see
+    *  getFailedCount()).
+    *  <br>
+    *  If the evaluator throws, or out can't be written, the evaluation 
+    *  stops and the exception is thrown from here once the batches already
+    *  started are done.
+    *
+    *  @return the number of positions (lines that aren't blank) read.
+    */
+   public int evaluate (EPDEvaluator _evaluator, EPDWriter _out) 
+          throws IOException,
+	         InterruptedException {
+      ExecutorService pool = Executors.newFixedThreadPool(threads);
+      String[] lines = null;
+      String line = null;
+      int count = 0,
+          batch = 0,
+	  n = 0;
+
+         evaluator   = _evaluator;
+	 out         = _out;
+	 pending     = new Semaphore(threads * 4);
+	 waiting     = new HashMap<>();
+	 nextBatch   = 0;
+	 failedCount = 0;
+	 failure     = null;
+	 cancelled   = false;
+
+	 try {
+	    while (!cancelled) {
+	       lines = new String[BATCH_SIZE];
+	       for (n=0; n < BATCH_SIZE && (line = nextLine()) != null; n++)
+	          lines[n] = line;
+	       if (n == 0)
+	          break;
+
+	       final int number = batch++,
+	                 first  = count,
+			 size   = n;
+	       final String[] text = lines;
+	       count += n;
+
+	       pending.acquire();
+	       pool.execute(() -> evaluate(number, first, text, size));
+	    }
+	 }
+	 catch (InterruptedException e) {
+	    cancelled = true;
+	    throw e;
+	 }
+	 finally {
+	    pool.shutdown();
+	    if (!pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS))
+	       pool.shutdownNow();
+	 }
+
+	 if (failure instanceof IOException)
+	    throw (IOException) failure;
+	 if (failure instanceof RuntimeException)
+	    throw (RuntimeException) failure;
+	 if (failure instanceof Error)
+	    throw (Error) failure;
+
+	 if (Log.debug)
+	    Log.debug(DEBUG, "evaluated " + count + " positions, " 
+	       + failedCount + " failed");
+
+      return count;
+   }
+
+   /* evaluate ***************************************************************/
+   /** parses and evaluates one batch on a pool thread.
+    */
+   protected void evaluate (int number, int first, String[] lines, int size){
+      StringBuilder sb = (out == null) ? null : new StringBuilder(size * 80);
+      EPDPosition pos = null;
+      int failed = 0;
+
+         try {
+	    for (int i=0; i < size && !cancelled; i++) {
+	       try {
+	          pos = epd.stringToPosition(lines[i]);
+	       }
+	       catch (IOException | RuntimeException e) {
+	          if (Log.debug)
+		     Log.debug(DEBUG, "can't read: " + lines[i]);
+	          failed++;
+		  continue;
+	       }
+
+	       evaluator.evaluate(first + i, pos);
+
+	       if (sb != null) {
+	          epd.appendPosition(pos, sb);
+		  sb.append(EPDWriter.LINE_SEPARATOR);
+	       }
+	    }
+	 }
+	 catch (RuntimeException | Error e) {
+	    cancel(e);
+	 }
+	 finally {
+	    deliver(number, new Batch(sb, failed));
+	 }
+   }
+
+   /* deliver ****************************************************************/
+   /** writes out the batches in order.
+    */
+   protected synchronized void deliver (int number, Batch batch) {
+      waiting.put(number, batch);
+      while ((batch = waiting.remove(nextBatch)) != null) {
+         nextBatch++;
+	 failedCount += batch.failed;
+	 try {
+	    if (out != null && !cancelled)
+	       out.write(batch.text);
+	 }
+	 catch (IOException e) {
+	    cancel(e);
+	 }
+	 finally {
+	    pending.release();
+	 }
+      }
+   }
+
+   /* cancel *****************************************************************/
+   private synchronized void cancel (Throwable t) {
+      if (failure == null)
+         failure = t;
+      cancelled = true;
+   }
+
+   /* close ******************************************************************/
+   public void close () 
+          throws IOException {
+      in.close();
+   }
+
+   //Inner Classes/////////////////////////////////////////////////////////////
+   /** a batch done out of turn, waiting for the batches before it */
+   protected static class Batch {
+      CharSequence text;
+      int failed;
+
+      Batch (CharSequence _text, int _failed) {
+         text   = _text;
+	 failed = _failed;
+      }
+   }
+}
@@ -0,0 +1,81 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess.io;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+
+/* EPDWriter *****************************************************************/
+/** EPDWriter writes positions as EPD, one per line.
+ */
+public class EPDWriter implements Closeable, Flushable {
+   protected static final String LINE_SEPARATOR = System.lineSeparator();
+
+   protected Writer out;
+   protected EPD epd = new EPD();
+      /** reused for each line */
+   protected StringBuilder line = new StringBuilder(128);
+
+   //constructors//////////////////////////////////////////////////////////////
+   public EPDWriter (Writer _out) {
+      if (_out instanceof BufferedWriter)
+         out = _out;
+      else
+         out = new BufferedWriter(_out, 1 << 16);
+   }
+
+   //writing///////////////////////////////////////////////////////////////////
+   /* writePosition **********************************************************/
+   public void writePosition (EPDPosition pos) 
+          throws IOException {
+      line.setLength(0);
+      epd.appendPosition(pos, line);
+      line.append(LINE_SEPARATOR);
+      out.append(line);
+   }
+
+   /* write ******************************************************************/
+   /** writes lines already in EPD.
+    */
+   protected void write (CharSequence lines) 
+          throws IOException {
+      out.append(lines);
+   }
+
+   /* flush ******************************************************************/
+   public void flush () 
+          throws IOException {
+      out.flush();
+   }
+
+   /* close ******************************************************************/
+   public void close () 
+          throws IOException {
+      out.close();
+   }
+}
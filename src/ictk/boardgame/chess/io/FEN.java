@@ -29,6 +29,7 @@ import java.util.Locale;
 import java.io.IOException;
 import java.io.BufferedReader;
 import java.io.Reader;
+import java.nio.ByteBuffer;
 
 import ictk.util.Log;
 import ictk.boardgame.Board;
@@ -45,7 +46,13 @@ public class FEN implements ChessBoardNotation {
      /** for translation from PNBRQK to Pieces */
    protected static SAN san = new SAN();
 
+     /** FEN characters by piece INDEX, White then Black */
+   protected static final char[] PIECE_CHARS = 
+      {'K', 'Q', 'R', 'B', 'N', 'P', 'k', 'q', 'r', 'b', 'n', 'p'};
+
    Locale locale;
+     /** the view of a ByteBuffer used by parse(ByteBuffer ...) */
+   protected ByteChars bytes;
 
    public FEN () {
    }
@@ -188,83 +195,276 @@ public class FEN implements ChessBoardNotation {
    /** converts board objects into string format
     */
    public String boardToString (Board b) {
-      ChessBoard board = (ChessBoard) b;
-      char[][] ray = board.toCharArray();
-      StringBuffer buff = new StringBuffer();
-      
+      StringBuilder sb = new StringBuilder(90);
 
-      //board
+         try {
+            appendTo((ChessBoard) b, sb);
+         }
+         catch (IOException e) {
+            //a StringBuilder doesn't throw
+            throw new IllegalStateException(e);
+         }
+
+      return sb.toString();
+   }
+
+   /* appendTo ************************************************************/
+   /** writes the board in FEN to out without building a String.
+    */
+   public void appendTo (ChessBoard board, Appendable out) 
+          throws IOException {
+      appendPosition(board, out);
+
+      out.append(' ');
+      appendInt(board.get50MoveRulePlyCount(), out);
+      out.append(' ');
+      appendInt(board.getCurrentMoveNumber(), out);
+   }
+
+   /* appendPosition ******************************************************/
+   /** writes the first four fields of FEN: the pieces, who's move it is,
+    *  the castling rights and the en passant square.  This is all EPD
+    *  has of the board.
+    */
+   protected void appendPosition (ChessBoard board, Appendable out) 
+          throws IOException {
+      ChessPiece p = null;
       int count = 0;
-      for (int r=ChessBoard.MAX_RANK-1; r >= 0; r--) {
-         if (r != ChessBoard.MAX_RANK-1) buff.append("/");
-	 
+
+      //board
+      for (int r=ChessBoard.MAX_RANK; r > 0; r--) {
+         if (r != ChessBoard.MAX_RANK) out.append('/');
+
 	 count = 0;
-         for (int f=0; f < ChessBoard.MAX_FILE; f++) {
-	    if (Character.isLetter(ray[f][r])) {
+         for (int f=1; f <= ChessBoard.MAX_FILE; f++) {
+	    if ((p = board.getSquare(f, r).getOccupant()) != null) {
 	       if (count > 0) {
-	          buff.append(count);
+	          out.append((char) ('0' + count));
 		  count = 0;
 	       }
-	       buff.append(ray[f][r]);
+	       out.append(PIECE_CHARS[p.getIndex() % ChessPiece.BLACK_OFFSET
+	                              + ((p.isBlack()) ? 6 : 0)]);
 	    }
 	    else count++;
 	 }
 	 if (count > 0)
-	    buff.append(count);
+	    out.append((char) ('0' + count));
       }
 
-      buff.append(" "); //space
+      out.append(' '); //space
 
       //who's move
-      buff.append( ((board.isBlackMove()) ? 'b' : 'w'));
+      out.append( ((board.isBlackMove()) ? 'b' : 'w'));
 
-      buff.append(" "); //space
+      out.append(' '); //space
 
       //castling block
       boolean castle = false;
       if (board.isWhiteCastleableKingside()) {
          castle = true;
-	 buff.append("K");
+	 out.append('K');
       }
       if (board.isWhiteCastleableQueenside()) {
          castle = true;
-	 buff.append("Q");
+	 out.append('Q');
       }
       if (board.isBlackCastleableKingside()) {
          castle = true;
-	 buff.append("k");
+	 out.append('k');
       }
       if (board.isBlackCastleableQueenside()) {
          castle = true;
-	 buff.append("q");
+	 out.append('q');
       }
       if (!castle)
-         buff.append("-");
+         out.append('-');
 
-      buff.append(" "); //space
+      out.append(' '); //space
 
       //enpassant file
       if (board.getEnPassantFile() != ChessBoard.NO_ENPASSANT) {
-         buff.append(san.fileToChar(board.getEnPassantFile()));
+         out.append(san.fileToChar(board.getEnPassantFile()));
 	 if (board.isBlackMove())
-	    buff.append("3"); //the rank (silly I know -- but standard)
+	    out.append('3'); //the rank (silly I know -- but standard)
 	 else
-	    buff.append("6");
+	    out.append('6');
       }
       else
-         buff.append("-");
-      
-      buff.append(" "); //space
+         out.append('-');
+   }
+
+   /* appendInt ***********************************************************/
+   /** writes a non-negative number digit by digit so no String is made.
+    */
+   protected static void appendInt (int i, Appendable out) 
+          throws IOException {
+      int div = 1;
+
+         if (i < 0) {
+	    out.append('-');
+	    i = -i;
+	 }
+         while (div <= i / 10)
+	    div *= 10;
+	 for (; div > 0; div /= 10)
+	    out.append((char) ('0' + (i / div) % 10));
+   }
+
+   //Reusable Boards///////////////////////////////////////////////////////
+   /* parse ***************************************************************/
+   /** parses FEN from part of a CharSequence straight onto a board,
+    *  reusing the board and its pieces (see ChessBoard.recycle()).  
+    *  Nothing is copied and, once the board has held a position with as
+    *  many pieces, nothing is created, so millions of positions can be
+    *  read through one board.
+    *  <br>
+    *  The half move clock and move number may be left off (they are then
+    *  0 and 1) and anything after them is ignored, so the start of an EPD
+    *  line can be parsed too.
+    *
+    * @param board the board to set up, or null for a new one.
+    * @return the board.
+    * @throws IOException if the text isn't FEN.
+    */
+   public ChessBoard parse (CharSequence str, int start, int end, 
+                            ChessBoard board) 
+          throws IOException {
+      int i = start,
+          rank = ChessBoard.MAX_RANK,
+          file = 1,
+	  plyCount = 0,
+	  moveNumber = 1,
+	  enpassantFile = ChessBoard.NO_ENPASSANT;
+      boolean isBlackMove = false,
+              wk = false, wq = false, bk = false, bq = false;
+      char c;
+
+         if (board == null)
+	    board = new ChessBoard(false);
+	 board.recycle();
+
+	 while (i < end && str.charAt(i) == ' ')
+	    i++;
+
+	 //read board
+	 for (; i < end && (c = str.charAt(i)) != ' '; i++) {
+	    if (c == '/') {
+	       rank--;
+	       file = 1;
+	    }
+	    else if (c >= '1' && c <= '8')
+	       file += c - '0';
+	    else if (file > ChessBoard.MAX_FILE || rank < 1
+	             || !addPiece(board, c, file++, rank))
+	       throw new IOException("Unsupported character found in FEN at:"
+	          + (i - start));
+	 }
+
+	 i = skipSpaces(str, i, end);
 
-      //ply clock
-      buff.append(board.get50MoveRulePlyCount()); 
+	 //who's move it is
+	 c = (i < end) ? str.charAt(i++) : ' ';
+	 if (c == 'b')
+	    isBlackMove = true;
+	 else if (c != 'w')
+	    throw new IOException("Unsupported character found in FEN at:"
+	       + (i - start - 1) + "(" + c + ") expecting who to move");
 
-      buff.append(" "); //space
+	 i = skipSpaces(str, i, end);
 
-      //move number
-      buff.append(board.getCurrentMoveNumber());
+	 //castling block KQkq or -
+	 for (; i < end && (c = str.charAt(i)) != ' '; i++) {
+	    switch (c) {
+	       case 'K': wk = true; break;
+	       case 'Q': wq = true; break;
+	       case 'k': bk = true; break;
+	       case 'q': bq = true; break;
+	    }
+	 }
+
+	 i = skipSpaces(str, i, end);
+
+	 //enpassant square; the rank isn't necessary
+	 if (i < end && (c = str.charAt(i)) != '-')
+	    enpassantFile = san.fileToNum(c);
+	 for (; i < end && str.charAt(i) != ' '; i++)
+	    ;
+
+	 //the clocks, if there
+	 i = skipSpaces(str, i, end);
+	 if (i < end && Character.isDigit(str.charAt(i))) {
+	    for (plyCount = 0; i < end && Character.isDigit(c = str.charAt(i));
+	         i++)
+	       plyCount = plyCount * 10 + (c - '0');
+
+	    i = skipSpaces(str, i, end);
+	    if (i < end && Character.isDigit(str.charAt(i)))
+	       for (moveNumber = 0; 
+	            i < end && Character.isDigit(c = str.charAt(i)); i++)
+		  moveNumber = moveNumber * 10 + (c - '0');
+	 }
 
-      return buff.toString();
+	 board.setBlackMove(isBlackMove);
+	 board.setCastleable(wk, wq, bk, bq);
+	 board.setEnPassantFile(enpassantFile);
+	 board.set50MoveRulePlyCount(plyCount);
+	 board.setCurrentMoveNumber(moveNumber);
+
+      return board;
+   }
+
+   /* parse ***************************************************************/
+   /** parses FEN from ASCII bytes of a buffer, as from a memory mapped
+    *  file, without copying them.  The buffer's position isn't changed.
+    *  <br>
+    *  This FEN object keeps a view of the buffer while parsing, so it
+    *  should only be used by one thread at a time for this.
+    *
+    * @see #parse(CharSequence, int, int, ChessBoard)
+    */
+   public ChessBoard parse (ByteBuffer buf, int start, int end, 
+                            ChessBoard board) 
+          throws IOException {
+      if (bytes == null)
+         bytes = new ByteChars();
+      bytes.buf = buf;
+
+      try {
+         return parse(bytes, start, end, board);
+      }
+      finally {
+         bytes.buf = null;
+      }
+   }
+
+   /* addPiece ************************************************************/
+   /** @return false if c isn't a piece */
+   protected static boolean addPiece (ChessBoard board, char c, 
+                                      int file, int rank) {
+      switch (c) {
+	 case 'p': board.addPawn(file, rank, true); break;
+	 case 'P': board.addPawn(file, rank, false); break;
+	 case 'n': board.addKnight(file, rank, true); break;
+	 case 'N': board.addKnight(file, rank, false); break;
+	 case 'b': board.addBishop(file, rank, true); break;
+	 case 'B': board.addBishop(file, rank, false); break;
+	 case 'r': board.addRook(file, rank, true); break;
+	 case 'R': board.addRook(file, rank, false); break;
+	 case 'q': board.addQueen(file, rank, true); break;
+	 case 'Q': board.addQueen(file, rank, false); break;
+	 case 'k': board.addKing(file, rank, true); break;
+	 case 'K': board.addKing(file, rank, false); break;
+	 default:
+	    return false;
+      }
+      return true;
+   }
+
+   /* skipSpaces **********************************************************/
+   protected static int skipSpaces (CharSequence str, int i, int end) {
+      while (i < end && str.charAt(i) == ' ')
+         i++;
+      return i;
    }
 
    //Utilities///////////////////////////////////////////////////////////
@@ -295,4 +495,29 @@ public class FEN implements ChessBoardNotation {
 	    return false;
       }
    }
+
+   //Inner Classes/////////////////////////////////////////////////////////
+   /** ASCII bytes of a buffer seen as chars */
+   protected static class ByteChars implements CharSequence {
+      ByteBuffer buf;
+
+      public int length () { 
+         return buf.limit(); 
+      }
+
+      public char charAt (int i) { 
+         return (char) (buf.get(i) & 0xFF); 
+      }
+
+      public CharSequence subSequence (int start, int end) {
+         StringBuilder sb = new StringBuilder(end - start);
+	 for (int i=start; i < end; i++)
+	    sb.append(charAt(i));
+	 return sb;
+      }
+
+      public String toString () {
+         return subSequence(0, length()).toString();
+      }
+   }
 }
@@ -0,0 +1,347 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import ictk.util.Log;
+import ictk.boardgame.IllegalMoveException;
+import ictk.boardgame.AmbiguousMoveException;
+import ictk.boardgame.io.InvalidGameFormatException;
+import ictk.boardgame.chess.ChessGame;
+
+/* PGNFile *******************************************************************/
+/** PGNFile gives random access to the games of a PGN file.  The file is
+ *  memory mapped and, when opened, scanned once byte by byte for where
+ *  each game begins.  A game is then read by handing just its part of the
+ *  file to a PGNReader, so game 1,234,567 is read without reading any of
+ *  the games before it.
+ *  <br>
+ *  Games are found the same way as PGNImporter finds them: a game starts
+ *  at the first tag pair after the movetext of the game before.  The 
+ *  default character set is ISO-8859-1, as the PGN standard asks for.
+ *  <br>
+ *  The games may be read from several threads at once.
+ */
+public class PGNFile implements Closeable {
+      /** mask for Log.debug() */
+   public static final long DEBUG = Log.GameReader;
+
+      /** files are mapped in parts of this size (1GB), since a single
+       *  mapping can't be larger than 2GB */
+   protected static final int  SEGMENT_BITS = 30;
+   protected static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+
+   protected File             file;
+   protected RandomAccessFile raf;
+   protected FileChannel      channel;
+   protected MappedByteBuffer[] segments;
+   protected long             length;
+   protected Charset          charset;
+
+      /** where each game begins; offsets[count] is the end of the last */
+   protected long[] offsets = new long[1024];
+   protected int    count;
+   protected boolean trusted;
+
+   //constructors//////////////////////////////////////////////////////////////
+   public PGNFile (File file) 
+          throws IOException {
+      this(file, StandardCharsets.ISO_8859_1);
+   }
+
+   public PGNFile (File _file, Charset _charset) 
+          throws IOException {
+      this(_file, _charset, null);
+   }
+
+   /** opens the file with the offsets of its games already known (as kept
+    *  by an index of the file), so it needn't be scanned.
+    *
+    *  @param _offsets where each game begins, in order, or null to scan
+    *                  the file for them.
+    */
+   public PGNFile (File _file, Charset _charset, long[] _offsets) 
+          throws IOException {
+      file    = _file;
+      charset = _charset;
+      raf     = new RandomAccessFile(file, "r");
+      channel = raf.getChannel();
+      length  = channel.size();
+
+      try {
+	 segments = new MappedByteBuffer[
+	    (int) ((length + SEGMENT_MASK) >>> SEGMENT_BITS)];
+	 for (int i=0; i < segments.length; i++) {
+	    long start = (long) i << SEGMENT_BITS;
+	    segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+	                     Math.min(SEGMENT_MASK + 1, length - start));
+	 }
+
+	 if (_offsets == null)
+	    index();
+	 else {
+	    count   = _offsets.length;
+	    offsets = Arrays.copyOf(_offsets, count + 1);
+	    offsets[count] = length;
+	 }
+      }
+      catch (IOException e) {
+         close();
+	 throw e;
+      }
+
+      if (Log.debug)
+         Log.debug(DEBUG, "indexed " + count + " games in " + file);
+   }
+
+   //Settings//////////////////////////////////////////////////////////////////
+   /* setTrusted *************************************************************/
+   /** @see PGNReader#setTrusted(boolean) */
+   public void setTrusted (boolean t) {
+      trusted = t;
+   }
+
+   public boolean isTrusted () {
+      return trusted;
+   }
+
+   //Index/////////////////////////////////////////////////////////////////////
+   /* index ******************************************************************/
+   /** the one pass over the file that finds where each game begins.  It
+    *  keeps track of tag pairs at the start of a line, { } comments, ; 
+    *  comments and % escape lines.
+    */
+   protected void index () {
+      ByteBuffer seg = null;
+      byte[]  buf       = new byte[1 << 16];
+      boolean lineStart = true,
+              skipLine  = false,  //in a ; comment or % line
+	      header    = false,
+	      body      = false;
+      int     depth     = 0,      //of { } comments
+              b         = 0,
+	      n         = 0;
+      long    pos       = 0,
+              start     = 0;      //of the game being scanned
+
+         for (int s=0; s < segments.length; s++) {
+	    seg = segments[s].duplicate();
+	    while ((n = Math.min(buf.length, seg.remaining())) > 0) {
+	       seg.get(buf, 0, n);  //bulk copies scan faster than get(i)
+	       for (int i=0; i < n; i++, pos++) {
+		  b = buf[i];
+
+		  if (b == '\n') {
+		     lineStart = true;
+		     skipLine = false;
+		     continue;
+		  }
+		  if (skipLine)
+		     continue;
+
+		  if (lineStart) {
+		     lineStart = false;
+		     if (depth == 0 && b == '[') {
+			if (body) {
+			   addGame(start);
+			   start = pos;
+			   body = false;
+			}
+			header = true;
+			skipLine = true;  //the rest is the tag pair
+			continue;
+		     }
+		     if (header)
+			body = true;
+		     if (depth == 0 && b == '%') {
+			skipLine = true;
+			continue;
+		     }
+		  }
+
+		  if (b == '{')
+		     depth++;
+		  else if (b == '}' && depth > 0)
+		     depth--;
+		  else if (b == ';' && depth == 0)
+		     skipLine = true;
+	       }
+	    }
+	 }
+
+	 if (header)
+	    addGame(start);
+	 offsets[count] = length;
+   }
+
+   /* addGame ****************************************************************/
+   private void addGame (long offset) {
+      if (count + 1 >= offsets.length)
+         offsets = Arrays.copyOf(offsets, offsets.length * 2);
+      offsets[count++] = offset;
+   }
+
+   //Access////////////////////////////////////////////////////////////////////
+   /* size *******************************************************************/
+   /** the number of games in the file.
+    */
+   public int size () {
+      return count;
+   }
+
+   /* getOffset **************************************************************/
+   /** the byte offset in the file where game n begins.
+    */
+   public long getOffset (int n) {
+      checkIndex(n);
+      return offsets[n];
+   }
+
+   /* getLength **************************************************************/
+   /** the number of bytes in game n, up to the next game.
+    */
+   public long getLength (int n) {
+      checkIndex(n);
+      return offsets[n + 1] - offsets[n];
+   }
+
+   /* getPGN *****************************************************************/
+   /** the text of game n.
+    */
+   public String getPGN (int n) {
+      return getText(getOffset(n), offsets[n + 1]);
+   }
+
+   /* getText ****************************************************************/
+   /** the text of the file between two offsets.
+    */
+   protected String getText (long start, long end) {
+      if (end - start > Integer.MAX_VALUE)
+         throw new IllegalStateException("text at " + start + " is too large");
+
+      byte[] bytes = new byte[(int) (end - start)];
+      int    done  = 0, 
+             len   = 0;
+
+         //the text may cross from one mapped segment into the next
+	 while (done < bytes.length) {
+	    //duplicate() so reading threads don't share a position
+	    ByteBuffer seg = segments[(int) (start >>> SEGMENT_BITS)].duplicate();
+
+	    seg.position((int) (start & SEGMENT_MASK));
+	    len = Math.min(bytes.length - done, seg.remaining());
+	    seg.get(bytes, done, len);
+	    done  += len;
+	    start += len;
+	 }
+
+      return new String(bytes, charset);
+   }
+
+   /* getByte ****************************************************************/
+   protected int getByte (long pos) {
+      return segments[(int) (pos >>> SEGMENT_BITS)].get((int) (pos & SEGMENT_MASK));
+   }
+
+   /* getHeader **************************************************************/
+   /** the tag pairs of game n; the lines of the game up to its movetext.
+    *  This is much less to read than the whole game when only the game
+    *  information is wanted.
+    *
+    *  @see PGNReader#readGameInfo()
+    */
+   public String getHeader (int n) {
+      long start = getOffset(n),
+           end   = offsets[n + 1],
+	   pos   = start;
+      boolean lineStart = true,
+              tag       = false;
+      int b = 0;
+
+         //find the first line that isn't a tag pair
+	 for (; pos < end; pos++) {
+	    b = getByte(pos);
+	    if (b == '\n') {
+	       lineStart = true;
+	       continue;
+	    }
+	    if (lineStart) {
+	       lineStart = false;
+	       if (b == '[')
+		  tag = true;
+	       else if (tag && b != '\r' && b != '%')
+		  break;
+	    }
+	 }
+
+      return getText(start, pos);
+   }
+
+   /* getGame ****************************************************************/
+   /** reads game n.
+    *
+    *  @return null if there is no game in that part of the file.
+    */
+   public ChessGame getGame (int n) 
+          throws InvalidGameFormatException,
+	         IllegalMoveException,
+		 AmbiguousMoveException,
+		 IOException {
+      PGNReader reader = new PGNReader(new StringReader(getPGN(n)));
+
+         reader.setTrusted(trusted);
+
+      return (ChessGame) reader.readGame();
+   }
+
+   /* checkIndex *************************************************************/
+   private void checkIndex (int n) {
+      if (n < 0 || n >= count)
+         throw new IndexOutOfBoundsException(
+	    "game " + n + " of " + count + " games");
+   }
+
+   /* close ******************************************************************/
+   /** closes the file.  The mappings are released when they are garbage
+    *  collected.
+    */
+   public void close () 
+          throws IOException {
+      segments = null;
+      if (raf != null)
+         raf.close();
+   }
+}
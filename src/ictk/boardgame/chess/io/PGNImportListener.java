@@ -0,0 +1,53 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess.io;
+
+import java.util.EventListener;
+
+import ictk.boardgame.chess.ChessGame;
+
+/* PGNImportListener *********************************************************/
+/** receives the games read by a PGNImporter.  The calls are made one at a
+ *  time, but not necessarily from the same thread.
+ */
+public interface PGNImportListener extends EventListener {
+
+   /* gameRead ***************************************************************/
+   /**
+    *  @param number the position of the game in the input, starting at 0.
+    *  @param game   the game read.
+    */
+   public void gameRead (int number, ChessGame game);
+
+   /* gameFailed *************************************************************/
+   /** a game that could not be read.  The import carries on with the next
+    *  game.
+    *
+    *  @param number the position of the game in the input, starting at 0.
+    *  @param pgn    the text of the game.
+    *  @param e      why the game could not be read.
+    */
+   public void gameFailed (int number, String pgn, Exception e);
+}
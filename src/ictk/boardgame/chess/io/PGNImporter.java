@@ -0,0 +1,451 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess.io;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import ictk.util.Log;
+import ictk.boardgame.chess.ChessGame;
+
+/* PGNImporter ***************************************************************/
+/** PGNImporter reads a PGN file on several threads.  The input is cut into
+ *  games on the calling thread, and the games are parsed and replayed by
+ *  a pool of threads, each game with a PGNReader of its own.  The games
+ *  are handed to a PGNImportListener, or read from a Stream, either in the
+ *  order of the input or as they are done.
+ *  <br>
+ *  A new game starts at the first tag pair that follows the movetext of 
+ *  the game before (tag pairs inside { } comments don't count), so, as 
+ *  with PGNReader, each game needs at least one tag pair.
+ *  <br>
+ *  An importer runs one import at a time.
+ */
+public class PGNImporter {
+      /** mask for Log.debug() */
+   public static final long DEBUG = Log.GameReader;
+
+      /** marks the end of the games in stream() */
+   private static final Object END = new Object();
+
+   protected BufferedReader in;
+      /** the first line of the next game, read while looking for the end
+       *  of the last one */
+   protected String nextLine;
+
+   protected int     threads = Runtime.getRuntime().availableProcessors();
+      /** how many games can be read ahead of the listener */
+   protected int     maxPending = 0;
+   protected boolean ordered = true;
+   protected boolean trusted;
+
+   //state of the import in progress
+   protected PGNImportListener listener;
+   protected Semaphore pending;
+   protected Map<Integer,ReadGame> waiting;
+   protected int nextNumber;
+   protected int failedCount;
+   protected Throwable failure;
+   protected volatile boolean cancelled;
+
+   //constructors//////////////////////////////////////////////////////////////
+   public PGNImporter (Reader _in) {
+      if (_in instanceof BufferedReader)
+         in = (BufferedReader) _in;
+      else
+         in = new BufferedReader(_in, 1 << 16);
+   }
+
+   //Settings//////////////////////////////////////////////////////////////////
+   /* setThreads *************************************************************/
+   /** the number of threads parsing games.  The default is the number of
+    *  processors.
+    */
+   public void setThreads (int n) {
+      if (n < 1)
+         throw new IllegalArgumentException("need at least one thread");
+      threads = n;
+   }
+
+   public int getThreads () {
+      return threads;
+   }
+
+   /* setMaxPending **********************************************************/
+   /** how many games may be cut from the input but not yet handed to the
+    *  listener.  This bounds the memory used when the listener, or in 
+    *  ordered mode one long game, is slow.  The default (0) is 16 games per
+    *  thread.
+    */
+   public void setMaxPending (int n) {
+      maxPending = n;
+   }
+
+   public int getMaxPending () {
+      return (maxPending > 0) ? maxPending : threads * 16;
+   }
+
+   /* setOrdered *************************************************************/
+   /** if true (the default) the games are delivered in the order they are
+    *  in the input.  If false they are delivered as soon as they are read.
+    */
+   public void setOrdered (boolean t) {
+      ordered = t;
+   }
+
+   public boolean isOrdered () {
+      return ordered;
+   }
+
+   /* setTrusted *************************************************************/
+   /** @see PGNReader#setTrusted(boolean) */
+   public void setTrusted (boolean t) {
+      trusted = t;
+   }
+
+   public boolean isTrusted () {
+      return trusted;
+   }
+
+   /* getFailedCount *********************************************************/
+   /** the number of games of the last import that could not be read.
+    */
+   public int getFailedCount () {
+      return failedCount;
+   }
+
+   //Import////////////////////////////////////////////////////////////////////
+   /* importGames ************************************************************/
+   /** reads all the games to the end of the input, handing each to the
+    *  listener.  The listener is called one game at a time.  If the 
+    *  listener throws, the import stops and the exception is thrown from
+    *  here once the games already started are done.
+    *
+    *  @return the number of games found in the input.
+    */
+   public int importGames (PGNImportListener _listener) 
+          throws IOException,
+	         InterruptedException {
+      ExecutorService pool = Executors.newFixedThreadPool(threads);
+      int count = 0;
+      String pgn = null;
+
+         listener    = _listener;
+	 pending     = new Semaphore(getMaxPending());
+	 waiting     = new HashMap<>();
+	 nextNumber  = 0;
+	 failedCount = 0;
+	 failure     = null;
+	 cancelled   = false;
+
+	 try {
+	    while (!cancelled && (pgn = nextPGN()) != null) {
+	       final int number = count++;
+	       final String text = pgn;
+
+	       pending.acquire();
+	       pool.execute(() -> read(number, text));
+	    }
+	 }
+	 catch (InterruptedException e) {
+	    cancelled = true;
+	    throw e;
+	 }
+	 finally {
+	    pool.shutdown();
+	    if (!pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS))
+	       pool.shutdownNow();
+	 }
+
+	 if (failure instanceof RuntimeException)
+	    throw (RuntimeException) failure;
+	 if (failure instanceof Error)
+	    throw (Error) failure;
+
+	 if (Log.debug)
+	    Log.debug(DEBUG, "imported " + count + " games, " 
+	       + failedCount + " failed");
+
+      return count;
+   }
+
+   /* stream *****************************************************************/
+   /** the games as a Stream.  The import runs on a thread of its own as the
+    *  stream is consumed, and stops when the stream is closed.  Games that
+    *  could not be read are left out (see getFailedCount()).  An 
+    *  IOException reading the input is thrown as an UncheckedIOException
+    *  at the end of the stream.
+    */
+   public Stream<ChessGame> stream () {
+      final BlockingQueue<Object> queue = 
+         new ArrayBlockingQueue<>(getMaxPending());
+
+      Thread splitter = new Thread(() -> {
+	    Object end = END;
+	    try {
+	       importGames(new PGNImportListener() {
+		  public void gameRead (int number, ChessGame game) {
+		     put(queue, game);
+		  }
+		  public void gameFailed (int number, String pgn, Exception e) {
+		  }
+	       });
+	    }
+	    catch (IOException e) {
+	       end = new UncheckedIOException(e);
+	    }
+	    catch (InterruptedException e) {
+	       end = new RuntimeException(e);
+	    }
+	    catch (RuntimeException | Error e) {
+	       end = e;
+	    }
+	    put(queue, end);
+	 }, "PGNImporter");
+      splitter.setDaemon(true);
+      splitter.start();
+
+      Iterator<ChessGame> it = new Iterator<ChessGame>() {
+         Object next;
+
+	 public boolean hasNext () {
+	    if (next == null)
+	       try {
+		  next = queue.take();
+	       }
+	       catch (InterruptedException e) {
+	          cancelled = true;
+		  throw new RuntimeException(e);
+	       }
+	    if (next instanceof RuntimeException)
+	       throw (RuntimeException) next;
+	    if (next instanceof Error)
+	       throw (Error) next;
+	    return next != END;
+	 }
+
+	 public ChessGame next () {
+	    if (!hasNext())
+	       throw new NoSuchElementException();
+	    ChessGame game = (ChessGame) next;
+	    next = null;
+	    return game;
+	 }
+      };
+
+      int flags = Spliterator.NONNULL | (ordered ? Spliterator.ORDERED : 0);
+      return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(it, flags), false)
+	     .onClose(() -> cancelled = true);
+   }
+
+   /* put ********************************************************************/
+   /** puts o on the queue unless the import is cancelled first.
+    */
+   private void put (BlockingQueue<Object> queue, Object o) {
+      try {
+         while (!queue.offer(o, 100, TimeUnit.MILLISECONDS))
+	    if (cancelled)
+	       return;
+      }
+      catch (InterruptedException e) {
+         cancelled = true;
+      }
+   }
+
+   /* nextPGN ****************************************************************/
+   /** cuts the next game from the input.  A game ends at the first tag pair
+    *  after some movetext (or at the end of the input).  Lines before the 
+    *  first tag pair go with the game, as PGNReader skips them.
+    *
+    *  @return null if there are no more games.
+    */
+   protected String nextPGN () 
+          throws IOException {
+      StringBuilder sb = new StringBuilder(1024);
+      String  line   = null;
+      boolean header = false, 
+              body   = false;
+      int     depth  = 0;   //of { } comments
+
+         if (nextLine != null) {
+	    line = nextLine;
+	    nextLine = null;
+	 }
+	 else
+	    line = in.readLine();
+
+	 for (; line != null; line = in.readLine()) {
+	    if (depth == 0 && line.startsWith("[")) {
+	       if (body) {
+	          nextLine = line;
+		  break;
+	       }
+	       header = true;
+	    }
+	    else if (header) {
+	       body = true;
+	       depth = commentDepth(line, depth);
+	    }
+	    sb.append(line).append('\n');
+	 }
+
+      return (header) ? sb.toString() : null;
+   }
+
+   /* commentDepth ***********************************************************/
+   /** how deep in { } comments the movetext is at the end of the line.
+    */
+   protected static int commentDepth (String line, int depth) {
+      char c;
+
+         if (depth == 0 && line.startsWith("%"))  //escape line
+	    return 0;
+
+	 for (int i=0; i < line.length(); i++) {
+	    c = line.charAt(i);
+	    if (c == '{')
+	       depth++;
+	    else if (c == '}' && depth > 0)
+	       depth--;
+	    else if (c == ';' && depth == 0)  //comment to end of line
+	       break;
+	 }
+
+      return depth;
+   }
+
+   /* read *******************************************************************/
+   /** reads one game on a pool thread and hands it on.
+    */
+   protected void read (int number, String pgn) {
+      ChessGame game  = null;
+      Exception error = null;
+
+         try {
+	    game = parse(pgn);
+	    if (game == null)
+	       error = new IOException("no game found");
+	 }
+	 catch (Exception e) {
+	    error = e;
+	 }
+	 catch (Error e) {
+	    cancel(e);
+	 }
+	 finally {
+	    deliver(number, game, pgn, error);
+	 }
+   }
+
+   /* parse ******************************************************************/
+   /** parses the text of one game.
+    */
+   protected ChessGame parse (String pgn) 
+          throws Exception {
+      PGNReader reader = new PGNReader(new StringReader(pgn));
+
+         reader.setTrusted(trusted);
+
+      return (ChessGame) reader.readGame();
+   }
+
+   /* deliver ****************************************************************/
+   /** hands a game to the listener; in ordered mode only once all the
+    *  games before it have been handed over.
+    */
+   protected synchronized void deliver (int number, ChessGame game, 
+                                        String pgn, Exception error) {
+      ReadGame read = null;
+
+         if (!ordered) {
+	    fire(number, game, pgn, error);
+	    return;
+	 }
+
+	 waiting.put(number, new ReadGame(game, pgn, error));
+	 while ((read = waiting.remove(nextNumber)) != null)
+	    fire(nextNumber++, read.game, read.pgn, read.error);
+   }
+
+   /* fire *******************************************************************/
+   private void fire (int number, ChessGame game, String pgn, Exception e) {
+      try {
+	 if (e != null)
+	    failedCount++;
+	 if (cancelled)
+	    return;
+
+	 if (e == null)
+	    listener.gameRead(number, game);
+	 else
+	    listener.gameFailed(number, pgn, e);
+      }
+      catch (RuntimeException ex) {
+         cancel(ex);
+      }
+      finally {
+         pending.release();
+      }
+   }
+
+   /* cancel *****************************************************************/
+   private synchronized void cancel (Throwable t) {
+      if (failure == null)
+         failure = t;
+      cancelled = true;
+   }
+
+   //Inner Classes/////////////////////////////////////////////////////////////
+   /** a game read out of turn, waiting for the games before it */
+   protected static class ReadGame {
+      ChessGame game;
+      String    pgn;
+      Exception error;
+
+      ReadGame (ChessGame g, String p, Exception e) {
+         game  = g;
+	 pgn   = p;
+	 error = e;
+      }
+   }
+}
@@ -70,6 +70,8 @@ public class PGNReader extends ChessReader {
      /** used for error recovery */
    protected ChessGameInfo gameInfo;
    protected ChessBoard board;
+     /** moves are replayed without being verified */
+   protected boolean trusted;
 
 
    //static constructor////////////////////////////////////////////////////////
@@ -83,19 +85,74 @@ public class PGNReader extends ChessReader {
       super(_ir);
    }
 
+   /* setTrusted *************************************************************/
+   /** when reading a database of games that are known to be good, the
+    *  moves need not be verified as they are replayed.  The origin of each
+    *  move is still worked out, but legality, check, mate and how unique
+    *  the move is are not.  The moves of the games read are unverified and
+    *  the game's board is left in trusted mode until ChessGame.verify() is
+    *  called; which is needed before writing the game out as SAN.
+    *  <br>
+    *  The default is false.
+    *
+    *  @see ictk.boardgame.chess.ChessBoard#setTrustedMoves(boolean)
+    */
+   public void setTrusted (boolean t) {
+      trusted = t;
+   }
+
+   /* isTrusted **************************************************************/
+   /** @see #setTrusted(boolean) */
+   public boolean isTrusted () {
+      return trusted;
+   }
+
    /* readGame ***************************************************************/
    public Game readGame () 
           throws InvalidGameFormatException,
 	         IllegalMoveException,
 		 AmbiguousMoveException,
                  IOException {
+      return readGame(null);
+   }
+
+   /* readGame ***************************************************************/
+   /** reads the next game into an existing game, which is reset first 
+    *  (see ChessGame.reset()).  Its board, squares, pieces and history
+    *  are used again rather than made anew for each game, so jobs that
+    *  only look at each game once (statistics, searches) make little
+    *  garbage.  The previous game read into it is lost.
+    *
+    *  @param reuse the game to read into, or null for a new game.
+    *  @return the game read (reuse if not null), or null if there are
+    *          no more games.
+    */
+   public Game readGame (ChessGame reuse) 
+          throws InvalidGameFormatException,
+	         IllegalMoveException,
+		 AmbiguousMoveException,
+                 IOException {
       History    history  = null;
+      String     fenStr   = null;
 
          gameInfo = (ChessGameInfo) readGameInfo();
-	 board    = (ChessBoard) readBoard();
-	 if (board == null) 
-	    board = new ChessBoard();
-         game     = new ChessGame(gameInfo, board); 
+	 if (reuse == null) {
+	    board = (ChessBoard) readBoard();
+	    if (board == null) 
+	       board = new ChessBoard();
+	    game = new ChessGame(gameInfo, board); 
+	 }
+	 else {
+	    reuse.reset();
+	    reuse.setGameInfo(gameInfo);
+	    game  = reuse;
+	    board = (ChessBoard) reuse.getBoard();
+	    if (gameInfo != null && (fenStr = gameInfo.get("FEN")) != null)
+	       fen.parse(fenStr, 0, fenStr.length(), board);
+	 }
+	 //replaying the moves doesn't need every piece's destinations
+	 board.setLazyLegalDests(true);
+	 board.setTrustedMoves(trusted);
 
 	 history = readHistory();
 
@@ -204,7 +261,7 @@ public class PGNReader extends ChessReader {
       while (!finished && st.nextToken() != StreamTokenizer.TT_EOF) {
          tok = st.sval;
 
-         if (Log.debug)
+         if (Log.debug && Log.isDebug(DEBUG))
 	    Log.debug(DEBUG, "token: " + tok);
 
          //delimeter token
@@ -500,7 +557,7 @@ public class PGNReader extends ChessReader {
 
       }
 
-      if (Log.debug) {
+      if (Log.debug && Log.isDebug(DEBUG)) {
          history.goToEnd();
 	 if (history.getCurrentMove() != null) {
             Log.debug(DEBUG, "final result is: " 
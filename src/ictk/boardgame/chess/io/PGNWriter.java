@@ -110,6 +110,14 @@ public class PGNWriter extends ChessWriter {
       /** the type of notation to use for output */
    protected ChessMoveNotation notation = new SAN();
 
+      /** write straight to the output.  @see #setStreaming(boolean) */
+   protected boolean streaming        = false;
+      /** the tag pairs, reused from game to game in streaming mode */
+   private StringBuilder header       = new StringBuilder(512);
+      /** for handing buffers to the output without making Strings */
+   private char[]        chars        = new char[128];
+   private static final String LINE_SEPARATOR = System.lineSeparator();
+
    //constructor///////////////////////////////////////////////////////////////
    public PGNWriter (OutputStream _out) {
       super(_out);
@@ -194,6 +202,21 @@ public class PGNWriter extends ChessWriter {
    public boolean isOneMovePerLine () { return oneMovePerLine; }
    */
 
+   /* setStreaming **********************************************************/
+   /** streaming mode is for writing large numbers of games.  Lines are
+    *  written without the flush an autoflushing writer (see the 
+    *  OutputStream constructor) does after each line, and buffers are 
+    *  reused from game to game rather than made anew.  The board of a game
+    *  that starts from the default position is not rewound, since the 
+    *  moves are written from what they hold and not by replaying them.
+    *  The output is the same as in the default mode.  Call flush() or 
+    *  close() when done.
+    *  <br>
+    *  DEFAULT: false
+    */
+   public void setStreaming (boolean t) { streaming = t; }
+   public boolean isStreaming () { return streaming; }
+
    /* setAnnotationGlyphStyle ***********************************************/
    /** sets the annotation glyph style. This determins how NAGs and other
     *  symbolic annotations such as !, ?, !?, +=, -/+ etc wll be 
@@ -222,7 +245,9 @@ public class PGNWriter extends ChessWriter {
       if (Log.debug)
          Log.debug(DEBUG, "Writing game");
 
-      g.getHistory().rewind();
+      //only needed for the FEN of the starting position
+      if (!streaming || !g.getBoard().isInitialPositionDefault())
+         g.getHistory().rewind();
       writeGameInfo(g.getGameInfo());
       if (!g.getBoard().isInitialPositionDefault())
          writeBoard(g.getBoard());
@@ -235,7 +260,7 @@ public class PGNWriter extends ChessWriter {
    public void writeGameInfo (GameInfo gameinfo) 
           throws IOException {
       ChessGameInfo gi = (ChessGameInfo) gameinfo;
-      StringBuffer sb = new StringBuffer();
+      StringBuilder sb = (streaming) ? header : new StringBuilder();
       String event, site, date, round, white, black, result;
 
       event = site = date = round = white = black = result = null;
@@ -321,7 +346,8 @@ public class PGNWriter extends ChessWriter {
 
       if (Log.debug)
          Log.debug(DEBUG, "writing gameInfo block to stream");
-      print(sb); //no extra \n (might add FEN)
+      printChars(sb); //no extra \n (might add FEN)
+      sb.setLength(0);
    }
 
    /* writeHistory ********************************************************/
@@ -352,7 +378,10 @@ public class PGNWriter extends ChessWriter {
              throw new NullPointerException ("can't write null history");
 	 }
 
-         buffer = new StringBuffer(colWidth);
+         if (buffer == null)
+            buffer = new StringBuffer(colWidth);
+	 else
+	    buffer.setLength(0);
 
          if (Log.debug)
 	    Log.debug(DEBUG, "walking the History move tree");
@@ -371,7 +400,7 @@ public class PGNWriter extends ChessWriter {
 
          //empty buffer
          if (buffer.length() != 0)
-            print(buffer.toString());
+            printChars(buffer);
 
       println();  // \n pgn formatting
    }
@@ -391,7 +420,7 @@ public class PGNWriter extends ChessWriter {
       short[] nags = null;
 
       //11...cxd4=Q+!! (longest)
-      StringBuffer sbtmp = new StringBuffer(12);
+      StringBuilder sbtmp = new StringBuilder(16);
 
       ChessAnnotation anno = null;
 
@@ -442,7 +471,10 @@ public class PGNWriter extends ChessWriter {
 	       needNumber = false;
 
 	       //add move
-	       sbtmp.append(notation.moveToString(m));
+	       if (notation instanceof SAN)
+	          ((SAN) notation).appendMove(m, false, sbtmp);
+	       else
+	          sbtmp.append(notation.moveToString(m));
 
                anno = (ChessAnnotation) m.getAnnotation();
 
@@ -455,11 +487,10 @@ public class PGNWriter extends ChessWriter {
 	       }
 
 	       //send move chunk to output
-	       formatOutput(sbtmp.toString(), 
-	                    ((isBlackMove) ? _MOVE_B : _MOVE_W));
+	       formatOutput(sbtmp, ((isBlackMove) ? _MOVE_B : _MOVE_W));
 
                //empty move buffer
-	       sbtmp.delete(0, sbtmp.length());
+	       sbtmp.setLength(0);
 
 	       //add NAG
 	       if (anno != null
@@ -551,7 +582,7 @@ public class PGNWriter extends ChessWriter {
     *  @param str data that has yet to be put on the buffer
     *  @param type the type of token
     */
-   protected void formatOutput (String str, int type) {
+   protected void formatOutput (CharSequence str, int type) {
       boolean spacer = buffer.length() != 0;
       int length = buffer.length() 
                    + str.length() 
@@ -612,7 +643,7 @@ public class PGNWriter extends ChessWriter {
 	 buffer.delete(0, buffer.length());
 
 	 if (indentStr.length() + str.length() > colWidth)
-	    formatLongComment(str);
+	    formatLongComment(str.toString());
 	 else
 	    println(indentStr + str);
       }
@@ -629,7 +660,7 @@ public class PGNWriter extends ChessWriter {
       //buffer doth spillith over
       else {
          if (type != _COMMENT) {
-	    println(buffer.toString());
+	    printLine(buffer);
 	    if (Log.debug)
 	       Log.debug(DEBUG, "writing: " + buffer.toString());
 	    buffer.delete(0, buffer.length());
@@ -645,7 +676,7 @@ public class PGNWriter extends ChessWriter {
          }
 	 //if it's a comment
 	 else 
-	    formatLongComment(str);
+	    formatLongComment(str.toString());
       }
    }
 
@@ -677,7 +708,7 @@ public class PGNWriter extends ChessWriter {
 	    if (Log.debug)
 	       Log.debug(DEBUG, "writing: " + buffer.toString());
 
-	    println(buffer.toString());
+	    printLine(buffer);
 
 	    buffer.delete(0, buffer.length());
 
@@ -704,6 +735,41 @@ public class PGNWriter extends ChessWriter {
 
    }
 
+   /* printChars *************************************************************/
+   /** puts the characters on the output without making a String of them.
+    */
+   protected void printChars (CharSequence cs) {
+      int len = cs.length();
+
+         if (chars.length < len)
+	    chars = new char[Math.max(len, chars.length * 2)];
+
+	 if (cs instanceof StringBuffer)
+	    ((StringBuffer) cs).getChars(0, len, chars, 0);
+	 else if (cs instanceof StringBuilder)
+	    ((StringBuilder) cs).getChars(0, len, chars, 0);
+	 else
+	    cs.toString().getChars(0, len, chars, 0);
+
+	 write(chars, 0, len);
+   }
+
+   /* printLine **************************************************************/
+   protected void printLine (CharSequence cs) {
+      printChars(cs);
+      println();
+   }
+
+   /* println ****************************************************************/
+   /** in streaming mode lines are ended without flushing the output.
+    */
+   public void println () {
+      if (streaming)
+         write(LINE_SEPARATOR);
+      else
+         super.println();
+   }
+
    /* writeBoard *************************************************************/
    /** writeBoard(Board) writes the current board
     */
@@ -64,6 +64,9 @@ public class SAN extends ChessMoveNotation {
    /** should a pawn move return a leading space or not [default=false] */
    protected boolean pawnSpace = false;
 
+   /** resolve plain English SAN without the regex [default=true] */
+   protected boolean fastResolution = true;
+
    public SAN () { 
       this(false);
    }
@@ -89,6 +92,14 @@ public class SAN extends ChessMoveNotation {
    public void setPawnAsSpace (boolean t) { pawnSpace = t; }
    public boolean isPawnAsSpace () { return pawnSpace; }
 
+   /** when on (the default) stringToMove() reads the usual English
+    *  moves with a hand written scanner and finds the origin with 
+    *  ChessBoard.getOrigins() instead of generating every piece's legal
+    *  destinations.  Anything else still goes through the regex.
+    */
+   public void setFastResolution (boolean t) { fastResolution = t; }
+   public boolean isFastResolution () { return fastResolution; }
+
    /* setLocale () *********************************************************/
    public boolean setLocale (Locale loc) {
       if (!super.setLocale(loc))
@@ -136,7 +147,6 @@ public class SAN extends ChessMoveNotation {
       ChessMove move = null;
       Matcher result = null;
       String rest_of_string = null;
-      ChessAnnotation anno = null;
 
       if (board == null)
          throw new IllegalArgumentException(
@@ -150,6 +160,15 @@ public class SAN extends ChessMoveNotation {
            orig_f = 0,
 	   orig_r = 0;
 
+      if (fastResolution 
+          && pieceSet == PIECE_SETS[0] 
+	  && fileSet == FILE_SETS[0]
+	  && rankSet == RANK_SETS[0]) {
+         move = fastStringToMove(board, s);
+	 if (move != null)
+	    return move;
+      }
+
       Square orig = null,
              dest = null;
  
@@ -158,7 +177,7 @@ public class SAN extends ChessMoveNotation {
       if (result.find()) {
 
          //debug
-	 if (Log.debug) {
+	 if (Log.debug && Log.isDebug(DEBUG)) {
 	    Log.debug(DEBUG, "regex result for: " + s, result);
 	 }
 
@@ -210,21 +229,151 @@ public class SAN extends ChessMoveNotation {
 	 }
 
          //any annotations that trailed the move
-	 if (result.end() < s.length()) {
-	    short[] nags = null;
-
-	    nags = NAG.stringToNumbers(s.substring(result.end()));
-	    if (nags != null) {
-	       anno = new ChessAnnotation();
-	       for (int i=0; i < nags.length; i++)
-	          anno.addNAG(nags[i]);
+	 if (result.end() < s.length()) 
+	    setSuffixAnnotation(move, s.substring(result.end()));
+      }
+      return move;
+   }
+
+   /* fastStringToMove ****************************************************/
+   /** reads the usual forms of a move (e4, Nbd7, exd5, R1e2+, e8=Q#)
+    *  with a scanner rather than the regex, and finds the origin with
+    *  ChessBoard.getOrigins(), which works backward from the destination
+    *  and so needs no legal destinations generated.
+    *
+    *  @return null for anything else: castling, forms the scanner 
+    *          doesn't know, and moves that are illegal or ambiguous.
+    *          The regex then deals with these (and reports errors).
+    */
+   protected ChessMove fastStringToMove (ChessBoard board, String s) 
+          throws IllegalMoveException {
+      int  len = s.length(),
+           i = 0,
+	   piece = Pawn.INDEX,
+	   promo = 0,
+	   coords = 0,  //a byte for each file or rank character
+	   n = 0,       //number of file and rank characters
+	   capture = -1,
+	   orig_f = 0,
+	   orig_r = 0,
+	   dest_f, dest_r;
+      long origins;
+      char c;
+      ChessMove move;
+
+         //castling and anything looking like it is left to the regex
+         if (len < 2 || s.indexOf('O') >= 0 || s.indexOf('0') >= 0)
+	    return null;
+
+	 switch (s.charAt(0)) {
+	    case 'N': piece = Knight.INDEX; i++; break;
+	    case 'B': piece = Bishop.INDEX; i++; break;
+	    case 'R': piece = Rook.INDEX;   i++; break;
+	    case 'Q': piece = Queen.INDEX;  i++; break;
+	    case 'K': piece = King.INDEX;   i++; break;
+	    case 'P': i++; break;
+	 }
+
+	 //[file][rank][x]file rank
+	 for (; i < len; i++) {
+	    c = s.charAt(i);
+	    if ((c >= 'a' && c <= 'h') || (c >= '1' && c <= '8')) {
+	       if (n == 4) 
+	          return null;
+	       coords = (coords << 8) | c;
+	       n++;
 	    }
-	    move.setAnnotation(anno);
+	    else if (c == 'x' && capture < 0)
+	       capture = n;
+	    else
+	       break;
 	 }
-      }
+
+	 if (n < 2 || (capture >= 0 && capture != n - 2))
+	    return null;
+
+	 dest_r = (coords & 0xFF) - '0';
+	 dest_f = ((coords >> 8) & 0xFF) - 'a' + 1;
+	 if (dest_r < 1 || dest_r > 8 || dest_f < 1 || dest_f > 8)
+	    return null;
+
+	 if (n == 4) {
+	    orig_f = (coords >>> 24) - 'a' + 1;
+	    orig_r = ((coords >> 16) & 0xFF) - '0';
+	    if (orig_f < 1 || orig_f > 8 || orig_r < 1 || orig_r > 8)
+	       return null;
+	 }
+	 else if (n == 3) {
+	    c = (char) ((coords >> 16) & 0xFF);
+	    if (c >= 'a')
+	       orig_f = c - 'a' + 1;
+	    else
+	       orig_r = c - '0';
+	 }
+
+	 //promotion
+	 if (i < len && s.charAt(i) == '=') {
+	    if (piece != Pawn.INDEX || i + 1 >= len)
+	       return null;
+	    switch (s.charAt(i + 1)) {
+	       case 'N': promo = Knight.INDEX; break;
+	       case 'B': promo = Bishop.INDEX; break;
+	       case 'R': promo = Rook.INDEX;   break;
+	       case 'Q': promo = Queen.INDEX;  break;
+	       default: return null;
+	    }
+	    i += 2;
+	 }
+
+	 //check, double check and mate as the regex takes them
+	 if (i < len && s.charAt(i) == '+') i++;
+	 if (i < len && s.charAt(i) == '+') i++;
+	 if (i < len && s.charAt(i) == '#') i++;
+
+	 origins = board.getOrigins(piece, 
+	    (dest_r - 1) * 8 + dest_f - 1);
+	 if (orig_f > 0)
+	    origins &= Bitboard.FILE_A << (orig_f - 1);
+	 if (orig_r > 0)
+	    origins &= Bitboard.RANK_1 << ((orig_r - 1) * 8);
+
+	 //none or too many: let getOrigin() explain
+	 if (origins == 0L || (origins & (origins - 1)) != 0L)
+	    return null;
+
+	 //a trusting board will take the move as it is
+	 if (board.isTrustedMoves())
+	    move = board.toChessMove(ChessMove.pack(Bitboard.first(origins),
+	              (dest_r - 1) * 8 + dest_f - 1, promo));
+	 else
+	    move = new ChessMove(board, 
+	              board.getSquareByIndex(Bitboard.first(origins)),
+		      board.getSquare(dest_f, dest_r),
+		      (promo == 0) ? null : ChessPiece.toChessPiece(promo));
+
+	 if (i < len)
+	    setSuffixAnnotation(move, s.substring(i));
+
       return move;
    }
 
+   /* setSuffixAnnotation *************************************************/
+   /** reads the NAGs (!, ?!, $14 etc.) that trail a move into the move's
+    *  annotation.
+    */
+   protected void setSuffixAnnotation (ChessMove move, String suffix) {
+      ChessAnnotation anno = null;
+      short[] nags = null;
+
+         nags = NAG.stringToNumbers(suffix);
+	 if (nags != null) {
+	    anno = new ChessAnnotation();
+	    for (int i=0; i < nags.length; i++)
+	       anno.addNAG(nags[i]);
+	 }
+	 move.setAnnotation(anno);
+   }
+
    /* stringToResult *********************************************************/
    /** converts a string into a result number
     *  the default return value if the string cannot be read is null
@@ -268,16 +417,30 @@ public class SAN extends ChessMoveNotation {
           throw new NullPointerException ("can't convert null move to string");
 
 
-      if (Log.debug)
+      if (Log.debug && Log.isDebug(DEBUG))
          Log.debug(DEBUG, "move: " + move + " showSuffix?: " + showSuffix);
 
-      StringBuffer sb = new StringBuffer();
+      StringBuilder sb = new StringBuilder(8);
+         appendMove(m, showSuffix, sb);
+
+      return sb.toString();
+   }
+
+   public String moveToString (ChessMove m) {
+      return moveToString(m, true);
+   }
+
+   /* appendMove *************************************************************/
+   /** appends the move in SAN to sb.  This is moveToString() without the
+    *  String, for writers that put out many moves.
+    */
+   public void appendMove (ChessMove m, boolean showSuffix, StringBuilder sb) {
       char piece = pieceToChar(m.getChessPiece());
-      int[] coords = m.getCoordinates();
-      char take = (m.getCasualty() == null) ? '-' : 'x';
-      char promo = (m.getPromotion() == null) ? ' '
-                   : pieceToChar(m.getPromotion());
-       
+      Square orig = m.getOrigin(),
+             dest = m.getDestination();
+      ChessPiece casualty = m.getCasualty(),
+                 promotion = m.getPromotion();
+
          if (m.isCastleKingside())
 	    sb.append("O-O");
 	 else if (m.isCastleQueenside())
@@ -291,24 +454,24 @@ public class SAN extends ChessMoveNotation {
 	       
 	    //short form 
 	    if (!m.isRankUnique())  //if rank not unique then need file
-	          sb.append(fileToChar(coords[0]));
+	          sb.append(fileToChar(orig.getFile()));
 	    if (!m.isFileUnique())  //if file not unique then need rank
-	       sb.append(rankToChar(coords[1]));
+	       sb.append(rankToChar(orig.getRank()));
 
             //take only on capture
-            if (m.getCasualty() != null) {
+            if (casualty != null) {
 	       if (piece == pieceSet[0] //pawn
 	           && m.isFileUnique()
 		   && m.isRankUnique())
-		  sb.append(fileToChar(coords[0]));  //still need file
-	       sb.append(take);
+		  sb.append(fileToChar(orig.getFile()));  //still need file
+	       sb.append('x');
 	    }
 
-	    sb.append(fileToChar(coords[2]))
-	      .append(rankToChar(coords[3]));
+	    sb.append(fileToChar(dest.getFile()))
+	      .append(rankToChar(dest.getRank()));
 
-	    if (promo != ' ') 
-	       sb.append("=").append(promo);
+	    if (promotion != null) 
+	       sb.append('=').append(pieceToChar(promotion));
 
 	    if (m.isCheckmate())
 	       sb.append('#');
@@ -327,12 +490,6 @@ public class SAN extends ChessMoveNotation {
 		    )
 	         );
 	 }
-
-      return sb.toString();
-   }
-
-   public String moveToString (ChessMove m) {
-      return moveToString(m, true);
    }
 
    /* resultToString ******************************************************/
@@ -24,13 +24,49 @@
 
 package ictk.boardgame.chess.net.ics;
 import ictk.boardgame.chess.net.ics.event.*;
+import ictk.util.Log;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.concurrent.ThreadFactory;
 
 /** Routes ICSEvent messages to ICSEventListeners. It is possible to
  *  use one router for many live connections to different servers. At least
  *  that's an intended goal.
+ *  <br>
+ *  By default the listeners are called on the thread that calls dispatch(),
+ *  which is the thread reading from the server; a slow listener holds up 
+ *  the reading.  In asynchronous mode each listener instead has a bounded
+ *  queue of its own and a worker (a virtual thread where the JVM has them)
+ *  that calls it:
+ *  <pre>
+ *  router.setBackpressure(ICSEventRouter.COALESCE);
+ *  router.setAsynchronous(true);
+ *  </pre>
+ *  A listener receives its events in the order they were dispatched, so
+ *  those of a game or a channel are never reordered, and it is never called
+ *  by two threads at once.  When a listener's queue is full the 
+ *  backpressure policy decides what happens: BLOCK makes dispatch() wait
+ *  for room, DROP_OLDEST discards the listener's oldest queued event, and
+ *  COALESCE lets a board update replace a still queued update of the same
+ *  board (and otherwise waits as BLOCK does).
  */
 public class ICSEventRouter {
+      /** backpressure policy: dispatch() waits until the listener's queue
+       ** has room. */
+   public static final int BLOCK       = 0,
+      /** backpressure policy: the listener's oldest queued event is 
+       ** dropped to make room. */
+                           DROP_OLDEST = 1,
+      /** backpressure policy: a board update supersedes one of the same
+       ** board still in the queue; otherwise as BLOCK. */
+                           COALESCE    = 2;
+
+      /** makes virtual threads, or null if the JVM has none */
+   protected static ThreadFactory virtualThreads = virtualThreadFactory();
+
       /** key offset for integers so they can be put in the hash */
    protected static int OFFSET = 1000;
       /** the default listener receives all events or those not sent to a 
@@ -57,12 +93,29 @@ public class ICSEventRouter {
        ** to the defaultListener */
    protected boolean[] exclusive;
 
+      /** are listeners called by their own workers */
+   protected volatile boolean isAsynchronous;
+      /** the most events queued for one listener */
+   protected int queueSize = 1024;
+      /** what happens when a listener's queue is full */
+   protected int backpressure = BLOCK;
+      /** the queue and worker of each listener in asynchronous mode */
+   protected IdentityHashMap<ICSEventListener, Mailbox> mailboxes;
+      /** mailboxes being closed, still delivering what they had */
+   protected IdentityHashMap<ICSEventListener, Mailbox> closing;
+      /** set before a mailbox is closed, cleared once none is closing */
+   protected volatile boolean isClosing;
+      /** events dropped or superseded because a queue was full */
+   protected long dropped;
+
 
    public ICSEventRouter () {
       subscribers = new ICSEventListener[ICSEvent.NUM_EVENTS][];
       chSubscribers = new HashMap<>();
       chExclusive = new HashMap<>();
       exclusive = new boolean[ICSEvent.NUM_EVENTS];
+      mailboxes = new IdentityHashMap<>();
+      closing = new IdentityHashMap<>();
    }
 
    /* setDefaltListener *****************************************************/
@@ -83,6 +136,87 @@ public class ICSEventRouter {
       return defaultListener;
    }
 
+   //asynchronous dispatch/////////////////////////////////////////////////
+   /* setAsynchronous *******************************************************/
+   /** in asynchronous mode dispatch() only queues the event for each 
+    *  listener, and the listener is called by a worker of its own.  
+    *  Turning it off waits for the events already queued to be delivered
+    *  and stops the workers.
+    */
+   public void setAsynchronous (boolean t) {
+      Mailbox[] boxes = null;
+
+      synchronized (mailboxes) {
+	 if (t) {
+	    isAsynchronous = true;
+	    return;
+	 }
+	 //first, as deliver() reads isAsynchronous before isClosing
+	 isClosing = true;
+	 isAsynchronous = false;
+	 boxes = mailboxes.values().toArray(new Mailbox[0]);
+	 for (int i=0; i < boxes.length; i++)
+	    closing.put(boxes[i].listener, boxes[i]);
+	 mailboxes.clear();
+      }
+      close(boxes);
+   }
+
+   public boolean isAsynchronous () {
+      return isAsynchronous;
+   }
+
+   /* setQueueSize **********************************************************/
+   /** the most events that can wait for one listener in asynchronous
+    *  mode before the backpressure policy applies.  The default is 1024.
+    *  This applies to listeners first sent an event after it is set.
+    */
+   public void setQueueSize (int size) {
+      if (size < 1)
+         throw new IllegalArgumentException("size must be at least 1");
+      queueSize = size;
+   }
+
+   public int getQueueSize () {
+      return queueSize;
+   }
+
+   /* setBackpressure *******************************************************/
+   /** what dispatch() does when a listener's queue is full: BLOCK,
+    *  DROP_OLDEST or COALESCE.  The default is BLOCK.
+    */
+   public void setBackpressure (int policy) {
+      if (policy < BLOCK || policy > COALESCE)
+         throw new IllegalArgumentException("unknown policy: " + policy);
+      backpressure = policy;
+   }
+
+   public int getBackpressure () {
+      return backpressure;
+   }
+
+   /* getDroppedCount *******************************************************/
+   /** the number of events listeners never received because their queue
+    *  was full (DROP_OLDEST) or a newer board update replaced them 
+    *  (COALESCE).
+    */
+   public synchronized long getDroppedCount () {
+      return dropped;
+   }
+
+   /* flush *****************************************************************/
+   /** waits until every event dispatched so far has been delivered.
+    */
+   public void flush () throws InterruptedException {
+      Mailbox[] boxes = null;
+
+      synchronized (mailboxes) {
+	 boxes = mailboxes.values().toArray(new Mailbox[0]);
+      }
+      for (int i=0; i < boxes.length; i++)
+         boxes[i].flush();
+   }
+
    /* dispatch **************************************************************/
    /** an event sent to this method will be relayed to all the listeners
     *  who are interested in it.
@@ -123,19 +257,114 @@ public class ICSEventRouter {
       //send to the specific listerners from the switch
       if (listeners != null)
          for (i = 0; i < listeners.length; i++)
-	    listeners[i].icsEventDispatched(evt);
+	    deliver(listeners[i], evt);
        
       //send to the event subscribers if the switch listener wasn't exclusive
       if (!done 
           && (listeners = subscribers[type]) != null) {
          for (i=0; i < listeners.length; i++)
-	    listeners[i].icsEventDispatched(evt);
+	    deliver(listeners[i], evt);
 	 done2 = true;
       }
 
       //send to the default route if this event isn't exclusive
       if (!exclusive[type] && defaultListener != null)
-         defaultListener.icsEventDispatched(evt);
+         deliver(defaultListener, evt);
+   }
+
+   /* deliver ***************************************************************/
+   /** calls the listener now, or queues the event for it in asynchronous
+    *  mode.
+    */
+   protected void deliver (ICSEventListener eh, ICSEvent evt) {
+      Mailbox box = null;
+
+      if (!isAsynchronous && !isClosing) {
+         eh.icsEventDispatched(evt);
+	 return;
+      }
+
+      //a closing mailbox is used until its worker has stopped, so the
+      //listener isn't called here while the worker still has events
+      synchronized (mailboxes) {
+         if ((box = closing.get(eh)) == null
+	     && isAsynchronous
+	     && (box = mailboxes.get(eh)) == null) {
+	    box = new Mailbox(eh, queueSize);
+	    mailboxes.put(eh, box);
+	 }
+      }
+
+      if (box != null && box.post(evt))
+         return;
+      //closed: wait for the worker to deliver what it had
+      if (box != null)
+         box.close();
+      eh.icsEventDispatched(evt);
+   }
+
+   /* close *****************************************************************/
+   /** closes the mailboxes, already moved to closing, and waits for each
+    *  to deliver what it has.
+    */
+   protected void close (Mailbox[] boxes) {
+      for (int i=0; i < boxes.length; i++)
+         boxes[i].close();
+   }
+
+   /* closed ****************************************************************/
+   /** called by a closing mailbox's worker as it stops.
+    */
+   protected void closed (Mailbox box) {
+      synchronized (mailboxes) {
+	 if (closing.get(box.listener) == box)
+	    closing.remove(box.listener);
+	 isClosing = !closing.isEmpty();
+      }
+   }
+
+   /* retire ****************************************************************/
+   /** stops the worker of a listener that no longer hears any event, once
+    *  it has delivered what is queued.
+    */
+   protected void retire (ICSEventListener eh) {
+      Mailbox box = null;
+
+      if (isSubscribed(eh))
+         return;
+      synchronized (mailboxes) {
+         if ((box = mailboxes.remove(eh)) == null)
+	    return;
+	 isClosing = true;
+	 closing.put(eh, box);
+      }
+      close(new Mailbox[] { box });
+   }
+
+   /* isSubscribed **********************************************************/
+   /** is the listener the default listener or subscribed to any event or
+    *  channel.
+    */
+   protected boolean isSubscribed (ICSEventListener eh) {
+      if (eh == defaultListener)
+         return true;
+      for (int i=0; i < subscribers.length; i++)
+         if (contains(subscribers[i], eh))
+	    return true;
+      for (ICSEventListener[] list : chSubscribers.values())
+         if (contains(list, eh))
+	    return true;
+      return false;
+   }
+
+   /* contains ************************************************************/
+   protected static boolean contains (ICSEventListener[] list,
+                                      ICSEventListener eh) {
+      if (list != null)
+         for (int i=0; i < list.length; i++)
+	    if (list[i] == eh)
+	       return true;
+      return false;
    }
 
    /* addEventListener ******************************************************/
@@ -207,7 +436,9 @@ public class ICSEventRouter {
    }
 
    /* removeChannelListener *************************************************/
-   /** removes a listener to a particular channel.
+   /** removes a listener to a particular channel.  A listener left with
+    *  no subscription at all has its worker stopped, after the events
+    *  already queued for it are delivered.
     *
     *  @param channelType is the EventType for this sort of channel.  For
     *                     example: ICSEvent.CHANNEL_EVENT is for normal
@@ -229,6 +460,7 @@ public class ICSEventRouter {
          chSubscribers.remove(key);
       else
          chSubscribers.put(key, list);
+      retire(eh);
    }
 
    /* isChannelExclusive ****************************************************/
@@ -288,5 +520,185 @@ public class ICSEventRouter {
       }
       return tmp;
    }
-						 
+
+   /* virtualThreadFactory **************************************************/
+   /** Thread.ofVirtual().factory(), looked up so this still compiles and
+    *  runs on JVMs without virtual threads.
+    */
+   protected static ThreadFactory virtualThreadFactory () {
+      try {
+         Method ofVirtual = Thread.class.getMethod("ofVirtual");
+	 Method factory = Class.forName("java.lang.Thread$Builder")
+	                       .getMethod("factory");
+	 return (ThreadFactory) factory.invoke(ofVirtual.invoke(null));
+      }
+      catch (Exception e) {
+         //older JVM, or virtual threads still a preview feature
+         return null;
+      }
+   }
+
+   /* newThread *************************************************************/
+   /** a worker for a listener: virtual if possible, otherwise a daemon 
+    *  thread so workers don't keep the JVM alive.
+    */
+   protected Thread newThread (Runnable r, String name) {
+      Thread t = null;
+
+      if (virtualThreads != null)
+         t = virtualThreads.newThread(r);
+      else {
+         t = new Thread(r);
+	 t.setDaemon(true);
+      }
+      t.setName(name);
+      return t;
+   }
+
+   //Mailbox///////////////////////////////////////////////////////////////
+   /** the bounded queue of a listener and the worker that empties it.
+    */
+   protected class Mailbox implements Runnable {
+      ICSEventListener listener;
+      ArrayDeque<ICSEvent> queue;
+      int size;
+      Thread worker;
+         /** an event has been taken from the queue but not yet delivered */
+      boolean isBusy;
+      boolean isClosed;
+
+      Mailbox (ICSEventListener listener, int size) {
+         this.listener = listener;
+	 this.size = size;
+	 queue = new ArrayDeque<ICSEvent>(Math.min(size, 64));
+	 worker = newThread(this, "ICSEventRouter-" 
+	                          + listener.getClass().getName());
+	 worker.start();
+      }
+
+      /** queues the event, making room for it as the policy says.
+       ** @return false if the mailbox has been closed */
+      synchronized boolean post (ICSEvent evt) {
+         boolean interrupted = false;
+
+	 if (isClosed)
+	    return false;
+
+	 //the policy applies only when the queue is full
+	 while (queue.size() >= size && !isClosed) {
+	    if (backpressure == COALESCE && supersede(evt))
+	       break;
+	    //the worker itself can't wait for room it would make
+	    if (Thread.currentThread() == worker)
+	       break;
+	    if (backpressure == DROP_OLDEST) {
+	       queue.poll();
+	       countDropped();
+	    }
+	    else
+	       try {
+		  wait();
+	       }
+	       catch (InterruptedException e) {
+		  interrupted = true;
+	       }
+	 }
+
+	 if (interrupted)
+	    Thread.currentThread().interrupt();
+	 if (isClosed)
+	    return false;
+	 queue.add(evt);
+	 notifyAll();
+	 return true;
+      }
+
+      /** removes a queued update of the same board as this one, so the 
+       ** newer one takes its turn behind what came between them. */
+      boolean supersede (ICSEvent evt) {
+         Iterator<ICSEvent> it = null;
+	 ICSEvent queued = null;
+	 int board = 0;
+
+         if (evt.getEventType() != ICSEvent.BOARD_UPDATE_EVENT)
+	    return false;
+	 board = ((ICSBoardEvent) evt).getBoardNumber();
+
+	 it = queue.descendingIterator();
+	 while (it.hasNext()) {
+	    queued = it.next();
+	    if (queued.getEventType() == ICSEvent.BOARD_UPDATE_EVENT
+	        && ((ICSBoardEvent) queued).getBoardNumber() == board) {
+	       it.remove();
+	       countDropped();
+	       return true;
+	    }
+	 }
+	 return false;
+      }
+
+      /** waits until the queue is delivered */
+      synchronized void flush () throws InterruptedException {
+         while ((!queue.isEmpty() || isBusy) && worker.isAlive())
+	    wait();
+      }
+
+      /** delivers what is queued, then stops the worker */
+      void close () {
+         synchronized (this) {
+	    isClosed = true;
+	    notifyAll();
+	 }
+	 if (Thread.currentThread() == worker)
+	    return;
+	 try {
+	    worker.join();
+	 }
+	 catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	 }
+      }
+
+      public void run () {
+         ICSEvent evt = null;
+
+         while (true) {
+	    synchronized (this) {
+	       isBusy = false;
+	       while (queue.isEmpty() && !isClosed) {
+		  notifyAll();
+		  try {
+		     wait();
+		  }
+		  catch (InterruptedException e) {
+		     //only close() stops the worker
+		  }
+	       }
+	       if ((evt = queue.poll()) == null) {
+		  notifyAll();
+		  break;
+	       }
+	       isBusy = true;
+	       notifyAll();
+	    }
+
+	    try {
+	       listener.icsEventDispatched(evt);
+	    }
+	    catch (RuntimeException e) {
+	       //a listener's bug doesn't stop its worker
+	       Log.error(Log.PROG_WARNING, "ICSEventRouter: listener "
+	          + listener + " threw " + e);
+	       e.printStackTrace(Log.err);
+	    }
+	 }
+	 //only now may the listener be called by another thread
+	 closed(this);
+      }
+   }
+
+   /* countDropped **********************************************************/
+   protected synchronized void countDropped () {
+      dropped++;
+   }
 }
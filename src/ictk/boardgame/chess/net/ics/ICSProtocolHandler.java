@@ -26,6 +26,7 @@ package ictk.boardgame.chess.net.ics;
 
 import java.net.*;
 import java.io.*;
+import java.nio.ByteBuffer;
 import ictk.boardgame.chess.net.ics.event.ICSConnectionListener;
 import ictk.boardgame.chess.net.ics.event.ICSConnectionEvent;
 
@@ -42,6 +43,10 @@ public abstract class ICSProtocolHandler implements Runnable {
       /** connected to the socket */
    protected InputStreamReader in;
 
+      /** if set, the connection is a channel multiplexed by this selector 
+       ** rather than a socket read by a thread of its own */
+   protected ICSSelector selector;
+
       /** the object that is routing events from this server */
    protected ICSEventRouter router;
 
@@ -188,6 +193,30 @@ public abstract class ICSProtocolHandler implements Runnable {
       debugParser = t;
    }
 
+   /* setSelector ************************************************************/
+   /** has connect() open a non-blocking channel on the selector, which
+    *  reads it along with its other connections, instead of a socket with
+    *  a thread of its own.  This must be done before the connection is 
+    *  established.
+    *
+    *  @throws IllegalStateException if there is an active connection.
+    */
+   public void setSelector (ICSSelector selector) {
+      if (isConnected()) 
+         throw new IllegalStateException(
+	    "Cannot set the selector after connection already established."
+	    );
+      this.selector = selector;
+   }
+
+   /* getSelector ************************************************************/
+   /** returns the selector this connection is read by, or null if it has
+    *  a thread of its own.
+    */
+   public ICSSelector getSelector () {
+      return selector;
+   }
+
    /* setEventRouter *********************************************************/
    /** sets the object to do the event routing for this connection.  By default
     *  a router is setup.  But you might want to change it for some reason.
@@ -213,6 +242,26 @@ public abstract class ICSProtocolHandler implements Runnable {
    abstract public void sendCommand (String cmd);
    abstract public void sendCommand (String cmd, boolean echo);
 
+   /* received ***********************************************************/
+   /** takes the bytes an ICSSelector has read from the server, from the
+    *  position to the limit of the buffer.  This is called on the 
+    *  selector's thread, which is shared with other connections, so it 
+    *  must not block.  What it leaves unread is not kept.  By default a
+    *  handler can't be read by a selector.
+    */
+   protected void received (ByteBuffer bytes) {
+      throw new IllegalStateException("no selector support");
+   }
+
+   /* closed *************************************************************/
+   /** the ICSSelector has closed the connection, either because the server
+    *  did or because of an error.  By default this tells the connection
+    *  listeners.
+    */
+   protected void closed () {
+      dispatchConnectionEvent(new ICSConnectionEvent(this));
+   }
+
    /* addConnectionListener *************************************************/
    public void addConnectionListener (ICSConnectionListener listener) {
       ICSConnectionListener[] tmp = null;
@@ -0,0 +1,460 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess.net.ics;
+
+import ictk.util.Log;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/* ICSSelector ****************************************************************/
+/** Multiplexes the connections of many ICSProtocolHandlers onto one or a
+ *  few threads.  Each connection is a non-blocking SocketChannel; when
+ *  there is something to read, it is read in bulk into a direct buffer
+ *  and handed to the handler's received(), which keeps its place (in a
+ *  prompt, say) from one buffer to the next.  Commands sent by the handler
+ *  are queued and written as the channel allows.
+ *  <br>
+ *  A handler uses a selector when it is set before connecting:
+ *  <pre>
+ *  ICSSelector selector = new ICSSelector(2);
+ *  for (...) {
+ *     FICSProtocolHandler fics = new FICSProtocolHandler();
+ *     fics.setHandle(...);
+ *     fics.setPassword(...);
+ *     fics.setSelector(selector);
+ *     fics.connect();
+ *  }
+ *  </pre>
+ *  The handlers' received() and closed(), and so their event listeners,
+ *  are called on the selector's threads, which must not be blocked for
+ *  long.  Lag compensation (timeseal) needs a socket of its own and so
+ *  cannot be used through a selector.
+ */
+public class ICSSelector implements Closeable {
+      /** the size of each connection's read buffer */
+   protected int bufferSize = 16 * 1024;
+      /** the threads, each with a Selector, connections are shared among */
+   protected Loop[] loops;
+      /** the loop the next connection goes to */
+   protected int next;
+      /** the open connection of each handler, from register() on */
+   protected ConcurrentHashMap<ICSProtocolHandler, Session> connections;
+   protected volatile boolean isClosed;
+
+   //constructors/////////////////////////////////////////////////////////////
+   /** a selector with one thread */
+   public ICSSelector () throws IOException {
+      this(1);
+   }
+
+   /** a selector that shares its connections among so many threads */
+   public ICSSelector (int threads) throws IOException {
+      if (threads < 1)
+         throw new IllegalArgumentException("threads must be at least 1");
+      connections = new ConcurrentHashMap<ICSProtocolHandler, Session>();
+      loops = new Loop[threads];
+      for (int i=0; i < threads; i++)
+         loops[i] = new Loop(i);
+   }
+
+   //accessors////////////////////////////////////////////////////////////////
+   /* setBufferSize **********************************************************/
+   /** sets the size of the read buffer of connections registered after
+    *  this.  The default is 16k.
+    */
+   public void setBufferSize (int size) {
+      if (size < 1)
+         throw new IllegalArgumentException("size must be at least 1");
+      bufferSize = size;
+   }
+
+   public int getBufferSize () {
+      return bufferSize;
+   }
+
+   public int getThreads () {
+      return loops.length;
+   }
+
+   /* getSessionCount ********************************************************/
+   /** the number of connections currently open on this selector.
+    */
+   public int getSessionCount () {
+      int count = 0;
+
+      for (int i=0; i < loops.length; i++)
+         count += loops[i].sessions;
+      return count;
+   }
+
+   public boolean isClosed () {
+      return isClosed;
+   }
+
+   //connections//////////////////////////////////////////////////////////////
+   /* register ***************************************************************/
+   /** opens a connection to the handler's host and port and starts reading
+    *  it.  This returns before the connection is established; the bytes 
+    *  the server sends arrive at handler.received().  Until then, and after,
+    *  what the handler writes to its out is queued for the channel.
+    *
+    *  @throws UnknownHostException if the host can't be resolved.
+    *  @throws IllegalStateException if the selector is closed.
+    */
+   public void register (ICSProtocolHandler handler) 
+      throws UnknownHostException, IOException {
+      InetSocketAddress address = 
+         new InetSocketAddress(handler.getHost(), handler.getPort());
+      SocketChannel channel = null;
+      Session session = null;
+      Loop loop = null;
+
+      if (isClosed)
+         throw new IllegalStateException("selector is closed");
+      if (address.isUnresolved())
+         throw new UnknownHostException(handler.getHost());
+
+      synchronized (this) {
+         loop = loops[next];
+	 next = (next + 1) % loops.length;
+      }
+
+      channel = SocketChannel.open();
+      try {
+	 channel.configureBlocking(false);
+	 channel.socket().setKeepAlive(true);
+	 session = new Session(loop, handler, channel, bufferSize);
+	 handler.socket = channel.socket();
+	 handler.out = new PrintWriter(new SessionOutputStream(session));
+	 //on the loopback the connection may be made at once
+	 session.isConnected = channel.connect(address);
+      }
+      catch (IOException e) {
+         channel.close();
+	 throw e;
+      }
+      connections.put(handler, session);
+      loop.add(session);
+   }
+
+   /* close ******************************************************************/
+   /** closes the handler's connection.  The handler's closed() is called on
+    *  the selector's thread.
+    */
+   public void close (ICSProtocolHandler handler) {
+      Session session = connections.remove(handler);
+
+      if (session != null)
+         session.loop.close(session);
+   }
+
+   /* close ******************************************************************/
+   /** closes every connection and stops the threads.
+    */
+   public void close () {
+      isClosed = true;
+      for (int i=0; i < loops.length; i++)
+         loops[i].selector.wakeup();
+      for (int i=0; i < loops.length; i++) {
+         if (loops[i].thread == Thread.currentThread())
+	    continue;
+	 try {
+	    loops[i].thread.join();
+	 }
+	 catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    break;
+	 }
+      }
+   }
+
+   //Loop//////////////////////////////////////////////////////////////////////
+   /** one thread with its Selector and the connections it reads.
+    */
+   protected class Loop implements Runnable {
+      Selector selector;
+      Thread thread;
+         /** work for the thread from other threads: registrations, writes
+	  ** and closes. */
+      ConcurrentLinkedQueue<Runnable> tasks;
+      volatile int sessions;
+
+      Loop (int number) throws IOException {
+         selector = Selector.open();
+	 tasks = new ConcurrentLinkedQueue<Runnable>();
+	 thread = new Thread(this, "ICSSelector-" + number);
+	 thread.setDaemon(true);
+	 thread.start();
+      }
+
+      /** runs the task on the thread, now if this is the thread */
+      void execute (Runnable task) {
+         if (Thread.currentThread() == thread)
+	    task.run();
+	 else {
+	    tasks.add(task);
+	    selector.wakeup();
+	 }
+      }
+
+      void add (final Session session) {
+         execute(new Runnable () {
+	    public void run () {
+	       //closed before it got here
+	       if (session.isClosed)
+	          return;
+	       try {
+	          session.key = session.channel.register(selector, 
+		     (session.isConnected) 
+		        ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT,
+		     session);
+		  sessions++;
+		  if (session.isConnected)
+		     session.updateInterest();
+	       }
+	       catch (IOException e) {
+	          Log.error(Log.USER_WARNING, e.getMessage());
+		  close(session);
+	       }
+	    }
+	 });
+      }
+
+      /** closes the session on the thread, registered yet or not */
+      void close (final Session session) {
+         execute(new Runnable () {
+	    public void run () {
+	       closeNow(session);
+	    }
+	 });
+      }
+
+      /** closes the channel and tells the handler, once */
+      void closeNow (Session session) {
+         if (session.isClosed)
+	    return;
+	 session.isClosed = true;
+	 connections.remove(session.handler, session);
+	 if (session.key != null) {
+	    session.key.cancel();
+	    sessions--;
+	 }
+	 try {
+	    session.channel.close();
+	 }
+	 catch (IOException e) {
+	    Log.error(Log.USER_WARNING, e.getMessage());
+	 }
+	 try {
+	    session.handler.closed();
+	 }
+	 catch (RuntimeException e) {
+	    Log.error(Log.PROG_WARNING, "ICSSelector: handler "
+	       + session.handler + " threw " + e + " when closed");
+	    e.printStackTrace(Log.err);
+	 }
+      }
+
+      public void run () {
+         Iterator<SelectionKey> keys = null;
+	 SelectionKey key = null;
+	 Session session = null;
+	 Runnable task = null;
+
+	 try {
+	    while (!isClosed) {
+	       selector.select();
+
+	       while ((task = tasks.poll()) != null)
+	          task.run();
+
+	       keys = selector.selectedKeys().iterator();
+	       while (keys.hasNext()) {
+	          key = keys.next();
+		  keys.remove();
+		  session = (Session) key.attachment();
+		  try {
+		     if (key.isValid() && key.isConnectable())
+			connected(session);
+		     if (key.isValid() && key.isReadable())
+			read(session);
+		     if (key.isValid() && key.isWritable())
+			session.write();
+		  }
+		  catch (IOException e) {
+		     Log.error(Log.USER_WARNING, e.getMessage());
+		     close(session);
+		  }
+		  catch (RuntimeException e) {
+		     //a handler's (or listener's) bug closes only its own
+		     Log.error(Log.PROG_WARNING, "ICSSelector: handler "
+		        + session.handler + " threw " + e);
+		     e.printStackTrace(Log.err);
+		     close(session);
+		  }
+	       }
+	    }
+	 }
+	 catch (IOException e) {
+	    Log.error(Log.PROG_ERROR, "ICSSelector: " + e.getMessage());
+	 }
+	 finally {
+	    while ((task = tasks.poll()) != null)
+	       task.run();
+	    for (SelectionKey k : selector.keys())
+	       close((Session) k.attachment());
+	    try {
+	       selector.close();
+	    }
+	    catch (IOException e) {
+	       Log.error(Log.USER_WARNING, e.getMessage());
+	    }
+	 }
+      }
+
+      void connected (Session session) throws IOException {
+         if (session.channel.finishConnect())
+	    session.updateInterest();
+      }
+
+      void read (Session session) throws IOException {
+         ByteBuffer in = session.in;
+	 int n = 0;
+
+	 //read until the channel is drained, a buffer at a time
+	 while ((n = session.channel.read(in)) > 0) {
+	    in.flip();
+	    session.handler.received(in);
+	    in.clear();
+	    if (session.isClosed)
+	       return;
+	 }
+	 if (n < 0)
+	    close(session);
+      }
+   }
+
+   //Session///////////////////////////////////////////////////////////////////
+   /** a handler's connection on a Loop */
+   protected static class Session {
+      Loop loop;
+      ICSProtocolHandler handler;
+      SocketChannel channel;
+      SelectionKey key;
+         /** read from the channel */
+      ByteBuffer in;
+         /** written by the handler, yet to be written to the channel */
+      ByteBuffer pending;
+         /** connect() finished before the channel was registered */
+      boolean isConnected;
+      volatile boolean isClosed;
+
+      Session (Loop loop, ICSProtocolHandler handler, SocketChannel channel,
+               int bufferSize) {
+         this.loop = loop;
+	 this.handler = handler;
+	 this.channel = channel;
+	 in = ByteBuffer.allocateDirect(bufferSize);
+	 pending = ByteBuffer.allocate(256);
+      }
+
+      /** queues bytes for the channel */
+      synchronized void queue (byte[] b, int off, int len) {
+         ByteBuffer tmp = null;
+
+	 if (pending.remaining() < len) {
+	    tmp = ByteBuffer.allocate(
+	       Math.max(pending.capacity() * 2, pending.position() + len));
+	    pending.flip();
+	    tmp.put(pending);
+	    pending = tmp;
+	 }
+	 pending.put(b, off, len);
+      }
+
+      synchronized boolean hasPending () {
+         return pending.position() > 0;
+      }
+
+      /** writes what the channel will take of the pending bytes */
+      synchronized void write () throws IOException {
+         pending.flip();
+	 channel.write(pending);
+	 pending.compact();
+	 updateInterest();
+      }
+
+      /** reads, and writes if anything is pending (on the loop's thread) */
+      void updateInterest () {
+         if (key == null || !key.isValid() || !channel.isConnected())
+	    return;
+	 key.interestOps(hasPending() 
+	    ? SelectionKey.OP_READ | SelectionKey.OP_WRITE
+	    : SelectionKey.OP_READ);
+      }
+   }
+
+   //SessionOutputStream///////////////////////////////////////////////////////
+   /** what the handler's PrintWriter writes to: bytes are queued on write
+    *  and handed to the loop to be written on flush.
+    */
+   protected static class SessionOutputStream extends OutputStream {
+      Session session;
+
+      SessionOutputStream (Session session) {
+         this.session = session;
+      }
+
+      public void write (int b) throws IOException {
+         write(new byte[] { (byte) b }, 0, 1);
+      }
+
+      public void write (byte[] b, int off, int len) throws IOException {
+         if (session.isClosed)
+	    throw new IOException("connection closed");
+	 session.queue(b, off, len);
+      }
+
+      public void flush () {
+         if (session.isClosed)
+	    return;
+	 session.loop.execute(new Runnable () {
+	    public void run () {
+	       session.updateInterest();
+	    }
+	 });
+      }
+
+      public void close () {
+         session.loop.close(session);
+      }
+   }
+}
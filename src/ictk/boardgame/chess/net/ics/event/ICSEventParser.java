@@ -29,6 +29,7 @@ import ictk.util.Log;
 import java.io.IOException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.text.ParsePosition;
 
 /* ICSEventParser ***********************************************************/
 /** Parses server messages and produces ICSEvent objects.  All parsers 
@@ -110,6 +111,30 @@ public abstract class ICSEventParser {
       }
    }
 
+   /* match *****************************************************************/
+   /** like match(CharSequence), but the message must begin at start, which
+    *  should be the beginning of a line.  The pattern is only tried there,
+    *  so a chunk that isn't this type of message is turned down after
+    *  looking at a few characters, instead of searched from end to end.
+    *
+    *  @return null if there is no match
+    */
+   public Matcher match (CharSequence s, int start) {
+      Matcher m = pattern.matcher(s);
+
+      m.region(start, s.length());
+      if (m.lookingAt()) {
+         if (Log.debug && debug) 
+	    Log.debug(DEBUG, "matched: " + s, m);
+         return m;
+      }
+      else {
+         if (Log.debug && debug) 
+	    Log.debug(DEBUG, "failed: " + s);
+         return null;
+      }
+   }
+
    /* createICSEvent ********************************************************/
    /** Instantiates a new ICSEvent of the appropriate type for this parser
     *  if and only if the CharSequence matches something this parser can
@@ -125,6 +150,25 @@ public abstract class ICSEventParser {
          return null;
    }
 
+   /* createICSEvent ********************************************************/
+   /** like createICSEvent(CharSequence), but the message must begin at
+    *  pos.getIndex(), which should be the beginning of a line.  If it does
+    *  the index of pos is moved to the end of the message; otherwise the
+    *  error index of pos is set and nothing else is changed.
+    *
+    *  @return null if there is no message of this type at pos
+    */
+   public ICSEvent createICSEvent (CharSequence s, ParsePosition pos) {
+      Matcher m = match(s, pos.getIndex());
+
+      if (m == null) {
+         pos.setErrorIndex(pos.getIndex());
+         return null;
+      }
+      pos.setIndex(m.end());
+      return createICSEvent(m);
+   }
+
    /* createICSEvent ********************************************************/
    /** Instantiantes a new ICSEvent of the appropriate type for this
     *  parser.  If the Matcher passed in is not from this parser the results
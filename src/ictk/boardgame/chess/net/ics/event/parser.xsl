@@ -32,12 +32,12 @@
 		>
 
 
-<!-- necessary because XSLTC redirect:write does not respect Ant:destdir -->
-<xsl:param name="destpath"/>
-
 <xsl:import href="string.xsl"/>
 <xsl:import href="text.xsl"/>
 
+<!-- necessary because XSLTC redirect:write does not respect Ant:destdir -->
+<xsl:param name="destpath"/>
+
 <xsl:output method="text" 
             omit-xml-declaration="yes"/>
 
@@ -0,0 +1,319 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess.net.ics.fics;
+
+import ictk.boardgame.chess.net.ics.event.ICSEventParser;
+import ictk.boardgame.chess.net.ics.fics.event.*;
+
+/* FICSEventClassifier ********************************************************/
+/** Picks the parsers that might match the message at the beginning of a
+ *  line of FICS output by looking at how the line begins: the first token
+ *  (<code>&lt;12&gt;</code>, <code>&lt;s&gt;</code>, <code>{Game</code>,
+ *  <code>Notification:</code> ...) or, for lines that begin with a handle,
+ *  what follows the handle and its account types (<code>(50):</code> for
+ *  a channel, <code>tells you:</code>, <code>shouts:</code> ...).
+ *  <br>
+ *  Every pattern of the FICS parsers is anchored to the beginning of a
+ *  line, so only the one or two parsers returned need be tried on it, and
+ *  a line none of them could match is passed over without running any.
+ *  The parsers are returned in the order FICSProtocolHandler has always
+ *  tried them, so a line that two could match goes to the same one.
+ */
+public class FICSEventClassifier {
+   protected static final ICSEventParser[] NONE = new ICSEventParser[0];
+
+   protected ICSEventParser[] style12,
+                              moveList,
+                              seekAd,
+                              seekClear,
+                              seekRemove,
+                              game,
+                              gameNotification,
+                              examine,
+                              playerConnection,
+                              playerNotification,
+                              challenge,
+                              shout,
+                              you,
+                              youAre,
+                              observerSelf,
+                              tell,
+                              channel,
+                              kibitz,
+                              seekAdReadable,
+                              examinerSelf,
+                              examinerOther;
+
+   //constructors/////////////////////////////////////////////////////////////
+   public FICSEventClassifier () {
+      style12            = parsers(FICSBoardUpdateStyle12Parser.getInstance());
+      moveList           = parsers(FICSMoveListParser.getInstance());
+      seekAd             = parsers(FICSSeekAdParser.getInstance());
+      seekClear          = parsers(FICSSeekClearParser.getInstance());
+      seekRemove         = parsers(FICSSeekRemoveParser.getInstance());
+      game               = parsers(FICSGameResultParser.getInstance(),
+                                   FICSGameCreatedParser.getInstance());
+      gameNotification   = parsers(FICSGameNotificationParser.getInstance());
+      examine            = parsers(FICSExamineNavigationParser.getInstance(),
+                                   FICSExamineCommitParser.getInstance());
+      playerConnection   = parsers(FICSPlayerConnectionParser.getInstance());
+      playerNotification = parsers(FICSPlayerNotificationParser.getInstance());
+      challenge          = parsers(FICSChallengeParser.getInstance());
+      shout              = parsers(FICSShoutParser.getInstance());
+      you                = parsers(FICSExaminerSelfParser.getInstance(),
+                                   FICSObserverSelfParser.getInstance(),
+                      FICSExamineNavigationEndVariationParser.getInstance());
+      youAre             = parsers(
+                                FICSExamineNavigationBeginParser.getInstance(),
+                                FICSExamineNavigationEndParser.getInstance());
+      observerSelf       = parsers(FICSObserverSelfParser.getInstance());
+      tell               = parsers(FICSTellParser.getInstance());
+      channel            = parsers(FICSKibitzParser.getInstance(),
+                                   FICSChannelParser.getInstance());
+      kibitz             = parsers(FICSKibitzParser.getInstance());
+      seekAdReadable     = parsers(FICSSeekAdReadableParser.getInstance());
+      examinerSelf       = parsers(FICSExaminerSelfParser.getInstance());
+      examinerOther      = parsers(FICSExaminerOtherParser.getInstance());
+   }
+
+   private static ICSEventParser[] parsers (ICSEventParser... p) {
+      return p;
+   }
+
+   /* getCandidates **********************************************************/
+   /** the parsers that might match a message beginning at start, which must
+    *  be the beginning of a line of str.  A leading ':', which the parsers
+    *  allow for when detecting faked messages, is skipped.
+    *
+    *  @return an empty array if none of the parsers could match.
+    */
+   public ICSEventParser[] getCandidates (CharSequence str, int start) {
+      int len = str.length(),
+          i   = start,
+          end = 0;
+      char c;
+
+      if (i < len && str.charAt(i) == ':')
+         i++;
+      if (i >= len)
+         return NONE;
+
+      switch (c = str.charAt(i)) {
+         case '<':
+            if (startsWith(str, i, "<12>"))  return style12;
+            if (startsWith(str, i, "<s>")
+                || startsWith(str, i, "<sn>")) return seekAd;
+            if (startsWith(str, i, "<sc>"))  return seekClear;
+            if (startsWith(str, i, "<sr>"))  return seekRemove;
+            return NONE;
+
+         case '{':
+            return (startsWith(str, i, "{Game")) ? game : NONE;
+
+         case '[':
+            return playerConnection;
+
+         case '-':
+            return (startsWith(str, i, "-->")) ? shout : NONE;
+      }
+
+      if (!isWordChar(c))
+         return NONE;
+
+      //a leading keyword
+      end = skipWord(str, i);
+      switch (end - i) {
+         case 3:
+            if (startsWith(str, i, "You"))
+               return (end < len && str.charAt(end) == '\'') ? youAre : you;
+            break;
+         case 4:
+            if (startsWith(str, i, "Game") && isSpace(str, end))
+               return (startsWith(str, end + 1, "notification:"))
+                      ? gameNotification : examine;
+            break;
+         case 8:
+            if (startsWith(str, i, "Movelist") && isSpace(str, end))
+               return moveList;
+            if (startsWith(str, i, "Removing") && isSpace(str, end))
+               return observerSelf;
+            break;
+         case 9:
+            if (startsWith(str, i, "Challenge:"))
+               return challenge;
+            break;
+         case 12:
+            if (startsWith(str, i, "Notification:"))
+               return playerNotification;
+            break;
+      }
+
+      //otherwise a handle and its account types, like (C)(TM)
+      i = skipAccountTypes(str, end);
+      if (i >= len)
+         return NONE;
+
+      switch (str.charAt(i)) {
+         case '(': return channel;  //or a kibitz with a rating
+         case '[': return kibitz;
+      }
+
+      if (!isSpace(str, i))
+         return NONE;
+      while (isSpace(str, i))
+         i++;
+      if (i >= len)
+         return NONE;
+      if (str.charAt(i) == '(')
+         return seekAdReadable;
+
+      end = skipWord(str, i);
+      switch (end - i) {
+         case 1:  //s-shouts, c-shouts, t-shouts
+            if (startsWith(str, end, "-shouts:")) return shout;
+            break;
+         case 2:
+            if (startsWith(str, i, "is"))       return examinerOther;
+            break;
+         case 3:
+            if (startsWith(str, i, "has")
+                || startsWith(str, i, "are"))   return examinerSelf;
+            break;
+         case 4:
+            if (startsWith(str, i, "says:"))    return tell;
+            break;
+         case 5:
+            if (startsWith(str, i, "tells"))    return tell;
+            break;
+         case 6:
+            if (startsWith(str, i, "shouts:"))  return shout;
+            break;
+         case 7:
+            if (startsWith(str, i, "stopped"))  return examinerOther;
+            break;
+      }
+
+      return NONE;
+   }
+
+   /* nextLine ***************************************************************/
+   /** the beginning of the line after the one at start, as '^' is matched
+    *  by a MULTILINE Pattern.
+    *
+    *  @return str.length() if there is no other line.
+    */
+   public static int nextLine (CharSequence str, int start) {
+      int len = str.length();
+      char c;
+
+      for (int i=start; i < len; i++) {
+         c = str.charAt(i);
+         if (c == '\n' || c == '\u0085' || c == '\u2028' || c == '\u2029')
+            return i + 1;
+         if (c == '\r')
+            return (i + 1 < len && str.charAt(i + 1) == '\n') ? i + 2 : i + 1;
+      }
+      return len;
+   }
+
+   /* lineStart **************************************************************/
+   /** the beginning of the first line at or after i.
+    *
+    *  @return str.length() if there is no other line.
+    */
+   public static int lineStart (CharSequence str, int i) {
+      char c;
+
+      if (i <= 0)
+         return 0;
+      if (i >= str.length())
+         return str.length();
+
+      c = str.charAt(i - 1);
+      if (c == '\n' || c == '\u0085' || c == '\u2028' || c == '\u2029'
+          || (c == '\r' && str.charAt(i) != '\n'))
+         return i;
+      return nextLine(str, i);
+   }
+
+   //helpers//////////////////////////////////////////////////////////////////
+   protected static boolean startsWith (CharSequence str, int start,
+                                        String prefix) {
+      if (start < 0 || start + prefix.length() > str.length())
+         return false;
+      for (int i=0; i < prefix.length(); i++)
+         if (str.charAt(start + i) != prefix.charAt(i))
+            return false;
+      return true;
+   }
+
+   /** is the character at i whitespace, as \s */
+   protected static boolean isSpace (CharSequence str, int i) {
+      if (i >= str.length())
+         return false;
+      switch (str.charAt(i)) {
+         case ' ': case '\t': case '\n': case '\u000B': case '\f': case '\r':
+            return true;
+         default:
+            return false;
+      }
+   }
+
+   /** is the character a word character, as \w */
+   protected static boolean isWordChar (char c) {
+      return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+          || (c >= '0' && c <= '9') || c == '_';
+   }
+
+   /** the end of the run of word characters from start */
+   protected static int skipWord (CharSequence str, int start) {
+      int i = start;
+
+      while (i < str.length() && isWordChar(str.charAt(i)))
+         i++;
+      return i;
+   }
+
+   /** the end of the account types, each a parenthesized run of A-Z or *,
+    *  from start.
+    */
+   protected static int skipAccountTypes (CharSequence str, int start) {
+      int i = start,
+          j = 0;
+      char c;
+
+      while (i < str.length() && str.charAt(i) == '(') {
+         for (j = i + 1; j < str.length(); j++) {
+            c = str.charAt(j);
+            if (!((c >= 'A' && c <= 'Z') || c == '*'))
+               break;
+         }
+         if (j == i + 1 || j >= str.length() || str.charAt(j) != ')')
+            return i;
+         i = j + 1;
+      }
+      return i;
+   }
+}
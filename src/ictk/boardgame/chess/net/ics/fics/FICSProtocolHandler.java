@@ -31,12 +31,12 @@ import ictk.boardgame.chess.net.ics.fics.event.*;
 import ictk.boardgame.chess.net.ics.event.*;
 import ictk.boardgame.chess.net.ics.*;
 import ictk.boardgame.chess.net.ics.ui.cli.*;
-import ictk.boardgame.chess.net.*;
 
 import java.net.*;
 import java.io.*;
 import java.nio.*;
 import java.util.regex.*;
+import java.text.ParsePosition;
 import java.util.Date;
 
 
@@ -70,6 +70,19 @@ public class FICSProtocolHandler extends ICSProtocolHandler {
    protected final static String REGEX_handle    = "([\\w]+)",
                                  REGEX_acct_type = "(\\(\\S*\\))?";
 
+      /** the line the server sends on a successful login */
+   protected final static Pattern REGEX_sessionStart = Pattern.compile(
+		     "^\\*\\*\\*\\* Starting FICS session as "
+		     + REGEX_handle
+		     + REGEX_acct_type
+		     + " \\*\\*\\*\\*"
+		      , Pattern.MULTILINE);
+
+      /** results of login() */
+   protected final static int LOGGING_IN   = 0,
+                              LOGGED_IN    = 1,
+			      LOGIN_FAILED = 2;
+
    protected PrintStream stdout = System.out;
 
    //FIXME: RATING - UNR  is a possiblity
@@ -79,17 +92,33 @@ public class FICSProtocolHandler extends ICSProtocolHandler {
        ** of events. */
    final protected ICSEventParser[] eventFactories;
 
+      /** picks which of the eventFactories to try on each line */
+   final protected FICSEventClassifier classifier;
+
       /** is block_mode turned on for the server protocol. */
    boolean isBlockMode = false;
 
-      /** the max amount the server input buffer can hold before throwing 
-       ** an error.  The value of this should be plenty as it really only
-       ** needs to be as large as the longest message chunk.  */
-   int BUFFER_SIZE = 128 * 1048;
+      /** the size the server input buffer starts at, and shrinks back to.
+       ** It grows as needed to hold the longest message chunk (a long
+       ** move list or history, say). */
+   int BUFFER_SIZE = 128 * 1024;
+      /** how much server output chunkByPrompt() reads at a time */
+   int BLOCK_SIZE = 8 * 1024;
 
       /** collected input yet to be processed */
    CharBuffer buffer = CharBuffer.allocate(BUFFER_SIZE);
 
+      /** the prompt that ends each chunk */
+   protected char[] promptChars = CMD_PROMPT.toCharArray();
+      /** the selector's bytes, widened for chunk() */
+   protected char[] block;
+
+      /** where login() is in the login dialog */
+   protected boolean seenLogin,
+                     seenPasswd;
+      /** login() state of a connection made through an ICSSelector */
+   protected int loginState;
+
    //constructors/////////////////////////////////////////////////////////////
    public FICSProtocolHandler () {
       host   = "64.71.131.140"; //defaults
@@ -123,6 +152,7 @@ public class FICSProtocolHandler extends ICSProtocolHandler {
       eventFactories[i++] = FICSExamineNavigationEndParser.getInstance();
       eventFactories[i++] = FICSExamineNavigationEndVariationParser.getInstance();
  
+      classifier = new FICSEventClassifier();
 
       router = new ICSEventRouter();
    }
@@ -141,6 +171,18 @@ public class FICSProtocolHandler extends ICSProtocolHandler {
          throw new IllegalStateException(
 	    "Both handle and password must be set before login");
 
+      //multiplexed by a selector instead of read by our own thread
+      if (selector != null) {
+         if (isLagCompensated)
+	    throw new IllegalStateException(
+	       "Lag compensation needs a socket of its own, not a selector");
+	 seenLogin = seenPasswd = false;
+	 loginState = LOGGING_IN;
+	 buffer.clear();
+         selector.register(this);
+	 return;
+      }
+
       if (isLagCompensated)
          socket = new TimesealingSocket(host, port);
       else
@@ -183,173 +225,225 @@ public class FICSProtocolHandler extends ICSProtocolHandler {
        dispatchConnectionEvent(new ICSConnectionEvent(this));
    }
 
-   /* doLogin ****************************************************************/
-   protected boolean doLogin () throws IOException {
-      boolean seenLogin = false,
-              seenPasswd = false;
-      String tmp = null;
-      int b = 0;
-      char c = ' ';
-      int mark = 0;
-      
-      Matcher match = null;
-	 //Successful login start
-      Pattern REGEX_sessionStart = Pattern.compile(
-		     "^\\*\\*\\*\\* Starting FICS session as "
-		     + REGEX_handle
-		     + REGEX_acct_type
-		     + " \\*\\*\\*\\*"
-		      , Pattern.MULTILINE);
+   /* received *************************************************************/
+   /** takes server output read by the selector: the login dialog first,
+    *  then the chunks between prompts.
+    */
+   protected void received (ByteBuffer bytes) {
+      int b = 0,
+          n = 0;
 
-         while ((b = in.read()) != -1) {
-
-	    //out of range invisible characters
-	    //10 is \n
-	    //13 is \r ?
-	    if (b!= 10 && b!=13 && (b < 32 || b > 126)) {
-	    //Diagnostics
-	    /*
-	       String foo = "[" + b + "]";
-	       for (int z=0;z<foo.length();z++)
-		  buffer.put(foo.charAt(z));
-	    */
+      while (loginState == LOGGING_IN && bytes.hasRemaining()) {
+         b = bytes.get() & 0xFF;
+
+	 //out of range invisible characters
+	 if (b!= 10 && b!=13 && (b < 32 || b > 126)) {
+	 }
+
+	 else {
+	    loginState = login((char) b);
+
+	    if (loginState == LOGGED_IN) {
+	       isLoggedIn = true;
+	       setLoginVars();
+	       dispatchConnectionEvent(new ICSConnectionEvent(this));
 	    }
+	    else if (loginState == LOGIN_FAILED) {
+	       Log.error(Log.USER_ERROR, "unsuccessful login");
+	       selector.close(this);
+	       return;
+	    }
+	 }
+      }
 
-	    //normal character
-	    else {
-	       c = (char) b;
+      //the rest in bulk; the server's output is ASCII
+      if ((n = bytes.remaining()) > 0) {
+         if (block == null || block.length < n)
+	    block = new char[Math.max(n, BLOCK_SIZE)];
+	 for (int i=0; i < n; i++)
+	    block[i] = (char) (bytes.get() & 0xFF);
+	 chunk(block, 0, n);
+      }
+   }
 
-	       if (c == '\r') {} //get rid of these
-	       else 
-		  buffer.put(c);
+   /* closed ***************************************************************/
+   protected void closed () {
+      if (loginState == LOGGED_IN)
+         chunkEnd();
+      super.closed();
+   }
 
-               //this was a line of text that wasn't a prompt
-	       if (c == '\n' && !seenPasswd) { 
-	          buffer.limit(buffer.position());
-		  buffer.rewind();
-		  stdout.print(buffer.toString());
-		  stdout.flush();
-		  buffer.clear();
-	       }
+   /* doLogin ****************************************************************/
+   protected boolean doLogin () throws IOException {
+      int b = 0,
+          state = LOGGING_IN;
+
+      seenLogin = seenPasswd = false;
+      while (state == LOGGING_IN && (b = in.read()) != -1) {
+
+	 //out of range invisible characters
+	 //10 is \n
+	 //13 is \r ?
+	 if (b!= 10 && b!=13 && (b < 32 || b > 126)) {
+	 //Diagnostics
+	 /*
+	    String foo = "[" + b + "]";
+	    for (int z=0;z<foo.length();z++)
+	       buffer.put(foo.charAt(z));
+	 */
+	 }
 
-               //we've hit a prompt (probably)
-	       else if (c == ':') {
-		  mark = buffer.position();
-	          buffer.limit(mark);
-		  buffer.rewind();
-	          tmp = buffer.toString();
-
-                  //login prompt
-		  if (!seenLogin
-		      && tmp.lastIndexOf(LOGIN_PROMPT) > -1) {
-		        stdout.print(tmp);
-		        stdout.print(" ");
-			stdout.flush();
-		        buffer.rewind();
-		        buffer.clear();
-
-		        sendCommand(handle);
-			seenLogin = true;
-		  }
+	 //normal character
+	 else
+	    state = login((char) b);
+      }
+      return state != LOGIN_FAILED;
+   }
 
-                  //password prompt
-		  else if (seenLogin && !seenPasswd 
-		           && tmp.lastIndexOf(PASSWD_PROMPT) > -1) {
-		        stdout.print(tmp);
-		        stdout.print(" ");
-			stdout.flush();
-		        buffer.rewind();
-		        buffer.clear();
-
-		        sendCommand(passwd, false);
-			seenPasswd = true;
-                        stdout.println();
-		  }
+   /* login ******************************************************************/
+   /** takes the next character of the login dialog, answering the login
+    *  and password prompts as they are seen.
+    *
+    *  @return LOGGED_IN or LOGIN_FAILED once that is known, otherwise
+    *          LOGGING_IN.
+    */
+   protected int login (char c) {
+      String tmp = null;
+      int mark = 0;
+      Matcher match = null;
 
-                  //guest already logged in
-		  else if (seenLogin && !seenPasswd 
-		           && tmp.lastIndexOf(ALREADY_LOGGED_IN) > -1) {
-		        stdout.print(tmp);
-		        stdout.print(" ");
-			stdout.flush();
-		        buffer.rewind();
-		        buffer.clear();
-
-                        stdout.println();
-			return false;
-		  }
+      if (c == '\r') {} //get rid of these
+      else {
+         if (!buffer.hasRemaining())
+	    grow(buffer.capacity() + 1);
+	 buffer.put(c);
+      }
 
-		  //guest login prompt (instead of password)
-		  else if (seenLogin && !seenPasswd 
-		          && tmp.lastIndexOf(GUEST_PROMPT) > -1) {
-		        stdout.print(tmp);
-			stdout.flush();
-		        buffer.rewind();
-		        buffer.clear();
+      //this was a line of text that wasn't a prompt
+      if (c == '\n' && !seenPasswd) { 
+	 buffer.limit(buffer.position());
+	 buffer.rewind();
+	 stdout.print(buffer.toString());
+	 stdout.flush();
+	 buffer.clear();
+      }
 
-		        sendCommand("");
-			seenPasswd = true;
-		  }
-		  else {
-		     buffer.limit(buffer.capacity());
-		     buffer.position(mark);
-		  }
-	       }
+      //we've hit a prompt (probably)
+      else if (c == ':') {
+	 mark = buffer.position();
+	 buffer.limit(mark);
+	 buffer.rewind();
+	 tmp = buffer.toString();
+
+	 //login prompt
+	 if (!seenLogin
+	     && tmp.lastIndexOf(LOGIN_PROMPT) > -1) {
+	       stdout.print(tmp);
+	       stdout.print(" ");
+	       stdout.flush();
+	       buffer.rewind();
+	       buffer.clear();
+
+	       sendCommand(handle);
+	       seenLogin = true;
+	 }
 
-               //looking for a response from the password
-	       else if (c == '\n' && seenPasswd) {
-		  mark = buffer.position();
-	          buffer.limit(mark);
-		  buffer.rewind();
-	          tmp = buffer.toString();
+	 //password prompt
+	 else if (seenLogin && !seenPasswd 
+		  && tmp.lastIndexOf(PASSWD_PROMPT) > -1) {
+	       stdout.print(tmp);
+	       stdout.print(" ");
+	       stdout.flush();
+	       buffer.rewind();
+	       buffer.clear();
+
+	       sendCommand(passwd, false);
+	       seenPasswd = true;
+	       stdout.println();
+	 }
 
-                  //Invalid password
-		  if (tmp.lastIndexOf(INVALID_PASSWD) > -1) {
-		     stdout.print(tmp);
-		     stdout.flush();
-		     buffer.rewind();
-		     buffer.clear();
+	 //guest already logged in
+	 else if (seenLogin && !seenPasswd 
+		  && tmp.lastIndexOf(ALREADY_LOGGED_IN) > -1) {
+	       stdout.print(tmp);
+	       stdout.print(" ");
+	       stdout.flush();
+	       buffer.rewind();
+	       buffer.clear();
+
+	       stdout.println();
+	       return LOGIN_FAILED;
+	 }
 
-		     return false;
-		  }
+	 //guest login prompt (instead of password)
+	 else if (seenLogin && !seenPasswd 
+		 && tmp.lastIndexOf(GUEST_PROMPT) > -1) {
+	       stdout.print(tmp);
+	       stdout.flush();
+	       buffer.rewind();
+	       buffer.clear();
 
-                  //Successful Login
-		  else if (tmp.lastIndexOf(START_SESSION) > -1) {
-		     match = REGEX_sessionStart.matcher(tmp);
-		     if (match.find()) {
-		        handle = match.group(1);
-			try {
-			   if (match.group(2) == null)
-			      acctType = new ICSAccountType();
-			   else 
-			      acctType = new ICSAccountType (match.group(2));
-			}
-			catch (IOException e) {
-			   Log.error(Log.PROG_ERROR, 
-			      "On Login: " + e.getMessage());
-			}
-		     }
-		     else {
-		        Log.error(Log.PROG_ERROR,
-			   "On Login: never matched session start: "
-			   + tmp);
-		     }
-		     stdout.print(tmp);
-		     stdout.flush();
-		     buffer.rewind();
-		     buffer.clear();
+	       sendCommand("");
+	       seenPasswd = true;
+	 }
+	 else {
+	    buffer.limit(buffer.capacity());
+	    buffer.position(mark);
+	 }
+      }
 
-		     return true;
-		  }
+      //looking for a response from the password
+      else if (c == '\n' && seenPasswd) {
+	 mark = buffer.position();
+	 buffer.limit(mark);
+	 buffer.rewind();
+	 tmp = buffer.toString();
+
+	 //Invalid password
+	 if (tmp.lastIndexOf(INVALID_PASSWD) > -1) {
+	    stdout.print(tmp);
+	    stdout.flush();
+	    buffer.rewind();
+	    buffer.clear();
 
-		  else {
-		     buffer.limit(buffer.capacity());
-		     buffer.position(mark);
-		  }
+	    return LOGIN_FAILED;
+	 }
+
+	 //Successful Login
+	 else if (tmp.lastIndexOf(START_SESSION) > -1) {
+	    match = REGEX_sessionStart.matcher(tmp);
+	    if (match.find()) {
+	       handle = match.group(1);
+	       try {
+		  if (match.group(2) == null)
+		     acctType = new ICSAccountType();
+		  else 
+		     acctType = new ICSAccountType (match.group(2));
 	       }
+	       catch (IOException e) {
+		  Log.error(Log.PROG_ERROR, 
+		     "On Login: " + e.getMessage());
+	       }
+	    }
+	    else {
+	       Log.error(Log.PROG_ERROR,
+		  "On Login: never matched session start: "
+		  + tmp);
 	    }
+	    stdout.print(tmp);
+	    stdout.flush();
+	    buffer.rewind();
+	    buffer.clear();
+
+	    return LOGGED_IN;
+	 }
+
+	 else {
+	    buffer.limit(buffer.capacity());
+	    buffer.position(mark);
 	 }
-      return true;
+      }
+      return LOGGING_IN;
    }
 
    /* setLoginVars **********************************************************/
@@ -383,70 +477,134 @@ public class FICSProtocolHandler extends ICSProtocolHandler {
     *  as that output between two prompts.  This mode is not as efficient
     *  as BlockMode because a regex is used to figure out which message
     *  type we're looking at, but it does work with Timeseal.
+    *  <br>
+    *  The output is read a block at a time and handed to chunk().
     */
    protected void chunkByPrompt () {
-      int b    = -1;  //integer form of the character
-      char c   = ' ';
-      byte ptr = 0;   //pointer to a position in the prompt
-      char[] prompt = CMD_PROMPT.toCharArray();
+      char[] block = new char[BLOCK_SIZE];
+      int n = 0;
 
       try {
-
-         while ((b = in.read()) != -1) {
-
-            //diagnostics
-	    //out of range invisible characters
-	    //10 is \n
-	    //13 is \r ?
-	    if (b!= 10 && b!=13 && (b < 32 || b > 126)) {
-	       /*
-	       String foo = "[" + b + "]";
-	       for (int z=0;z<foo.length();z++)
-		  buffer.put(foo.charAt(z));
-	       */
-	    }
-
-	    //normal character
-	    else {
-	       c = (char) b;
-
-	       if (c != '\r') { //get rid of these
-		  buffer.put(c);
-
-		  if (c == prompt[ptr]) {  //look for the prompt
-		     ptr++;
-		     if (prompt.length == ptr) { //found prompt
-			buffer.limit(buffer.position() - prompt.length);
-			buffer.rewind();
-
-                        //send to parser for processing
-			parse(buffer);
-
-			buffer.clear();
-			ptr = 0;
-		     }
-		  } 
-		  else if (ptr == 1 && c == prompt[0]) {
-		     //got \n before prompt -- do nothing
-		  }
-		  else {  //not prompt
-		     ptr = 0;
-		  }
-	       }
-	    }
-	 }
-	 //purge remaining buffer
-	 if (buffer.position() > 0) {
-	    buffer.limit(buffer.position());
-	    buffer.rewind();
-	    parse(buffer);
-	 }
+         while ((n = in.read(block, 0, block.length)) != -1)
+	    chunk(block, 0, n);
+	 chunkEnd();
       }
       catch (IOException e) {
          e.printStackTrace();
       }
    }
 
+   /* chunk ******************************************************************/
+   /** takes the next len characters of server output, sending each chunk
+    *  to the parser as the prompt that ends it is found.  The characters
+    *  are appended to the buffer in one pass (without \r's and other 
+    *  unprintables) and the prompt is then searched for from the point it
+    *  could have begun, so a prompt split between calls is found.  The
+    *  buffer grows to hold a chunk of any length.
+    */
+   protected void chunk (char[] cbuf, int off, int len) {
+      char[] chars = null;
+      int pos   = 0,  //end of the output in the buffer
+          start = 0,  //beginning of the chunk being looked at
+	  scan  = 0,  //where the prompt could begin
+	  found = 0;
+      char c;
+
+      if (buffer.remaining() < len)
+         grow(buffer.position() + len);
+      chars = buffer.array();
+      pos = buffer.position();
+      scan = Math.max(0, pos - promptChars.length + 1);
+
+      for (int i=off; i < off + len; i++) {
+         c = cbuf[i];
+	 //10 is \n, 13 (\r) is dropped with the other unprintables
+	 if ((c >= 32 && c <= 126) || c == '\n')
+	    chars[pos++] = c;
+      }
+
+      while ((found = indexOf(chars, scan, pos, promptChars)) >= 0) {
+         buffer.limit(found);
+	 buffer.position(start);
+
+	 //send to parser for processing
+	 parse(buffer);
+
+	 start = scan = found + promptChars.length;
+      }
+
+      //keep what's left for the next call, moving it up only once a 
+      //chunk has been taken off the front
+      buffer.limit(pos);
+      buffer.position(start);
+      if (start > 0)
+         buffer.compact();
+      else {
+         buffer.limit(buffer.capacity());
+	 buffer.position(pos);
+      }
+      if (buffer.capacity() > BUFFER_SIZE 
+          && buffer.position() <= BUFFER_SIZE / 2)
+	 shrink();
+   }
+
+   /* chunkEnd ***************************************************************/
+   /** the server output has ended: parse whatever is left in the buffer.
+    */
+   protected void chunkEnd () {
+      //purge remaining buffer
+      if (buffer.position() > 0) {
+	 buffer.limit(buffer.position());
+	 buffer.rewind();
+	 parse(buffer);
+      }
+      buffer.clear();
+   }
+
+   /* indexOf ****************************************************************/
+   /** where the pattern first begins in chars between from and to, or -1.
+    */
+   protected static int indexOf (char[] chars, int from, int to, 
+                                 char[] pattern) {
+      char first = pattern[0];
+      int last = to - pattern.length,
+          j = 0;
+
+      for (int i=from; i <= last; i++) {
+         if (chars[i] != first)
+	    continue;
+	 for (j=1; j < pattern.length && chars[i + j] == pattern[j]; j++)
+	    ;
+	 if (j == pattern.length)
+	    return i;
+      }
+      return -1;
+   }
+
+   /* grow *******************************************************************/
+   /** makes room in the buffer for at least capacity characters, keeping
+    *  its contents.
+    */
+   protected void grow (int capacity) {
+      CharBuffer tmp = CharBuffer.allocate(
+         Math.max(capacity, buffer.capacity() * 2));
+
+      buffer.flip();
+      tmp.put(buffer);
+      buffer = tmp;
+   }
+
+   /* shrink *****************************************************************/
+   /** lets go of the room a long chunk needed.
+    */
+   protected void shrink () {
+      CharBuffer tmp = CharBuffer.allocate(BUFFER_SIZE);
+
+      buffer.flip();
+      tmp.put(buffer);
+      buffer = tmp;
+   }
+
    /* chunkByBlockMode *****************************************************/
    /** uses FICS's block mode to process the server output.  This cannot
     *  be used with Timeseal because Timeseal chops off the high-order bits
@@ -592,40 +750,53 @@ public class FICSProtocolHandler extends ICSProtocolHandler {
     *  just gotta figure out what the message is and send it to the right
     *  listeners.
     *  <br>
-    *  It is possible that there are multiple messages in one chunk.  To
-    *  deal with this the string before and after the matched data must 
-    *  also be examined for messages.  These message need to be queued up
-    *  and then sent to the router in order.
+    *  It is possible that there are multiple messages in one chunk.  Every
+    *  message begins a line, so the chunk is walked a line at a time and
+    *  only the parsers the classifier picks for how that line begins are
+    *  tried on it.  Messages are sent to the router in the order they
+    *  appear; text between them that no parser matched is printed.
     */
    protected void parse (CharSequence str) {
       ICSEvent icsEvent = null;
-      Matcher matcher = null;
+      ICSEventParser[] parsers = null;
+      ParsePosition pos = new ParsePosition(0);
+      int len  = str.length(),
+          line = 0,
+          last = 0;
       boolean found = false;
 
       if (debugParser) 
          stdout.println("<PARSING>" + str + "</PARSING>");
 
-      for (int i=0; i < eventFactories.length && !found; i++) {
+      while (line < len) {
+         icsEvent = null;
+         parsers = classifier.getCandidates(str, line);
 
-         if ((matcher = eventFactories[i].match(str)) != null) {
-	    icsEvent = eventFactories[i].createICSEvent(matcher); 
-	    assert icsEvent != null : "parser matched, but event null?";
+         for (int i=0; i < parsers.length && icsEvent == null; i++) {
+            pos.setIndex(line);
 
-	    if (matcher.start() > 3)
-	       parse(str.subSequence(0, matcher.start()));
+            if ((icsEvent = parsers[i].createICSEvent(str, pos)) != null) {
 
-	    icsEvent.setServer(this);
-	    router.dispatch(icsEvent);
+	       if (line - last > 3)
+	          stdout.println(str.subSequence(last, line));
 
-	    if (str.length() - matcher.end() > 3)
-	       parse(str.subSequence(matcher.end(), str.length()));
+	       icsEvent.setServer(this);
+	       router.dispatch(icsEvent);
 
-	    found = true;
-	 }
+	       last = pos.getIndex();
+	       found = true;
+	    }
+         }
+
+         line = (icsEvent == null || last <= line)
+              ? FICSEventClassifier.nextLine(str, line)
+              : FICSEventClassifier.lineStart(str, last);
       }
 
       if (!found)
          stdout.println(str);
+      else if (len - last > 3)
+         stdout.println(str.subSequence(last, len));
    }
 
 /*
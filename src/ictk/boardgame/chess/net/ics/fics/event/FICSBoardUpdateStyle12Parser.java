@@ -29,6 +29,7 @@ import ictk.boardgame.chess.net.ics.*;
 import ictk.util.Log;
 
 import java.util.regex.*;
+import java.text.ParsePosition;
 import java.io.IOException;
 
 /* FICSBoardUpdateStyle12Parser **********************************************/
@@ -220,6 +221,341 @@ public class FICSBoardUpdateStyle12Parser extends ICSEventParser {
       }
    }
 
+   /* createICSEvent ********************************************************/
+   /** reads the Style 12 line at pos.getIndex() with scan() instead of the
+    *  regular expression.  The event is the same one the Matcher would
+    *  have produced.
+    */
+   public ICSEvent createICSEvent (CharSequence s, ParsePosition pos) {
+      ICSBoardUpdateEvent evt = new ICSBoardUpdateEvent();
+      int end = scan(s, pos.getIndex(), evt);
+
+      if (end < 0) {
+         pos.setErrorIndex(pos.getIndex());
+	 return null;
+      }
+      pos.setIndex(end);
+      return evt;
+   }
+
+   /* scan ******************************************************************/
+   /** reads the Style 12 line beginning at start into evt without using
+    *  the regular expression.  The line is walked once; the ranks are
+    *  copied straight into the board array of evt and the numbers are
+    *  read as they go by.  It accepts exactly what masterPattern does and
+    *  leaves evt as assignMatches() would, so a number too large for an
+    *  int (or a move time without milliseconds) makes it an 
+    *  UNKNOWN_EVENT.
+    *  <br>
+    *  Like assignMatches() this can be used to recycle events: every
+    *  field is set, and the board array of evt is reused.
+    *
+    *  @return the end of the Style 12 message, or -1 if there isn't one
+    *          at start, in which case evt is left half filled.
+    */
+   public int scan (CharSequence s, int start, ICSBoardUpdateEvent evt) {
+      int len = s.length(),
+          i   = start,
+	  j   = 0,
+	  f   = 0;
+      long[] n = new long[NUMBERS];
+      char[][] board = evt.getBoardArray();
+      char c;
+
+      if (i < len && s.charAt(i) == ':')
+         i++;
+      if (i + 5 > len
+          || s.charAt(i) != '<' || s.charAt(i + 1) != '1'
+          || s.charAt(i + 2) != '2' || s.charAt(i + 3) != '>'
+	  || !isSpace(s.charAt(i + 4)))
+	 return -1;
+      i += 5;
+
+      //board
+      if (board == null || board.length != 8)
+         evt.setBoardArray(board = new char[8][8]);
+      for (int rank=7; rank >= 0; rank--) {
+         if (i + 9 > len || !isSpace(s.charAt(i + 8)))
+	    return -1;
+	 for (int file=0; file < 8; file++) {
+	    switch (c = s.charAt(i + file)) {
+	       case 'r': case 'n': case 'b': case 'q': case 'k': case 'p':
+	       case 'R': case 'N': case 'B': case 'Q': case 'K': case 'P':
+	          board[file][rank] = c;
+		  break;
+	       case '-':
+	          board[file][rank] = ' ';
+		  break;
+	       default:
+	          return -1;
+	    }
+	 }
+	 i += 9;
+      }
+
+      //who's move
+      if (i + 2 > len || !isSpace(s.charAt(i + 1)))
+         return -1;
+      if ((c = s.charAt(i)) != 'B' && c != 'W')
+         return -1;
+      evt.setBlackMove(c == 'B');
+      i += 2;
+
+      //enpassant file
+      j = (i < len && s.charAt(i) == '-') ? i + 1 : i;
+      if (j + 2 > len || s.charAt(j) < '0' || s.charAt(j) > '7' 
+          || !isSpace(s.charAt(j + 1)))
+	 return -1;
+      n[EP] = number(s, i, j + 1);
+      i = j + 2;
+
+      //castling
+      for (f=0; f < 4; f++) {
+         if (i + 2 > len || !isSpace(s.charAt(i + 1)))
+	    return -1;
+	 if ((c = s.charAt(i)) != '0' && c != '1')
+	    return -1;
+	 switch (f) {
+	    case 0: evt.setWhiteCastleableKingside(c == '1'); break;
+	    case 1: evt.setWhiteCastleableQueenside(c == '1'); break;
+	    case 2: evt.setBlackCastleableKingside(c == '1'); break;
+	    case 3: evt.setBlackCastleableQueenside(c == '1'); break;
+	 }
+	 i += 2;
+      }
+
+      //100-ply rule, board number
+      for (f=IRREVERSABLE; f <= BOARD; f++) {
+         if ((j = digits(s, i)) == i || !isSpace(s, j))
+	    return -1;
+	 n[f] = number(s, i, j);
+	 i = j + 1;
+      }
+
+      //players
+      if ((j = word(s, i)) == i || !isSpace(s, j))
+         return -1;
+      evt.setWhitePlayer(s.subSequence(i, j).toString());
+      i = j + 1;
+      if ((j = word(s, i)) == i || !isSpace(s, j))
+         return -1;
+      evt.setBlackPlayer(s.subSequence(i, j).toString());
+      i = j + 1;
+
+      //relation
+      j = (i < len && s.charAt(i) == '-') ? i + 1 : i;
+      if (j + 2 > len || s.charAt(j) < '0' || s.charAt(j) > '3' 
+          || !isSpace(s.charAt(j + 1)))
+	 return -1;
+      n[RELATION] = number(s, i, j + 1);
+      i = j + 2;
+
+      //times, material, clocks, move number
+      for (f=ITIME; f <= MOVE; f++) {
+         j = ((f == WCLOCK || f == BCLOCK) && i < len && s.charAt(i) == '-')
+	   ? i + 1 : i;
+         if ((j = digits(s, j)) == i || s.charAt(j - 1) == '-' 
+	     || !isSpace(s, j))
+	    return -1;
+	 n[f] = number(s, i, j);
+	 i = j + 1;
+      }
+
+      //last move
+      if ((j = nonSpace(s, i)) == i || !isSpace(s, j))
+         return -1;
+      evt.setVerboseMove((j - i == 4 && startsWith(s, i, "none")) 
+                         ? null : s.subSequence(i, j).toString());
+      i = j + 1;
+
+      //time of the last move: (m:ss.mmm)
+      if (i >= len || s.charAt(i++) != '(')
+         return -1;
+      if ((j = digits(s, i)) == i || j >= len || s.charAt(j) != ':')
+         return -1;
+      n[MINUTES] = number(s, i, j);
+      i = j + 1;
+      if ((j = digits(s, i)) == i)
+         return -1;
+      n[SECONDS] = number(s, i, j);
+      i = j;
+      if (i < len && s.charAt(i) == '.')
+         i++;
+      j = digits(s, i);
+      n[MILLIS] = (j == i) ? NONE : number(s, i, j);
+      i = j;
+      if (i + 2 > len || s.charAt(i) != ')' || !isSpace(s.charAt(i + 1)))
+         return -1;
+      i += 2;
+
+      //SAN
+      if ((j = nonSpace(s, i)) == i || !isSpace(s, j))
+         return -1;
+      evt.setSAN((j - i == 4 && startsWith(s, i, "none")) 
+                 ? null : s.subSequence(i, j).toString());
+      i = j + 1;
+
+      //flip board, clock moving
+      for (f=0; f < 2; f++) {
+         if (i + 2 > len || !isSpace(s.charAt(i + 1)))
+	    return -1;
+	 if ((c = s.charAt(i)) != '0' && c != '1')
+	    return -1;
+	 if (f == 0)
+	    evt.setFlipBoard(c == '1');
+	 else
+	    evt.setClockMoving(c == '1');
+	 i += 2;
+      }
+
+      //timeseal delta
+      if ((j = digits(s, i)) == i)
+         return -1;
+      n[LAG] = number(s, i, j);
+
+      evt.setEventType(ICSEvent.BOARD_UPDATE_EVENT);
+      evt.setMessage(null);
+      assignNumbers(n, s, start, j, evt);
+      return j;
+   }
+
+   /** the indexes of the numbers read by scan(), in the order 
+    ** assignMatches() parses them */
+   protected static final int EP           = 0,
+                              IRREVERSABLE = 1,
+			      BOARD        = 2,
+			      RELATION     = 3,
+			      ITIME        = 4,
+			      INCR         = 5,
+			      WMATERIAL    = 6,
+			      BMATERIAL    = 7,
+			      WCLOCK       = 8,
+			      BCLOCK       = 9,
+			      MOVE         = 10,
+			      MINUTES      = 11,
+			      SECONDS      = 12,
+			      MILLIS       = 13,
+			      LAG          = 14,
+			      NUMBERS      = 15;
+
+      /** a number that is missing or won't fit in an int */
+   protected static final long NONE = Long.MIN_VALUE;
+
+   /* assignNumbers *********************************************************/
+   /** sets the numbers on evt in the order assignMatches() does, stopping
+    *  at the first one Integer.parseInt() would have refused.
+    */
+   protected void assignNumbers (long[] n, CharSequence s, int start, int end,
+                                 ICSBoardUpdateEvent evt) {
+      int i = 0;
+
+      for (i=0; i < NUMBERS; i++)
+         if (n[i] == NONE)
+	    break;
+
+      if (i > EP)           evt.setEnPassantFile((int) n[EP] + 1);
+      if (i > IRREVERSABLE) 
+         evt.setPlySinceLastIrreversableMove((int) n[IRREVERSABLE]);
+      if (i > BOARD)        evt.setBoardNumber((int) n[BOARD]);
+      if (i > RELATION)     evt.setRelation((int) n[RELATION]);
+      if (i > ITIME)        evt.setInitialTime((int) n[ITIME]);
+      if (i > INCR)         evt.setIncrement((int) n[INCR]);
+      if (i > WMATERIAL)    evt.setWhiteMaterial((int) n[WMATERIAL]);
+      if (i > BMATERIAL)    evt.setBlackMaterial((int) n[BMATERIAL]);
+      if (i > WCLOCK)       evt.setWhiteClock((int) n[WCLOCK]);
+      if (i > BCLOCK)       evt.setBlackClock((int) n[BCLOCK]);
+      if (i > MOVE)         evt.setMoveNumber((int) n[MOVE]);
+      if (i > MILLIS)  
+         evt.setMoveTime((int) n[MINUTES] * 60000 
+	               + (int) n[SECONDS] * 1000
+		       + (int) n[MILLIS]);
+      if (i > LAG)          evt.setLag((int) n[LAG]);
+
+      if (i < NUMBERS) {
+         Log.error(Log.PROG_WARNING,
+	   "number out of range or missing"
+	   + "for(" + i + "): " + s.subSequence(start, end));
+	 evt.setEventType(ICSEvent.UNKNOWN_EVENT);
+	 evt.setMessage(s.subSequence(start, end).toString());
+      }
+   }
+
+   //scanning helpers//////////////////////////////////////////////////////
+   /** the value of the (optionally negative) digits from start to end, or
+    *  NONE if it won't fit in an int.
+    */
+   protected static long number (CharSequence s, int start, int end) {
+      boolean negative = s.charAt(start) == '-';
+      long value = 0;
+
+      if (negative)
+         start++;
+      //skip leading zeros, which don't count against the length
+      while (start < end - 1 && s.charAt(start) == '0')
+         start++;
+      if (end - start > 10)
+         return NONE;
+      for (int i=start; i < end; i++)
+         value = value * 10 + (s.charAt(i) - '0');
+      if (negative)
+         value = -value;
+      if (value > Integer.MAX_VALUE || value < Integer.MIN_VALUE)
+         return NONE;
+      return value;
+   }
+
+   /** the end of the run of digits from start */
+   protected static int digits (CharSequence s, int start) {
+      int len = s.length();
+      char c;
+
+      while (start < len && (c = s.charAt(start)) >= '0' && c <= '9')
+         start++;
+      return start;
+   }
+
+   /** the end of the run of word characters (as \w) from start */
+   protected static int word (CharSequence s, int start) {
+      int len = s.length();
+      char c;
+
+      while (start < len 
+             && (((c = s.charAt(start)) >= 'a' && c <= 'z')
+	         || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+		 || c == '_'))
+         start++;
+      return start;
+   }
+
+   /** the end of the run of non-whitespace (as \S) from start */
+   protected static int nonSpace (CharSequence s, int start) {
+      int len = s.length();
+
+      while (start < len && !isSpace(s.charAt(start)))
+         start++;
+      return start;
+   }
+
+   protected static boolean startsWith (CharSequence s, int start, 
+                                        String prefix) {
+      if (start + prefix.length() > s.length())
+         return false;
+      for (int i=0; i < prefix.length(); i++)
+         if (s.charAt(start + i) != prefix.charAt(i))
+	    return false;
+      return true;
+   }
+
+   protected static boolean isSpace (CharSequence s, int i) {
+      return i < s.length() && isSpace(s.charAt(i));
+   }
+
+   /** is c whitespace, as \s */
+   protected static boolean isSpace (char c) {
+      return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' 
+          || c == '\f' || c == '\r';
+   }
+
    /* toNative ***************************************************************/
    public String toNative (ICSEvent event) {
 
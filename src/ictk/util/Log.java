@@ -58,7 +58,8 @@ public class Log {
 		      GameWriter       = 2 * GameReader,
 		      GameInfo         = 2 * GameWriter,
 		      ICSEvent         = 2 * GameInfo,
-		      ICSEventParser   = 2 * ICSEvent;
+		      ICSEventParser   = 2 * ICSEvent,
+		      Database         = 2 * ICSEventParser;
 
       /** do you want fully qualified (package included) class names? */
    public static boolean isFullyQualifiedClass = false;
@@ -99,6 +100,8 @@ public class Log {
 	    addMask(GameWriter);
 	 if (System.getProperty("Debug.GameReader") != null)
 	    addMask(GameReader);
+	 if (System.getProperty("Debug.Database") != null)
+	    addMask(Database);
       }
    }
 
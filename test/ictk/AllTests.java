@@ -39,6 +39,7 @@ public class AllTests {
       suite.addTest(ictk.boardgame.AllTests.suite());
       suite.addTest(ictk.boardgame.chess.AllTests.suite());
       suite.addTest(ictk.boardgame.chess.io.AllTests.suite());
+      suite.addTest(ictk.boardgame.chess.db.AllTests.suite());
          
       return suite;
    }
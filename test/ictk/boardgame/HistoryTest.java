@@ -707,4 +707,87 @@ public class HistoryTest extends TestCase {
       history.add(san.stringToMove(game.getBoard(), "Nc6"));
       assert(history.size() == 4);
    }
+
+   //////////////////////////////////////////////////////////////////////
+   void addAll (String[] sans) throws IllegalMoveException,
+                                      OutOfTurnException,
+				      AmbiguousMoveException {
+      for (int i=0; i < sans.length; i++)
+         history.add(san.stringToMove(game.getBoard(), sans[i]));
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   public void testRepetition () throws IllegalMoveException,
+                      OutOfTurnException,
+		      AmbiguousMoveException {
+      game = new ChessGame();
+      history = game.getHistory();
+      board = (ChessBoard) game.getBoard();
+
+      assertEquals(1, board.getRepetitionCount());
+      addAll(new String[] {"Nf3", "Nf6", "Ng1", "Ng8"});
+      assertEquals(2, board.getRepetitionCount());
+      assertFalse(board.isThreefoldRepetition());
+
+      addAll(new String[] {"Nf3", "Nf6"});
+      assertEquals(2, board.getRepetitionCount());
+      addAll(new String[] {"Ng1", "Ng8"});
+      assertEquals(3, board.getRepetitionCount());
+      assertTrue(board.isThreefoldRepetition());
+      assertTrue(((ChessMove) history.getCurrentMove()).isDrawByRepetition());
+      //a draw has to be claimed
+      assertFalse(((ChessMove) history.getCurrentMove()).isEndOfGame());
+
+      //the count follows the traversal
+      history.prev();
+      assertEquals(2, board.getRepetitionCount());
+      assertFalse(board.isThreefoldRepetition());
+      history.next();
+      assertTrue(board.isThreefoldRepetition());
+
+      history.rewind();
+      assertEquals(1, board.getRepetitionCount());
+      history.goToEnd();
+      assertTrue(board.isThreefoldRepetition());
+
+      history.goTo(history.getFirst());
+      assertEquals(1, board.getRepetitionCount());
+      history.goTo(history.getFinalMove(true));
+      assertEquals(3, board.getRepetitionCount());
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   /** a pawn move or capture means nothing before it can repeat */
+   public void testRepetitionIrreversible () throws IllegalMoveException,
+                      OutOfTurnException,
+		      AmbiguousMoveException {
+      game = new ChessGame();
+      history = game.getHistory();
+      board = (ChessBoard) game.getBoard();
+
+      addAll(new String[] {"e4", "e5", "Nf3", "Nf6", "Ng1", "Ng8"});
+      assertEquals(2, board.getRepetitionCount());
+      addAll(new String[] {"Nf3", "Nf6", "Ng1", "Ng8"});
+      assertEquals(3, board.getRepetitionCount());
+      addAll(new String[] {"d4", "d5", "Nf3", "Nf6", "Ng1", "Ng8"});
+      assertEquals(2, board.getRepetitionCount());
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   public void test50MoveRule () throws IllegalMoveException,
+                      OutOfTurnException,
+		      AmbiguousMoveException {
+      game = new ChessGame();
+      history = game.getHistory();
+      board = (ChessBoard) game.getBoard();
+
+      board.set50MoveRulePlyCount(98);
+      history.add(san.stringToMove(game.getBoard(), "Nf3"));
+      assertFalse(((ChessMove) history.getCurrentMove()).isDrawBy50MoveRule());
+      history.add(san.stringToMove(game.getBoard(), "Nf6"));
+      assertTrue(((ChessMove) history.getCurrentMove()).isDrawBy50MoveRule());
+      assertFalse(((ChessMove) history.getCurrentMove()).isEndOfGame());
+      history.add(san.stringToMove(game.getBoard(), "e4"));
+      assertFalse(((ChessMove) history.getCurrentMove()).isDrawBy50MoveRule());
+   }
 }
@@ -44,6 +44,9 @@ public class AllTests {
       suite.addTest(new TestSuite(RookTest.class));
       suite.addTest(new TestSuite(QueenTest.class));
       suite.addTest(new TestSuite(KingTest.class));
+      suite.addTest(new TestSuite(BitboardTest.class));
+      suite.addTest(new TestSuite(PerftTest.class));
+      suite.addTest(new TestSuite(ZobristTest.class));
       return suite;
    }
 }
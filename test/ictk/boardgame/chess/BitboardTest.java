@@ -0,0 +1,204 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess;
+
+import junit.framework.*;
+import java.io.IOException;
+
+import ictk.boardgame.*;
+import ictk.boardgame.io.*;
+import ictk.boardgame.chess.io.FEN;
+
+public class BitboardTest extends TestCase {
+   boolean DEBUG = false;
+   ChessBoard board;
+   ChessMove  move;
+   FEN        fen;
+
+   public BitboardTest (String name) {
+      super(name);
+   }
+
+   public void setUp () {
+      board = new ChessBoard();
+      fen = new FEN();
+   }
+
+   public void tearDown () {
+      board = null;
+      move = null;
+      fen = null;
+      DEBUG = false;
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   /** checks the masks against the squares of the board */
+   void assertInSync (ChessBoard b) {
+      long white = 0L, black = 0L;
+      long[] types = new long[6];
+      ChessPiece p;
+
+         for (int i=0; i < 64; i++) {
+	    p = b.getSquareByIndex(i).piece;
+	    if (p == null) continue;
+	    types[p.index] |= Bitboard.bit(i);
+	    if (p.isBlack) black |= Bitboard.bit(i);
+	    else           white |= Bitboard.bit(i);
+	 }
+	 for (int i=0; i < 6; i++) {
+	    assertEquals(types[i] & white, b.getPieceBits(i, false));
+	    assertEquals(types[i] & black, b.getPieceBits(i, true));
+	 }
+	 assertEquals(white, b.getTeamBits(false));
+	 assertEquals(black, b.getTeamBits(true));
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   public void testIndex () {
+      assertEquals(0, Bitboard.toIndex(1, 1));
+      assertEquals(63, Bitboard.toIndex(8, 8));
+      assertEquals(Bitboard.toIndex(5, 4), 
+                   board.getSquare('e', '4').getBitIndex());
+      assertEquals(5, Bitboard.getFile(Bitboard.toIndex(5, 4)));
+      assertEquals(4, Bitboard.getRank(Bitboard.toIndex(5, 4)));
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   public void testAttackTables () {
+      int d4 = Bitboard.toIndex(4, 4),
+          a1 = Bitboard.toIndex(1, 1);
+
+      assertEquals(8, Bitboard.count(Bitboard.knightAttacks(d4)));
+      assertEquals(2, Bitboard.count(Bitboard.knightAttacks(a1)));
+      assertEquals(8, Bitboard.count(Bitboard.kingAttacks(d4)));
+      assertEquals(3, Bitboard.count(Bitboard.kingAttacks(a1)));
+      assertEquals(1, Bitboard.count(Bitboard.pawnAttacks(a1, false)));
+      assertEquals(0, Bitboard.pawnAttacks(a1, true));
+
+      //empty board
+      assertEquals(14, Bitboard.count(Bitboard.rookAttacks(d4, 0L)));
+      assertEquals(13, Bitboard.count(Bitboard.bishopAttacks(d4, 0L)));
+
+      //blocker on d6 is attacked but d7 and d8 are not
+      long occ = Bitboard.bit(Bitboard.toIndex(4, 6));
+      long att = Bitboard.rookAttacks(d4, occ);
+      assertTrue((att & occ) != 0L);
+      assertEquals(0L, att & Bitboard.bit(Bitboard.toIndex(4, 7)));
+      assertEquals(12, Bitboard.count(att));
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   public void testBetween () {
+      int a1 = Bitboard.toIndex(1, 1),
+          h8 = Bitboard.toIndex(8, 8),
+	  b3 = Bitboard.toIndex(2, 3);
+
+      assertEquals(6, Bitboard.count(Bitboard.between(a1, h8)));
+      assertEquals(Bitboard.between(a1, h8), Bitboard.between(h8, a1));
+      assertEquals(0L, Bitboard.between(a1, b3));
+      assertEquals(8, Bitboard.count(Bitboard.line(a1, h8)));
+      assertTrue(Bitboard.isDiagonal(a1, h8));
+      assertFalse(Bitboard.isOrthogonal(a1, h8));
+      assertFalse(Bitboard.isDiagonal(a1, b3));
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   public void testDefaultPosition () {
+      assertInSync(board);
+      assertEquals(0xFFFFL, board.getTeamBits(false));
+      assertEquals(0xFFFFL << 48, board.getTeamBits(true));
+      assertEquals(0L, board.getCheckers());
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   public void testExecuteUnexecute () 
+          throws IllegalMoveException, OutOfTurnException {
+      long before = board.getOccupiedBits();
+
+      move = new ChessMove(board, 5, 2, 5, 4); //e4
+      move.execute();
+      assertInSync(board);
+      assertFalse(board.getOccupiedBits() == before);
+
+      move.unexecute();
+      assertInSync(board);
+      assertEquals(before, board.getOccupiedBits());
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   public void testCastleAndPromotion () 
+          throws IllegalMoveException, OutOfTurnException, 
+	         IOException {
+      board = (ChessBoard) fen.stringToBoard(
+         "r3k3/1P6/8/8/8/8/8/R3K2R w KQq - 0 1");
+
+      move = new ChessMove(board, ChessMove.CASTLE_KINGSIDE);
+      move.execute();
+      assertInSync(board);
+      move.unexecute();
+      assertInSync(board);
+
+      move = new ChessMove(board, 2, 7, 1, 8, Knight.INDEX); //bxa8=N
+      move.execute();
+      assertInSync(board);
+      assertEquals(Bitboard.bit(Bitboard.toIndex(1, 8)),
+                   board.getPieceBits(Knight.INDEX, false));
+      move.unexecute();
+      assertInSync(board);
+      assertEquals(0L, board.getPieceBits(Knight.INDEX, false));
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   public void testEnPassant () 
+          throws IllegalMoveException, OutOfTurnException, IOException {
+      board = (ChessBoard) fen.stringToBoard(
+         "4k3/8/8/3pP3/8/8/8/4K3 w - d6 0 1");
+
+      move = new ChessMove(board, 5, 5, 4, 6); //exd6 ep
+      move.execute();
+      assertInSync(board);
+      assertEquals(0L, board.getPieceBits(Pawn.INDEX, true));
+      move.unexecute();
+      assertInSync(board);
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   public void testCheckersAndPins () throws IOException {
+      //Bb4+ with the knight on c3 pinned by it and the rook on e2 
+      //pinned by the queen on e8
+      board = (ChessBoard) fen.stringToBoard(
+         "4q1k1/8/8/8/1b6/2N5/4R3/4K3 w - - 0 1");
+
+      assertEquals(0L, board.getCheckers());
+      assertEquals(Bitboard.bit(Bitboard.toIndex(3, 3)) 
+                   | Bitboard.bit(Bitboard.toIndex(5, 2)),
+		   board.getPinnedBits(false));
+
+      board = (ChessBoard) fen.stringToBoard(
+         "4q1k1/8/8/8/1b6/8/8/4K3 w - - 0 1");
+      assertEquals(2, Bitboard.count(board.getCheckers()));
+      assertTrue(board.whiteKing.isInCheck());
+   }
+}
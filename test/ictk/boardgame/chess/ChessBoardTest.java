@@ -25,6 +25,7 @@
 package ictk.boardgame.chess;
 
 import junit.framework.*;
+import java.util.List;
 
 import ictk.util.Log;
 import ictk.boardgame.*;
@@ -198,6 +199,137 @@ public class ChessBoardTest extends TestCase {
       assertTrue(board.getLegalMoveCount() == 20);
    }
 
+   //////////////////////////////////////////////////////////////////////
+   public void testLegalMovesPacked () {
+      int[] moves = new int[ChessBoard.MAX_LEGAL_MOVES];
+      short[] smoves = new short[ChessBoard.MAX_LEGAL_MOVES];
+      int count = board.getLegalMoves(moves);
+
+      assertTrue(count == 20);
+      assertTrue(board.getLegalMoves(smoves) == 20);
+      for (int i=0; i < count; i++)
+         assertTrue((smoves[i] & 0xFFFF) == moves[i]);
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   public void testLegalMovesPackedPromotion () {
+      int[] moves = new int[ChessBoard.MAX_LEGAL_MOVES];
+      int count, promos = 0;
+
+      board.setPositionClear();
+      board.addKing(4, 1, false);  //d1
+      board.addKing(8, 8, true);
+      board.addPawn(2, 7, false);  //b7
+      board.addRook(1, 8, true);   //a8
+      board.setBlackMove(false);
+      count = board.getLegalMoves(moves);
+
+      for (int i=0; i < count; i++) 
+         if (ChessMove.getPackedPromotion(moves[i]) != 0) 
+	    promos++;
+
+      //b8 and bxa8 each with 4 promotions + 5 king moves
+      assertTrue(promos == 8);
+      assertTrue(count == 13);
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   public void testLegalMovesPackedPin () 
+          throws IllegalMoveException, OutOfTurnException {
+      int[] moves = new int[ChessBoard.MAX_LEGAL_MOVES];
+      int count;
+      ChessMove m;
+
+      //the b-pawn can not capture en passant (bxc6); it would expose the King
+      board.setPositionClear();
+      board.addKing(1, 5, false);  //a5
+      board.addPawn(2, 5, false);  //b5
+      board.addPawn(3, 7, true);   //c7
+      board.addRook(8, 5, true);   //h5
+      board.addKing(8, 8, true);
+      board.setBlackMove(true);
+
+      m = board.toChessMove(ChessMove.pack(Bitboard.toIndex(3, 7), 
+                                           Bitboard.toIndex(3, 5), 0));
+      m.execute();  //c5
+      count = board.getLegalMoves(moves);
+
+      for (int i=0; i < count; i++) 
+         assertFalse(ChessMove.getPackedDestination(moves[i]) 
+	    == Bitboard.toIndex(3, 6));
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   public void testLazyCheckmate () 
+          throws IllegalMoveException, OutOfTurnException {
+      board.setLazyLegalDests(true);
+
+      new ChessMove(board, 6, 2, 6, 3).execute();  //f3
+      new ChessMove(board, 5, 7, 5, 5).execute();  //e5
+      new ChessMove(board, 7, 2, 7, 4).execute();  //g4
+      assertTrue(board.staleLegalDests);
+      move = new ChessMove(board, 4, 8, 8, 4);     //Qh4#
+      move.execute();
+
+      //nothing has asked for the destinations of every piece yet
+      assertTrue(board.staleLegalDests);
+      assertTrue(move.isCheck());
+      assertTrue(move.isCheckmate());
+      assertFalse(move.isStalemate());
+      assertEquals(0, board.getLegalMoveCount());
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   public void testLazyStalemate () 
+          throws IllegalMoveException, OutOfTurnException {
+      board.setPositionClear();
+      board.addKing(8, 8, true);   //h8
+      board.addKing(6, 7, false);  //f7
+      board.addQueen(7, 5, false); //g5
+      board.setLazyLegalDests(true);
+
+      move = new ChessMove(board, 7, 5, 7, 6);     //Qg6
+      move.execute();
+      assertFalse(move.isCheck());
+      assertTrue(move.isStalemate());
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   /** lazy mode must agree with the full generation on every piece */
+   public void testLazyLegalDests () 
+          throws IllegalMoveException, OutOfTurnException {
+      boolean[][] lazy = new boolean[64][64];
+      List<ChessPiece> team;
+      ChessPiece p;
+
+      //Bb4 pins the knight on c3, the bishop on c1 can still go to d2
+      board.setLazyLegalDests(true);
+      new ChessMove(board, 4, 2, 4, 4).execute();  //d4
+      new ChessMove(board, 5, 7, 5, 6).execute();  //e6
+      new ChessMove(board, 2, 1, 3, 3).execute();  //Nc3
+      new ChessMove(board, 6, 8, 2, 4).execute();  //Bb4
+
+      team = board.whiteTeam;
+      for (int i=0; i < team.size(); i++) {
+         p = team.get(i);
+	 for (int sq=0; sq < 64; sq++) 
+	    lazy[p.orig.getBitIndex()][sq] = 
+	       p.isLegalDest(board.getSquareByIndex(sq));
+      }
+      assertTrue(board.staleLegalDests);
+      assertFalse(lazy[Bitboard.toIndex(3, 3)][Bitboard.toIndex(5, 4)]);
+      assertTrue(lazy[Bitboard.toIndex(3, 1)][Bitboard.toIndex(4, 2)]);
+
+      board.setLazyLegalDests(false);
+      for (int i=0; i < team.size(); i++) {
+         p = team.get(i);
+	 for (int sq=0; sq < 64; sq++) 
+	    assertEquals(p + " to " + board.getSquareByIndex(sq),
+	       p.isLegalDest(board.getSquareByIndex(sq)),
+	       lazy[p.orig.getBitIndex()][sq]);
+      }
+   }
+
    //////////////////////////////////////////////////////////////////////
    public void testSetPositionCastle () {
       char[][] position={{'R','P',' ',' ',' ',' ','p','r'},
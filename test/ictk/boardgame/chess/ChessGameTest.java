@@ -34,6 +34,7 @@ public class ChessGameTest extends TestCase {
    ChessGame game;
    History history;
    ChessBoard board;
+   Move move;
    GameInfo gi;
 
    public ChessGameTest (String name) {
@@ -48,6 +49,7 @@ public class ChessGameTest extends TestCase {
       history = null;
       board = null;
       gi = null;
+      move = null;
    }
 
    //////////////////////////////////////////////////////////////////////
@@ -71,4 +73,55 @@ public class ChessGameTest extends TestCase {
 
       assertTrue(game.getResult().isUndecided()); //white
    }
+
+   //////////////////////////////////////////////////////////////////////
+   public void testVerifyTrusted () 
+          throws IllegalMoveException, OutOfTurnException,
+	         AmbiguousMoveException {
+      game = new ChessGame();
+      board = (ChessBoard) game.getBoard();
+      history = game.getHistory();
+      board.setTrustedMoves(true);
+
+      history.add(board.toChessMove(ChessMove.pack(12, 28, 0))); //e4
+      history.add(board.toChessMove(ChessMove.pack(52, 36, 0))); //e5
+      history.add(board.toChessMove(ChessMove.pack(3, 39, 0)));  //Qh5
+      history.add(board.toChessMove(ChessMove.pack(57, 42, 0))); //Nc6
+      history.prev();
+      move = history.getCurrentMove();
+
+      assertFalse(history.getFirst().isVerified());
+
+      game.verify();
+
+      assertTrue(history.getFirst().isVerified());
+      assertTrue(history.getFinalMove(true).isVerified());
+      assertFalse(board.isTrustedMoves());
+      assertTrue(history.getCurrentMove() == move);
+      assertTrue(board.isBlackMove());
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   public void testVerifyIllegal () 
+          throws IllegalMoveException, OutOfTurnException,
+	         AmbiguousMoveException {
+      game = new ChessGame();
+      board = (ChessBoard) game.getBoard();
+      history = game.getHistory();
+      board.setTrustedMoves(true);
+
+      history.add(board.toChessMove(ChessMove.pack(12, 36, 0))); //e2-e5
+      history.add(board.toChessMove(ChessMove.pack(52, 44, 0))); //e6
+
+      try {
+         game.verify();
+	 fail("verified an illegal move");
+      }
+      catch (IllegalMoveException e) {
+      }
+
+      assertTrue(board.isTrustedMoves());
+      assertTrue(history.getCurrentMove() == history.getFinalMove(true));
+      assertFalse(board.isBlackMove());
+   }
 }
@@ -0,0 +1,239 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess;
+
+import junit.framework.*;
+import java.util.Map;
+
+import ictk.boardgame.*;
+import ictk.boardgame.io.*;
+import ictk.boardgame.chess.io.FEN;
+
+/** node counts are the published ones for these positions (see the
+ *  chessprogramming wiki "Perft Results").
+ */
+public class PerftTest extends TestCase {
+   boolean DEBUG = false;
+   ChessBoard board;
+   Perft      perft;
+   FEN        fen;
+
+   public PerftTest (String name) {
+      super(name);
+   }
+
+   public void setUp () {
+      fen = new FEN();
+   }
+
+   public void tearDown () {
+      board = null;
+      perft = null;
+      fen = null;
+      DEBUG = false;
+   }
+
+   /** runs perft on the position and checks the board is left as it was */
+   long perft (String position, int depth) throws Exception {
+      String before;
+
+         board = (ChessBoard) fen.stringToBoard(position);
+	 before = fen.boardToString(board);
+	 perft = new Perft(board);
+	 perft.perft(depth);
+	 assertEquals(before, fen.boardToString(board));
+
+      return perft.getNodes();
+   }
+
+   /** the same count from the packed moves of the board */
+   long packed (int depth) throws Exception {
+      int[] moves = new int[ChessBoard.MAX_LEGAL_MOVES];
+      int count = board.getLegalMoves(moves);
+      ChessMove move = null;
+      long n = 0;
+
+         if (depth == 1)
+	    return count;
+	 for (int i=0; i < count; i++) {
+	    move = board.toChessMove(moves[i]);
+	    move.execute();
+	    n += packed(depth - 1);
+	    move.unexecute();
+	 }
+
+      return n;
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   public void testInitial () throws Exception {
+      board = new ChessBoard();
+      perft = new Perft(board);
+      assertEquals(20L, perft.perft(1));
+      assertEquals(400L, perft.perft(2));
+      assertEquals(8902L, perft.perft(3));
+      assertEquals(197281L, perft.perft(4));
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   public void testDivide () throws Exception {
+      Map<String,Long> counts;
+      long sum = 0;
+
+      board = new ChessBoard();
+      perft = new Perft(board);
+      counts = perft.divide(2);
+
+      assertEquals(20, counts.size());
+      assertEquals(Long.valueOf(20), counts.get("e2e4"));
+      assertEquals(Long.valueOf(20), counts.get("g1f3"));
+      for (Long n : counts.values())
+         sum += n.longValue();
+      assertEquals(400L, sum);
+      assertEquals(400L, perft.getNodes());
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   /** castling, en passant, pins and promotions all in one */
+   public void testKiwipete () throws Exception {
+      String pos = 
+         "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+      assertEquals(48L, perft(pos, 1));
+      assertEquals(2039L, perft(pos, 2));
+      assertEquals(97862L, perft(pos, 3));
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   /** en passant with King and Rook on the same rank */
+   public void testPosition3 () throws Exception {
+      String pos = "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1";
+      assertEquals(14L, perft(pos, 1));
+      assertEquals(191L, perft(pos, 2));
+      assertEquals(2812L, perft(pos, 3));
+      assertEquals(43238L, perft(pos, 4));
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   /** promotions with capture, castling with a checked path */
+   public void testPosition4 () throws Exception {
+      String pos = 
+        "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1";
+      assertEquals(6L, perft(pos, 1));
+      assertEquals(264L, perft(pos, 2));
+      assertEquals(9467L, perft(pos, 3));
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   /** position 4 with the colors reversed */
+   public void testPosition4Mirrored () throws Exception {
+      String pos = 
+        "r2q1rk1/pP1p2pp/Q4n2/bbp1p3/Np6/1B3NBn/pPPP1PPP/R3K2R b KQ - 0 1";
+      assertEquals(6L, perft(pos, 1));
+      assertEquals(264L, perft(pos, 2));
+      assertEquals(9467L, perft(pos, 3));
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   public void testPosition5 () throws Exception {
+      String pos = 
+         "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8";
+      assertEquals(44L, perft(pos, 1));
+      assertEquals(1486L, perft(pos, 2));
+      assertEquals(62379L, perft(pos, 3));
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   public void testPosition6 () throws Exception {
+      String pos = 
+"r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10";
+      assertEquals(46L, perft(pos, 1));
+      assertEquals(2079L, perft(pos, 2));
+      assertEquals(89890L, perft(pos, 3));
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   /** en passant that would expose the King */
+   public void testEnPassantIllegal () throws Exception {
+      assertEquals(10138L, perft("3k4/3p4/8/K1P4r/8/8/8/8 b - - 0 1", 4));
+      assertEquals(10276L, perft("8/8/4k3/8/2p5/8/B2P2K1/8 w - - 0 1", 4));
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   /** en passant capture giving check */
+   public void testEnPassantCheck () throws Exception {
+      assertEquals(13931L, 
+         perft("8/8/1k6/2b5/2pP4/8/5K2/8 b - d3 0 1", 4));
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   /** castling that gives check, and castling rights lost by captures */
+   public void testCastling () throws Exception {
+      assertEquals(6399L, perft("5k2/8/8/8/8/8/8/4K2R w K - 0 1", 4));
+      assertEquals(7418L, perft("3k4/8/8/8/8/8/8/R3K3 w Q - 0 1", 4));
+      assertEquals(1141L, 
+         perft("r3k2r/1b4bq/8/8/8/8/7B/R3K2R w KQkq - 0 1", 2));
+      assertEquals(1494L, 
+         perft("r3k2r/8/3Q4/8/8/5q2/8/R3K2R b KQkq - 0 1", 2));
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   /** Chess960 castles, which may leave the King where it stands or move
+    ** it a file, to a square a step also goes to.  The counts past the
+    ** published position are those of the packed moves. */
+   public void testChess960 () throws Exception {
+      String pos = 
+         "bqnb1rkr/pp3ppp/3ppn2/2p5/5P2/P2P4/NPP1P1PP/BQ1BNRKR w KQkq - 2 9";
+      assertEquals(21L, perft(pos, 1));
+      assertEquals(528L, perft(pos, 2));
+      assertEquals(12189L, perft(pos, 3));
+
+      //O-O leaves the King on g1
+      pos = "qbrnbnkr/pppppppp/8/8/8/4N3/PPPPPPPP/QBRNB1KR w KQkq - 1 1";
+      assertEquals(22L, perft(pos, 1));
+      assertEquals(10831L, perft(pos, 3));
+      assertEquals(10831L, packed(3));
+
+      //O-O and Kg1 are both f1 to g1
+      pos = "brnqrk1r/pppppppp/8/8/8/8/PPPPPPPP/BRNQRK1R w KQkq - 0 1";
+      assertEquals(21L, perft(pos, 1));
+      assertEquals(9891L, perft(pos, 3));
+      assertEquals(9891L, packed(3));
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   /** promotion out of check, and under-promotion giving check */
+   public void testPromotion () throws Exception {
+      assertEquals(19174L, perft("2K2r2/4P3/8/8/8/8/8/3k4 w - - 0 1", 4));
+      assertEquals(92683L, perft("8/P1k5/K7/8/8/8/8/8 w - - 0 1", 6));
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   /** discovered check, stalemate and checkmate */
+   public void testCheckAndMate () throws Exception {
+      assertEquals(5160L, perft("8/8/1P2K3/8/2n5/1q6/8/5k2 b - - 0 1", 3));
+      assertEquals(2217L, perft("K1k5/8/P7/8/8/8/8/8 w - - 0 1", 6));
+      assertEquals(23527L, perft("8/8/2k5/5q2/5n2/8/5K2/8 b - - 0 1", 4));
+   }
+}
@@ -0,0 +1,193 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess;
+
+import junit.framework.*;
+import java.io.IOException;
+
+import ictk.boardgame.*;
+import ictk.boardgame.io.*;
+import ictk.boardgame.chess.io.FEN;
+
+public class ZobristTest extends TestCase {
+   boolean DEBUG = false;
+   ChessBoard board;
+   ChessMove  move;
+   FEN        fen;
+
+   public ZobristTest (String name) {
+      super(name);
+   }
+
+   public void setUp () {
+      board = new ChessBoard();
+      fen = new FEN();
+   }
+
+   public void tearDown () {
+      board = null;
+      move = null;
+      fen = null;
+      DEBUG = false;
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   /** the incremental key must match the one calculated from scratch */
+   void assertKey (ChessBoard b) {
+      assertEquals(Zobrist.getKey(b), b.getZobristKey());
+   }
+
+   /** executes a move given in coordinates */
+   ChessMove play (int of, int or, int df, int dr) 
+          throws IllegalMoveException, OutOfTurnException {
+      ChessMove m = new ChessMove(board, of, or, df, dr);
+         m.execute();
+         assertKey(board);
+      return m;
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   public void testFenAndDefault () throws IOException {
+      ChessBoard b2 = (ChessBoard) fen.stringToBoard(
+         "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1");
+
+      assertKey(board);
+      assertEquals(board.getZobristKey(), b2.getZobristKey());
+      assertEquals(board.hashCode(), b2.hashCode());
+      assertEquals(board, b2);
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   public void testTransposition () 
+          throws IllegalMoveException, OutOfTurnException {
+      long start = board.getZobristKey();
+
+         play(7, 1, 6, 3); //Nf3
+	 assertFalse(start == board.getZobristKey());
+         play(7, 8, 6, 6); //Nf6
+         play(6, 3, 7, 1); //Ng1
+         play(6, 6, 7, 8); //Ng8
+	 assertEquals(start, board.getZobristKey());
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   public void testUnexecute () 
+          throws IllegalMoveException, OutOfTurnException {
+      long start = board.getZobristKey();
+      ChessMove e4, e5;
+
+         e4 = play(5, 2, 5, 4);
+	 long afterE4 = board.getZobristKey();
+         e5 = play(5, 7, 5, 5);
+
+	 e5.unexecute();
+	 assertEquals(afterE4, board.getZobristKey());
+	 assertKey(board);
+	 e4.unexecute();
+	 assertEquals(start, board.getZobristKey());
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   /** an en passant right only counts when it can be used */
+   public void testEnPassant () 
+          throws IllegalMoveException, OutOfTurnException, IOException {
+      ChessBoard b2;
+
+         board = (ChessBoard) fen.stringToBoard(
+	    "4k3/8/8/8/4p3/8/3P4/4K3 w - - 0 1");
+	 play(4, 2, 4, 4); //d4 can be taken en passant
+	 b2 = (ChessBoard) fen.stringToBoard(
+	    "4k3/8/8/8/3Pp3/8/8/4K3 b - - 0 1");
+	 assertFalse(board.getZobristKey() == b2.getZobristKey());
+
+	 board = (ChessBoard) fen.stringToBoard(
+	    "4k3/8/8/8/8/8/3P4/4K3 w - - 0 1");
+	 play(4, 2, 4, 4); //d4 with nothing to take it
+	 b2 = (ChessBoard) fen.stringToBoard(
+	    "4k3/8/8/8/3P4/8/8/4K3 b - - 0 1");
+	 assertEquals(board.getZobristKey(), b2.getZobristKey());
+	 assertEquals(board.hashCode(), b2.hashCode());
+
+	 board = (ChessBoard) fen.stringToBoard(
+	    "4k3/8/8/3pP3/8/8/8/4K3 w - d6 0 1");
+	 move = play(5, 5, 4, 6); //exd6 ep
+	 move.unexecute();
+	 assertKey(board);
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   public void testCastling () 
+          throws IllegalMoveException, OutOfTurnException, IOException {
+      ChessBoard b2;
+      long start;
+
+         board = (ChessBoard) fen.stringToBoard(
+	    "r3k2r/8/8/8/8/8/8/R3K2R w KQkq - 0 1");
+	 start = board.getZobristKey();
+
+	 move = new ChessMove(board, ChessMove.CASTLE_KINGSIDE);
+	 move.execute();
+	 assertKey(board);
+	 move.unexecute();
+	 assertEquals(start, board.getZobristKey());
+
+	 //rook out and back loses the right
+	 play(1, 1, 1, 2);
+	 play(1, 8, 1, 7);
+	 play(1, 2, 1, 1);
+	 play(1, 7, 1, 8);
+	 b2 = (ChessBoard) fen.stringToBoard(
+	    "r3k2r/8/8/8/8/8/8/R3K2R w Kk - 0 1");
+	 assertFalse(start == board.getZobristKey());
+	 assertEquals(b2.getZobristKey(), board.getZobristKey());
+
+	 //capturing a rook takes away its side's right
+	 board = (ChessBoard) fen.stringToBoard(
+	    "r3k2r/8/8/8/8/8/8/R3K2R w KQkq - 0 1");
+	 play(8, 1, 8, 8); //Rxh8+
+	 b2 = (ChessBoard) fen.stringToBoard(
+	    "r3k2R/8/8/8/8/8/8/R3K3 b Qq - 0 1");
+	 assertEquals(b2.getZobristKey(), board.getZobristKey());
+
+	 board.setBlackCastleableQueenside(false);
+	 assertKey(board);
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   public void testPromotion () 
+          throws IllegalMoveException, OutOfTurnException, IOException {
+      long start;
+
+         board = (ChessBoard) fen.stringToBoard(
+	    "r3k3/1P6/8/8/8/8/8/4K3 w q - 0 1");
+	 start = board.getZobristKey();
+
+	 move = new ChessMove(board, 2, 7, 1, 8, Knight.INDEX); //bxa8=N
+	 move.execute();
+	 assertKey(board);
+	 move.unexecute();
+	 assertEquals(start, board.getZobristKey());
+   }
+}
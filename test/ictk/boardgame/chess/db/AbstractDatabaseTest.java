@@ -0,0 +1,125 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess.db;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import junit.framework.*;
+
+/** Parent class for the database tests: a PGN file copied from the io
+ *  test data to a temporary file, and the database opened on it.  The
+ *  files the database writes next to it are deleted afterwards.
+ */
+public abstract class AbstractDatabaseTest extends TestCase {
+   protected String dataDir = "ictk/boardgame/chess/io/",
+                    pgn_nonvariation = "test_nonvariation.pgn",
+                    pgn_variation    = "test_variation.pgn",
+                    pgn_chess960     = "test_chess960.pgn";
+      /** the extensions of the files written next to the PGN */
+   protected static final String[] EXTENSIONS = 
+      {".idx", ".pos", ".tree", ".mat"};
+
+   protected GameDatabase db;
+   protected File         pgn;
+
+   public AbstractDatabaseTest (String name) {
+      super(name);
+   }
+
+   public void setUp () 
+          throws IOException {
+      pgn = File.createTempFile("ictk", ".pgn");
+   }
+
+   public void tearDown () 
+          throws IOException {
+      if (db != null)
+         db.close();
+      pgn.delete();
+      for (String ext : EXTENSIONS)
+         file(ext).delete();
+      db = null;
+   }
+
+   //Helpers///////////////////////////////////////////////////////////////////
+   /** the file next to the PGN with this extension */
+   protected File file (String ext) {
+      return new File(pgn.getPath() + ext);
+   }
+
+   /** replaces the PGN with one of the test files */
+   protected void copy (String file) 
+          throws IOException {
+      try (InputStream in = getClass().getClassLoader()
+                               .getResourceAsStream(dataDir + file)) {
+         Files.copy(in, pgn.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+   }
+
+   /** (re)opens the database on the PGN */
+   protected void open () 
+          throws IOException {
+      if (db != null)
+         db.close();
+      db = new GameDatabase(pgn);
+   }
+
+   /** adds a game to the end of the PGN, closing the database first */
+   protected void append (String game) 
+          throws IOException {
+      if (db != null)
+         db.close();
+      db = null;
+      try (Writer out = new FileWriter(pgn, true)) {
+         out.write("\n" + game + "\n");
+      }
+   }
+
+   /** something read from the database that makes it write an index */
+   protected interface Reading {
+      public void read (GameDatabase db) throws IOException;
+   }
+
+   /* assertReused ***********************************************************/
+   /** opens the database and reads from it twice.  The index file written
+    *  the first time must be used as it is the second time.
+    */
+   protected void assertReused (File index, Reading reading) 
+          throws IOException {
+      long modified = 0;
+
+      open();
+      reading.read(db);
+      db.close();
+      modified = index.lastModified();
+      assertTrue(index.exists());
+
+      open();
+      reading.read(db);
+      assertEquals(modified, index.lastModified());
+   }
+}
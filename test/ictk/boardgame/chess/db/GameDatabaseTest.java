@@ -0,0 +1,180 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess.db;
+
+import ictk.boardgame.chess.*;
+import ictk.boardgame.chess.io.PGNReader;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class GameDatabaseTest extends AbstractDatabaseTest {
+   GameQuery query;
+
+   public GameDatabaseTest (String name) {
+      super(name);
+   }
+
+   public void tearDown () 
+          throws IOException {
+      super.tearDown();
+      query = null;
+   }
+
+   ///////////////////////////////////////////////////////////////////////////
+   /** the index has the same game information as reading the games.
+    */
+   public void testIndex () 
+          throws Exception {
+      List<ChessGameInfo> infos = null;
+      GameIndex index = null;
+
+      copy(pgn_variation);
+      infos = readInfos();
+      open();
+      index = db.getIndex();
+
+      assertTrue(file(".idx").exists());
+      assertEquals(infos.size(), db.size());
+      for (int i=0; i < infos.size(); i++) {
+         ChessGameInfo gi = infos.get(i);
+
+	 assertEquals(db.getPGNFile().getOffset(i), index.getOffset(i));
+	 assertEquals(name(gi.getWhite()), index.getWhite(i));
+	 assertEquals(name(gi.getBlack()), index.getBlack(i));
+	 assertEquals(gi.getEvent(), index.getEvent(i));
+	 assertEquals(gi.getYear() * 10000 + gi.getMonth() * 100 + gi.getDay(),
+	              index.getDate(i));
+	 assertEquals(((ChessResult) gi.getResult()).getIndex(), index.getResult(i));
+	 //sub-codes (B22p) aren't kept
+	 assertEquals((gi.getECO() == null) ? null : gi.getECO().substring(0, 3),
+	              index.getECO(i));
+	 assertEquals(gi.getWhiteRating(), index.getWhiteRating(i));
+	 assertEquals(gi, db.getGameInfo(i));
+      }
+   }
+
+   ///////////////////////////////////////////////////////////////////////////
+   public void testQuery () 
+          throws Exception {
+      copy(pgn_nonvariation);
+      open();
+      query = db.newQuery();
+
+      assertEquals(6, query.count());
+
+      query.setPlayer("Aleksandrov, A.");
+      assertFound(0, 1);
+
+      query.setBlack("Milos, G.");
+      assertFound(1);
+
+      query.clear();
+      query.setPlayer("Aleksandrov, A.");
+      query.setResult(ChessResult.BLACK_WIN);
+      assertFound(1);
+
+      query.clear();
+      query.setResult(ChessResult.BLACK_WIN);
+      assertFound(1, 3);
+
+      query.clear();
+      query.setYears(1990, 1999);
+      assertFound(2);
+
+      query.setDateRange(20000902, 20001231);
+      assertFound(1);
+
+      query.clear();
+      query.setECORange("D00", "E99");
+      assertFound(1, 2);
+
+      query.clear();
+      query.setWhiteRating(2600, 3000);
+      assertFound(2);
+
+      query.clear();
+      query.setEvent("FIDE World Cup Gp A");
+      query.setBlackRating(2650, 2700);
+      assertFound(0);
+
+      query.clear();
+      query.setWhite("A");
+      query.setBlack("B");
+      assertFound(3, 4, 5);
+      assertTrue(Arrays.equals(
+         new long[] {db.getOffset(3), db.getOffset(4), db.getOffset(5)},
+	 query.findOffsets()));
+
+      query.setLimit(2);
+      assertFound(3, 4);
+
+      query.clear();
+      query.setPlayer("Nobody");
+      assertFound();
+   }
+
+   ///////////////////////////////////////////////////////////////////////////
+   /** the index is used again until the PGN file changes.
+    */
+   public void testReopen () 
+          throws Exception {
+      copy(pgn_nonvariation);
+      assertReused(file(".idx"), d -> d.getIndex());
+      assertEquals(6, db.size());
+      assertEquals(db.getIndex().getOffset(5), db.getPGNFile().getOffset(5));
+      assertNotNull(db.getGame(5));
+
+      append("[White \"C\"]\n[Black \"D\"]\n[Result \"1-0\"]\n\n1-0");
+      open();
+      assertEquals(7, db.size());
+      query = db.newQuery();
+      query.setPlayer("D");
+      assertFound(6);
+   }
+
+   //Helpers///////////////////////////////////////////////////////////////////
+   protected void assertFound (int... games) {
+      assertEquals(Arrays.toString(games), Arrays.toString(query.find()));
+   }
+
+   protected List<ChessGameInfo> readInfos () 
+          throws Exception {
+      List<ChessGameInfo> list = new ArrayList<>();
+      ChessGame game = null;
+
+      try (PGNReader in = new PGNReader(new FileReader(pgn))) {
+         while ((game = (ChessGame) in.readGame()) != null)
+	    list.add((ChessGameInfo) game.getGameInfo());
+      }
+      return list;
+   }
+
+   protected static String name (ChessPlayer p) {
+      return (p == null) ? null : p.getName();
+   }
+}
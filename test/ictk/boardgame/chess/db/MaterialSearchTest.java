@@ -0,0 +1,270 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess.db;
+
+import ictk.boardgame.History;
+import ictk.boardgame.chess.*;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+
+public class MaterialSearchTest extends AbstractDatabaseTest {
+   MaterialSearch search;
+
+   public MaterialSearchTest (String name) {
+      super(name);
+   }
+
+   public void tearDown () 
+          throws IOException {
+      super.tearDown();
+      search = null;
+   }
+
+   ///////////////////////////////////////////////////////////////////////////
+   public void testSignature () {
+      long sig = Material.parse("KRB vs KR");
+
+      assertEquals(sig, Material.parse("KRBKR"));
+      assertEquals(sig, Material.parse("krb v kr"));
+      assertEquals(sig, Material.parse("RBvR"));
+      assertEquals("KRB vs KR", Material.toString(sig));
+      assertEquals(1, Material.count(sig, Rook.INDEX, true));
+      assertEquals(0, Material.count(sig, Bishop.INDEX, true));
+      assertTrue(Material.covers(sig, Material.parse("KB vs K")));
+      assertFalse(Material.covers(sig, Material.parse("KB vs KB")));
+
+      assertEquals(Material.parse("KQRRBBNNPPPPPPPP vs KQRRBBNNPPPPPPPP"),
+                   Material.signature(new ChessBoard()));
+
+      for (String bad : new String[] {"KRB", "KXvK", "KvKvK"}) {
+         try {
+	    Material.parse(bad);
+	    fail("parsed " + bad);
+	 }
+	 catch (IllegalArgumentException e) {
+	 }
+      }
+   }
+
+   ///////////////////////////////////////////////////////////////////////////
+   /** the index has the material of every ply of the games.
+    */
+   public void testIndex () 
+          throws Exception {
+      MaterialIndex index = null;
+
+      copy(pgn_variation);
+      open();
+      index = db.getMaterialIndex();
+
+      assertEquals(db.size(), index.getGameCount());
+      for (int n=0; n < db.size(); n++) {
+         List<Long> sigs = new ArrayList<>();
+	 ChessGame game = db.getGame(n);
+	 History history = game.getHistory();
+	 long first = index.getFirstEntry(n),
+	      entry = 0;
+	 int  ply = 0,
+	      next = 0;
+
+	 while (true) {
+	    long sig = Material.signature((ChessBoard) game.getBoard());
+
+	    //the entry covering this ply
+	    while (MaterialIndex.getPly(index.getEntry(first + next)) <= ply)
+	       next++;
+	    entry = index.getEntry(first + next - 1);
+	    assertEquals(n + ":" + ply, sig, MaterialIndex.getSignature(entry));
+	    if (sigs.isEmpty() || sigs.get(sigs.size() - 1) != sig)
+	       sigs.add(sig);
+
+	    if (!history.hasNext())
+	       break;
+	    history.next();
+	    ply++;
+	 }
+	 entry = index.getEntry(index.getFirstEntry(n + 1) - 1);
+	 assertEquals(MaterialIndex.END, MaterialIndex.getSignature(entry));
+	 assertEquals(ply + 1, MaterialIndex.getPly(entry));
+	 assertEquals(sigs.size(), index.getSignatures(n).length);
+      }
+   }
+
+   ///////////////////////////////////////////////////////////////////////////
+   /** material is found from the index alone.
+    */
+   public void testMaterial () 
+          throws Exception {
+      ChessGame game = null;
+      long sig = 0;
+
+      copy(pgn_variation);
+      open();
+      search = db.newMaterialSearch();
+      search.setThreads(2);
+
+      //the material of the end of the first game
+      game = db.getGame(0);
+      game.getHistory().goToEnd();
+      sig = Material.signature((ChessBoard) game.getBoard());
+      final long material = sig;
+
+      search.setMaterial(Material.toString(sig));
+      assertHits(b -> Material.signature(b) == material);
+      assertEquals(0, search.getReplayedCount());
+      assertTrue(search.find().size() > 0);
+
+      search.setSideToMove(MaterialSearch.BLACK);
+      assertHits(b -> Material.signature(b) == material && b.isBlackMove());
+
+      search.setSideToMove(MaterialSearch.WHITE);
+      assertHits(b -> Material.signature(b) == material && !b.isBlackMove());
+      assertEquals(0, search.getReplayedCount());
+
+      search.clear();
+      search.setMaterial("KQQQQ vs K");
+      assertEquals(0, search.find().size());
+   }
+
+   ///////////////////////////////////////////////////////////////////////////
+   /** patterns are found by replaying only the games that may have them.
+    */
+   public void testPattern () 
+          throws Exception {
+      copy(pgn_variation);
+      open();
+      search = db.newMaterialSearch();
+
+      search.addPiece('K', "g1");
+      search.addPiece('k', "g8");
+      assertHits(b -> has(b, King.INDEX, false, "g1") 
+                      && has(b, King.INDEX, true, "g8"));
+      assertTrue(search.find().size() > 0);
+
+      search.setSideToMove(MaterialSearch.BLACK);
+      assertHits(b -> has(b, King.INDEX, false, "g1") 
+                      && has(b, King.INDEX, true, "g8") && b.isBlackMove());
+
+      //no game has three White Queens, so none is replayed
+      search.clear();
+      search.addPiece('Q', "a1");
+      search.addPiece('Q', "a2");
+      search.addPiece('Q', "a3");
+      assertEquals(0, search.find().size());
+      assertEquals(0, search.getReplayedCount());
+
+      search.clear();
+      search.setMaterial("KQRRBBNNPPPPPPPP vs KQRRBBNNPPPPPPPP");
+      search.addPiece('N', "f3");
+      search.addPiece('n', "c6");
+      assertHits(b -> Material.signature(b) == Material.signature(
+                         new ChessBoard())
+                      && has(b, Knight.INDEX, false, "f3")
+		      && has(b, Knight.INDEX, true, "c6"));
+   }
+
+   ///////////////////////////////////////////////////////////////////////////
+   /** games that begin with Black to move.
+    */
+   public void testBlackFirst () 
+          throws Exception {
+      copy(pgn_chess960);
+      open();
+      search = db.newMaterialSearch();
+
+      search.setSideToMove(MaterialSearch.BLACK);
+      assertHits(b -> b.isBlackMove());
+      search.setSideToMove(MaterialSearch.WHITE);
+      search.addPiece(Pawn.INDEX, false, 8 + 4);
+      assertHits(b -> !b.isBlackMove() && has(b, Pawn.INDEX, false, "e2"));
+   }
+
+   ///////////////////////////////////////////////////////////////////////////
+   /** an Error on a search thread is thrown by find(), not lost.
+    */
+   public void testThreadDies () 
+          throws Exception {
+      final Error error = new StackOverflowError("game 1");
+
+      copy(pgn_variation);
+      open();
+      search = new MaterialSearch(db.getMaterialIndex(), db.getPGNFile()) {
+         protected int search (int n, ChessBoard board, History history) {
+	    if (n == 1)
+	       throw error;
+	    return super.search(n, board, history);
+	 }
+      };
+      search.setThreads(2);
+      search.setMaterial("KQRRBBNNPPPPPPPP vs KQRRBBNNPPPPPPPP");
+      try {
+         search.find();
+	 fail("the Error was lost");
+      }
+      catch (StackOverflowError e) {
+         assertSame(error, e);
+      }
+   }
+
+   //Helpers///////////////////////////////////////////////////////////////////
+   /** the search finds the first position of each game that matches, as
+    *  replaying every game does.
+    */
+   protected void assertHits (Predicate<ChessBoard> matches) 
+          throws Exception {
+      List<PositionHit> expected = new ArrayList<>();
+
+      for (int n=0; n < db.size(); n++) {
+	 ChessGame game = db.getGame(n);
+	 History history = game.getHistory();
+	 int ply = 0;
+
+	 while (true) {
+	    if (matches.test((ChessBoard) game.getBoard())) {
+	       expected.add(new PositionHit(n, ply));
+	       break;
+	    }
+	    if (!history.hasNext())
+	       break;
+	    history.next();
+	    ply++;
+	 }
+      }
+      assertEquals(expected, search.find());
+      assertEquals(0, search.getFailedCount());
+   }
+
+   protected static boolean has (ChessBoard board, int index, 
+                                 boolean isBlack, String square) {
+      Square sq = board.getSquare(square.charAt(0), square.charAt(1));
+
+      return (board.getPieceBits(index, isBlack) 
+              & Bitboard.bit(sq.getBitIndex())) != 0;
+   }
+}
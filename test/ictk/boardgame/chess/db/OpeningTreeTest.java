@@ -0,0 +1,207 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess.db;
+
+import ictk.boardgame.History;
+import ictk.boardgame.chess.*;
+import ictk.boardgame.chess.io.FEN;
+import ictk.boardgame.chess.io.PGNFile;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class OpeningTreeTest extends AbstractDatabaseTest {
+   PGNFile     pgnFile;
+   OpeningTree tree;
+   File        treeFile;
+
+   public OpeningTreeTest (String name) {
+      super(name);
+   }
+
+   public void setUp () 
+          throws IOException {
+      super.setUp();
+      treeFile = file(".tree");
+   }
+
+   public void tearDown () 
+          throws IOException {
+      if (tree != null)
+         tree.close();
+      if (pgnFile != null)
+         pgnFile.close();
+      super.tearDown();
+      tree = null;
+      pgnFile = null;
+   }
+
+   ///////////////////////////////////////////////////////////////////////////
+   /** every entry has the counts and ratings of replaying the games.
+    */
+   public void testTree () 
+          throws Exception {
+      Map<String,long[]> expected = null;
+
+      copy(pgn_variation);
+      pgnFile = new PGNFile(pgn);
+      expected = replay(pgnFile, 12);
+      OpeningTree.build(pgnFile, treeFile, pgn.length(), 12);
+      tree = new OpeningTree(treeFile);
+
+      assertEquals(12, tree.getDepth());
+      assertEquals(pgnFile.size(), tree.getGameCount());
+      assertEquals(expected.size(), tree.size());
+      for (long i=0; i < tree.size(); i++) {
+         long[] counts = expected.get(
+	    tree.getEntryKey(i) + ":" + tree.getEntryMove(i));
+
+	 assertNotNull(counts);
+	 assertEquals(counts[0], tree.getEntryGames(i));
+	 assertEquals(counts[1], tree.getEntryWhiteWins(i));
+	 assertEquals(counts[2], tree.getEntryDraws(i));
+	 assertEquals(counts[3], tree.getEntryBlackWins(i));
+	 assertEquals(average(counts[4], counts[5]), 
+	              tree.getEntryWhiteRating(i));
+	 assertEquals(average(counts[6], counts[7]), 
+	              tree.getEntryBlackRating(i));
+	 if (i > 0)
+	    assertTrue(Long.compareUnsigned(tree.getEntryKey(i - 1), 
+	                                    tree.getEntryKey(i)) <= 0);
+      }
+   }
+
+   ///////////////////////////////////////////////////////////////////////////
+   /** the moves from a position are its continuations in the games, the 
+    *  most played first, and can be made on the board.
+    */
+   public void testMoves () 
+          throws Exception {
+      ChessBoard board = new ChessBoard();
+      List<OpeningMove> moves = null;
+      Map<Integer,Integer> first = new HashMap<>();
+      int games = 0;
+
+      copy(pgn_nonvariation);
+      pgnFile = new PGNFile(pgn);
+      for (int n=0; n < pgnFile.size(); n++) {
+         ChessGame game = pgnFile.getGame(n);
+	 int packed = 
+	    ((ChessMove) game.getHistory().getNext()).getPacked();
+	 first.merge(packed, 1, Integer::sum);
+	 games++;
+      }
+      OpeningTree.build(pgnFile, treeFile, pgn.length(), 40);
+      tree = new OpeningTree(treeFile);
+
+      moves = tree.getMoves(board);
+      assertEquals(first.size(), moves.size());
+      assertEquals(games, tree.getGames(board));
+      for (int i=0; i < moves.size(); i++) {
+         OpeningMove m = moves.get(i);
+
+	 if (i > 0)
+	    assertTrue(moves.get(i - 1).getGames() >= m.getGames());
+	 assertEquals(first.get(m.getMove().getPacked()).intValue(), 
+	              m.getGames());
+      }
+
+      board.playMove(moves.get(0).getMove());
+      assertFalse(tree.getMoves(board).isEmpty());
+      assertTrue(tree.getMoves((ChessBoard) new FEN().stringToBoard(
+         "8/8/8/4k3/8/8/8/4K3 w - - 0 1")).isEmpty());
+   }
+
+   ///////////////////////////////////////////////////////////////////////////
+   /** partial trees of several threads with small tables merge to the 
+    *  same tree as one table on one thread.
+    */
+   public void testRuns () 
+          throws Exception {
+      File many = File.createTempFile("ictk", ".tree");
+      OpeningTreeWriter writer = null;
+
+      copy(pgn_variation);
+      pgnFile = new PGNFile(pgn);
+      try {
+	 writer = new OpeningTreeWriter(pgnFile);
+	 writer.setThreads(1);
+	 writer.write(treeFile, pgn.length());
+
+	 writer = new OpeningTreeWriter(pgnFile);
+	 writer.setThreads(3);
+	 writer.setTableSize(5);
+	 writer.write(many, pgn.length());
+	 assertEquals(0, writer.getFailedCount());
+
+	 assertTrue(Arrays.equals(
+	    Files.readAllBytes(treeFile.toPath()),
+	    Files.readAllBytes(many.toPath())));
+      }
+      finally {
+	 many.delete();
+      }
+   }
+
+   //Helpers///////////////////////////////////////////////////////////////////
+   /** the counts of each (position, move) of the games to a depth:
+    *  games, white, draws, black, white rated and rating sum, black rated
+    *  and rating sum.
+    */
+   protected Map<String,long[]> replay (PGNFile pgn, int depth) 
+          throws Exception {
+      Map<String,long[]> map = new HashMap<>();
+
+      for (int n=0; n < pgn.size(); n++) {
+         ChessGame game = pgn.getGame(n);
+	 ChessGameInfo gi = (ChessGameInfo) game.getGameInfo();
+	 ChessBoard board = (ChessBoard) game.getBoard();
+	 History history = game.getHistory();
+	 ChessResult res = (ChessResult) gi.getResult();
+
+	 for (int ply=0; ply < depth && history.hasNext(); ply++) {
+	    long key = board.getZobristKey();
+	    int move = ((ChessMove) history.next()).getPacked();
+	    long[] c = map.computeIfAbsent(key + ":" + move, 
+	                                   k -> new long[8]);
+	    c[0]++;
+	    if (res != null && res.isWhiteWin()) c[1]++;
+	    if (res != null && res.isDraw())     c[2]++;
+	    if (res != null && res.isBlackWin()) c[3]++;
+	    if (gi.getWhiteRating() > 0) { c[4]++; c[5] += gi.getWhiteRating(); }
+	    if (gi.getBlackRating() > 0) { c[6]++; c[7] += gi.getBlackRating(); }
+	 }
+      }
+      return map;
+   }
+
+   protected static int average (long n, long sum) {
+      return (n == 0) ? 0 : (int) Math.round((double) sum / n);
+   }
+}
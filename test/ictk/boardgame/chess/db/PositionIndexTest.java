@@ -0,0 +1,184 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess.db;
+
+import ictk.boardgame.History;
+import ictk.boardgame.chess.*;
+import ictk.boardgame.chess.io.FEN;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class PositionIndexTest extends AbstractDatabaseTest {
+   PositionIndex index;
+
+   public PositionIndexTest (String name) {
+      super(name);
+   }
+
+   public void tearDown () 
+          throws IOException {
+      super.tearDown();
+      index = null;
+   }
+
+   ///////////////////////////////////////////////////////////////////////////
+   /** every position of the main line of every game is found, by board
+    *  and by FEN.
+    */
+   public void testPositions () 
+          throws Exception {
+      FEN fen = new FEN();
+      int count = 0;
+
+      copy(pgn_variation);
+      open();
+      index = db.getPositionIndex();
+
+      assertTrue(file(".pos").exists());
+      assertEquals(db.size(), index.getGameCount());
+      for (int n=0; n < db.size(); n++) {
+         ChessGame game = db.getGame(n);
+	 ChessBoard board = (ChessBoard) game.getBoard();
+	 History history = game.getHistory();
+	 int ply = 0;
+
+	 while (true) {
+	    assertTrue(n + ":" + ply, 
+	       index.getHits(board).contains(new PositionHit(n, ply)));
+	    assertTrue(n + ":" + ply, 
+	       index.getHits(fen.boardToString(board))
+	          .contains(new PositionHit(n, ply)));
+	    assertTrue(Arrays.binarySearch(index.getGames(board), n) >= 0);
+	    ply++;
+	    count++;
+	    if (!history.hasNext())
+	       break;
+	    history.next();
+	 }
+      }
+      assertEquals(count, index.size());
+   }
+
+   ///////////////////////////////////////////////////////////////////////////
+   /** the starting position is in every game that starts from it, once.
+    */
+   public void testStartPosition () 
+          throws Exception {
+      ChessBoard start = new ChessBoard();
+      List<PositionHit> hits = null;
+
+      copy(pgn_chess960);
+      open();
+      index = db.getPositionIndex();
+      hits = new ArrayList<>();
+
+      for (int n=0; n < db.size(); n++) {
+         ChessGame game = db.getGame(n);
+	 if (((ChessBoard) game.getBoard()).getZobristKey() 
+	        == start.getZobristKey())
+	    hits.add(new PositionHit(n, 0));
+      }
+      assertEquals(hits, index.getHits(start));
+      assertEquals(hits.size(), index.count(start));
+   }
+
+   ///////////////////////////////////////////////////////////////////////////
+   /** a position no game reached isn't found.
+    */
+   public void testMissing () 
+          throws Exception {
+      String kings = "8/8/8/4k3/8/8/8/4K3 w - - 0 1";
+
+      copy(pgn_nonvariation);
+      open();
+      index = db.getPositionIndex();
+
+      assertTrue(index.getHits(kings).isEmpty());
+      assertEquals(0, index.getGames(
+         new FEN().parse(kings, 0, kings.length(), null)).length);
+      assertEquals(0, index.count(0L));
+   }
+
+   ///////////////////////////////////////////////////////////////////////////
+   /** many small runs made on several threads merge to the same index as
+    *  one run on one thread.
+    */
+   public void testRuns () 
+          throws Exception {
+      File one  = File.createTempFile("ictk", ".pos"),
+           many = File.createTempFile("ictk", ".pos");
+      PositionIndexWriter writer = null;
+
+      copy(pgn_variation);
+      open();
+      try {
+	 writer = new PositionIndexWriter(db.getPGNFile());
+	 writer.setThreads(1);
+	 writer.write(one, pgn.length());
+
+	 writer = new PositionIndexWriter(db.getPGNFile());
+	 writer.setThreads(3);
+	 writer.setRunSize(7);
+	 writer.write(many, pgn.length());
+	 assertEquals(0, writer.getFailedCount());
+
+	 assertTrue(Arrays.equals(Files.readAllBytes(one.toPath()),
+	                          Files.readAllBytes(many.toPath())));
+
+	 //and no runs are left behind
+	 assertEquals(0, one.getAbsoluteFile().getParentFile().listFiles(
+	    (dir, name) -> name.startsWith(many.getName() + ".")).length);
+      }
+      finally {
+         one.delete();
+	 many.delete();
+      }
+   }
+
+   ///////////////////////////////////////////////////////////////////////////
+   /** the index is used again until the PGN file changes.
+    */
+   public void testReopen () 
+          throws Exception {
+      long size = 0;
+
+      copy(pgn_nonvariation);
+      assertReused(file(".pos"), d -> d.getPositionIndex());
+      size = db.getPositionIndex().size();
+
+      append("[White \"C\"]\n[Black \"D\"]\n[Result \"1-0\"]\n\n"
+             + "1. e4 e5 2. Qh5 Nc6 3. Bc4 Nf6 4. Qxf7# 1-0");
+      open();
+      index = db.getPositionIndex();
+      assertEquals(size + 8, index.size());
+      assertEquals(Arrays.asList(new PositionHit(6, 7)), 
+                   index.getHits("r1bqkb1r/pppp1Qpp/2n2n2/4p3/2B1P3/8/"
+		                 + "PPPP1PPP/RNB1K1NR b KQkq - 0 4"));
+   }
+}
@@ -38,8 +38,13 @@ public class AllTests {
       suite.addTest(new TestSuite(ChessAnnotationTest.class));
       suite.addTest(new TestSuite(SANTest.class));
       suite.addTest(new TestSuite(FENTest.class));
+      suite.addTest(new TestSuite(EPDTest.class));
       suite.addTest(new TestSuite(PGNReaderTest.class));
       suite.addTest(new TestSuite(PGNWriterTest.class));
+      suite.addTest(new TestSuite(PGNImporterTest.class));
+      suite.addTest(new TestSuite(PGNFileTest.class));
+      suite.addTest(new TestSuite(BinaryGameTest.class));
+      suite.addTest(new TestSuite(PolyglotBookTest.class));
       return suite;
    }
 }
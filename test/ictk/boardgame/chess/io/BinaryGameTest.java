@@ -0,0 +1,133 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess.io;
+
+import ictk.boardgame.chess.*;
+
+import java.io.*;
+import java.util.List;
+
+public class BinaryGameTest extends AbstractPGNTest {
+   String pgn_nonvariation = "test_nonvariation.pgn",
+          pgn_variation    = "test_variation.pgn",
+          pgn_annotation   = "test_annotation.pgn",
+          pgn_chess960     = "test_chess960.pgn";
+   List<ChessGame> games;
+   BinaryGameReader reader;
+
+   public BinaryGameTest (String name) {
+      super(name);
+   }
+
+   public void tearDown () {
+      games = null;
+      reader = null;
+   }
+
+   ///////////////////////////////////////////////////////////////////////////
+   public void testNonVariation () 
+          throws Exception {
+      roundTrip(pgn_nonvariation, false);
+   }
+
+   ///////////////////////////////////////////////////////////////////////////
+   public void testVariation () 
+          throws Exception {
+      roundTrip(pgn_variation, false);
+   }
+
+   ///////////////////////////////////////////////////////////////////////////
+   public void testAnnotation () 
+          throws Exception {
+      roundTrip(pgn_annotation, false);
+   }
+
+   ///////////////////////////////////////////////////////////////////////////
+   /** FEN starts, and a castle that leaves the King where it stands */
+   public void testChess960 () 
+          throws Exception {
+      roundTrip(pgn_chess960, false);
+   }
+
+   ///////////////////////////////////////////////////////////////////////////
+   public void testTrusted () 
+          throws Exception {
+      roundTrip(pgn_variation, true);
+   }
+
+   ///////////////////////////////////////////////////////////////////////////
+   public void testBadHeader () 
+          throws Exception {
+      try {
+         new BinaryGameReader(new ByteArrayInputStream(
+	    "[Event \"x\"]".getBytes()));
+	 fail("read a PGN as a binary file");
+      }
+      catch (IOException e) {
+      }
+   }
+
+   //Helper///////////////////////////////////////////////////////////////////
+   /** writes the games of a PGN file out and reads them back, checking they
+    *  write out to the same PGN as the originals.
+    */
+   protected void roundTrip (String file, boolean trusted) 
+          throws Exception {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      ChessGame game = null;
+
+      games = PGNReaderTest.loadGames(dataDir + file, false, -1);
+      assertTrue(games.size() > 0);
+
+      try (BinaryGameWriter out = new BinaryGameWriter(bytes)) {
+         for (ChessGame g : games)
+	    out.writeGame(g);
+      }
+
+      reader = new BinaryGameReader(
+                  new ByteArrayInputStream(bytes.toByteArray()));
+      reader.setTrusted(trusted);
+
+      for (ChessGame g : games) {
+         game = (ChessGame) reader.readGame();
+	 assertNotNull(game);
+	 assertEquals(g.getGameInfo(), game.getGameInfo());
+	 assertTrue(g.getHistory().deepEquals(game.getHistory(), true));
+	 if (!trusted)
+	    assertEquals(toPGN(g), toPGN(game));
+      }
+      assertNull(reader.readGame());
+   }
+
+   protected static String toPGN (ChessGame game) 
+          throws IOException {
+      StringWriter sw = new StringWriter();
+      PGNWriter writer = new PGNWriter(sw);
+
+         writer.writeGame(game);
+	 writer.flush();
+      return sw.toString();
+   }
+}
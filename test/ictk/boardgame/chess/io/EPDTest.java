@@ -0,0 +1,143 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess.io;
+
+import ictk.boardgame.chess.*;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class EPDTest extends TestCase {
+   String mate = "r1bqkb1r/pppp1ppp/2n2n2/4p2Q/2B1P3/8/PPPP1PPP/RNB1K1NR w KQkq -";
+   EPD epd;
+   EPDPosition pos;
+
+   public EPDTest (String name) {
+      super(name);
+   }
+
+   public void setUp () {
+      epd = new EPD();
+   }
+
+   public void tearDown () {
+      epd = null;
+      pos = null;
+   }
+
+   ///////////////////////////////////////////////////////////////////////////
+   public void testOperations () 
+          throws Exception {
+      pos = epd.stringToPosition(mate 
+         + " bm Qxf7#; am Qxe5+ Qh3; id \"mate; in one\"; acd 12; ce 32767;"
+	 + " c0 \"Scholar's\"; noop;");
+
+      assertEquals(mate, epd.boardToString(pos.getBoard()));
+      assertEquals("mate; in one", pos.getId());
+      assertEquals(12, pos.getAnalysisDepth());
+      assertEquals(Integer.valueOf(32767), pos.getCentipawns());
+      assertEquals("Scholar's", pos.getComment(0));
+      assertNull(pos.getComment(1));
+      assertTrue(pos.hasOpcode("noop"));
+      assertEquals(0, pos.getOperands("noop").size());
+
+      List<ChessMove> moves = pos.getBestMoves();
+      assertEquals(1, moves.size());
+      assertEquals(new Square((byte) 6, (byte) 7), 
+                   moves.get(0).getDestination());
+      assertEquals(2, pos.getAvoidMoves().size());
+   }
+
+   ///////////////////////////////////////////////////////////////////////////
+   public void testRoundTrip () 
+          throws Exception {
+      String str = mate + " bm Qxf7#; id \"BK.01\"; hmvc 4; fmvn 4;";
+
+      pos = epd.stringToPosition(str);
+      assertEquals(str, epd.positionToString(pos));
+      assertEquals(4, pos.getBoard().get50MoveRulePlyCount());
+      assertEquals(pos, epd.stringToPosition(epd.positionToString(pos)));
+
+      //no operations, no semicolon on the last one
+      assertEquals(mate, epd.positionToString(epd.stringToPosition(mate)));
+      assertEquals(mate + " id \"a b\";", 
+         epd.positionToString(epd.stringToPosition(mate + "  id \"a b\"")));
+   }
+
+   ///////////////////////////////////////////////////////////////////////////
+   public void testBadLines () {
+      try {
+         epd.stringToPosition("8/8/8 w");
+	 fail("read a short line");
+      }
+      catch (IOException e) {
+      }
+      try {
+         epd.stringToPosition(mate + " id \"open");
+	 fail("read an unterminated string");
+      }
+      catch (IOException e) {
+      }
+   }
+
+   ///////////////////////////////////////////////////////////////////////////
+   /** evaluation on several threads writes the positions in order.
+    */
+   public void testEvaluate () 
+          throws Exception {
+      StringBuilder sb = new StringBuilder();
+      StringWriter sw = new StringWriter();
+      EPDReader reader = null;
+      EPDWriter writer = null;
+      List<EPDPosition> read = new ArrayList<>();
+      int n = 1000;
+
+      for (int i=0; i < n; i++) {
+         sb.append(mate).append(" id \"").append(i).append("\";\n");
+	 if (i % 100 == 0)
+	    sb.append("\nnot epd\n");
+      }
+
+      reader = new EPDReader(new StringReader(sb.toString()));
+      reader.setThreads(4);
+      writer = new EPDWriter(sw);
+      assertEquals(n + 10, reader.evaluate((number, p) -> 
+            p.setAnalysisDepth(Integer.parseInt(p.getId()))
+	 , writer));
+      writer.flush();
+      assertEquals(10, reader.getFailedCount());
+
+      reader = new EPDReader(new StringReader(sw.toString()));
+      reader.stream().forEach(read::add);
+      assertEquals(n, read.size());
+      for (int i=0; i < n; i++) {
+         assertEquals(Integer.toString(i), read.get(i).getId());
+         assertEquals(i, read.get(i).getAnalysisDepth());
+      }
+   }
+}
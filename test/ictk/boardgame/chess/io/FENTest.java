@@ -25,6 +25,7 @@
 package ictk.boardgame.chess.io;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import junit.framework.*;
 import ictk.util.Log;
@@ -244,4 +245,86 @@ public class FENTest extends TestCase {
 
       assertTrue (board.equals(board2));
    }
+
+   //////////////////////////////////////////////////////////////////////
+   public void testParseReusedBoard ()
+          throws IOException {
+      String[] fens = {
+         "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+         "rnbqkbnr/pp1ppppp/8/2p5/4P3/8/PPPP1PPP/RNBQKBNR w KQkq c6 0 2",
+         "r3k2r/8/8/8/8/8/8/4K2R w Kkq - 12 40",
+         "8/8/4k3/8/2pP4/8/8/4K3 b - d3 0 57",
+         "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1"
+      };
+
+      for (int i=0; i < fens.length; i++) {
+         board = fen.parse(fens[i], 0, fens[i].length(), board);
+         board2 = (ChessBoard) fen.stringToBoard(fens[i]);
+
+	 assertEquals(fens[i], fen.boardToString(board));
+	 assertTrue(board.equals(board2));
+	 assertEquals(board2.getLegalMoveCount(), board.getLegalMoveCount());
+      }
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   public void testParseMoveAfterReuse ()
+          throws Exception {
+      String str = "r3k2r/8/8/8/8/8/8/R3K2R w KQkq - 0 1";
+
+      board = fen.parse("8/8/8/8/8/8/8/K6k w - - 0 1", 0, 26, null);
+      board = fen.parse(str, 0, str.length(), board);
+
+      board2 = (ChessBoard) fen.stringToBoard(str);
+
+      board.playMove(san.stringToMove(board, "O-O-O"));
+      board2.playMove(san.stringToMove(board2, "O-O-O"));
+      assertTrue(fen.boardToString(board).startsWith(
+         "r3k2r/8/8/8/8/8/8/2KR3R b kq - 1 "));
+      assertEquals(fen.boardToString(board2), fen.boardToString(board));
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   public void testParseRegion ()
+          throws IOException {
+      String str = "x 4k3/8/8/8/8/8/8/4K2R w K - EPD-ish ops\n";
+      ByteBuffer buf = ByteBuffer.wrap(str.getBytes("US-ASCII"));
+
+      board = fen.parse(buf, 2, str.length() - 1, null);
+      assertEquals("4k3/8/8/8/8/8/8/4K2R w K - 0 1",
+         fen.boardToString(board));
+      assertTrue(board.isWhiteCastleableKingside());
+      assertFalse(board.isWhiteCastleableQueenside());
+
+      board = fen.parse(str, 2, 32, board);
+      assertEquals("4k3/8/8/8/8/8/8/4K2R w K - 0 1",
+         fen.boardToString(board));
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   public void testParseBad () {
+      try {
+         board = fen.parse("rnbqkbnr/ppppXppp/8/8 w - -", 0, 26, null);
+	 fail("bad piece accepted");
+      }
+      catch (IOException e) {
+      }
+      try {
+         board = fen.parse("8/8/8/8/8/8/8/K6k x - -", 0, 23, null);
+	 fail("bad side to move accepted");
+      }
+      catch (IOException e) {
+      }
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   public void testAppendTo ()
+          throws IOException {
+      String str = "rnbqkbnr/pp1ppppp/8/2p5/4P3/8/PPPP1PPP/RNBQKBNR w KQkq c6 0 2";
+      StringBuilder sb = new StringBuilder("fen: ");
+
+      board = (ChessBoard) fen.stringToBoard(str);
+      fen.appendTo(board, sb);
+      assertEquals("fen: " + str, sb.toString());
+   }
 }
@@ -0,0 +1,126 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess.io;
+
+import ictk.boardgame.chess.*;
+
+import java.io.*;
+import java.util.List;
+
+public class PGNFileTest extends AbstractPGNTest {
+   String pgn_variation = "test_variation.pgn",
+          pgn_bad       = "test_bad.pgn";
+   PGNFile         pgnFile;
+   List<ChessGame> games;
+   File            tmp;
+
+   public PGNFileTest (String name) {
+      super(name);
+   }
+
+   public void tearDown () 
+          throws IOException {
+      if (pgnFile != null)
+         pgnFile.close();
+      if (tmp != null)
+         tmp.delete();
+      pgnFile = null;
+      games = null;
+      tmp = null;
+   }
+
+   ///////////////////////////////////////////////////////////////////////////
+   /** games read out of order are the same as those read in order.
+    */
+   public void testRandomAccess () 
+          throws Exception {
+      games = PGNReaderTest.loadGames(dataDir + pgn_variation, false, -1);
+      pgnFile = new PGNFile(getFileFromResource(dataDir + pgn_variation));
+
+      assertEquals(games.size(), pgnFile.size());
+      assertEquals(0L, pgnFile.getOffset(0));
+
+      for (int i=pgnFile.size() - 1; i >= 0; i--) {
+         ChessGame game = pgnFile.getGame(i);
+
+	 if (i > 0)
+	    assertTrue(pgnFile.getPGN(i).startsWith("["));
+	 assertEquals(games.get(i).getGameInfo(), game.getGameInfo());
+	 assertTrue(games.get(i).getHistory()
+	    .deepEquals(game.getHistory(), true));
+      }
+   }
+
+   ///////////////////////////////////////////////////////////////////////////
+   public void testBadGame () 
+          throws Exception {
+      pgnFile = new PGNFile(getFileFromResource(dataDir + pgn_bad));
+
+      assertEquals(2, pgnFile.size());
+      assertEquals("3", pgnFile.getGame(1).getGameInfo().getRound());
+      try {
+         pgnFile.getGame(0);
+	 fail("read a bad game");
+      }
+      catch (IOException e) {
+      }
+      try {
+         pgnFile.getGame(2);
+	 fail("read past the last game");
+      }
+      catch (IndexOutOfBoundsException e) {
+      }
+   }
+
+   ///////////////////////////////////////////////////////////////////////////
+   /** tag pairs in comments don't start games, and DOS line ends are fine.
+    */
+   public void testComments () 
+          throws Exception {
+      String pgn = "[Event \"a\"]\r\n\r\n1. e4 {a comment\r\n[Event \"b\"]} e5 *"
+                 + "\r\n\r\n[Event \"c\"]\r\n\r\n1. d4 ; {\r\n% {\r\n[Event \"d\"]"
+		 + "\r\n\r\n1. c4 *\r\n";
+
+      tmp = File.createTempFile("ictk", ".pgn");
+      try (Writer out = new FileWriter(tmp)) {
+         out.write(pgn);
+      }
+      pgnFile = new PGNFile(tmp);
+
+      assertEquals(3, pgnFile.size());
+      assertEquals(pgn.indexOf("[Event \"c\"]"), pgnFile.getOffset(1));
+      assertEquals(pgn.length() - pgn.indexOf("[Event \"d\"]"), 
+                   pgnFile.getLength(2));
+      assertEquals("d", pgnFile.getGame(2).getGameInfo().getEvent());
+      assertEquals(2, pgnFile.getGame(0).getHistory().size());
+   }
+
+   //Helper///////////////////////////////////////////////////////////////////
+   protected static File getFileFromResource (String file) 
+          throws Exception {
+      return new File(PGNFileTest.class.getClassLoader()
+                         .getResource(file).toURI());
+   }
+}
@@ -0,0 +1,151 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess.io;
+
+import ictk.boardgame.chess.*;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class PGNImporterTest extends AbstractPGNTest {
+   String pgn_nonvariation = "test_nonvariation.pgn",
+          pgn_variation    = "test_variation.pgn",
+          pgn_bad          = "test_bad.pgn";
+   PGNImporter     importer;
+   List<ChessGame> games;
+   List<ChessGame> read;
+   List<Integer>   numbers;
+   List<Integer>   failed;
+
+   public PGNImporterTest (String name) {
+      super(name);
+   }
+
+   public void setUp () {
+      read    = new ArrayList<>();
+      numbers = new ArrayList<>();
+      failed  = new ArrayList<>();
+   }
+
+   public void tearDown () {
+      importer = null;
+      games    = null;
+      read     = null;
+      numbers  = null;
+      failed   = null;
+   }
+
+   ///////////////////////////////////////////////////////////////////////////
+   public void testOrdered () 
+          throws Exception {
+      games = PGNReaderTest.loadGames(dataDir + pgn_variation, false, -1);
+      importer = new PGNImporter(getReaderFromResource(dataDir + pgn_variation));
+      importer.setThreads(3);
+
+      assertEquals(games.size(), importer.importGames(new Collector()));
+      assertEquals(games.size(), read.size());
+      assertEquals(0, failed.size());
+
+      for (int i=0; i < games.size(); i++) {
+         assertEquals(i, numbers.get(i).intValue());
+	 assertEquals(games.get(i).getGameInfo(), read.get(i).getGameInfo());
+	 assertTrue(games.get(i).getHistory()
+	    .deepEquals(read.get(i).getHistory(), true));
+      }
+   }
+
+   ///////////////////////////////////////////////////////////////////////////
+   public void testUnordered () 
+          throws Exception {
+      importer = new PGNImporter(getReaderFromResource(dataDir + pgn_variation));
+      importer.setThreads(3);
+      importer.setOrdered(false);
+      importer.setMaxPending(2);
+
+      int count = importer.importGames(new Collector());
+
+      assertEquals(count, read.size());
+      for (int i=0; i < count; i++)
+         assertTrue(numbers.contains(i));
+   }
+
+   ///////////////////////////////////////////////////////////////////////////
+   public void testStream () 
+          throws Exception {
+      games = PGNReaderTest.loadGames(dataDir + pgn_nonvariation, false, -1);
+      importer = new PGNImporter(getReaderFromResource(dataDir + pgn_nonvariation));
+      importer.setThreads(2);
+      importer.setTrusted(true);
+
+      read = importer.stream().collect(Collectors.toList());
+
+      assertEquals(games.size(), read.size());
+      for (int i=0; i < games.size(); i++) {
+	 assertEquals(games.get(i).getGameInfo(), read.get(i).getGameInfo());
+	 assertFalse(read.get(i).getHistory().getFirst().isVerified());
+      }
+   }
+
+   ///////////////////////////////////////////////////////////////////////////
+   public void testFailedGame () 
+          throws Exception {
+      importer = new PGNImporter(getReaderFromResource(dataDir + pgn_bad));
+
+      assertEquals(2, importer.importGames(new Collector()));
+      assertEquals(1, importer.getFailedCount());
+      assertEquals(0, failed.get(0).intValue());
+      assertEquals(1, numbers.get(0).intValue());
+   }
+
+   ///////////////////////////////////////////////////////////////////////////
+   /** a tag pair in a comment doesn't start a new game.
+    */
+   public void testTagInComment () 
+          throws Exception {
+      String pgn = "[Event \"a\"]\n\n1. e4 {a comment\n[Event \"b\"]} e5 *\n\n"
+                 + "[Event \"c\"]\n\n1. d4 ; {\n[Event \"d\"]\n\n1. c4 *\n";
+      importer = new PGNImporter(new StringReader(pgn));
+      importer.setThreads(2);
+
+      assertEquals(3, importer.importGames(new Collector()));
+      assertEquals(3, read.size());
+      assertEquals("a", read.get(0).getGameInfo().getEvent());
+      assertEquals("d", read.get(2).getGameInfo().getEvent());
+   }
+
+   //Helper///////////////////////////////////////////////////////////////////
+   class Collector implements PGNImportListener {
+      public void gameRead (int number, ChessGame game) {
+         numbers.add(number);
+	 read.add(game);
+      }
+
+      public void gameFailed (int number, String pgn, Exception e) {
+         failed.add(number);
+      }
+   }
+}
@@ -663,6 +663,87 @@ public class PGNReaderTest extends AbstractPGNTest {
 	 }
    }
 
+   //TRUSTED SECTION//////////////////////////////////////////////////////////
+
+   ///////////////////////////////////////////////////////////////////////////
+   /** a trusted read leaves the moves unverified, and once verified the
+    *  games are the same as those read the usual way.
+    */
+   public void testTrustedVariation () 
+          throws FileNotFoundException,
+	         InvalidGameFormatException,
+		 Exception {
+      ChessGame g = null;
+      int i = 0;
+
+      games = loadGames(dataDir + pgn_variation, false, -1);
+      in = new PGNReader(getReaderFromResource(dataDir + pgn_variation));
+      ((PGNReader) in).setTrusted(true);
+
+      while ((g = (ChessGame) in.readGame()) != null) {
+         ChessGame expected = games.get(i++);
+	 board = (ChessBoard) g.getBoard();
+
+	 assertTrue(board.isTrustedMoves());
+	 if (!g.getHistory().isEmpty())
+	    assertFalse(g.getHistory().getFirst().isVerified());
+
+	 g.verify();
+
+	 assertFalse(board.isTrustedMoves());
+	 assertTrue(expected.getHistory().deepEquals(g.getHistory(), true));
+	 assertEquals(((ChessBoard) expected.getBoard()).getZobristKey(),
+	              board.getZobristKey());
+	 assertEquals(expected.getBoard().toString(), board.toString());
+      }
+      assertEquals(games.size(), i);
+   }
+
+   //REUSE SECTION////////////////////////////////////////////////////////////
+
+   ///////////////////////////////////////////////////////////////////////////
+   /** games read into the same ChessGame are the same as new ones.
+    */
+   public void testReuseGame () 
+          throws FileNotFoundException,
+	         InvalidGameFormatException,
+		 Exception {
+      reuseGames(pgn_variation);
+      reuseGames(pgn_annotation);
+      reuseGames(pgn_chess960);
+   }
+
+   ///////////////////////////////////////////////////////////////////////////
+   protected void reuseGames (String file) 
+          throws Exception {
+      ChessGame reuse = new ChessGame(),
+                g     = null;
+      ChessBoard first = (ChessBoard) reuse.getBoard();
+      History history = reuse.getHistory();
+      int i = 0;
+
+      games = loadGames(dataDir + file, false, -1);
+      in = new PGNReader(getReaderFromResource(dataDir + file));
+
+      while ((g = (ChessGame) ((PGNReader) in).readGame(reuse)) != null) {
+         ChessGame expected = games.get(i++);
+
+	 assertSame(reuse, g);
+	 assertSame(first, g.getBoard());
+	 assertSame(history, g.getHistory());
+	 assertEquals(expected.getGameInfo(), g.getGameInfo());
+	 assertTrue(expected.getHistory().deepEquals(g.getHistory(), true));
+	 assertEquals(expected.getBoard().toString(), g.getBoard().toString());
+
+	 expected.getHistory().goToEnd();
+	 g.getHistory().goToEnd();
+	 assertEquals(expected.getBoard().toString(), g.getBoard().toString());
+	 assertEquals(((ChessBoard) expected.getBoard()).getZobristKey(),
+	              ((ChessBoard) g.getBoard()).getZobristKey());
+      }
+      assertEquals(games.size(), i);
+   }
+
    //Helper///////////////////////////////////////////////////////////////////
 
    /** loads the games into a list so aspects of the games can be tested */
@@ -271,6 +271,38 @@ public class PGNWriterTest extends AbstractPGNTest {
       }
    }
 
+   ///////////////////////////////////////////////////////////////////////////
+   /** streaming output is the same as the default output, and leaves the
+    *  boards where they were.
+    */
+   public void testStreaming () 
+          throws FileNotFoundException,
+	  	 IOException, 
+		 Exception {
+      StringWriter sw2 = new StringWriter();
+      PGNWriter writer2 = new PGNWriter(sw2);
+
+      writer = new PGNWriter(sw = new StringWriter()); 
+      writer.setStreaming(true);
+
+      for (String file : new String[] {pgn_variation, pgn_annotation}) {
+	 in = new PGNReader(getReaderFromResource(dataDir + file));
+
+	 while ((game = in.readGame()) != null) {
+	    Move last = game.getHistory().getCurrentMove();
+
+	    writer.writeGame(game);
+	    assertTrue(last == game.getHistory().getCurrentMove());
+
+	    writer2.writeGame(game);
+	 }
+      }
+      writer.flush();
+      writer2.flush();
+
+      assertEquals(sw2.toString(), sw.toString());
+   }
+
    ///////////////////////////////////////////////////////////////////////////
    public void testZeroGameInfoZeroHistory () 
           throws FileNotFoundException,
@@ -0,0 +1,147 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess.io;
+
+import ictk.boardgame.chess.*;
+
+import java.io.*;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class PolyglotBookTest extends TestCase {
+   FEN fen = new FEN();
+   ChessBoard board;
+   PolyglotBook book;
+   File tmp;
+
+   public PolyglotBookTest (String name) {
+      super(name);
+   }
+
+   public void tearDown () 
+          throws IOException {
+      if (book != null)
+         book.close();
+      if (tmp != null)
+         tmp.delete();
+      book = null;
+      board = null;
+      tmp = null;
+   }
+
+   ///////////////////////////////////////////////////////////////////////////
+   /** the keys given in the Polyglot book format description.
+    */
+   public void testKeys () 
+          throws Exception {
+      assertKey(0x463b96181691fc9cL, 
+         "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1");
+      assertKey(0x823c9b50fd114196L, 
+         "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1");
+      assertKey(0x0756b94461c50fb0L, 
+         "rnbqkbnr/ppp1pppp/8/3p4/4P3/8/PPPP1PPP/RNBQKBNR w KQkq d6 0 2");
+      assertKey(0x662fafb965db29d4L, 
+         "rnbqkbnr/ppp1pppp/8/3pP3/8/8/PPPP1PPP/RNBQKBNR b KQkq - 0 2");
+      assertKey(0x22a48b5a8e47ff78L, 
+         "rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3");
+      assertKey(0x652a607ca3f242c1L, 
+         "rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPPKPPP/RNBQ1BNR b kq - 0 3");
+      assertKey(0x00fdd303c946bdd9L, 
+         "rnbq1bnr/ppp1pkpp/8/3pPp2/8/8/PPPPKPPP/RNBQ1BNR w - - 0 4");
+      assertKey(0x3c8123ea7b067637L, 
+         "rnbqkbnr/p1pppppp/8/8/PpP4P/8/1P1PPPP1/RNBQKBNR b KQkq c3 0 3");
+      assertKey(0x5c3f9b829b279560L, 
+         "rnbqkbnr/p1pppppp/8/8/P6P/R1p5/1P1PPPP1/1NBQKBNR b Kkq - 0 4");
+   }
+
+   ///////////////////////////////////////////////////////////////////////////
+   public void testGetMoves () 
+          throws Exception {
+      String castle = "r3k2r/8/8/8/8/8/8/R3K2R w KQkq - 0 1";
+      long start = PolyglotBook.getKey(new ChessBoard()),
+           other = PolyglotBook.getKey((ChessBoard) fen.stringToBoard(castle));
+      List<BookMove> moves = null;
+
+      //sorted as unsigned keys
+      writeBook(new long[][] {
+         {start, polyglot("d2d4"), 5},
+         {start, polyglot("e2e4"), 10},
+         {start, polyglot("c2c4"), 0},
+         {other, polyglot("e1a1"), 1}},
+	 Long.compareUnsigned(start, other) < 0);
+
+      assertEquals(4, book.size());
+      assertEquals(-1, book.find(start ^ 1));
+
+      board = new ChessBoard();
+      moves = book.getMoves(board);
+      assertEquals(2, moves.size());
+      assertEquals(10, moves.get(0).getWeight());
+      assertEquals(new Square((byte) 5, (byte) 4), 
+                   moves.get(0).getMove().getDestination());
+      assertEquals(5, moves.get(1).getWeight());
+      assertNotNull(book.getWeightedMove(board));
+
+      board = (ChessBoard) fen.stringToBoard(castle);
+      moves = book.getMoves(board);
+      assertEquals(1, moves.size());
+      board.playMove(moves.get(0).getMove());
+      assertTrue(fen.boardToString(board)
+                    .startsWith("r3k2r/8/8/8/8/8/8/2KR3R b kq -"));
+   }
+
+   //Helper///////////////////////////////////////////////////////////////////
+   protected void assertKey (long key, String str) 
+          throws IOException {
+      assertEquals(Long.toHexString(key), Long.toHexString(
+         PolyglotBook.getKey((ChessBoard) fen.stringToBoard(str))));
+   }
+
+   /** a move in Polyglot's form, e.g. "e2e4" */
+   protected static int polyglot (String move) {
+      return ((move.charAt(0) - 'a') << 6) | ((move.charAt(1) - '1') << 9)
+           | (move.charAt(2) - 'a') | ((move.charAt(3) - '1') << 3);
+   }
+
+   /** writes the entries {key, move, weight}, the first three before the
+    *  last if startFirst.
+    */
+   protected void writeBook (long[][] entries, boolean startFirst) 
+          throws IOException {
+      tmp = File.createTempFile("ictk", ".bin");
+      try (DataOutputStream out = new DataOutputStream(
+                                     new FileOutputStream(tmp))) {
+         for (int i=0; i < entries.length; i++) {
+	    long[] e = entries[(startFirst) ? i : (i + 3) % entries.length];
+	    out.writeLong(e[0]);
+	    out.writeShort((int) e[1]);
+	    out.writeShort((int) e[2]);
+	    out.writeInt(0);
+	 }
+      }
+      book = new PolyglotBook(tmp);
+   }
+}
@@ -279,6 +279,55 @@ public class SANTest extends TestCase {
       assertTrue (anno.getNAGString().equals("$9"));
    }
 
+   //////////////////////////////////////////////////////////////////////
+   /** the fast resolution must find the same origin as the regex */
+   void assertResolves (String fen, String move, String origin) 
+          throws IllegalMoveException, 
+	         AmbiguousChessMoveException, 
+		 java.io.IOException {
+      SAN slow = new SAN();
+      slow.setFastResolution(false);
+
+      board = (ChessBoard) new FEN().stringToBoard(fen);
+      this.move = (ChessMove) san.stringToMove(board, move);
+      assertEquals(origin, this.move.getOrigin().toString());
+      this.move = (ChessMove) slow.stringToMove(board, move);
+      assertEquals(origin, this.move.getOrigin().toString());
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   public void testFastResolution () throws Exception {
+      assertTrue(san.isFastResolution());
+
+      //the knight on d2 is pinned by the bishop
+      assertResolves("4k3/8/8/8/1b6/8/3N4/4K1N1 w - - 0 1", "Nf3", "g1");
+      assertResolves("4k3/8/8/8/8/5N2/8/1N2K3 w - - 0 1", "Nbd2", "b1");
+      assertResolves("4k3/8/8/8/8/5N2/8/1N2K3 w - - 0 1", "Nfxd2+", "f3");
+      assertResolves("4k3/8/8/3pP3/8/8/8/4K3 w - d6 0 1", "exd6", "e5");
+      assertResolves("4k3/8/8/8/8/8/4P3/4K3 w - - 0 1", "e4", "e2");
+      assertResolves("4k3/8/8/8/8/8/1p6/R3K3 b Q - 0 1", "bxa1=Q+", "b2");
+      //only a block or the King will do
+      assertResolves("4k3/8/8/8/1b6/8/8/2R1K3 w - - 0 1", "Rc3", "c1");
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   public void testFastResolutionErrors () throws Exception {
+      board = (ChessBoard) new FEN().stringToBoard(
+         "4k3/8/8/8/8/5N2/8/1N2K3 w - - 0 1");
+      try {
+         san.stringToMove(board, "Nd2");
+	 fail("two knights can go to d2");
+      }
+      catch (AmbiguousChessMoveException e) {
+      }
+      try {
+         san.stringToMove(board, "Nd5");
+	 fail("no knight can go to d5");
+      }
+      catch (IllegalMoveException e) {
+      }
+   }
+
    //////////////////////////////////////////////////////////////////////
    public void testFileToChar ()  {
       assertTrue (san.fileToChar(1) == 'a');
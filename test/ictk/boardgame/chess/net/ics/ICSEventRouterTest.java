@@ -0,0 +1,389 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess.net.ics;
+
+import ictk.boardgame.chess.net.ics.event.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import junit.framework.*;
+
+public class ICSEventRouterTest extends TestCase {
+      /** permits enough for any test's events */
+   static final int OPEN = 1 << 20;
+
+   ICSEventRouter router;
+   Recorder rec;
+
+   public ICSEventRouterTest (String name) {
+      super(name);
+   }
+
+   public void setUp () {
+      router = new ICSEventRouter();
+      rec = new Recorder();
+      router.setDefaultListener(rec);
+   }
+
+   public void tearDown () {
+      rec.gate.release(OPEN);
+      router.setAsynchronous(false);
+      router = null;
+      rec = null;
+   }
+
+   /** records what it receives, and on what threads; each event waits 
+    ** for a permit while the gate is closed. */
+   static class Recorder implements ICSEventListener {
+      List<ICSEvent> events = Collections.synchronizedList(
+                                 new ArrayList<ICSEvent>());
+      Set<Thread> threads = Collections.synchronizedSet(
+                                 new HashSet<Thread>());
+      Semaphore gate = new Semaphore(OPEN);
+         /** released as each event arrives, before the gate */
+      Semaphore arrived = new Semaphore(0);
+      volatile int concurrent, maxConcurrent;
+
+      public void icsEventDispatched (ICSEvent evt) {
+         if (++concurrent > maxConcurrent)
+	    maxConcurrent = concurrent;
+	 threads.add(Thread.currentThread());
+	 arrived.release();
+	 gate.acquireUninterruptibly();
+	 events.add(evt);
+	 concurrent--;
+      }
+   }
+
+   ICSEvent board (int number) {
+      ICSBoardUpdateEvent evt = new ICSBoardUpdateEvent();
+      evt.setBoardNumber(number);
+      return evt;
+   }
+
+   ICSEvent channel (int number) {
+      ICSChannelEvent evt = new ICSChannelEvent();
+      evt.setChannel(number);
+      return evt;
+   }
+
+   /** dispatches on another thread, which may block */
+   Thread dispatchLater (final ICSEvent[] evts) {
+      Thread t = new Thread() {
+         public void run () {
+	    for (int i=0; i < evts.length; i++)
+	       router.dispatch(evts[i]);
+	 }
+      };
+      t.setDaemon(true);
+      t.start();
+      return t;
+   }
+
+   //tests////////////////////////////////////////////////////////////////
+   public void testSynchronous () {
+      ICSEvent evt = board(1);
+
+      assertFalse(router.isAsynchronous());
+      router.dispatch(evt);
+      assertEquals(Arrays.asList(evt), rec.events);
+      assertTrue(rec.threads.contains(Thread.currentThread()));
+   }
+
+   /** games and channels interleaved come out in order, on the worker */
+   public void testOrder () throws InterruptedException {
+      List<ICSEvent> sent = new ArrayList<ICSEvent>();
+      Recorder other = new Recorder();
+      ICSEvent evt = null;
+
+      router.addEventListener(ICSEvent.BOARD_UPDATE_EVENT, other);
+      router.setAsynchronous(true);
+      for (int i=0; i < 5000; i++) {
+         evt = (i % 3 == 0) ? channel(i % 7) : board(i % 11);
+	 sent.add(evt);
+	 router.dispatch(evt);
+      }
+      router.flush();
+
+      assertEquals(sent, rec.events);
+      assertEquals(1, rec.threads.size());
+      assertFalse(rec.threads.contains(Thread.currentThread()));
+      assertEquals(1, rec.maxConcurrent);
+
+      //each listener has its own worker
+      assertEquals(3333, other.events.size());
+      assertFalse(rec.threads.equals(other.threads));
+      assertEquals(0, router.getDroppedCount());
+   }
+
+   /** a listener registered twice is still called by one thread */
+   public void testSameListener () throws InterruptedException {
+      router.addEventListener(ICSEvent.BOARD_UPDATE_EVENT, rec);
+      router.setAsynchronous(true);
+      for (int i=0; i < 1000; i++)
+         router.dispatch(board(i));
+      router.flush();
+
+      assertEquals(2000, rec.events.size());
+      assertEquals(1, rec.threads.size());
+      assertEquals(1, rec.maxConcurrent);
+   }
+
+   public void testBlock () throws InterruptedException {
+      ICSEvent[] evts = new ICSEvent[6];
+      Thread t = null;
+
+      for (int i=0; i < evts.length; i++)
+         evts[i] = board(1);
+      router.setQueueSize(2);
+      router.setAsynchronous(true);
+      rec.gate.drainPermits();
+
+      //one held by the listener, two queued, the fourth waits
+      t = dispatchLater(evts);
+      rec.arrived.acquire();
+      t.join(200);
+      assertTrue(t.isAlive());
+
+      rec.gate.release(evts.length);
+      t.join(5000);
+      assertFalse(t.isAlive());
+      router.flush();
+      assertEquals(Arrays.asList(evts), rec.events);
+      assertEquals(0, router.getDroppedCount());
+   }
+
+   public void testDropOldest () throws InterruptedException {
+      ICSEvent[] evts = new ICSEvent[10];
+
+      for (int i=0; i < evts.length; i++)
+         evts[i] = board(i);
+      router.setQueueSize(3);
+      router.setBackpressure(ICSEventRouter.DROP_OLDEST);
+      router.setAsynchronous(true);
+      rec.gate.drainPermits();
+
+      router.dispatch(evts[0]);
+      rec.arrived.acquire();
+      for (int i=1; i < evts.length; i++)
+         router.dispatch(evts[i]);
+
+      rec.gate.release(evts.length);
+      router.flush();
+      assertEquals(Arrays.asList(evts[0], evts[7], evts[8], evts[9]),
+                   rec.events);
+      assertEquals(6, router.getDroppedCount());
+   }
+
+   /** a newer update of a board replaces the queued one, and goes behind
+    ** what was dispatched between them */
+   public void testCoalesce () throws InterruptedException {
+      ICSEvent first = board(1),
+               b1 = board(1),
+	       b2 = board(2),
+	       ch = channel(50),
+	       b1b = board(1),
+	       b2b = board(2),
+	       b1c = board(1);
+
+      router.setQueueSize(3);
+      router.setBackpressure(ICSEventRouter.COALESCE);
+      router.setAsynchronous(true);
+      rec.gate.drainPermits();
+
+      router.dispatch(first);
+      rec.arrived.acquire();
+      router.dispatch(b1);
+      router.dispatch(b2);
+      router.dispatch(ch);
+      //the queue is full, but these replace b1 and b2, then b1b
+      router.dispatch(b1b);
+      router.dispatch(b2b);
+      router.dispatch(b1c);
+
+      rec.gate.release(10);
+      router.flush();
+      assertEquals(Arrays.asList(first, ch, b2b, b1c), rec.events);
+      assertEquals(3, router.getDroppedCount());
+   }
+
+   /** while the queue has room every update is delivered */
+   public void testCoalesceNotFull () throws InterruptedException {
+      ICSEvent first = board(1),
+               b1 = board(1),
+	       b1b = board(1);
+
+      router.setQueueSize(3);
+      router.setBackpressure(ICSEventRouter.COALESCE);
+      router.setAsynchronous(true);
+      rec.gate.drainPermits();
+
+      router.dispatch(first);
+      rec.arrived.acquire();
+      router.dispatch(b1);
+      router.dispatch(b1b);
+
+      rec.gate.release(10);
+      router.flush();
+      assertEquals(Arrays.asList(first, b1, b1b), rec.events);
+      assertEquals(0, router.getDroppedCount());
+   }
+
+   /** turning asynchronous off delivers what is queued first */
+   public void testStop () throws InterruptedException {
+      ICSEvent[] evts = new ICSEvent[5];
+      ICSEvent last = board(9);
+
+      for (int i=0; i < evts.length; i++)
+         evts[i] = board(i);
+      router.setAsynchronous(true);
+      rec.gate.drainPermits();
+      for (int i=0; i < evts.length; i++)
+         router.dispatch(evts[i]);
+      rec.arrived.acquire();
+      rec.gate.release(OPEN);
+
+      router.setAsynchronous(false);
+      assertEquals(Arrays.asList(evts), rec.events);
+      router.dispatch(last);
+      assertEquals(last, rec.events.get(evts.length));
+      assertTrue(rec.threads.contains(Thread.currentThread()));
+   }
+
+   /** events dispatched by another thread while asynchronous is being
+    ** turned off wait for those the worker still has */
+   public void testStopWhileDispatching () throws InterruptedException {
+      final ICSEvent[] evts = new ICSEvent[20];
+      final CountDownLatch half = new CountDownLatch(1);
+      Thread reader = null,
+             stopper = null;
+
+      for (int i=0; i < evts.length; i++)
+         evts[i] = board(i);
+      router.setAsynchronous(true);
+      rec.gate.drainPermits();
+
+      reader = new Thread() {
+         public void run () {
+	    try {
+	       for (int i=0; i < evts.length; i++) {
+		  if (i == evts.length / 2)
+		     half.await();
+		  router.dispatch(evts[i]);
+	       }
+	    }
+	    catch (InterruptedException e) {
+	    }
+	 }
+      };
+      reader.setDaemon(true);
+      reader.start();
+      //the worker holds the first event
+      rec.arrived.acquire();
+
+      stopper = new Thread() {
+         public void run () {
+	    router.setAsynchronous(false);
+	 }
+      };
+      stopper.setDaemon(true);
+      stopper.start();
+      while (router.isAsynchronous())
+         Thread.sleep(1);
+      half.countDown();
+
+      //nothing may reach the listener while the worker is in it
+      assertFalse(rec.arrived.tryAcquire(200, TimeUnit.MILLISECONDS));
+      rec.gate.release(OPEN);
+      reader.join(5000);
+      stopper.join(5000);
+      assertFalse(reader.isAlive());
+      assertFalse(stopper.isAlive());
+
+      assertEquals(Arrays.asList(evts), rec.events);
+      assertEquals(1, rec.maxConcurrent);
+   }
+
+   /** a listener removed from its only channel loses its worker */
+   public void testRemoveChannelListener () throws InterruptedException {
+      Recorder other = new Recorder();
+      ICSEvent evt = channel(50);
+
+      router.addChannelListener(ICSEvent.CHANNEL_EVENT, 50, other);
+      router.setAsynchronous(true);
+      router.dispatch(evt);
+      router.flush();
+      assertEquals(2, router.mailboxes.size());
+
+      router.removeChannelListener(ICSEvent.CHANNEL_EVENT, 50, other);
+      assertEquals(Arrays.asList(evt), other.events);
+      assertEquals(1, router.mailboxes.size());
+      assertFalse(router.mailboxes.containsKey(other));
+      assertFalse(other.threads.iterator().next().isAlive());
+   }
+
+   /** a listener throwing doesn't stop its worker */
+   public void testListenerThrows () throws InterruptedException {
+      final List<ICSEvent> got = new ArrayList<ICSEvent>();
+      java.io.PrintStream err = ictk.util.Log.err;
+      ICSEvent evt = board(2);
+
+      router.setDefaultListener(new ICSEventListener () {
+         public void icsEventDispatched (ICSEvent e) {
+	    if (((ICSBoardEvent) e).getBoardNumber() == 1)
+	       throw new IllegalStateException("bad listener");
+	    got.add(e);
+	 }
+      });
+      router.setAsynchronous(true);
+      ictk.util.Log.err = new java.io.PrintStream(
+                             new java.io.ByteArrayOutputStream());
+      try {
+	 router.dispatch(board(1));
+	 router.dispatch(evt);
+	 router.flush();
+      }
+      finally {
+         ictk.util.Log.err = err;
+      }
+      assertEquals(Arrays.asList(evt), got);
+   }
+
+   public void testArguments () {
+      try {
+         router.setBackpressure(3);
+	 fail("policy 3 accepted");
+      }
+      catch (IllegalArgumentException e) {
+      }
+      try {
+         router.setQueueSize(0);
+	 fail("queue size 0 accepted");
+      }
+      catch (IllegalArgumentException e) {
+      }
+   }
+}
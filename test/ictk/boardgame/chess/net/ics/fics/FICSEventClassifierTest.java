@@ -0,0 +1,212 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess.net.ics.fics;
+
+import ictk.boardgame.chess.net.ics.*;
+import ictk.boardgame.chess.net.ics.event.*;
+
+import java.util.*;
+import java.io.*;
+
+import junit.framework.*;
+
+public class FICSEventClassifierTest extends TestCase {
+   static final String[] DATA = {
+      "FICSBoardUpdateStyle12ParserTest.data",
+      "FICSChallengeParserTest.data",
+      "FICSChannelParserTest.data",
+      "FICSExamineNavigationBeginParserTest.data",
+      "FICSExamineNavigationEndParserTest.data",
+      "FICSExamineNavigationEndVariationParserTest.data",
+      "FICSExamineNavigationParserTest.data",
+      "FICSExamineRevertParserTest.data",
+      "FICSExaminerOtherParserTest.data",
+      "FICSExaminerSelfParserTest.data",
+      "FICSFingerParser.data",
+      "FICSGameCreatedParserTest.data",
+      "FICSGameNotificationParserTest.data",
+      "FICSGameResultParserTest.data",
+      "FICSHistoryParser.data",
+      "FICSKibitzParserTest.data",
+      "FICSMoveListParserTest.data",
+      "FICSPlayerConnectionParserTest.data",
+      "FICSPlayerNotificationParserTest.data",
+      "FICSSeekAdParserTest.data",
+      "FICSSeekAdReadableParserTest.data",
+      "FICSSeekClearParserTest.data",
+      "FICSSeekRemoveParserTest.data",
+      "FICSShoutParserTest.data",
+      "FICSTellParserTest.data"
+   };
+
+   FICSProtocolHandler handler;
+   FICSEventClassifier classifier;
+   List<ICSEvent> events;
+   ByteArrayOutputStream out;
+
+   public FICSEventClassifierTest (String name) {
+      super(name);
+   }
+
+   public void setUp () {
+      handler = new FICSProtocolHandler();
+      classifier = handler.classifier;
+      events = new ArrayList<ICSEvent>();
+      handler.getEventRouter().setDefaultListener(
+         new ICSEventListener () {
+	    public void icsEventDispatched (ICSEvent evt) {
+	       events.add(evt);
+	    }
+	 });
+      out = new ByteArrayOutputStream();
+      handler.stdout = new PrintStream(out, true);
+   }
+
+   public void tearDown () {
+      handler = null;
+      classifier = null;
+      events = null;
+      out = null;
+   }
+
+   protected List<String> read (String file) throws IOException {
+      List<String> list = new LinkedList<String>();
+      StringBuilder sb = new StringBuilder(80);
+      String line = null;
+      int lines = 0;
+      BufferedReader in = new BufferedReader(new InputStreamReader(
+         getClass().getResourceAsStream("event/data/" + file)));
+
+      while ((line = in.readLine()) != null) {
+         if (line.startsWith("#")) {
+	    if (lines != 0) {
+	       list.add(sb.toString());
+	       sb = new StringBuilder(80);
+	       lines = 0;
+	    }
+	 }
+	 else {
+	    sb.append(line).append("\n");
+	    lines++;
+	 }
+      }
+      in.close();
+      if (lines != 0)
+	 list.add(sb.toString());
+      return list;
+   }
+
+   /** the first of all the parsers, in the handler's order, to match */
+   protected ICSEventParser firstMatch (ICSEventParser[] parsers, String s) {
+      for (int i=0; i < parsers.length; i++)
+         if (parsers[i].match(s, 0) != null)
+	    return parsers[i];
+      return null;
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   /** the classifier never leaves out the parser that would have matched
+    */
+   public void testCandidates () throws IOException {
+      ICSEventParser expected = null;
+      int matched = 0;
+
+      for (int f=0; f < DATA.length; f++) {
+         for (String mesg : read(DATA[f])) {
+	    expected = firstMatch(handler.eventFactories, mesg);
+	    assertSame(DATA[f] + ": " + mesg, expected, 
+	       firstMatch(classifier.getCandidates(mesg, 0), mesg));
+	    if (expected != null)
+	       matched++;
+	 }
+      }
+      assertTrue(matched > 90);
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   public void testNoCandidates () {
+      String[] mesg = {
+         "",
+	 "fics% ",
+	 "Your seek has been posted with index 12.",
+	 "(told Handle)",
+	 "   **ANNOUNCEMENT** from relay: FICS is relaying the Open.",
+	 "Handle(U) went to the other room.",
+      };
+
+      for (int i=0; i < mesg.length; i++)
+	 assertEquals(mesg[i], 0, classifier.getCandidates(mesg[i], 0).length);
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   public void testLines () {
+      String s = "a\nb\r\nc\rd";
+
+      assertEquals(2, FICSEventClassifier.nextLine(s, 0));
+      assertEquals(5, FICSEventClassifier.nextLine(s, 2));
+      assertEquals(7, FICSEventClassifier.nextLine(s, 5));
+      assertEquals(8, FICSEventClassifier.nextLine(s, 7));
+      assertEquals(2, FICSEventClassifier.lineStart(s, 1));
+      assertEquals(2, FICSEventClassifier.lineStart(s, 2));
+      assertEquals(5, FICSEventClassifier.lineStart(s, 4));
+      assertEquals(7, FICSEventClassifier.lineStart(s, 7));
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   /** several messages and some plain text in one chunk */
+   public void testParse () throws IOException {
+      String tell    = read("FICSTellParserTest.data").get(0),
+             style12 = read("FICSBoardUpdateStyle12ParserTest.data").get(0),
+	     shout   = read("FICSShoutParserTest.data").get(0),
+	     text    = "Your seek has been posted with index 12.\n";
+
+      handler.parse(text + tell + style12 + text + shout + text);
+
+      assertEquals(3, events.size());
+      assertTrue(events.get(0).getEventType() == ICSEvent.TELL_EVENT
+              || events.get(0).getEventType() == ICSEvent.SAY_EVENT);
+      assertEquals(ICSEvent.BOARD_UPDATE_EVENT, events.get(1).getEventType());
+      assertEquals(ICSEvent.SHOUT_EVENT, 
+                   events.get(2).getEventType());
+
+      //the text between them is printed
+      List<String> printed = new ArrayList<String>();
+      for (String line : out.toString().split("\\s*\\n\\s*"))
+         if (line.length() > 0)
+	    printed.add(line);
+      assertEquals(Arrays.asList(text.trim(), text.trim(), text.trim()),
+                   printed);
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   public void testParseUnknown () {
+      String text = "Your seek has been posted with index 12.\nfics% ";
+
+      handler.parse(text);
+
+      assertEquals(0, events.size());
+      assertEquals(text + System.lineSeparator(), out.toString());
+   }
+}
@@ -0,0 +1,362 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess.net.ics.fics;
+
+import ictk.boardgame.chess.net.ics.*;
+import ictk.boardgame.chess.net.ics.event.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.net.*;
+import java.io.*;
+
+import junit.framework.*;
+
+/** connects handlers to a stand-in FICS server on the loopback interface.
+ */
+public class FICSProtocolHandlerTest extends TestCase {
+   static final String STYLE12 = "<12> r-bq-rk- pp-nppbp -----np- --pp---- ---P---- --PBPN-- PP-N-PPP R-BQR-K- B -1 0 0 0 0 2 2 bbbb Simpan -2 3 0 39 39 177810 171259 8 R/f1-e1 (0:00.023) Re1 0 0 0";
+
+   ServerSocket server;
+   Thread acceptor;
+      /** the passwords the server turns down */
+   String badPasswd = "wrong";
+
+   public FICSProtocolHandlerTest (String name) {
+      super(name);
+   }
+
+   public void setUp () throws IOException {
+      server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+      acceptor = new Thread() {
+         public void run () {
+	    try {
+	       while (true) {
+	          final Socket socket = server.accept();
+		  new Thread() {
+		     public void run () {
+		        serve(socket);
+		     }
+		  }.start();
+	       }
+	    }
+	    catch (IOException e) {
+	       //closed
+	    }
+	 }
+      };
+      acceptor.setDaemon(true);
+      acceptor.start();
+   }
+
+   public void tearDown () throws IOException {
+      server.close();
+      server = null;
+      acceptor = null;
+   }
+
+   /** the login dialog, then three messages written a few bytes at a time
+    ** so the prompts are split between reads */
+   protected void serve (Socket socket) {
+      try {
+	 BufferedReader in = new BufferedReader(
+	    new InputStreamReader(socket.getInputStream()));
+	 OutputStream out = socket.getOutputStream();
+	 String handle = null;
+
+	 write(out, "Welcome to the stand-in server\n\r\n\rlogin: ");
+	 handle = in.readLine();
+	 write(out, "\n\rpassword: ");
+	 if (badPasswd.equals(in.readLine())) {
+	    write(out, "\n\r**** Invalid password! ****\n\r");
+	    socket.close();
+	    return;
+	 }
+	 write(out, "\n\r**** Starting FICS session as " + handle 
+	          + "(U) ****\n\r");
+	 //setLoginVars
+	 for (int i=0; i < 5; i++)
+	    in.readLine();
+
+	 String script = "\n\rfics% "
+	    + "Some text before anything\n\r"
+	    + handle + " tells you: hello\n\rfics% "
+	    + STYLE12 + "\n\rfics% "
+	    + "--> " + handle + " waves\n\rfics% ";
+	 byte[] bytes = script.getBytes("US-ASCII");
+	 for (int i=0; i < bytes.length; i += 7) {
+	    out.write(bytes, i, Math.min(7, bytes.length - i));
+	    out.flush();
+	    if (i % 70 == 0)
+	       Thread.sleep(1);
+	 }
+	 socket.close();
+      }
+      catch (Exception e) {
+         e.printStackTrace();
+      }
+   }
+
+   protected void write (OutputStream out, String s) throws IOException {
+      out.write(s.getBytes("US-ASCII"));
+      out.flush();
+   }
+
+   /** a handler that records its events and counts down when it 
+    ** disconnects */
+   protected FICSProtocolHandler handler (String handle, String passwd,
+                                          final List<ICSEvent> events,
+					  final CountDownLatch done) {
+      final FICSProtocolHandler fics = 
+         new FICSProtocolHandler("127.0.0.1", server.getLocalPort());
+
+      fics.setHandle(handle);
+      fics.setPassword(passwd);
+      fics.stdout = new PrintStream(new ByteArrayOutputStream());
+      fics.getEventRouter().setDefaultListener(new ICSEventListener () {
+	 public void icsEventDispatched (ICSEvent evt) {
+	    events.add(evt);
+	 }
+      });
+      fics.addConnectionListener(new ICSConnectionListener () {
+	 public void connectionStatusChanged (ICSConnectionEvent evt) {
+	    if (!fics.isConnected() || !fics.isLoggedIn())
+	       done.countDown();
+	 }
+      });
+      return fics;
+   }
+
+   protected void assertEvents (String handle, List<ICSEvent> events) {
+      assertEquals(handle, 3, events.size());
+      assertEquals(ICSEvent.TELL_EVENT, events.get(0).getEventType());
+      assertEquals(handle, ((ICSMessageEvent) events.get(0)).getPlayer());
+      assertEquals("hello", ((ICSMessageEvent) events.get(0)).getMessage());
+      assertEquals(ICSEvent.BOARD_UPDATE_EVENT, events.get(1).getEventType());
+      assertEquals("Simpan", 
+         ((ICSBoardUpdateEvent) events.get(1)).getBlackPlayer());
+      assertEquals(ICSEvent.SHOUT_EVENT, events.get(2).getEventType());
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   /** many logins on a couple of threads */
+   public void testSelector () throws Exception {
+      int n = 20;
+      ICSSelector selector = new ICSSelector(2);
+      FICSProtocolHandler[] fics = new FICSProtocolHandler[n];
+      List<List<ICSEvent>> events = new ArrayList<List<ICSEvent>>();
+      CountDownLatch done = new CountDownLatch(n);
+
+      //prompts and messages split across reads
+      selector.setBufferSize(5);
+      try {
+	 for (int i=0; i < n; i++) {
+	    events.add(Collections.synchronizedList(new ArrayList<ICSEvent>()));
+	    fics[i] = handler("bot" + i, "secret", events.get(i), done);
+	    fics[i].setSelector(selector);
+	    fics[i].connect();
+	 }
+	 assertTrue(done.await(30, TimeUnit.SECONDS));
+
+	 for (int i=0; i < n; i++) {
+	    assertTrue(fics[i].isLoggedIn());
+	    assertEquals("bot" + i, fics[i].getHandle());
+	    assertEvents("bot" + i, events.get(i));
+	 }
+	 assertEquals(0, selector.getSessionCount());
+      }
+      finally {
+         selector.close();
+      }
+      assertTrue(selector.isClosed());
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   /** closed as soon as it is registered, before the loop may have
+    ** taken the registration */
+   public void testCloseAtOnce () throws Exception {
+      int n = 20;
+      ICSSelector selector = new ICSSelector(2);
+      CountDownLatch done = new CountDownLatch(n);
+
+      try {
+	 for (int i=0; i < n; i++) {
+	    FICSProtocolHandler fics = handler("bot" + i, "secret",
+	       new ArrayList<ICSEvent>(), done);
+	    fics.setSelector(selector);
+	    fics.connect();
+	    selector.close(fics);
+	 }
+	 assertTrue(done.await(30, TimeUnit.SECONDS));
+	 assertEquals(0, selector.getSessionCount());
+      }
+      finally {
+         selector.close();
+      }
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   /** the same through a socket and thread of its own */
+   public void testSocket () throws Exception {
+      List<ICSEvent> events = 
+         Collections.synchronizedList(new ArrayList<ICSEvent>());
+      CountDownLatch done = new CountDownLatch(1);
+      FICSProtocolHandler fics = handler("solo", "secret", events, done);
+
+      fics.connect();
+      assertTrue(done.await(30, TimeUnit.SECONDS));
+      assertTrue(fics.isLoggedIn());
+      assertEvents("solo", events);
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   public void testLoginFailed () throws Exception {
+      ICSSelector selector = new ICSSelector();
+      List<ICSEvent> events = 
+         Collections.synchronizedList(new ArrayList<ICSEvent>());
+      CountDownLatch done = new CountDownLatch(1);
+      FICSProtocolHandler fics = handler("bot", badPasswd, events, done);
+      PrintStream err = ictk.util.Log.err;
+
+      ictk.util.Log.err = new PrintStream(new ByteArrayOutputStream());
+      try {
+	 fics.setSelector(selector);
+	 fics.connect();
+	 assertTrue(done.await(30, TimeUnit.SECONDS));
+	 assertFalse(fics.isLoggedIn());
+	 assertFalse(fics.isConnected());
+	 assertEquals(0, events.size());
+      }
+      finally {
+         ictk.util.Log.err = err;
+         selector.close();
+      }
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   public void testLagCompensation () throws Exception {
+      ICSSelector selector = new ICSSelector();
+      FICSProtocolHandler fics = 
+         handler("bot", "secret", new ArrayList<ICSEvent>(), 
+	         new CountDownLatch(1));
+
+      try {
+	 fics.setLagCompensation(true);
+	 fics.setSelector(selector);
+	 fics.connect();
+	 fail("timeseal through a selector");
+      }
+      catch (IllegalStateException e) {
+      }
+      finally {
+         selector.close();
+      }
+   }
+
+   /** a handler that keeps the chunks instead of parsing them */
+   protected static class ChunkRecorder extends FICSProtocolHandler {
+      List<String> chunks = new ArrayList<String>();
+
+      protected void parse (CharSequence str) {
+         chunks.add(str.toString());
+      }
+   }
+
+   /** server output ending in a move list of so many moves, a big history
+    ** and some \r's and unprintables to be dropped */
+   protected List<String> script (int moves, int history) {
+      List<String> chunks = new ArrayList<String>();
+      StringBuilder sb = new StringBuilder();
+
+      chunks.add("");
+      chunks.add("Handle tells you: hello");
+      sb.append("Movelist for game 12:\n\nbbbb (1849) vs. Simpan (1820) ---"
+         + " Sun Oct 18, 12:00 UTC 2026\nRated blitz match, initial time: 3"
+	 + " minutes, increment: 0 seconds.\n\n"
+	 + "Move  bbbb                    Simpan\n"
+	 + "----  ---------------------   ---------------------\n");
+      for (int i=1; i <= moves; i++)
+         sb.append(String.format("%3d.  Nf3     (0:01.234)      Nf6"
+	    + "     (0:02.345)\n", i));
+      sb.append("      {Still in progress} *");
+      chunks.add(sb.toString());
+      sb.setLength(0);
+      for (int i=0; i < history; i++)
+         sb.append("history line ").append(i).append('\n');
+      chunks.add(sb.toString());
+      chunks.add(STYLE12);
+      return chunks;
+   }
+
+   protected String join (List<String> chunks) {
+      StringBuilder sb = new StringBuilder();
+
+      for (int i=0; i < chunks.size(); i++) {
+         //FICS ends lines with \n\r
+         sb.append(chunks.get(i).replace("\n", "\n\r\u0007"));
+	 if (i + 1 < chunks.size())
+	    sb.append("\n\rfics% ");
+      }
+      return sb.toString();
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   /** output handed over in every size of piece, from one character to
+    ** all of it, is chunked the same */
+   public void testChunk () {
+      List<String> expected = script(200, 20000);
+      char[] output = join(expected).toCharArray();
+      Random random = new Random(3);
+      ChunkRecorder fics = null;
+      int size = 0;
+
+      for (int trial=0; trial < 20; trial++) {
+         fics = new ChunkRecorder();
+	 size = (trial == 0) ? output.length : 1 + random.nextInt(1 << trial);
+	 for (int i=0; i < output.length; i += size)
+	    fics.chunk(output, i, Math.min(size, output.length - i));
+	 fics.chunkEnd();
+
+	 assertEquals(expected, fics.chunks);
+	 //and has let go of the room the history needed
+	 assertEquals(fics.BUFFER_SIZE, fics.buffer.capacity());
+      }
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   /** a prompt split at every point between two pieces */
+   public void testPromptSplit () {
+      char[] output = "one\n\rfics% two\n\rfics% three".toCharArray();
+      ChunkRecorder fics = null;
+
+      for (int i=0; i <= output.length; i++) {
+         fics = new ChunkRecorder();
+	 fics.chunk(output, 0, i);
+	 fics.chunk(output, i, output.length - i);
+	 fics.chunkEnd();
+	 assertEquals(Arrays.asList("one", "two", "three"), fics.chunks);
+      }
+   }
+}
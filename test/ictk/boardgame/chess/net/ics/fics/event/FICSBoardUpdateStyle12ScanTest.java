@@ -0,0 +1,232 @@
+/*
+ * ictk - Internet Chess ToolKit
+ * More information is available at http://jvarsoke.github.io/ictk
+ * Copyright (c) 1997-2014 J. Varsoke <ictk.jvarsoke [at] neverbox.com>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ictk.boardgame.chess.net.ics.fics.event;
+
+import ictk.boardgame.chess.net.ics.event.*;
+import ictk.util.Log;
+
+import java.util.*;
+import java.util.regex.*;
+import java.io.*;
+import java.text.ParsePosition;
+
+import junit.framework.*;
+
+/** checks that FICSBoardUpdateStyle12Parser.scan() reads exactly what the
+ *  regular expression does, into exactly the same events.
+ */
+public class FICSBoardUpdateStyle12ScanTest extends TestCase {
+   FICSBoardUpdateStyle12Parser parser;
+   List<String> mesg;
+   PrintStream err;
+
+   public FICSBoardUpdateStyle12ScanTest (String name) {
+      super(name);
+   }
+
+   public void setUp () throws IOException {
+      BufferedReader in = new BufferedReader(new InputStreamReader(
+         getClass().getResourceAsStream(
+	    "data/FICSBoardUpdateStyle12ParserTest.data")));
+      String line = null;
+
+      parser = (FICSBoardUpdateStyle12Parser) 
+                  FICSBoardUpdateStyle12Parser.getInstance();
+      mesg = new ArrayList<String>();
+      while ((line = in.readLine()) != null)
+         if (!line.startsWith("#") && line.length() > 0)
+	    mesg.add(line);
+      in.close();
+      //the warnings about numbers out of range are expected
+      err = Log.err;
+      Log.err = new PrintStream(new ByteArrayOutputStream());
+   }
+
+   public void tearDown () {
+      Log.err = err;
+      parser = null;
+      mesg = null;
+   }
+
+   /** parses s at start both ways and fails if they differ.
+    *  @return true if it was a Style 12 message
+    */
+   protected boolean compare (String s, int start) {
+      Matcher m = parser.match(s, start);
+      ParsePosition pos = new ParsePosition(start);
+      ICSBoardUpdateEvent scanned = 
+         (ICSBoardUpdateEvent) parser.createICSEvent(s, pos);
+
+      if (m == null) {
+         assertNull(s, scanned);
+	 assertEquals(s, start, pos.getErrorIndex());
+	 assertEquals(s, start, pos.getIndex());
+	 return false;
+      }
+      assertNotNull(s, scanned);
+      assertEquals(s, m.end(), pos.getIndex());
+      assertSameEvent(s, (ICSBoardUpdateEvent) parser.createICSEvent(m), 
+                      scanned);
+      return true;
+   }
+
+   protected void assertSameEvent (String s, ICSBoardUpdateEvent a, 
+                                   ICSBoardUpdateEvent b) {
+      assertEquals(s, a.getEventType(), b.getEventType());
+      assertEquals(s, a.getMessage(), b.getMessage());
+      assertEquals(s, a.isFake(), b.isFake());
+      for (int f=0; f < 8; f++)
+         assertTrue(s, Arrays.equals(a.getBoardArray()[f], 
+	                             b.getBoardArray()[f]));
+      assertEquals(s, a.isBlackMove(), b.isBlackMove());
+      assertEquals(s, a.getWhitePlayer(), b.getWhitePlayer());
+      assertEquals(s, a.getBlackPlayer(), b.getBlackPlayer());
+      assertEquals(s, a.isWhiteCastleableKingside(), 
+                      b.isWhiteCastleableKingside());
+      assertEquals(s, a.isWhiteCastleableQueenside(), 
+                      b.isWhiteCastleableQueenside());
+      assertEquals(s, a.isBlackCastleableKingside(), 
+                      b.isBlackCastleableKingside());
+      assertEquals(s, a.isBlackCastleableQueenside(), 
+                      b.isBlackCastleableQueenside());
+      assertEquals(s, a.getVerboseMove(), b.getVerboseMove());
+      assertEquals(s, a.getSAN(), b.getSAN());
+      assertEquals(s, a.isFlipBoard(), b.isFlipBoard());
+      assertEquals(s, a.isClockMoving(), b.isClockMoving());
+      assertEquals(s, a.getEnPassantFile(), b.getEnPassantFile());
+      assertEquals(s, a.getPlySinceLastIrreversableMove(), 
+                      b.getPlySinceLastIrreversableMove());
+      assertEquals(s, a.getBoardNumber(), b.getBoardNumber());
+      assertEquals(s, a.getRelation(), b.getRelation());
+      assertEquals(s, a.getInitialTime(), b.getInitialTime());
+      assertEquals(s, a.getIncrement(), b.getIncrement());
+      assertEquals(s, a.getWhiteMaterial(), b.getWhiteMaterial());
+      assertEquals(s, a.getBlackMaterial(), b.getBlackMaterial());
+      assertEquals(s, a.getWhiteClock(), b.getWhiteClock());
+      assertEquals(s, a.getBlackClock(), b.getBlackClock());
+      assertEquals(s, a.getMoveNumber(), b.getMoveNumber());
+      assertEquals(s, a.getMoveTime(), b.getMoveTime());
+      assertEquals(s, a.getLag(), b.getLag());
+      assertEquals(s, parser.toNative(a), parser.toNative(b));
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   public void testData () {
+      for (String s : mesg) {
+         assertTrue(s, compare(s, 0));
+         assertTrue(s, compare(":" + s, 0));
+         assertTrue(s, compare("fics% \n" + s + "\nfics% ", 7));
+      }
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   /** every truncation of every message */
+   public void testPrefixes () {
+      for (String s : mesg)
+         for (int i=0; i < s.length(); i++)
+	    compare(s.substring(0, i), 0);
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   /** every field replaced by values the regex treats differently */
+   public void testFields () {
+      String[] values = { "", "-", "0", "-0", "9", "-9", "00012", 
+                          "2147483647", "2147483648", "-2147483648",
+			  "-2147483649", "99999999999999999999",
+			  "none", "B", "W", "x", "a_b", "(0:00)",
+			  "(0:06.)", "(1:02.5)", "(12:34.567)", "(0:00.0.0)",
+			  "(99999999999:00.000)", "rnbqkbnr", "--------",
+			  "rnbqkbn", "rnbqkbnrr", "rnbqkbnX" };
+      String[] tokens;
+      StringBuilder sb = new StringBuilder();
+      int styles = 0;
+
+      for (String s : mesg) {
+         tokens = s.split(" ");
+	 for (int t=1; t < tokens.length; t++) {
+	    for (int v=0; v < values.length; v++) {
+	       sb.setLength(0);
+	       for (int i=0; i < tokens.length; i++) {
+	          if (i > 0)
+		     sb.append(i == t + 1 && v % 2 == 1 ? '\t' : ' ');
+		  sb.append(i == t ? values[v] : tokens[i]);
+	       }
+	       if (compare(sb.toString(), 0))
+	          styles++;
+	    }
+	 }
+      }
+      assertTrue(styles > 0);
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   /** random edits of the messages */
+   public void testMutations () {
+      Random random = new Random(12);
+      String alphabet = " -0123456789:().<>BWnoe\t\n_rkpRKP";
+      StringBuilder sb = new StringBuilder();
+      String s = null;
+      int at = 0;
+
+      for (int i=0; i < 20000; i++) {
+         sb.setLength(0);
+	 sb.append(mesg.get(random.nextInt(mesg.size())));
+	 for (int edits = 1 + random.nextInt(3); edits > 0; edits--) {
+	    at = random.nextInt(sb.length());
+	    switch (random.nextInt(3)) {
+	       case 0: 
+	          sb.setCharAt(at, 
+		     alphabet.charAt(random.nextInt(alphabet.length())));
+		  break;
+	       case 1:
+	          sb.insert(at, 
+		     alphabet.charAt(random.nextInt(alphabet.length())));
+		  break;
+	       default:
+	          sb.deleteCharAt(at);
+	    }
+	 }
+	 compare(sb.toString(), 0);
+      }
+   }
+
+   //////////////////////////////////////////////////////////////////////
+   /** one event filled over and over is the same as new ones */
+   public void testRecycle () {
+      ICSBoardUpdateEvent evt = new ICSBoardUpdateEvent();
+      char[][] board = evt.getBoardArray();
+      String s = null;
+
+      for (int i=0; i < 3; i++) {
+         for (int j=0; j < mesg.size(); j++) {
+	    s = mesg.get(j);
+	    assertEquals(s.length(), parser.scan(s, 0, evt));
+	    assertSameEvent(s, 
+	       (ICSBoardUpdateEvent) parser.createICSEvent(s), evt);
+	    assertSame(board, evt.getBoardArray());
+	 }
+      }
+   }
+}